@@ -23,10 +23,27 @@
  */
 package com.randallscharpf.java.jmorsecoding.base;
 
+import com.randallscharpf.java.jmorsecoding.base.management.MBeans;
+import com.randallscharpf.java.jmorsecoding.base.management.PlayerMXBean;
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
 import com.randallscharpf.java.jmorsecoding.base.standards.BuiltinMorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.morseunits.PlayableMorseUnit;
 import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Delayer;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.LatencyCompensator;
 import com.randallscharpf.java.jmorsecoding.base.standards.MorseStandard;
 import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOffDelayerSink;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Openable;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.TimelineSink;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.MorseSymbolSet;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolTable;
+import com.randallscharpf.java.jmorsecoding.base.timelines.Timeline;
+import com.randallscharpf.java.jmorsecoding.base.timelines.TimingPlan;
+import com.randallscharpf.java.jmorsecoding.base.timings.TimingSnapshot;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 public class MorsePlayer {
 
@@ -34,6 +51,22 @@ public class MorsePlayer {
     public final OnOff stateSetter;
     public final Delayer delayer;
 
+    private static final boolean[] OFF = {false};
+    private static final long[] NO_TIME = {0};
+    // enough runs of the playing code for the virtual machine to compile it
+    private static final int REHEARSALS = 100;
+    // reused for every call to playSilence, since a player is only used by one thread at a time
+    private final long[] silence = new long[1];
+
+    private final LatencyCompensator compensator;
+    private final TimelineSink sink;
+    // guarded by this player, since a plan fills in its arrays lazily and may be used by a thread compiling a
+    // message while another plays
+    private TimingPlan plan;
+    // striped so that counting costs the playing thread nothing even while monitoring tools read the counts
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder charactersSent = new LongAdder();
+
     public MorsePlayer(OnOff stateSetter, Delayer delayer) {
         this(stateSetter, delayer, BuiltinMorseStandard.ITU_R_M1677_1_2009);
     }
@@ -42,6 +75,11 @@ public class MorsePlayer {
         this.morseStandard = morseStandard;
         this.stateSetter = stateSetter;
         this.delayer = delayer;
+        // the time taken by each state change is measured, and taken out of the wait that follows it if asked
+        this.compensator = new LatencyCompensator(stateSetter, delayer);
+        // outputs that can buffer a whole schedule are handed timelines in batches instead of element by element
+        TimelineSink batchSink = OnOffDelayerSink.of(stateSetter, delayer);
+        this.sink = batchSink instanceof OnOffDelayerSink ? new OnOffDelayerSink(compensator, compensator) : batchSink;
     }
     
     // Be aware that this method could misinterpret your string if you type it in a way that violates the convention
@@ -49,10 +87,203 @@ public class MorsePlayer {
     // be checked. Alternatively, directly calling the characters and playing them individually is far less prone
     // to errors in morse convention (albeit at the cost of more potential for programming errors).
     public void playMorseFromString(String message) throws Exception {
-        morseStandard.getSymbolSpecification().getPlayableForString(message).play(stateSetter, delayer, morseStandard.getTimingSpecification());
+        // the durations come from the timing plan, so the timing is not consulted element by element
+        play(compile(message));
     }
     
     public void playProsign(String prosign) throws Exception {
-        morseStandard.getSymbolSpecification().getPlayableForProsign(prosign).play(stateSetter, delayer, morseStandard.getTimingSpecification());
+        morseStandard.getSymbolSpecification().getPlayableForProsign(prosign).play(compensator, compensator, morseStandard.getTimingSpecification());
+        messagesSent.increment();
+        charactersSent.increment();
+    }
+
+    // Plays a unit that was encoded ahead of time, such as one read from a file, with the timing of the current
+    // morse standard. The symbol set of the current standard is not consulted.
+    public void play(PlayableMorseUnit unit) throws Exception {
+        unit.play(compensator, compensator, morseStandard.getTimingSpecification());
+        messagesSent.increment();
+    }
+
+    // Compiles a message with the current morse standard so that it can be played starting from any character or
+    // time offset. The timeline keeps the timing that is current when it is compiled; recompile after changing it.
+    public synchronized Timeline compile(String message) {
+        return Timeline.compile(message, getTimingPlan());
+    }
+
+    // Gives the durations of every symbol under the current timing, rebuilding them only if the timing has changed
+    // since the last call. Symbols must be looked up in the plan while synchronized on this player, as compile does.
+    public synchronized TimingPlan getTimingPlan() {
+        if (plan == null) {
+            plan = TimingPlan.forStandard(morseStandard);
+        } else {
+            plan = plan.update(morseStandard.getTimingSpecification());
+        }
+        return plan;
+    }
+
+    public void play(Timeline timeline) throws Exception {
+        timeline.play(sink);
+        messagesSent.increment();
+        charactersSent.add(timeline.getCharacterCount());
+    }
+
+    public void playFromCharacter(Timeline timeline, int index) throws Exception {
+        timeline.playFromCharacter(sink, index);
+        messagesSent.increment();
+        charactersSent.add(timeline.getCharacterCount() - index);
+    }
+
+    public void playFromTime(Timeline timeline, Duration offset) throws Exception {
+        timeline.playFromTime(sink, offset);
+        messagesSent.increment();
+        charactersSent.add(timeline.getCharacterCount() - timeline.getCharacterAt(offset));
+    }
+
+    public void playCharacters(Timeline timeline, int from, int to) throws Exception {
+        timeline.playCharacters(sink, from, to);
+        charactersSent.add(to - from);
+    }
+
+    // Counts a message that was played in pieces with playCharacters, which count only characters, once its last
+    // piece has been played. Schedulers that interleave messages call this as each one is finished.
+    public void countMessage() {
+        messagesSent.increment();
+    }
+
+    // Plays the symbol for a single character with no gap before it, leaving the output off afterwards, as a keyer
+    // does for each key press. Spacing between symbols is left to the caller.
+    public void playSymbol(char c) throws Exception {
+        boolean[] states;
+        long[] durations;
+        synchronized (this) {
+            TimingPlan current = getTimingPlan();
+            states = current.getStates(c);
+            durations = current.getDurations(c);
+        }
+        sink.play(states, durations, 0, states.length);
+        sink.play(OFF, NO_TIME, 0, 1);
+        charactersSent.increment();
     }
+
+    // Holds the output off for the given time, such as to separate two messages.
+    public void playSilence(Duration time) throws Exception {
+        silence[0] = time.toNanos();
+        sink.play(OFF, silence, 0, 1);
+    }
+
+    // Prepares everything that the first message would otherwise wait for, so that it starts as quickly as later
+    // ones. The symbol lookups of the standard and the durations of every symbol are built, the code that plays
+    // messages is run against a silent output until the virtual machine has compiled it, and the state setter and
+    // delayer are opened if they are Openable, as they must be before playing anyway. Nothing is played, and opened
+    // outputs must still be closed by the caller.
+    public void warmUp() throws Exception {
+        MorseSymbolSet symbols = morseStandard.getSymbolSpecification();
+        symbols.preload();
+        StringBuilder text = new StringBuilder();
+        synchronized (this) {
+            TimingPlan current = getTimingPlan();
+            SymbolTable table = current.getSymbolTable();
+            for (char c = '!'; c < 256; c++) {
+                if (table.canEncode(c)) {
+                    current.getStates(c);
+                    text.append(c);
+                    if (text.length() % 6 == 5) {
+                        text.append(' ');
+                    }
+                }
+            }
+        }
+        String message = text.toString();
+        // the rehearsal plays through classes of its own kind rather than through the output
+        LatencyCompensator rehearsal = new LatencyCompensator((active) -> {}, (time) -> {});
+        TimelineSink rehearsalSink = new OnOffDelayerSink(rehearsal, rehearsal);
+        for (int i = 0; i < REHEARSALS; i++) {
+            symbols.getPlayableForString(message).play(rehearsal, rehearsal, morseStandard.getTimingSpecification());
+            compile(message).play(rehearsalSink);
+        }
+        if (stateSetter instanceof Openable) {
+            ((Openable) stateSetter).open();
+        }
+        if (delayer instanceof Openable && delayer != stateSetter) {
+            ((Openable) delayer).open();
+        }
+    }
+
+    // Gives the measurements of how long the state setter takes to act. Once compensation is turned on here, the
+    // measured time is subtracted from the wait after each state change so that the intervals between state changes
+    // match the timing. It is off by default, since outputs that spend no real time acting, such as recorders and
+    // simulations, would have their waits shortened by time that never passed for them. Outputs that take whole
+    // timelines at once are neither measured nor compensated.
+    public LatencyCompensator getLatencyCompensator() {
+        return compensator;
+    }
+
+    // Gives live counts of what this player has played and measurements of its timing, as published over JMX by
+    // registerMBean. The counts may be read from any thread.
+    public PlayerMXBean getMetrics() {
+        return metrics;
+    }
+
+    // Publishes the metrics of this player with the platform MBean server under the type MorsePlayer and the given
+    // name. The registration keeps this player reachable until it is removed with MBeans.unregister.
+    public ObjectName registerMBean(String name) throws JMException {
+        return MBeans.register(metrics, PlayerMXBean.class, "MorsePlayer", name);
+    }
+
+    private final PlayerMXBean metrics = new PlayerMXBean() {
+        @Override
+        public long getMessagesSent() {
+            return messagesSent.sum();
+        }
+
+        @Override
+        public long getCharactersSent() {
+            return charactersSent.sum();
+        }
+
+        @Override
+        public double getEffectiveWpm() {
+            TimingSnapshot timing = morseStandard.getTimingSpecification().snapshot();
+            // "PARIS " has ten dots, four dashes, nine element gaps, four letter gaps and a word gap
+            long paris = 10 * timing.getNanos(ElementType.DOT) + 4 * timing.getNanos(ElementType.DASH)
+                    + 9 * timing.getNanos(ElementType.ELEMENT_GAP) + 4 * timing.getNanos(ElementType.LETTER_GAP)
+                    + timing.getNanos(ElementType.WORD_GAP);
+            return paris == 0 ? 0 : 60e9 / paris;
+        }
+
+        @Override
+        public long getElementCount() {
+            return compensator.getLateness().getCount();
+        }
+
+        @Override
+        public double getLatenessP50Micros() {
+            return compensator.getLateness().getPercentile(0.5) / 1e3;
+        }
+
+        @Override
+        public double getLatenessP90Micros() {
+            return compensator.getLateness().getPercentile(0.9) / 1e3;
+        }
+
+        @Override
+        public double getLatenessP99Micros() {
+            return compensator.getLateness().getPercentile(0.99) / 1e3;
+        }
+
+        @Override
+        public double getLatenessMaxMicros() {
+            return compensator.getLateness().getMax() / 1e3;
+        }
+
+        @Override
+        public double getStateSetterLatencyMicros() {
+            return compensator.getLatencyEstimate().toNanos() / 1e3;
+        }
+
+        @Override
+        public void resetLateness() {
+            compensator.getLateness().reset();
+        }
+    };
 }
@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.fileformats;
+
+/**
+ * The layout of a key event log. A log stores the state transitions actually
+ * given to an output, in the order they were given, each with the time for which
+ * the state was held, so that a transmission can be reproduced exactly.
+ * <ol>
+ * <li>Header: the magic number {@link #MAGIC} and the format version as a
+ * 16-bit integer, both big-endian.</li>
+ * <li>Events, until the end of the file: each event is a single unsigned
+ * integer, equal to twice the time in nanoseconds for which the state was held
+ * plus one if the state was "on", written as a varint of seven bits per byte,
+ * least significant group first, with the high bit of each byte set when more
+ * bytes follow. The integer is 64 bits wide, so times must be less than
+ * 2<sup>62</sup> nanoseconds.</li>
+ * </ol>
+ * An element of a few tens of milliseconds, as at common speeds, takes four bytes.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class KeyEventLog {
+
+    /**
+     * The magic number at the start of every key event log.
+     * @since 1.1
+     */
+    public static final int MAGIC = 0x4A4D4B4C; // "JMKL"
+    /**
+     * The version of the layout written by this library.
+     * @since 1.1
+     */
+    public static final short VERSION = 1;
+    /**
+     * The length in bytes of the header of every key event log.
+     * @since 1.1
+     */
+    public static final int HEADER_LENGTH = 4 + 2;
+
+    private KeyEventLog() {}
+}
@@ -0,0 +1,229 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.fileformats;
+
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Delayer;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.TimelineSink;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and replays a log in the {@link KeyEventLog} format. Events are streamed
+ * from the channel through a fixed buffer, so logs of any length can be replayed
+ * in constant memory. A log can be replayed once per reader, either event by
+ * event with {@link #next()} or all at once into a state setter and delayer or a
+ * {@link TimelineSink}, such as an offline audio renderer. Instances of this
+ * class are not safe for use by multiple threads.
+ * @version 1.1
+ * @since 1.1
+ */
+public class KeyEventLogReader implements Closeable {
+
+    private static final int BATCH_SIZE = 1024;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 << 10);
+    private boolean endOfChannel;
+    private boolean state;
+    private long nanos;
+
+    /**
+     * Creates a reader for a log stored in the given channel. The header is read
+     * and validated immediately.
+     * @version 1.1
+     * @since 1.1
+     * @param channel a channel positioned at the start of a log
+     * @throws IOException if the channel cannot be read or does not hold a log
+     */
+    public KeyEventLogReader(ReadableByteChannel channel) throws IOException {
+        this.channel = channel;
+        buffer.flip();
+        if (!fill(KeyEventLog.HEADER_LENGTH)) {
+            throw new IOException("Key event log is truncated.");
+        }
+        if (buffer.getInt() != KeyEventLog.MAGIC) {
+            throw new IOException("Not a key event log: bad magic number.");
+        }
+        short version = buffer.getShort();
+        if (version != KeyEventLog.VERSION) {
+            throw new IOException("Unsupported key event log version " + version + ".");
+        }
+    }
+
+    /**
+     * Opens a log file and creates a reader for it. The file is closed when the
+     * reader is closed.
+     * @version 1.1
+     * @since 1.1
+     * @param path the log file to read
+     * @return a reader for the file
+     * @throws IOException if the file cannot be opened or does not hold a log
+     */
+    public static KeyEventLogReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new KeyEventLogReader(channel);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    // makes at least the given number of bytes available unless the channel ends first
+    private boolean fill(int needed) throws IOException {
+        while (buffer.remaining() < needed && !endOfChannel) {
+            buffer.compact();
+            if (channel.read(buffer) < 0) {
+                endOfChannel = true;
+            }
+            buffer.flip();
+        }
+        return buffer.remaining() >= needed;
+    }
+
+    /**
+     * Reads the next event.
+     * @version 1.1
+     * @since 1.1
+     * @return true if an event was read, or false if the log has ended
+     * @throws IOException if the channel cannot be read, the log ends part-way
+     * through an event, or the event holds a negative time
+     */
+    public boolean next() throws IOException {
+        if (!fill(1)) {
+            return false;
+        }
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (shift > 63 || !fill(1)) {
+                throw new IOException("Key event log is truncated or corrupt.");
+            }
+            byte b = buffer.get();
+            if (shift == 63 && (b & 0x7E) != 0) {
+                throw new IOException("Key event log is truncated or corrupt.");
+            }
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        // the writer doubles the time as a signed value, so a time that was negative, or too long to double, comes
+        // back negative
+        long held = v >> 1;
+        if (held < 0) {
+            throw new IOException("Key event log holds a negative time.");
+        }
+        state = (v & 1) != 0;
+        nanos = held;
+        return true;
+    }
+
+    /**
+     * Gives the state set by the event last read.
+     * @version 1.1
+     * @since 1.1
+     * @return true if the state was set to "on"
+     */
+    public boolean getState() {
+        return state;
+    }
+
+    /**
+     * Gives the time for which the state of the event last read was held.
+     * @version 1.1
+     * @since 1.1
+     * @return the duration of the event in nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Plays the remaining events with a state setter and delayer, exactly as they
+     * were logged.
+     * @version 1.1
+     * @since 1.1
+     * @param stateSetter switch to control the indicator that creates dits and dahs
+     * @param delayer timer that provides the process of waiting between state transitions
+     * @return the number of events played
+     * @throws Exception if the log cannot be read or the state setter or delayer fails
+     */
+    public long replay(OnOff stateSetter, Delayer delayer) throws Exception {
+        long count = 0;
+        while (next()) {
+            stateSetter.setActive(state);
+            delayer.waitNanos(nanos);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Plays the remaining events into a sink in batches, exactly as they were
+     * logged, and then marks the end of the message.
+     * @version 1.1
+     * @since 1.1
+     * @param sink the output to which to give the events
+     * @return the number of events played
+     * @throws Exception if the log cannot be read or the sink fails
+     */
+    public long replay(TimelineSink sink) throws Exception {
+        boolean[] states = new boolean[BATCH_SIZE];
+        long[] durations = new long[BATCH_SIZE];
+        long count = 0;
+        int length = 0;
+        while (next()) {
+            states[length] = state;
+            durations[length] = nanos;
+            length++;
+            count++;
+            if (length == BATCH_SIZE) {
+                sink.play(states, durations, 0, length);
+                length = 0;
+            }
+        }
+        if (length > 0) {
+            sink.play(states, durations, 0, length);
+        }
+        sink.endOfMessage();
+        return count;
+    }
+
+    /**
+     * Closes the channel.
+     * @version 1.1
+     * @since 1.1
+     * @throws IOException if closing the channel fails
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
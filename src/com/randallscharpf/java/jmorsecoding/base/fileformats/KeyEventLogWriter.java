@@ -0,0 +1,224 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.fileformats;
+
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Delayer;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+/**
+ * A state setter and delayer that writes what it is asked to do into the
+ * {@link KeyEventLog} format. Each call to {@link #setActive(boolean)} starts an
+ * event, which is held for the total of the waits requested until the next call
+ * or until the log is closed. The calls may be passed on to another state setter
+ * and delayer, so that a real transmission is archived while it is played.
+ * <br>
+ * Events are encoded into a fixed buffer that is written to the channel only when
+ * full, so logging allocates nothing per event. Instances of this class are not
+ * safe for use by multiple threads.
+ * @version 1.1
+ * @since 1.1
+ */
+public class KeyEventLogWriter implements OnOff, Delayer, Closeable {
+
+    private final WritableByteChannel channel;
+    // null if calls are not passed on
+    private final OnOff stateSetter;
+    private final Delayer delayer;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 << 10);
+    private boolean started;
+    private boolean state;
+    private long heldNanos;
+    private long events;
+    private boolean closed;
+
+    /**
+     * Creates a writer that only logs. Waits return at once.
+     * @version 1.1
+     * @since 1.1
+     * @param channel the channel to which to write the log
+     */
+    public KeyEventLogWriter(WritableByteChannel channel) {
+        this(channel, null, null);
+    }
+
+    /**
+     * Creates a writer that passes every call on to a state setter and delayer
+     * after logging it.
+     * @version 1.1
+     * @since 1.1
+     * @param channel the channel to which to write the log
+     * @param stateSetter switch to control the indicator that creates dits and dahs
+     * @param delayer timer that provides the process of waiting between state transitions
+     */
+    public KeyEventLogWriter(WritableByteChannel channel, OnOff stateSetter, Delayer delayer) {
+        this.channel = channel;
+        this.stateSetter = stateSetter;
+        this.delayer = delayer;
+        buffer.putInt(KeyEventLog.MAGIC);
+        buffer.putShort(KeyEventLog.VERSION);
+    }
+
+    /**
+     * Creates a log file and a writer that only logs to it. The file is created
+     * or truncated, and is closed when the writer is closed.
+     * @version 1.1
+     * @since 1.1
+     * @param path the file to write
+     * @return a writer for the file
+     * @throws IOException if the file cannot be created
+     */
+    public static KeyEventLogWriter create(Path path) throws IOException {
+        return new KeyEventLogWriter(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * Finishes the current event and starts a new one with the given state, then
+     * sets the state of the wrapped state setter.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void setActive(boolean active) throws Exception {
+        checkOpen();
+        if (started) {
+            writeEvent();
+        }
+        started = true;
+        state = active;
+        heldNanos = 0;
+        if (stateSetter != null) {
+            stateSetter.setActive(active);
+        }
+    }
+
+    /**
+     * Adds the time to the current event and waits with the wrapped delayer.
+     * Time waited before the first state is set is not logged.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void wait(Duration time) throws Exception {
+        checkOpen();
+        heldNanos += time.toNanos();
+        if (delayer != null) {
+            delayer.wait(time);
+        }
+    }
+
+    /**
+     * Adds the time to the current event and waits with the wrapped delayer.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void waitNanos(long nanos) throws Exception {
+        checkOpen();
+        heldNanos += nanos;
+        if (delayer != null) {
+            delayer.waitNanos(nanos);
+        }
+    }
+
+    private void writeEvent() throws IOException {
+        if (buffer.remaining() < 10) {
+            drain();
+        }
+        long v = (heldNanos << 1) | (state ? 1 : 0);
+        while ((v & ~0x7FL) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+        events++;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Key event log has already been closed.");
+        }
+    }
+
+    /**
+     * Gives the number of events written so far, not counting the current one.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of finished events
+     */
+    public long getEventCount() {
+        return events;
+    }
+
+    /**
+     * Writes out all events that have been buffered, not including the current one,
+     * whose duration is not yet known.
+     * @version 1.1
+     * @since 1.1
+     * @throws IOException if writing to the channel fails
+     */
+    public void flush() throws IOException {
+        checkOpen();
+        drain();
+    }
+
+    /**
+     * Finishes the current event, writes out everything buffered, and closes the
+     * channel. Calling this method more than once has no further effect.
+     * @version 1.1
+     * @since 1.1
+     * @throws IOException if writing to or closing the channel fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (started) {
+                writeEvent();
+            }
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.fileformats;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.MorseSymbolSet;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolTable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file-to-file encoder for UTF-8 text too large to hold in memory. The input
+ * file is memory-mapped and decoded one window at a time, each character is
+ * encoded through a {@link SymbolTable}, and the result is written through a
+ * memory-mapped window of the output file. The heap used is therefore constant
+ * with respect to the size of the input, and the input is never copied into a
+ * <code>String</code>.
+ * <br>
+ * The whole input is encoded as a single message, with the same spacing rules as
+ * {@link MorseSymbolSet#getPlayableForString(String)}. Two output formats are
+ * supported, selected by {@link OutputFormat}. Transcoding runs in time linear in
+ * the size of the input. Instances of this class are not safe for use by multiple
+ * threads.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class MappedTranscoder {
+
+    /**
+     * The representations to which a file can be transcoded.
+     * @version 1.1
+     * @since 1.1
+     */
+    public static enum OutputFormat {
+        /**
+         * Element types packed four to a byte as described in {@link PackedElements},
+         * preceded by the count of stored codes as a big-endian 64-bit integer.
+         * @since 1.1
+         */
+        PACKED,
+        /**
+         * ASCII dots and dashes, with letters separated by spaces and words separated
+         * by slashes, terminated by a newline.
+         * @since 1.1
+         */
+        NOTATION
+    }
+
+    private static final int DEFAULT_WINDOW = 32 << 20;
+    private static final int CHAR_CHUNK = 64 << 10;
+
+    private final SymbolTable table;
+    private final int windowSize;
+
+    /**
+     * Creates a transcoder that maps 32 MiB of each file at a time.
+     * @version 1.1
+     * @since 1.1
+     * @param symbols the symbol set with which to encode text
+     */
+    public MappedTranscoder(MorseSymbolSet symbols) {
+        this(symbols, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Creates a transcoder that maps the given number of bytes of each file at a
+     * time. Larger windows mean fewer mappings but more address space in use.
+     * @version 1.1
+     * @since 1.1
+     * @param symbols the symbol set with which to encode text
+     * @param windowSize the number of bytes to map at once, at least 16
+     */
+    public MappedTranscoder(MorseSymbolSet symbols, int windowSize) {
+        if (windowSize < 16) {
+            throw new IllegalArgumentException("Window size must be at least 16 bytes.");
+        }
+        this.table = new SymbolTable(symbols);
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Encodes a UTF-8 text file into an output file. The output file is created
+     * or truncated, and is deleted again if the input cannot be encoded, so that
+     * no partial encoding is left behind.
+     * @version 1.1
+     * @since 1.1
+     * @param input the text file to encode
+     * @param output the file to which to write the encoding
+     * @param format the representation in which to write the encoding
+     * @return the number of characters encoded
+     * @throws IOException if either file cannot be accessed or the input is not valid UTF-8
+     * @throws IllegalArgumentException if the input contains a character with no
+     * encoding in the symbol set; the message gives the offending character's offset
+     */
+    public long transcode(Path input, Path output, OutputFormat format) throws IOException {
+        boolean opened = false;
+        boolean finished = false;
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+                RandomAccessFile outFile = new RandomAccessFile(output.toFile(), "rw")) {
+            opened = true;
+            outFile.setLength(0);
+            MappedOutput out = new MappedOutput(outFile.getChannel(), windowSize);
+            ElementWriter writer = format == OutputFormat.PACKED ? new PackedWriter(out) : new NotationWriter(out);
+            long chars = encode(in, writer);
+            writer.finish();
+            out.close();
+            finished = true;
+            return chars;
+        } finally {
+            if (opened && !finished) {
+                // the output is mapped a whole window at a time, so an unfinished one ends in padding
+                try {
+                    Files.deleteIfExists(output);
+                } catch (IOException ex) {
+                    // the failure that stopped the encoding is the one to report
+                }
+            }
+        }
+    }
+
+    private long encode(FileChannel in, ElementWriter writer) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer chars = CharBuffer.allocate(CHAR_CHUNK);
+        long size = in.size();
+        long position = 0;
+        long charCount = 0;
+        boolean needsGap = false;
+        do {
+            long length = Math.min(windowSize, size - position);
+            boolean last = position + length >= size;
+            MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+            while (true) {
+                CoderResult result = decoder.decode(window, chars, last);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (last && result.isUnderflow()) {
+                    result = decoder.flush(chars);
+                }
+                chars.flip();
+                while (chars.hasRemaining()) {
+                    char c = chars.get();
+                    if (Character.isWhitespace(c)) {
+                        writer.write(ElementType.WORD_GAP);
+                        needsGap = false;
+                    } else {
+                        if (needsGap) {
+                            writer.write(ElementType.LETTER_GAP);
+                        }
+                        if (!table.canEncode(c)) {
+                            throw new IllegalArgumentException("No morse encoding for the character "
+                                    + c + " at offset " + charCount + " can be found in the current character set!");
+                        }
+                        for (ElementType type : table.getElements(c)) {
+                            writer.write(type);
+                        }
+                        needsGap = true;
+                    }
+                    charCount++;
+                }
+                chars.clear();
+                if (result.isUnderflow()) {
+                    break;
+                }
+            }
+            // an incomplete multi-byte sequence at the end of the window is left
+            // unconsumed by the decoder and is decoded again from the next window
+            position += window.position();
+        } while (position < size);
+        if (needsGap) {
+            writer.write(ElementType.WORD_GAP);
+        }
+        return charCount;
+    }
+
+    private static interface ElementWriter {
+        void write(ElementType type) throws IOException;
+        void finish() throws IOException;
+    }
+
+    private static final class PackedWriter implements ElementWriter {
+        private final MappedOutput out;
+        private long count;
+        private int current;
+
+        PackedWriter(MappedOutput out) throws IOException {
+            this.out = out;
+            for (int i = 0; i < 8; i++) {
+                out.put((byte) 0); // placeholder for the count
+            }
+        }
+
+        @Override
+        public void write(ElementType type) throws IOException {
+            int code = PackedElements.codeOf(type);
+            if (code < 0) {
+                return;
+            }
+            current = (current << 2) | code;
+            count++;
+            if ((count & 3) == 0) {
+                out.put((byte) current);
+                current = 0;
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            int pending = (int) (count & 3);
+            if (pending != 0) {
+                out.put((byte) (current << (2 * (4 - pending))));
+            }
+            out.putLongAt(0, count);
+        }
+    }
+
+    private static final class NotationWriter implements ElementWriter {
+        private final MappedOutput out;
+        private boolean started;
+        private boolean pendingLetterGap;
+        private int pendingWordGaps;
+
+        NotationWriter(MappedOutput out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(ElementType type) throws IOException {
+            switch (type) {
+                case DOT:
+                case DASH:
+                    if (pendingWordGaps > 0) {
+                        for (int i = 0; i < pendingWordGaps; i++) {
+                            out.put((byte) ' ');
+                            out.put((byte) '/');
+                        }
+                        out.put((byte) ' ');
+                    } else if (pendingLetterGap) {
+                        out.put((byte) ' ');
+                    }
+                    pendingWordGaps = 0;
+                    pendingLetterGap = false;
+                    started = true;
+                    out.put(type == ElementType.DOT ? (byte) '.' : (byte) '-');
+                    break;
+                case LETTER_GAP:
+                    pendingLetterGap = started;
+                    break;
+                case WORD_GAP:
+                    if (started) {
+                        pendingWordGaps++;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.put((byte) '\n');
+        }
+    }
+
+    private static final class MappedOutput {
+        private final FileChannel channel;
+        private final int windowSize;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        MappedOutput(FileChannel channel, int windowSize) throws IOException {
+            this.channel = channel;
+            this.windowSize = windowSize;
+            this.window = channel.map(FileChannel.MapMode.READ_WRITE, 0, windowSize);
+        }
+
+        void put(byte b) throws IOException {
+            if (!window.hasRemaining()) {
+                window.force();
+                windowStart += window.capacity();
+                window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, windowSize);
+            }
+            window.put(b);
+        }
+
+        void putLongAt(long position, long value) throws IOException {
+            if (position >= windowStart) {
+                window.putLong((int) (position - windowStart), value);
+            } else {
+                ByteBuffer b = ByteBuffer.allocate(8);
+                b.putLong(0, value);
+                channel.write(b, position);
+            }
+        }
+
+        void close() throws IOException {
+            long end = windowStart + window.position();
+            window.force();
+            window = null;
+            channel.truncate(end);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.fileformats;
+
+/**
+ * The layout of a Morse container file. A container stores one encoded message
+ * together with the parameters needed to play it and an index allowing playback
+ * and decoding to start part-way through. All numbers are big-endian.
+ * <ol>
+ * <li>Header: the magic number {@link #MAGIC}, the format version as a 16-bit
+ * integer, the name of the Morse standard in modified UTF-8 as written by
+ * <code>DataOutput.writeUTF</code>, the duration in nanoseconds of each
+ * element type as 64-bit integers in the order of <code>ElementType.values()</code>,
+ * and the index interval as a 32-bit integer.</li>
+ * <li>Body: element codes packed four to a byte as described in {@link PackedElements}.</li>
+ * <li>Index: one entry for every index-interval characters, each giving the
+ * character offset and the offset of the first element code belonging to
+ * that character (including any gap that precedes it) as 64-bit integers.</li>
+ * <li>Trailer of {@link #TRAILER_LENGTH} bytes: the number of index entries, the
+ * number of characters, and the number of element codes as 64-bit integers,
+ * the file position of the index as a 64-bit integer, and the magic number
+ * {@link #END_MAGIC}.</li>
+ * </ol>
+ * Because the index is placed after the body, a container can be written in a
+ * single streaming pass. Since each indexed position is a character boundary,
+ * the codes between two consecutive index entries can be decoded independently
+ * of the rest of the file.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class MorseContainer {
+
+    /**
+     * The magic number at the start of every container.
+     * @since 1.1
+     */
+    public static final int MAGIC = 0x4A4D4346; // "JMCF"
+    /**
+     * The magic number at the end of every completely written container.
+     * @since 1.1
+     */
+    public static final int END_MAGIC = 0x4A4D4345; // "JMCE"
+    /**
+     * The version of the layout written by this library.
+     * @since 1.1
+     */
+    public static final short VERSION = 1;
+    /**
+     * The length in bytes of the trailer at the end of every container.
+     * @since 1.1
+     */
+    public static final int TRAILER_LENGTH = 4 * 8 + 4;
+
+    private MorseContainer() {}
+}
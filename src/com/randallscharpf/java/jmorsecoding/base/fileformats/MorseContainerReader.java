@@ -0,0 +1,394 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.fileformats;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.Element;
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.morseunits.PlayableMorseUnit;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Delayer;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
+import com.randallscharpf.java.jmorsecoding.base.standards.BuiltinMorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.timings.MorseTiming;
+import com.randallscharpf.java.jmorsecoding.base.timings.TimingSnapshot;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a message stored in the {@link MorseContainer} format. Only the header,
+ * index, and trailer are read when the reader is created; the element codes are
+ * streamed from the file whenever a playable unit obtained from the reader is
+ * played, using a small fixed-size buffer per playback.
+ * <br>
+ * The message is divided into segments at the indexed character positions. Each
+ * segment can be played or decoded independently, so a message can be resumed
+ * part-way through without reading the codes before it, and the segments of a
+ * large message can be decoded in parallel. All reads use absolute file positions,
+ * so playable units and decoding methods of a single reader may be used by several
+ * threads at once.
+ * @version 1.1
+ * @since 1.1
+ */
+public class MorseContainerReader implements Closeable {
+
+    private static final int MAX_HEADER_LENGTH = 4 + 2 + 2 + 65535 + 8 * 5 + 4;
+    private static final Element[] ELEMENTS;
+    static {
+        ElementType[] types = ElementType.values();
+        ELEMENTS = new Element[types.length];
+        for (int i = 0; i < types.length; i++) {
+            ELEMENTS[i] = new Element(types[i]);
+        }
+    }
+
+    private final FileChannel channel;
+    private final String standardName;
+    private final TimingSnapshot timing;
+    private final int indexInterval;
+    private final long bodyStart;
+    private final long[] indexChars;
+    private final long[] indexCodes;
+    private final long characters;
+    private final long codes;
+
+    /**
+     * Creates a reader for a container stored in the given channel. The header,
+     * index, and trailer are read and validated immediately.
+     * @version 1.1
+     * @since 1.1
+     * @param channel a channel positioned anywhere within a complete container
+     * @throws IOException if the channel cannot be read or does not hold a complete container
+     */
+    public MorseContainerReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        ByteBuffer header = read(0, (int) Math.min(size, MAX_HEADER_LENGTH));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(header.array(), 0, header.limit()));
+        try {
+            if (in.readInt() != MorseContainer.MAGIC) {
+                throw new IOException("Not a Morse container: bad magic number.");
+            }
+            short version = in.readShort();
+            if (version != MorseContainer.VERSION) {
+                throw new IOException("Unsupported Morse container version " + version + ".");
+            }
+            standardName = in.readUTF();
+            // durations are stored in the order of ElementType.values()
+            timing = new TimingSnapshot(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong());
+            indexInterval = in.readInt();
+            bodyStart = header.limit() - in.available();
+        } catch (EOFException ex) {
+            throw new IOException("Morse container is truncated.", ex);
+        }
+
+        if (size < bodyStart + MorseContainer.TRAILER_LENGTH) {
+            throw new IOException("Morse container is truncated.");
+        }
+        ByteBuffer trailer = read(size - MorseContainer.TRAILER_LENGTH, MorseContainer.TRAILER_LENGTH);
+        int entries = (int) trailer.getLong();
+        characters = trailer.getLong();
+        codes = trailer.getLong();
+        long indexPosition = trailer.getLong();
+        if (trailer.getInt() != MorseContainer.END_MAGIC
+                || indexPosition + 16L * entries + MorseContainer.TRAILER_LENGTH != size) {
+            throw new IOException("Morse container is truncated or was not finished.");
+        }
+        ByteBuffer index = read(indexPosition, 16 * entries);
+        indexChars = new long[entries];
+        indexCodes = new long[entries];
+        for (int i = 0; i < entries; i++) {
+            indexChars[i] = index.getLong();
+            indexCodes[i] = index.getLong();
+        }
+    }
+
+    /**
+     * Opens a container file and creates a reader for it. The file is closed when
+     * the reader is closed.
+     * @version 1.1
+     * @since 1.1
+     * @param path the container file to read
+     * @return a reader for the file
+     * @throws IOException if the file cannot be read or does not hold a complete container
+     */
+    public static MorseContainerReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MorseContainerReader(channel);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(length);
+        while (b.hasRemaining()) {
+            if (channel.read(b, position + b.position()) < 0) {
+                throw new IOException("Morse container is truncated.");
+            }
+        }
+        b.flip();
+        return b;
+    }
+
+    /**
+     * Gives the name under which the standard of the message was recorded.
+     * @version 1.1
+     * @since 1.1
+     * @return the recorded standard name
+     */
+    public String getStandardName() {
+        return standardName;
+    }
+
+    /**
+     * Gives the built-in standard with which the message was recorded, if any.
+     * The timing of the returned standard is not necessarily that with which the
+     * message was recorded; use {@link #getTiming()} for that.
+     * @version 1.1
+     * @since 1.1
+     * @return the built-in standard with the recorded name, or <code>null</code>
+     * if the recorded name is not that of a built-in standard
+     */
+    public BuiltinMorseStandard getBuiltinStandard() {
+        for (BuiltinMorseStandard standard : BuiltinMorseStandard.values()) {
+            if (standard.name().equals(standardName)) {
+                return standard;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gives the timing with which the message was recorded. The returned timing
+     * is immutable.
+     * @version 1.1
+     * @since 1.1
+     * @return a timing with the element durations stored in the container
+     */
+    public MorseTiming getTiming() {
+        return timing;
+    }
+
+    /**
+     * Gives the number of character positions in the message.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of characters that were appended when writing
+     */
+    public long getCharacterCount() {
+        return characters;
+    }
+
+    /**
+     * Gives the number of element codes stored. Element gaps are implied and are
+     * not counted.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of stored dots, dashes, letter gaps, and word gaps
+     */
+    public long getStoredElementCount() {
+        return codes;
+    }
+
+    /**
+     * Gives the number of characters between consecutive index entries.
+     * @version 1.1
+     * @since 1.1
+     * @return the index interval recorded in the header
+     */
+    public int getIndexInterval() {
+        return indexInterval;
+    }
+
+    /**
+     * Gives the number of independently playable segments in the message.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of index entries
+     */
+    public int getSegmentCount() {
+        return indexChars.length;
+    }
+
+    /**
+     * Gives the character offset at which a segment starts.
+     * @version 1.1
+     * @since 1.1
+     * @param segment the index of the segment
+     * @return the offset of the first character of the segment
+     */
+    public long getSegmentStart(int segment) {
+        return indexChars[segment];
+    }
+
+    /**
+     * Gives the segment containing a character.
+     * @version 1.1
+     * @since 1.1
+     * @param characterOffset the offset of a character in the message
+     * @return the index of the last segment starting at or before the character
+     */
+    public int getSegmentForCharacter(long characterOffset) {
+        if (characterOffset < 0 || characterOffset >= Math.max(characters, 1)) {
+            throw new IndexOutOfBoundsException("Character offset " + characterOffset + " is not in the message.");
+        }
+        int i = Arrays.binarySearch(indexChars, characterOffset);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    private long segmentEnd(int segment) {
+        return segment + 1 < indexCodes.length ? indexCodes[segment + 1] : codes;
+    }
+
+    /**
+     * Gives a unit that plays the whole message.
+     * @version 1.1
+     * @since 1.1
+     * @return a playable unit streaming all codes of the message
+     */
+    public PlayableMorseUnit getPlayable() {
+        return new CodeRange(0, codes);
+    }
+
+    /**
+     * Gives a unit that plays the message from the start of the segment containing
+     * a character to the end of the message. Playback therefore starts at most
+     * one index interval before the requested character.
+     * @version 1.1
+     * @since 1.1
+     * @param characterOffset the offset of the character from which to play
+     * @return a playable unit streaming the codes from the containing segment onward
+     */
+    public PlayableMorseUnit getPlayableFrom(long characterOffset) {
+        if (indexCodes.length == 0) {
+            return getPlayable();
+        }
+        return new CodeRange(indexCodes[getSegmentForCharacter(characterOffset)], codes);
+    }
+
+    /**
+     * Gives a unit that plays a single segment of the message.
+     * @version 1.1
+     * @since 1.1
+     * @param segment the index of the segment
+     * @return a playable unit streaming the codes of the segment
+     */
+    public PlayableMorseUnit getPlayableForSegment(int segment) {
+        return new CodeRange(indexCodes[segment], segmentEnd(segment));
+    }
+
+    /**
+     * Decodes a single segment into element types, including the implied element
+     * gaps. Different segments may be decoded concurrently.
+     * @version 1.1
+     * @since 1.1
+     * @param segment the index of the segment
+     * @return the element types of the segment, in order of playback
+     * @throws IOException if the file cannot be read
+     */
+    public ElementType[] decodeSegment(int segment) throws IOException {
+        List<ElementType> out = new ArrayList<>();
+        try {
+            new CodeRange(indexCodes[segment], segmentEnd(segment)).forEach(out::add);
+        } catch (IOException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            // adding to a list throws no checked exceptions
+            throw new IllegalStateException(ex);
+        }
+        return out.toArray(new ElementType[0]);
+    }
+
+    /**
+     * Closes the underlying channel.
+     * @version 1.1
+     * @since 1.1
+     * @throws IOException if closing the channel fails
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @FunctionalInterface
+    private static interface ElementAction {
+        void accept(ElementType type) throws Exception;
+    }
+
+    private final class CodeRange implements PlayableMorseUnit {
+        private final long from;
+        private final long to;
+
+        CodeRange(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void play(OnOff stateSetter, Delayer delayer, MorseTiming standard) throws Exception {
+            forEach((type) -> ELEMENTS[type.ordinal()].play(stateSetter, delayer, standard));
+        }
+
+        void forEach(ElementAction action) throws Exception {
+            ByteBuffer b = ByteBuffer.allocate(8192);
+            long bytePosition = bodyStart + from / 4;
+            b.limit(0);
+            boolean lastActive = false;
+            for (long code = from; code < to; code++) {
+                int slot = (int) (code & 3);
+                if (slot == 0 || code == from) {
+                    if (!b.hasRemaining()) {
+                        b.clear();
+                        int n = channel.read(b, bytePosition);
+                        if (n <= 0) {
+                            throw new IOException("Morse container is truncated.");
+                        }
+                        bytePosition += n;
+                        b.flip();
+                    }
+                }
+                ElementType type = PackedElements.typeOf(PackedElements.codeAt(b.get(b.position()), slot));
+                if (slot == 3) {
+                    b.position(b.position() + 1);
+                }
+                if (type.activeDuringPlay && lastActive) {
+                    action.accept(ElementType.ELEMENT_GAP);
+                }
+                action.accept(type);
+                lastActive = type.activeDuringPlay;
+            }
+        }
+    }
+}
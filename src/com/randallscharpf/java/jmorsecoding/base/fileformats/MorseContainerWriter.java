@@ -0,0 +1,332 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.fileformats;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.morseunits.PlayableMorseUnit;
+import com.randallscharpf.java.jmorsecoding.base.standards.BuiltinMorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.standards.MorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolTable;
+import com.randallscharpf.java.jmorsecoding.base.timings.MorseTiming;
+import com.randallscharpf.java.jmorsecoding.base.timings.TimingSnapshot;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes a message into the {@link MorseContainer} format in a single streaming
+ * pass. Text is appended in any number of pieces and is encoded with the symbol
+ * set of the standard given on creation, following the same spacing rules as
+ * {@link com.randallscharpf.java.jmorsecoding.base.symbolsets.MorseSymbolSet#getPlayableForString(String)}
+ * across the whole of the appended text. The timing parameters of the standard
+ * are recorded as they are when the writer is created.
+ * <br>
+ * Memory use is constant apart from the index, which holds one entry for every
+ * index-interval characters. Instances of this class are not safe for use by
+ * multiple threads.
+ * @version 1.1
+ * @since 1.1
+ */
+public class MorseContainerWriter implements Closeable {
+
+    private final WritableByteChannel channel;
+    private final SymbolTable table;
+    private final int indexInterval;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 << 10);
+
+    private long position;
+    private long characters;
+    private long codes;
+    private int pendingByte;
+    private boolean needsGap;
+    private boolean lastActive;
+    private long[] indexChars = new long[64];
+    private long[] indexCodes = new long[64];
+    private int indexSize;
+    private boolean finished;
+
+    /**
+     * Creates a writer for a built-in standard, recording the name of the standard
+     * so that readers can recover its symbol set.
+     * @version 1.1
+     * @since 1.1
+     * @param channel the channel to which to write the container
+     * @param standard the standard with which to encode and time the message
+     * @param indexInterval the number of characters between index entries
+     * @throws IOException if the header cannot be written
+     */
+    public MorseContainerWriter(WritableByteChannel channel, BuiltinMorseStandard standard, int indexInterval)
+            throws IOException {
+        this(channel, standard, standard.name(), indexInterval);
+    }
+
+    /**
+     * Creates a writer for any standard. The standard name is only recorded for
+     * readers to interpret; readers recover a symbol set from it automatically
+     * only if it is the name of a {@link BuiltinMorseStandard}.
+     * @version 1.1
+     * @since 1.1
+     * @param channel the channel to which to write the container
+     * @param standard the standard with which to encode and time the message
+     * @param standardName the name under which to record the standard
+     * @param indexInterval the number of characters between index entries
+     * @throws IOException if the header cannot be written
+     */
+    public MorseContainerWriter(WritableByteChannel channel, MorseStandard standard, String standardName,
+            int indexInterval) throws IOException {
+        if (indexInterval <= 0) {
+            throw new IllegalArgumentException("Index interval must be positive.");
+        }
+        this.channel = channel;
+        this.table = new SymbolTable(standard.getSymbolSpecification());
+        this.indexInterval = indexInterval;
+        writeHeader(standardName, standard.getTimingSpecification());
+    }
+
+    /**
+     * Creates a container file and a writer for it. The file is created or
+     * truncated, and is closed when the writer is closed.
+     * @version 1.1
+     * @since 1.1
+     * @param path the file to write
+     * @param standard the standard with which to encode and time the message
+     * @param indexInterval the number of characters between index entries
+     * @return a writer for the file
+     * @throws IOException if the file cannot be created or the header cannot be written
+     */
+    public static MorseContainerWriter create(Path path, BuiltinMorseStandard standard, int indexInterval)
+            throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            return new MorseContainerWriter(channel, standard, indexInterval);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private void writeHeader(String standardName, MorseTiming timing) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MorseContainer.MAGIC);
+        out.writeShort(MorseContainer.VERSION);
+        out.writeUTF(standardName);
+        TimingSnapshot snapshot = timing.snapshot();
+        for (ElementType type : ElementType.values()) {
+            out.writeLong(snapshot.getNanos(type));
+        }
+        out.writeInt(indexInterval);
+        out.flush();
+        buffer.put(bytes.toByteArray());
+    }
+
+    /**
+     * Encodes and appends text to the message. Each whitespace character becomes
+     * a word gap, and other characters are separated by letter gaps, including
+     * across separate calls to this method.
+     * @version 1.1
+     * @since 1.1
+     * @param text the characters to append
+     * @throws IOException if writing to the channel fails
+     * @throws IllegalArgumentException if the symbol set has no encoding for some
+     * character; the characters before it have already been appended
+     */
+    public void append(CharSequence text) throws IOException {
+        checkOpen();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            // look the character up first so that a failure leaves no trace in the index
+            ElementType[] elements = Character.isWhitespace(c) ? null : table.getElements(c);
+            startCharacter();
+            if (elements == null) {
+                writeElement(ElementType.WORD_GAP);
+                needsGap = false;
+            } else {
+                if (needsGap) {
+                    writeElement(ElementType.LETTER_GAP);
+                }
+                for (ElementType type : elements) {
+                    writeElement(type);
+                }
+                needsGap = true;
+            }
+            characters++;
+        }
+    }
+
+    /**
+     * Appends an arbitrary playable unit, such as a prosign, to the message. The
+     * unit occupies one character position and is separated from preceding
+     * characters as a character would be. Units that end with their own gap, as
+     * prosigns do, are not followed by an additional letter gap.
+     * @version 1.1
+     * @since 1.1
+     * @param unit the unit to append
+     * @throws IOException if writing to the channel fails
+     */
+    public void append(PlayableMorseUnit unit) throws IOException {
+        checkOpen();
+        startCharacter();
+        if (needsGap) {
+            writeElement(ElementType.LETTER_GAP);
+        }
+        ElementType last = null;
+        for (ElementType type : SymbolTable.elementsOf(unit)) {
+            writeElement(type);
+            last = type;
+        }
+        needsGap = last != null && last.activeDuringPlay;
+        characters++;
+    }
+
+    private void startCharacter() {
+        if (characters % indexInterval == 0) {
+            if (indexSize == indexChars.length) {
+                indexChars = Arrays.copyOf(indexChars, indexSize * 2);
+                indexCodes = Arrays.copyOf(indexCodes, indexSize * 2);
+            }
+            indexChars[indexSize] = characters;
+            indexCodes[indexSize] = codes;
+            indexSize++;
+        }
+    }
+
+    private void writeElement(ElementType type) throws IOException {
+        int code = PackedElements.codeOf(type);
+        if (code < 0) {
+            if (!lastActive) {
+                throw new IllegalArgumentException("An element gap must separate two active elements.");
+            }
+            // implied by the next active element
+            return;
+        }
+        lastActive = type.activeDuringPlay;
+        pendingByte = (pendingByte << 2) | code;
+        codes++;
+        if ((codes & 3) == 0) {
+            put((byte) pendingByte);
+            pendingByte = 0;
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put(b);
+    }
+
+    private void putLong(long v) throws IOException {
+        if (buffer.remaining() < 8) {
+            drain();
+        }
+        buffer.putLong(v);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void checkOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Container has already been finished.");
+        }
+    }
+
+    /**
+     * Gives the number of characters appended so far.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of character positions in the message
+     */
+    public long getCharacterCount() {
+        return characters;
+    }
+
+    /**
+     * Completes the message by writing the terminating word gap (if the message
+     * does not already end in one), the index, and the trailer. No more text can
+     * be appended afterwards. The channel is left open. Calling this method more
+     * than once has no further effect.
+     * @version 1.1
+     * @since 1.1
+     * @throws IOException if writing to the channel fails
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (needsGap) {
+            writeElement(ElementType.WORD_GAP);
+            needsGap = false;
+        }
+        int pending = (int) (codes & 3);
+        if (pending != 0) {
+            put((byte) (pendingByte << (2 * (4 - pending))));
+        }
+        drain();
+        long indexPosition = position;
+        for (int i = 0; i < indexSize; i++) {
+            putLong(indexChars[i]);
+            putLong(indexCodes[i]);
+        }
+        putLong(indexSize);
+        putLong(characters);
+        putLong(codes);
+        putLong(indexPosition);
+        if (buffer.remaining() < 4) {
+            drain();
+        }
+        buffer.putInt(MorseContainer.END_MAGIC);
+        drain();
+        finished = true;
+    }
+
+    /**
+     * Finishes the container, as by {@link #finish()}, and closes the channel.
+     * @version 1.1
+     * @since 1.1
+     * @throws IOException if writing to or closing the channel fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.fileformats;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+
+/**
+ * The two-bit encoding of element types used by the file formats in this package.
+ * Dots, dashes, letter gaps, and word gaps each have a code; element gaps have
+ * none, because an element gap occurs exactly between two consecutive elements
+ * that are played in the "on" state and can therefore be restored on decoding.
+ * Codes are packed four to a byte, starting from the most significant bits.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class PackedElements {
+
+    /**
+     * The code for {@link ElementType#DOT}.
+     * @since 1.1
+     */
+    public static final int DOT = 0;
+    /**
+     * The code for {@link ElementType#DASH}.
+     * @since 1.1
+     */
+    public static final int DASH = 1;
+    /**
+     * The code for {@link ElementType#LETTER_GAP}.
+     * @since 1.1
+     */
+    public static final int LETTER_GAP = 2;
+    /**
+     * The code for {@link ElementType#WORD_GAP}.
+     * @since 1.1
+     */
+    public static final int WORD_GAP = 3;
+
+    private static final ElementType[] TYPES = {
+        ElementType.DOT, ElementType.DASH, ElementType.LETTER_GAP, ElementType.WORD_GAP
+    };
+
+    private PackedElements() {}
+
+    /**
+     * Gives the two-bit code for an element type.
+     * @version 1.1
+     * @since 1.1
+     * @param type the element type to encode
+     * @return the code for the type, or -1 if the type is an element gap and is
+     * therefore not stored
+     */
+    public static int codeOf(ElementType type) {
+        switch (type) {
+            case DOT:
+                return DOT;
+            case DASH:
+                return DASH;
+            case LETTER_GAP:
+                return LETTER_GAP;
+            case WORD_GAP:
+                return WORD_GAP;
+            case ELEMENT_GAP:
+                return -1;
+            default:
+                throw new UnsupportedOperationException("Not implemented for element type " + type);
+        }
+    }
+
+    /**
+     * Gives the element type for a two-bit code.
+     * @version 1.1
+     * @since 1.1
+     * @param code a code in the range 0 to 3, inclusive
+     * @return the element type with the code
+     */
+    public static ElementType typeOf(int code) {
+        return TYPES[code & 3];
+    }
+
+    /**
+     * Extracts one code from a packed byte.
+     * @version 1.1
+     * @since 1.1
+     * @param packed a byte holding four codes
+     * @param slot the position of the code within the byte, from 0 (most significant) to 3
+     * @return the code at the position
+     */
+    public static int codeAt(byte packed, int slot) {
+        return (packed >> (6 - 2 * slot)) & 3;
+    }
+}
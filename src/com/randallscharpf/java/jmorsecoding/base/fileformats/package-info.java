@@ -0,0 +1,7 @@
+/**
+ * Compact storage of Morse Code outside of memory. Provides encodings of element
+ * sequences for files and tools for converting large inputs into them without
+ * holding the whole input on the heap.
+ * @since 1.1
+ */
+package com.randallscharpf.java.jmorsecoding.base.fileformats;
@@ -0,0 +1,355 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.management;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A kind of event recorded by Java Flight Recorder, such as the compilation of a
+ * message or a stall of an audio line. Every event is named in the namespace
+ * {@link #NAMESPACE}, is listed under the category <code>jMorseCoding</code>,
+ * and is recorded without a stack trace.
+ * <br>
+ * The Flight Recorder interface is found when this class is loaded rather than
+ * when the library is compiled, so that the library still runs on virtual
+ * machines without it, such as most releases of Java 8. On those, events are
+ * never recorded. Otherwise, checking whether an event is being recorded costs
+ * one call to the recorder and no allocation, so recording points may be left in
+ * code that runs for every element. Instances of this class are safe for use by
+ * multiple threads.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class FlightEventType {
+
+    /**
+     * The prefix of the names of all events recorded by this library.
+     * @since 1.1
+     */
+    public static final String NAMESPACE = "com.randallscharpf.java.jmorsecoding.";
+
+    private static final MethodHandle CREATE_FACTORY;
+    private static final MethodHandle GET_EVENT_TYPE;
+    private static final MethodHandle NEW_EVENT;
+    private static final MethodHandle TYPE_ENABLED;
+    private static final MethodHandle SET;
+    private static final MethodHandle BEGIN;
+    private static final MethodHandle END;
+    private static final MethodHandle SHOULD_COMMIT;
+    private static final MethodHandle COMMIT;
+    private static final MethodHandle NEW_ANNOTATION;
+    private static final MethodHandle NEW_FIELD;
+    private static final Class<? extends Annotation>[] ANNOTATIONS;
+    private static final int NAME = 0, LABEL = 1, DESCRIPTION = 2, CATEGORY = 3, ENABLED = 4, STACK_TRACE = 5,
+            TIMESPAN = 6;
+
+    static {
+        MethodHandle[] handles = new MethodHandle[11];
+        Class<? extends Annotation>[] annotations = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+            Class<?> event = Class.forName("jdk.jfr.Event");
+            Class<?> type = Class.forName("jdk.jfr.EventType");
+            Class<?> annotation = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> field = Class.forName("jdk.jfr.ValueDescriptor");
+            MethodType objectToBoolean = MethodType.methodType(boolean.class, Object.class);
+            MethodType objectToVoid = MethodType.methodType(void.class, Object.class);
+            handles[0] = lookup.findStatic(factory, "create", MethodType.methodType(factory, List.class, List.class))
+                    .asType(MethodType.methodType(Object.class, List.class, List.class));
+            handles[1] = lookup.findVirtual(factory, "getEventType", MethodType.methodType(type))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            handles[2] = lookup.findVirtual(factory, "newEvent", MethodType.methodType(event))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            handles[3] = lookup.findVirtual(type, "isEnabled", MethodType.methodType(boolean.class))
+                    .asType(objectToBoolean);
+            handles[4] = lookup.findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class))
+                    .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+            handles[5] = lookup.findVirtual(event, "begin", MethodType.methodType(void.class)).asType(objectToVoid);
+            handles[6] = lookup.findVirtual(event, "end", MethodType.methodType(void.class)).asType(objectToVoid);
+            handles[7] = lookup.findVirtual(event, "shouldCommit", MethodType.methodType(boolean.class))
+                    .asType(objectToBoolean);
+            handles[8] = lookup.findVirtual(event, "commit", MethodType.methodType(void.class)).asType(objectToVoid);
+            handles[9] = lookup.findConstructor(annotation,
+                    MethodType.methodType(void.class, Class.class, Object.class))
+                    .asType(MethodType.methodType(Object.class, Class.class, Object.class));
+            handles[10] = lookup.findConstructor(field,
+                    MethodType.methodType(void.class, Class.class, String.class, List.class))
+                    .asType(MethodType.methodType(Object.class, Class.class, String.class, List.class));
+            String[] names = {"Name", "Label", "Description", "Category", "Enabled", "StackTrace", "Timespan"};
+            @SuppressWarnings("unchecked")
+            Class<? extends Annotation>[] found = (Class<? extends Annotation>[]) new Class<?>[names.length];
+            for (int i = 0; i < names.length; i++) {
+                found[i] = Class.forName("jdk.jfr." + names[i]).asSubclass(Annotation.class);
+            }
+            annotations = found;
+        } catch (ReflectiveOperationException | LinkageError | SecurityException ex) {
+            // this virtual machine has no Flight Recorder, so nothing will be recorded
+            Arrays.fill(handles, null);
+        }
+        CREATE_FACTORY = handles[0];
+        GET_EVENT_TYPE = handles[1];
+        NEW_EVENT = handles[2];
+        TYPE_ENABLED = handles[3];
+        SET = handles[4];
+        BEGIN = handles[5];
+        END = handles[6];
+        SHOULD_COMMIT = handles[7];
+        COMMIT = handles[8];
+        NEW_ANNOTATION = handles[9];
+        NEW_FIELD = handles[10];
+        ANNOTATIONS = annotations;
+    }
+
+    private final String name;
+    private final Object factory;
+    private final Object eventType;
+
+    private FlightEventType(String name, Object factory, Object eventType) {
+        this.name = name;
+        this.factory = factory;
+        this.eventType = eventType;
+    }
+
+    /**
+     * Tells whether this virtual machine has a Flight Recorder through which
+     * events can be recorded.
+     * @version 1.1
+     * @since 1.1
+     * @return true if and only if events of any type can be recorded
+     */
+    public static boolean isAvailable() {
+        return ANNOTATIONS != null;
+    }
+
+    /**
+     * Defines and registers a type of event. The fields of each event are given
+     * their values in the order in which they are listed here. If no Flight
+     * Recorder is available, the returned type never records anything.
+     * @version 1.1
+     * @since 1.1
+     * @param name the name of the event, without the namespace
+     * @param label the human-readable name of the event
+     * @param description a sentence describing what the event records
+     * @param category the subcategory of <code>jMorseCoding</code> under which the event is listed
+     * @param enabledByDefault false if the event is so frequent that it is only
+     * recorded if the recording settings ask for it
+     * @param fields the values that each event carries
+     * @return the type, ready for recording
+     */
+    public static FlightEventType define(String name, String label, String description, String category,
+            boolean enabledByDefault, Field... fields) {
+        if (!isAvailable()) {
+            return new FlightEventType(NAMESPACE + name, null, null);
+        }
+        try {
+            List<Object> annotations = new ArrayList<>();
+            annotations.add(annotation(NAME, NAMESPACE + name));
+            annotations.add(annotation(LABEL, label));
+            annotations.add(annotation(DESCRIPTION, description));
+            annotations.add(annotation(CATEGORY, new String[]{"jMorseCoding", category}));
+            annotations.add(annotation(ENABLED, enabledByDefault));
+            annotations.add(annotation(STACK_TRACE, false));
+            List<Object> descriptors = new ArrayList<>();
+            for (Field field : fields) {
+                List<Object> fieldAnnotations = new ArrayList<>();
+                fieldAnnotations.add(annotation(LABEL, field.label));
+                if (field.timespan) {
+                    fieldAnnotations.add(annotation(TIMESPAN, "NANOSECONDS"));
+                }
+                descriptors.add((Object) NEW_FIELD.invokeExact((Class<?>) field.type, field.name,
+                        (List<?>) fieldAnnotations));
+            }
+            Object factory = (Object) CREATE_FACTORY.invokeExact((List<?>) annotations, (List<?>) descriptors);
+            return new FlightEventType(NAMESPACE + name, factory, (Object) GET_EVENT_TYPE.invokeExact(factory));
+        } catch (Throwable ex) {
+            throw propagate(ex);
+        }
+    }
+
+    private static Object annotation(int type, Object value) throws Throwable {
+        return (Object) NEW_ANNOTATION.invokeExact((Class<?>) ANNOTATIONS[type], value);
+    }
+
+    private static RuntimeException propagate(Throwable ex) {
+        if (ex instanceof RuntimeException) {
+            return (RuntimeException) ex;
+        }
+        if (ex instanceof Error) {
+            throw (Error) ex;
+        }
+        return new UndeclaredThrowableException(ex);
+    }
+
+    /**
+     * Gives the full name of this type, under which recordings list its events.
+     * @version 1.1
+     * @since 1.1
+     * @return the name of the event, including the namespace
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Tells whether any running recording is recording events of this type.
+     * @version 1.1
+     * @since 1.1
+     * @return true if and only if events of this type are being recorded
+     */
+    public boolean isEnabled() {
+        if (eventType == null) {
+            return false;
+        }
+        try {
+            return (boolean) TYPE_ENABLED.invokeExact(eventType);
+        } catch (Throwable ex) {
+            throw propagate(ex);
+        }
+    }
+
+    /**
+     * Starts timing an event that lasts for some time, if events of this type
+     * are being recorded.
+     * @version 1.1
+     * @since 1.1
+     * @return the opaque event, to be passed to {@link #commit(Object, Object...)}
+     * when it ends, or null if it is not being recorded
+     */
+    public Object begin() {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            Object event = (Object) NEW_EVENT.invokeExact(factory);
+            BEGIN.invokeExact(event);
+            return event;
+        } catch (Throwable ex) {
+            throw propagate(ex);
+        }
+    }
+
+    /**
+     * Ends an event started by {@link #begin()} and records it with the given
+     * values of its fields, unless it is shorter than the threshold set for this
+     * type by the recording. Callers should check that the event is not null
+     * before collecting its values.
+     * @version 1.1
+     * @since 1.1
+     * @param event the event given by {@link #begin()}, or null to do nothing
+     * @param values the value of each field, in order of definition
+     */
+    public void commit(Object event, Object... values) {
+        if (event == null) {
+            return;
+        }
+        try {
+            for (int i = 0; i < values.length; i++) {
+                SET.invokeExact(event, i, values[i]);
+            }
+            END.invokeExact(event);
+            if ((boolean) SHOULD_COMMIT.invokeExact(event)) {
+                COMMIT.invokeExact(event);
+            }
+        } catch (Throwable ex) {
+            throw propagate(ex);
+        }
+    }
+
+    /**
+     * Records an instantaneous event with the given values of its fields, if
+     * events of this type are being recorded. Callers should check
+     * {@link #isEnabled()} before collecting the values.
+     * @version 1.1
+     * @since 1.1
+     * @param values the value of each field, in order of definition
+     */
+    public void emit(Object... values) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            Object event = (Object) NEW_EVENT.invokeExact(factory);
+            for (int i = 0; i < values.length; i++) {
+                SET.invokeExact(event, i, values[i]);
+            }
+            COMMIT.invokeExact(event);
+        } catch (Throwable ex) {
+            throw propagate(ex);
+        }
+    }
+
+    /**
+     * A value carried by every event of a type.
+     * @version 1.1
+     * @since 1.1
+     */
+    public static final class Field {
+
+        private final Class<?> type;
+        private final String name;
+        private final String label;
+        private final boolean timespan;
+
+        private Field(Class<?> type, String name, String label, boolean timespan) {
+            this.type = type;
+            this.name = name;
+            this.label = label;
+            this.timespan = timespan;
+        }
+
+        /**
+         * Describes a field holding a number, a truth value or a string.
+         * @version 1.1
+         * @since 1.1
+         * @param type a primitive type or <code>String.class</code>
+         * @param name the name of the field, which must be a Java identifier
+         * @param label the human-readable name of the field
+         * @return the description of the field
+         */
+        public static Field of(Class<?> type, String name, String label) {
+            return new Field(type, name, label, false);
+        }
+
+        /**
+         * Describes a field holding a length of time as a <code>long</code>
+         * count of nanoseconds, which recordings display as a duration.
+         * @version 1.1
+         * @since 1.1
+         * @param name the name of the field, which must be a Java identifier
+         * @param label the human-readable name of the field
+         * @return the description of the field
+         */
+        public static Field timespan(String name, String label) {
+            return new Field(long.class, name, label, true);
+        }
+    }
+}
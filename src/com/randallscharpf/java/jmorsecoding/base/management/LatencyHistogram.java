@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.management;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations that can be recorded from any number of threads at
+ * once. Every bucket is a striped counter, so recording never blocks and never
+ * allocates once the counters have warmed up, even when many threads record at
+ * the same time.
+ * <br>
+ * Durations are grouped into four buckets for each power of two nanoseconds, so
+ * a percentile is given as the upper bound of its bucket, which is at most 25%
+ * above the true value. The greatest duration is kept exactly. Reading the
+ * histogram while it is being recorded to gives counts that may miss the most
+ * recent recordings.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class LatencyHistogram {
+
+    // four buckets each for exponents 2 to 62, after one bucket each for 0 to 3
+    private static final int BUCKETS = 4 + 61 * 4;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Creates an empty histogram.
+     * @version 1.1
+     * @since 1.1
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    private static int bucketOf(long nanos) {
+        if (nanos < 4) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - 2)) & 3;
+        return (exponent - 1) * 4 + sub;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int exponent = bucket / 4 + 1;
+        int sub = bucket % 4;
+        return ((4L + sub + 1) << (exponent - 2)) - 1;
+    }
+
+    /**
+     * Adds a duration to the histogram. Negative durations, such as those of
+     * events that happened early, are recorded as zero.
+     * @version 1.1
+     * @since 1.1
+     * @param nanos the duration to record, in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[bucketOf(nanos)].increment();
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Gives the number of durations recorded.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of recordings since creation or the last reset
+     */
+    public long getCount() {
+        long total = 0;
+        for (LongAdder count : counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Gives the duration below which a fraction of the recorded durations lie.
+     * @version 1.1
+     * @since 1.1
+     * @param fraction the fraction of durations, from 0 to 1, such as 0.99 for the
+     * 99th percentile
+     * @return the upper bound of the bucket holding the percentile, but no more
+     * than the greatest duration, in nanoseconds, or 0 if nothing has been recorded
+     * @throws IllegalArgumentException if the fraction is not between 0 and 1
+     */
+    public long getPercentile(double fraction) {
+        if (!(fraction >= 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("Fraction must be between 0 and 1.");
+        }
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts[i].sum();
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Gives the greatest duration recorded.
+     * @version 1.1
+     * @since 1.1
+     * @return the greatest duration in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Discards all recorded durations. Recordings made during the reset may or
+     * may not be discarded.
+     * @version 1.1
+     * @since 1.1
+     */
+    public void reset() {
+        for (LongAdder count : counts) {
+            count.reset();
+        }
+        max.reset();
+    }
+}
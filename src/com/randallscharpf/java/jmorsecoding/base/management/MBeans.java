@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.management;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Registers the management interfaces of this library with the platform MBean
+ * server, where tools such as JConsole and VisualVM can read them. Every bean is
+ * named in the domain {@link #DOMAIN} with its type and a name chosen by the caller,
+ * which is quoted so that it may hold any characters, for example
+ * <code>com.randallscharpf.java.jmorsecoding:type=MorsePlayer,name="alerts"</code>.
+ * <br>
+ * The server keeps a registered object reachable, so beans should be
+ * unregistered once the object they describe is no longer in use.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class MBeans {
+
+    /**
+     * The domain of the names of all beans registered by this library.
+     * @since 1.1
+     */
+    public static final String DOMAIN = "com.randallscharpf.java.jmorsecoding";
+
+    private MBeans() {}
+
+    /**
+     * Registers an object as an MXBean, so that its attributes are given to
+     * clients as standard types.
+     * @version 1.1
+     * @since 1.1
+     * @param <T> the management interface
+     * @param bean the object giving the attributes
+     * @param type the management interface implemented by the object
+     * @param typeName the type under which to name the bean, which must be a valid unquoted value
+     * @param name the name distinguishing the bean from others of its type
+     * @return the name under which the bean was registered
+     * @throws JMException if the name is malformed or already registered
+     */
+    public static <T> ObjectName register(T bean, Class<T> type, String typeName, String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        // the type is one of the fixed identifiers of this library, but the name may hold any characters
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=" + typeName + ",name=" + ObjectName.quote(name));
+        server.registerMBean(new StandardMBean(bean, type, true), objectName);
+        return objectName;
+    }
+
+    /**
+     * Removes a bean from the platform MBean server. Nothing is done if no bean
+     * is registered under the name.
+     * @version 1.1
+     * @since 1.1
+     * @param name the name under which the bean was registered
+     * @throws JMException if the server refuses to remove the bean
+     */
+    public static void unregister(ObjectName name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+    }
+}
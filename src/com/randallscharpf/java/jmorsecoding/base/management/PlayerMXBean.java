@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.management;
+
+/**
+ * The management interface of a
+ * {@link com.randallscharpf.java.jmorsecoding.base.MorsePlayer}. Element
+ * lateness is the time by which each wait between two state changes overran
+ * what was asked of the delayer; it is measured only for outputs that play in
+ * real time through the player's latency compensator.
+ * @version 1.1
+ * @since 1.1
+ */
+public interface PlayerMXBean {
+    /**
+     * Gives the number of messages, prosigns and timelines played to the end.
+     * Parts of messages played with <code>playCharacters</code> and single
+     * symbols are not counted.
+     * @since 1.1
+     * @return the count of messages played
+     */
+    public long getMessagesSent();
+
+    /**
+     * Gives the number of characters played, including those of partly played
+     * messages and single symbols.
+     * @since 1.1
+     * @return the count of characters played
+     */
+    public long getCharactersSent();
+
+    /**
+     * Gives the speed of the current timing, as the number of times per minute
+     * that the word "PARIS", with its word gap, could be played.
+     * @since 1.1
+     * @return the effective words per minute
+     */
+    public double getEffectiveWpm();
+
+    /**
+     * Gives the number of waits whose lateness has been measured.
+     * @since 1.1
+     * @return the count of lateness measurements
+     */
+    public long getElementCount();
+
+    /**
+     * Gives the median element lateness.
+     * @since 1.1
+     * @return the 50th percentile of lateness, in microseconds
+     */
+    public double getLatenessP50Micros();
+
+    /**
+     * Gives the 90th percentile of element lateness.
+     * @since 1.1
+     * @return the 90th percentile of lateness, in microseconds
+     */
+    public double getLatenessP90Micros();
+
+    /**
+     * Gives the 99th percentile of element lateness.
+     * @since 1.1
+     * @return the 99th percentile of lateness, in microseconds
+     */
+    public double getLatenessP99Micros();
+
+    /**
+     * Gives the greatest element lateness.
+     * @since 1.1
+     * @return the greatest lateness, in microseconds
+     */
+    public double getLatenessMaxMicros();
+
+    /**
+     * Gives the average time taken by the state setter to act.
+     * @since 1.1
+     * @return the running average latency of the state setter, in microseconds
+     */
+    public double getStateSetterLatencyMicros();
+
+    /**
+     * Discards the lateness measurements, leaving the counts of messages and
+     * characters.
+     * @since 1.1
+     */
+    public void resetLateness();
+}
@@ -0,0 +1,55 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.management;
+
+/**
+ * The management interface of a
+ * {@link com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolSetBase}.
+ * @version 1.1
+ * @since 1.1
+ */
+public interface SymbolSetMXBean {
+    /**
+     * Gives the number of times a lookup index of the symbol set has been built.
+     * Each of the three indexes, for prosign names, prosigns and characters, is
+     * built on first use and again whenever the linked enumeration changes.
+     * @since 1.1
+     * @return the count of index builds
+     */
+    public long getIndexBuilds();
+
+    /**
+     * Gives the number of lookups answered from an index that was already built.
+     * @since 1.1
+     * @return the count of cache hits
+     */
+    public long getCacheHits();
+
+    /**
+     * Gives the number of symbols in the linked enumeration.
+     * @since 1.1
+     * @return the count of characters and prosigns in the set
+     */
+    public int getSymbolCount();
+}
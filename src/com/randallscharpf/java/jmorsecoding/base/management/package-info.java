@@ -0,0 +1,10 @@
+/**
+ * Monitoring of running players through JMX and Java Flight Recorder. Provides
+ * the management interfaces through which players, symbol sets and audio outputs
+ * publish their counters, a helper for registering them with the platform MBean
+ * server, a histogram for latency measurements that can be recorded from many
+ * threads at once without contention, and the types of the events that the
+ * library records for profiling.
+ * @since 1.1
+ */
+package com.randallscharpf.java.jmorsecoding.base.management;
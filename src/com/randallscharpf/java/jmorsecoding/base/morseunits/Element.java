@@ -47,6 +47,16 @@ public class Element implements PlayableMorseUnit {
         this.type = type;
     }
 
+    /**
+     * Gives the type of this element.
+     * @version 1.1
+     * @since 1.1
+     * @return the type with which this element was created
+     */
+    public ElementType getType() {
+        return type;
+    }
+
     /**
      * {@inheritDoc}
      * @version 1.0
@@ -0,0 +1,604 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.pipeline;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Openable;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.TimelineSink;
+import com.randallscharpf.java.jmorsecoding.base.standards.MorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolTable;
+import com.randallscharpf.java.jmorsecoding.base.timings.TimingSnapshot;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Plays messages through a chain of stages, each running on its own thread:
+ * <ol>
+ * <li>normalise: splits the text into chunks, preferably at whitespace, and
+ * brings each chunk into Unicode normalization form NFKC, so that, for example,
+ * full-width letters are encoded as the letters they stand for;</li>
+ * <li>encode: looks up the elements of every character, spacing the characters
+ * as in {@link com.randallscharpf.java.jmorsecoding.base.symbolsets.MorseSymbolSet#getPlayableForString(String)}
+ * across the whole message;</li>
+ * <li>compile: gives every element its state and duration, using the timing of
+ * the standard as it is when the first chunk of the message is compiled;</li>
+ * <li>render: turns the transitions into PCM audio, if the pipeline was created
+ * with a {@link PcmRenderer};</li>
+ * <li>output: hands the transitions to a {@link TimelineSink} or the audio to a
+ * {@link PcmOutput}.</li>
+ * </ol>
+ * The stages pass chunks to one another through bounded lock-free queues. A
+ * stage that finds the queue after it full waits for room, so a slow output
+ * holds back the earlier stages instead of letting work pile up, and while a
+ * long message is being output the rest of it is being encoded and compiled.
+ * The counters and queue depth of every stage are given by {@link #getStats(int)}.
+ * <br>
+ * Messages are played one after another in the order of submission, with no
+ * added gap between them. Once a symbol table or output is given to a pipeline,
+ * it must not be used by any other code while the pipeline is open.
+ * @version 1.1
+ * @since 1.1
+ */
+public class MessagePipeline implements Openable {
+
+    private static final ElementType[] TYPES = ElementType.values();
+    // a transition that turns the output off without taking any time
+    private static final boolean[] OFF_STATES = {false};
+    private static final long[] OFF_NANOS = {0};
+
+    private static final class Message {
+        private final String text;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        private Message(String text) {
+            this.text = text;
+        }
+    }
+
+    // a piece of a message, filled in by each stage in turn
+    private static final class Chunk {
+        private final Message message;
+        private final boolean first;
+        private final boolean last;
+        private String text;
+        private ElementType[] elements;
+        private int count;
+        private boolean[] states;
+        private long[] nanos;
+        private byte[] pcm;
+        // set by the stage that failed on this chunk or an earlier chunk of the message, after which the chunk is
+        // passed on without being processed
+        private Exception failure;
+
+        private Chunk(Message message, boolean first, boolean last, String text) {
+            this.message = message;
+            this.first = first;
+            this.last = last;
+            this.text = text;
+        }
+    }
+
+    private abstract class Stage<I> implements Runnable {
+        private final String name;
+        private final StageQueue<I> in;
+        private final StageQueue<Chunk> out;
+        private Thread thread;
+
+        // written only by the thread of the stage
+        private volatile long items;
+        private volatile long units;
+        private volatile long busyNanos;
+        private long blockedNanos;
+        // the message on which this stage last failed, and the failure, for as long as chunks of it may follow
+        private Message failedMessage;
+        private Exception failure;
+
+        private Stage(String name, StageQueue<I> in, StageQueue<Chunk> out) {
+            this.name = name;
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            I item;
+            while ((item = in.take(running)) != null) {
+                long start = System.nanoTime();
+                blockedNanos = 0;
+                boolean passed = process(item);
+                busyNanos += System.nanoTime() - start - blockedNanos;
+                if (!passed) {
+                    return;
+                }
+            }
+        }
+
+        // processes an item and passes on the resulting chunks, returning false if the pipeline stopped meanwhile
+        abstract boolean process(I item);
+
+        final void count(long processed) {
+            items++;
+            units += processed;
+        }
+
+        final boolean emit(Chunk chunk) {
+            long start = System.nanoTime();
+            boolean passed = out.put(chunk, running);
+            blockedNanos += System.nanoTime() - start;
+            return passed;
+        }
+
+        // runs one step on a chunk unless a step on this chunk or an earlier one of its message has failed
+        final void attempt(Chunk chunk, Step step) {
+            if (chunk.failure == null && chunk.message == failedMessage) {
+                chunk.failure = failure;
+            }
+            if (chunk.failure == null) {
+                try {
+                    step.run(chunk);
+                } catch (Exception ex) {
+                    chunk.failure = ex;
+                    failedMessage = chunk.message;
+                    failure = ex;
+                }
+            }
+            if (chunk.last && chunk.message == failedMessage) {
+                failedMessage = null;
+                failure = null;
+            }
+        }
+
+        // runs a step that cleans up after a failed message, keeping any further failure with the original one
+        final void settle(Chunk chunk, Step step) {
+            try {
+                step.run(chunk);
+            } catch (Exception ex) {
+                if (ex != chunk.failure) {
+                    chunk.failure.addSuppressed(ex);
+                }
+            }
+        }
+
+        private StageStats stats() {
+            return new StageStats(name, items, units, busyNanos, in.size(), in.capacity());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run(Chunk chunk) throws Exception;
+    }
+
+    private final MorseStandard standard;
+    private final SymbolTable table;
+    private final TimelineSink sink;
+    private final PcmRenderer renderer;
+    private final PcmOutput output;
+    private final int chunkLength;
+    private final StageQueue<Message> messages;
+    private final Stage<?>[] stages;
+    private final Set<Message> unfinished = ConcurrentHashMap.newKeySet();
+    private final Object submitLock = new Object();
+    private final BooleanSupplier running = () -> this.mayRun;
+    private volatile boolean mayRun;
+
+    /**
+     * Creates a pipeline handing transitions to a sink, with queues of 16 chunks
+     * of up to 256 characters.
+     * @version 1.1
+     * @since 1.1
+     * @param standard the standard with which to encode and time messages
+     * @param sink the output for the transitions of every message
+     */
+    public MessagePipeline(MorseStandard standard, TimelineSink sink) {
+        this(standard, sink, 16, 256);
+    }
+
+    /**
+     * Creates a pipeline handing transitions to a sink.
+     * @version 1.1
+     * @since 1.1
+     * @param standard the standard with which to encode and time messages
+     * @param sink the output for the transitions of every message
+     * @param queueCapacity the number of chunks that can wait for each stage,
+     * rounded up to a power of two
+     * @param chunkLength the greatest number of characters in a chunk
+     */
+    public MessagePipeline(MorseStandard standard, TimelineSink sink, int queueCapacity, int chunkLength) {
+        this(standard, sink, null, null, queueCapacity, chunkLength);
+    }
+
+    /**
+     * Creates a pipeline rendering messages to PCM audio, with queues of 16 chunks
+     * of up to 256 characters.
+     * @version 1.1
+     * @since 1.1
+     * @param standard the standard with which to encode and time messages
+     * @param renderer the renderer with which to synthesize the audio of every message
+     * @param output the destination for the audio
+     */
+    public MessagePipeline(MorseStandard standard, PcmRenderer renderer, PcmOutput output) {
+        this(standard, renderer, output, 16, 256);
+    }
+
+    /**
+     * Creates a pipeline rendering messages to PCM audio.
+     * @version 1.1
+     * @since 1.1
+     * @param standard the standard with which to encode and time messages
+     * @param renderer the renderer with which to synthesize the audio of every message
+     * @param output the destination for the audio
+     * @param queueCapacity the number of chunks that can wait for each stage,
+     * rounded up to a power of two
+     * @param chunkLength the greatest number of characters in a chunk
+     */
+    public MessagePipeline(MorseStandard standard, PcmRenderer renderer, PcmOutput output, int queueCapacity,
+            int chunkLength) {
+        this(standard, null, renderer, output, queueCapacity, chunkLength);
+    }
+
+    private MessagePipeline(MorseStandard standard, TimelineSink sink, PcmRenderer renderer, PcmOutput output,
+            int queueCapacity, int chunkLength) {
+        if (queueCapacity <= 0 || queueCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("Queue capacity must be positive and at most 2^30.");
+        }
+        if (chunkLength <= 0) {
+            throw new IllegalArgumentException("Chunk length must be positive.");
+        }
+        this.standard = standard;
+        this.table = new SymbolTable(standard.getSymbolSpecification());
+        this.sink = sink;
+        this.renderer = renderer;
+        this.output = output;
+        this.chunkLength = chunkLength;
+        this.messages = new StageQueue<>(queueCapacity);
+        StageQueue<Chunk> encodeQueue = new StageQueue<>(queueCapacity);
+        StageQueue<Chunk> compileQueue = new StageQueue<>(queueCapacity);
+        StageQueue<Chunk> outputQueue = new StageQueue<>(queueCapacity);
+        if (renderer == null) {
+            this.stages = new Stage<?>[] {
+                new Normaliser(messages, encodeQueue),
+                new Encoder(encodeQueue, compileQueue),
+                new Compiler(compileQueue, outputQueue),
+                new Output(outputQueue)
+            };
+        } else {
+            StageQueue<Chunk> renderQueue = new StageQueue<>(queueCapacity);
+            this.stages = new Stage<?>[] {
+                new Normaliser(messages, encodeQueue),
+                new Encoder(encodeQueue, compileQueue),
+                new Compiler(compileQueue, renderQueue),
+                new Renderer(renderQueue, outputQueue),
+                new Output(outputQueue)
+            };
+        }
+    }
+
+    private final class Normaliser extends Stage<Message> {
+        private Normaliser(StageQueue<Message> in, StageQueue<Chunk> out) {
+            super("normalise", in, out);
+        }
+
+        @Override
+        boolean process(Message message) {
+            String text = message.text;
+            int n = text.length();
+            int start = 0;
+            do {
+                int end = Math.min(n, start + chunkLength);
+                if (end < n) {
+                    // break after whitespace where possible so that words are not split between chunks
+                    int split = end;
+                    while (split > start && !Character.isWhitespace(text.charAt(split - 1))) {
+                        split--;
+                    }
+                    if (split > start) {
+                        end = split;
+                    }
+                }
+                Chunk chunk = new Chunk(message, start == 0, end == n, text.substring(start, end));
+                attempt(chunk, c -> {
+                    if (!Normalizer.isNormalized(c.text, Normalizer.Form.NFKC)) {
+                        c.text = Normalizer.normalize(c.text, Normalizer.Form.NFKC);
+                    }
+                });
+                count(end - start);
+                if (!emit(chunk)) {
+                    return false;
+                }
+                start = end;
+            } while (start < n);
+            return true;
+        }
+    }
+
+    private final class Encoder extends Stage<Chunk> {
+        // whether a letter gap must come before the next symbol of the current message
+        private boolean needsGap;
+
+        private Encoder(StageQueue<Chunk> in, StageQueue<Chunk> out) {
+            super("encode", in, out);
+        }
+
+        @Override
+        boolean process(Chunk chunk) {
+            attempt(chunk, this::encode);
+            count(chunk.text.length());
+            return emit(chunk);
+        }
+
+        private void encode(Chunk chunk) {
+            if (chunk.first) {
+                needsGap = false;
+            }
+            String text = chunk.text;
+            ElementType[] elements = new ElementType[Math.max(16, text.length() * 8)];
+            int n = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                ElementType[] symbol = Character.isWhitespace(c) ? null : table.getElements(c);
+                int needed = n + 2 + (symbol == null ? 0 : symbol.length);
+                if (needed > elements.length) {
+                    elements = Arrays.copyOf(elements, Math.max(needed, elements.length * 2));
+                }
+                if (symbol == null) {
+                    elements[n++] = ElementType.WORD_GAP;
+                    needsGap = false;
+                    continue;
+                }
+                if (needsGap) {
+                    elements[n++] = ElementType.LETTER_GAP;
+                }
+                System.arraycopy(symbol, 0, elements, n, symbol.length);
+                n += symbol.length;
+                needsGap = true;
+            }
+            if (chunk.last && needsGap) {
+                // the terminating gap; room is always left for it above
+                elements[n++] = ElementType.WORD_GAP;
+                needsGap = false;
+            }
+            chunk.elements = elements;
+            chunk.count = n;
+        }
+    }
+
+    private final class Compiler extends Stage<Chunk> {
+        private final long[] typeNanos = new long[TYPES.length];
+
+        private Compiler(StageQueue<Chunk> in, StageQueue<Chunk> out) {
+            super("compile", in, out);
+        }
+
+        @Override
+        boolean process(Chunk chunk) {
+            attempt(chunk, this::compile);
+            count(chunk.count);
+            return emit(chunk);
+        }
+
+        private void compile(Chunk chunk) {
+            if (chunk.first) {
+                TimingSnapshot timing = standard.getTimingSpecification().snapshot();
+                for (ElementType type : TYPES) {
+                    typeNanos[type.ordinal()] = timing.getNanos(type);
+                }
+            }
+            boolean[] states = new boolean[chunk.count];
+            long[] nanos = new long[chunk.count];
+            for (int i = 0; i < chunk.count; i++) {
+                ElementType type = chunk.elements[i];
+                states[i] = type.activeDuringPlay;
+                nanos[i] = typeNanos[type.ordinal()];
+            }
+            chunk.states = states;
+            chunk.nanos = nanos;
+            chunk.elements = null;
+        }
+    }
+
+    private final class Renderer extends Stage<Chunk> {
+        private Renderer(StageQueue<Chunk> in, StageQueue<Chunk> out) {
+            super("render", in, out);
+        }
+
+        @Override
+        boolean process(Chunk chunk) {
+            attempt(chunk, c -> {
+                renderer.play(c.states, c.nanos, 0, c.count);
+                if (c.last) {
+                    renderer.endOfMessage();
+                }
+                c.pcm = renderer.drain();
+            });
+            if (chunk.last && chunk.failure != null) {
+                // a word split between chunks may have been left sounding, and the audio of the failed chunk is
+                // discarded so that it does not lead into the next message
+                settle(chunk, c -> {
+                    renderer.play(OFF_STATES, OFF_NANOS, 0, 1);
+                    renderer.endOfMessage();
+                    renderer.drain();
+                });
+            }
+            count(chunk.pcm == null ? 0 : chunk.pcm.length);
+            return emit(chunk);
+        }
+    }
+
+    private final class Output extends Stage<Chunk> {
+        private Output(StageQueue<Chunk> in) {
+            super("output", in, null);
+        }
+
+        @Override
+        boolean process(Chunk chunk) {
+            attempt(chunk, c -> {
+                if (output != null) {
+                    output.write(c.pcm, 0, c.pcm.length);
+                } else {
+                    sink.play(c.states, c.nanos, 0, c.count);
+                    if (c.last) {
+                        sink.endOfMessage();
+                    }
+                }
+            });
+            if (chunk.last && chunk.failure != null && output == null) {
+                // a word split between chunks may have been left keyed when the rest of the message was skipped
+                settle(chunk, c -> {
+                    sink.play(OFF_STATES, OFF_NANOS, 0, 1);
+                    sink.endOfMessage();
+                });
+            }
+            count(output != null ? (chunk.pcm == null ? 0 : chunk.pcm.length) : chunk.count);
+            if (chunk.last) {
+                Message message = chunk.message;
+                unfinished.remove(message);
+                if (chunk.failure == null) {
+                    message.completion.complete(null);
+                } else {
+                    message.completion.completeExceptionally(chunk.failure);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Queues a message to be played after those already submitted. If the queue
+     * of messages is full, this method waits for room. If the symbol set has no
+     * encoding for some character, or a stage throws an exception, the rest of
+     * the message is skipped and its completion is completed exceptionally; the
+     * chunks before the failing one may already have been output, in which case
+     * the output is turned off and the message is ended as if it had finished.
+     * @version 1.1
+     * @since 1.1
+     * @param text the characters to play; they are copied, so the sequence may be
+     * changed once this method returns
+     * @return a future completed once the whole message has been output, or
+     * cancelled if the pipeline is closed first
+     * @throws IllegalStateException if the pipeline is not open
+     */
+    public CompletableFuture<Void> submit(CharSequence text) {
+        Message message = new Message(text.toString());
+        synchronized (submitLock) {
+            if (!mayRun) {
+                throw new IllegalStateException("The pipeline is not open.");
+            }
+            unfinished.add(message);
+            messages.producer = Thread.currentThread();
+            if (!messages.put(message, running)) {
+                unfinished.remove(message);
+                message.completion.cancel(false);
+            }
+        }
+        return message.completion;
+    }
+
+    /**
+     * Starts the thread of every stage.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public synchronized void open() {
+        if (mayRun) return;
+        mayRun = true;
+        for (Stage<?> stage : stages) {
+            stage.thread = new Thread(stage, "Morse pipeline " + stage.name);
+            stage.thread.setDaemon(true);
+        }
+        for (int i = 0; i < stages.length; i++) {
+            stages[i].in.consumer = stages[i].thread;
+            if (stages[i].out != null) {
+                stages[i].out.producer = stages[i].thread;
+            }
+        }
+        for (Stage<?> stage : stages) {
+            stage.thread.start();
+        }
+    }
+
+    /**
+     * Stops the thread of every stage once it finishes the chunk it is working
+     * on, and waits for them to stop. Messages that have not been fully output
+     * are cancelled, and any thread waiting in {@link #submit(CharSequence)}
+     * returns a cancelled future.
+     * @version 1.1
+     * @since 1.1
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    @Override
+    public synchronized void close() throws InterruptedException {
+        if (!mayRun) return;
+        mayRun = false;
+        Thread submitter = messages.producer;
+        if (submitter != null) {
+            LockSupport.unpark(submitter);
+        }
+        for (Stage<?> stage : stages) {
+            LockSupport.unpark(stage.thread);
+        }
+        for (Stage<?> stage : stages) {
+            stage.thread.join();
+            stage.thread = null;
+        }
+        synchronized (submitLock) {
+            for (Stage<?> stage : stages) {
+                stage.in.clear();
+            }
+            for (Message message : unfinished) {
+                message.completion.cancel(false);
+            }
+            unfinished.clear();
+        }
+    }
+
+    /**
+     * Gives the number of stages in this pipeline, which is 5 if it renders audio
+     * and 4 otherwise.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of stages
+     */
+    public int getStageCount() {
+        return stages.length;
+    }
+
+    /**
+     * Gives the counters and queue depth of a stage.
+     * @version 1.1
+     * @since 1.1
+     * @param index the position of the stage, from 0 for normalising to
+     * {@link #getStageCount()} - 1 for output
+     * @return the current statistics for the stage
+     */
+    public StageStats getStats(int index) {
+        return stages[index].stats();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.pipeline;
+
+/**
+ * A destination for PCM audio, such as an audio line or a file. Audio for a
+ * message is given in consecutive pieces that continue one another without any
+ * gap.
+ * @version 1.1
+ * @since 1.1
+ */
+@FunctionalInterface
+public interface PcmOutput {
+    /**
+     * Writes a piece of audio. This method may block until the audio has been
+     * played or may buffer it and return immediately.
+     * @version 1.1
+     * @since 1.1
+     * @param pcm the buffer holding the samples
+     * @param offset the index of the first byte to write
+     * @param length the number of bytes to write
+     * @throws Exception if the audio is unable to be written
+     */
+    public void write(byte[] pcm, int offset, int length) throws Exception;
+}
@@ -0,0 +1,46 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.pipeline;
+
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.TimelineSink;
+
+/**
+ * A sink that turns transitions into PCM audio in memory rather than playing
+ * them. The audio rendered since the last drain is taken out with
+ * {@link #drain()}, so a renderer can be fed a long message in chunks and hand
+ * each chunk of audio on while keeping its synthesis state, such as the phase
+ * of the wave, from one chunk to the next.
+ * @version 1.1
+ * @since 1.1
+ */
+public interface PcmRenderer extends TimelineSink {
+    /**
+     * Takes the audio rendered since the last call to this method, leaving the
+     * renderer ready to continue from where it stopped.
+     * @version 1.1
+     * @since 1.1
+     * @return the newly rendered samples, which the renderer no longer uses
+     */
+    public byte[] drain();
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.pipeline;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A bounded ring passing work from one stage of a pipeline to the next. Only one
+ * thread may put into a queue at a time and only one thread may take from it.
+ * Neither side takes a lock; a producer that finds the queue full and a consumer
+ * that finds it empty park until the other side makes room or adds work.
+ * @version 1.1
+ * @since 1.1
+ */
+/* package-private */ final class StageQueue<T> {
+
+    private final Object[] items;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    /* package-private */ volatile Thread producer;
+    /* package-private */ volatile Thread consumer;
+
+    /* package-private */ StageQueue(int capacity) {
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.items = new Object[size];
+        this.mask = size - 1;
+    }
+
+    // waits while the queue is full, giving up if the pipeline stops running
+    /* package-private */ boolean put(T item, BooleanSupplier running) {
+        long t = tail.get();
+        while (t - head.get() > mask) {
+            if (!running.getAsBoolean()) {
+                return false;
+            }
+            LockSupport.park(this);
+        }
+        items[(int) t & mask] = item;
+        tail.lazySet(t + 1);
+        Thread c = consumer;
+        if (c != null) {
+            LockSupport.unpark(c);
+        }
+        return true;
+    }
+
+    // waits while the queue is empty, giving up with null if the pipeline stops running
+    @SuppressWarnings("unchecked")
+    /* package-private */ T take(BooleanSupplier running) {
+        long h = head.get();
+        while (h == tail.get()) {
+            if (!running.getAsBoolean()) {
+                return null;
+            }
+            LockSupport.park(this);
+        }
+        T item = (T) items[(int) h & mask];
+        items[(int) h & mask] = null;
+        head.lazySet(h + 1);
+        Thread p = producer;
+        if (p != null) {
+            LockSupport.unpark(p);
+        }
+        return item;
+    }
+
+    /* package-private */ int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /* package-private */ int capacity() {
+        return items.length;
+    }
+
+    // discards everything queued; only safe once neither side is running
+    /* package-private */ void clear() {
+        Arrays.fill(items, null);
+        head.set(tail.get());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.pipeline;
+
+import java.time.Duration;
+
+/**
+ * The counters of one stage of a {@link MessagePipeline}, taken at one moment.
+ * Each stage counts the chunks it has finished, the units of work in them, and
+ * the time it spent working rather than waiting for its queues. The units are
+ * characters for the normalising and encoding stages, elements for the timing
+ * stage and for output to a sink, and bytes for rendering and for output of PCM
+ * audio.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class StageStats {
+
+    private final String name;
+    private final long items;
+    private final long units;
+    private final long busyNanos;
+    private final int queueDepth;
+    private final int queueCapacity;
+
+    /* package-private */ StageStats(String name, long items, long units, long busyNanos,
+            int queueDepth, int queueCapacity) {
+        this.name = name;
+        this.items = items;
+        this.units = units;
+        this.busyNanos = busyNanos;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Gives the name of the stage.
+     * @version 1.1
+     * @since 1.1
+     * @return a short name such as "encode"
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gives the number of chunks the stage has finished with.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of chunks passed on or output
+     */
+    public long getItemCount() {
+        return items;
+    }
+
+    /**
+     * Gives the amount of work in the chunks the stage has finished with.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of characters, elements or bytes processed
+     */
+    public long getUnitCount() {
+        return units;
+    }
+
+    /**
+     * Gives the time the stage has spent working, including time spent blocked
+     * in an output but not time spent waiting on its queues.
+     * @version 1.1
+     * @since 1.1
+     * @return the total time spent processing chunks
+     */
+    public Duration getBusyTime() {
+        return Duration.ofNanos(busyNanos);
+    }
+
+    /**
+     * Gives the rate at which the stage works while it is busy.
+     * @version 1.1
+     * @since 1.1
+     * @return the units processed per second of busy time, or 0 if none have been
+     */
+    public double getThroughput() {
+        return busyNanos == 0 ? 0 : units * 1e9 / busyNanos;
+    }
+
+    /**
+     * Gives the number of chunks waiting for the stage, or for the normalising
+     * stage, the number of whole messages.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of items in the queue in front of the stage
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Gives the number of chunks that can wait for the stage before the stage
+     * before it is held back.
+     * @version 1.1
+     * @since 1.1
+     * @return the capacity of the queue in front of the stage
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d chunks, %d units, %.0f units/s, queue %d/%d",
+                name, items, units, getThroughput(), queueDepth, queueCapacity);
+    }
+}
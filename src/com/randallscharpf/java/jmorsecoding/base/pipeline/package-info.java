@@ -0,0 +1,9 @@
+/**
+ * Playback of text through a chain of stages, each on its own thread. Text is
+ * normalised, encoded, timed, optionally rendered to PCM audio, and output in
+ * chunks that are passed between the stages through bounded queues, so a slow
+ * stage holds back only the stages before it and long messages start playing
+ * before they have been fully encoded.
+ * @since 1.1
+ */
+package com.randallscharpf.java.jmorsecoding.base.pipeline;
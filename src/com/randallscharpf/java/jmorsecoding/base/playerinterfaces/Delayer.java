@@ -44,4 +44,19 @@ public interface Delayer {
      * @throws Exception if the waiting is unable to be demanded or completed
      */
     public void wait(Duration time) throws Exception;
+
+    /**
+     * Waits for some amount of time given in nanoseconds. This has the same
+     * effect as {@link #wait(Duration)}; players call it when they hold a time as
+     * a number, so that implementations that override it can wait without
+     * allocating a <code>Duration</code>. The default implementation creates one
+     * and calls {@link #wait(Duration)}.
+     * @version 1.1
+     * @since 1.1
+     * @param nanos the amount of time to wait, in nanoseconds
+     * @throws Exception if the waiting is unable to be demanded or completed
+     */
+    public default void waitNanos(long nanos) throws Exception {
+        wait(Duration.ofNanos(nanos));
+    }
 }
@@ -0,0 +1,377 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.playerinterfaces;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A state setter that drives several other state setters in parallel. Each state
+ * change is stamped with the time at which it was requested and placed in a
+ * single-producer, single-consumer queue for each output, from which a dedicated
+ * thread applies it. A slow output therefore delays only itself: the latencies of
+ * the outputs are not added together, and the caller of {@link #setActive(boolean)}
+ * never waits for any of them.
+ * <br>
+ * For each output, the lag between the requested time of each change and the
+ * time it was applied is measured and reported through {@link #getStats(int)}.
+ * An output that falls further behind than the maximum lag has its pending
+ * changes coalesced: only the latest requested state is applied, so it catches
+ * up instead of replaying a backlog late. If an output falls so far behind that
+ * its queue is full, further changes for it are dropped until it has room, after
+ * which it is brought to the latest requested state.
+ * <br>
+ * {@link #setActive(boolean)} must be called by only one thread at a time. The
+ * outputs are driven only while this instance is open.
+ * @version 1.1
+ * @since 1.1
+ */
+public class FanOutOnOff implements OnOff, Openable {
+
+    /**
+     * The delivery counters and lag measurements for one output.
+     * @version 1.1
+     * @since 1.1
+     */
+    public static final class SinkStats {
+        private final long delivered;
+        private final long coalesced;
+        private final long dropped;
+        private final long failed;
+        private final long backlog;
+        private final long lastLagNanos;
+        private final long maxLagNanos;
+        private final long totalLagNanos;
+
+        private SinkStats(long delivered, long coalesced, long dropped, long failed, long backlog,
+                long lastLagNanos, long maxLagNanos, long totalLagNanos) {
+            this.delivered = delivered;
+            this.coalesced = coalesced;
+            this.dropped = dropped;
+            this.failed = failed;
+            this.backlog = backlog;
+            this.lastLagNanos = lastLagNanos;
+            this.maxLagNanos = maxLagNanos;
+            this.totalLagNanos = totalLagNanos;
+        }
+
+        /**
+         * Gives the number of state changes applied to the output.
+         * @version 1.1
+         * @since 1.1
+         * @return the count of changes applied, including those that failed
+         */
+        public long getDelivered() {
+            return delivered;
+        }
+
+        /**
+         * Gives the number of state changes skipped because the output was too far behind.
+         * @version 1.1
+         * @since 1.1
+         * @return the count of changes superseded by a later change before being applied
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /**
+         * Gives the number of state changes discarded because the queue of the output was full.
+         * @version 1.1
+         * @since 1.1
+         * @return the count of changes never queued for the output
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * Gives the number of state changes for which the output threw an exception.
+         * @version 1.1
+         * @since 1.1
+         * @return the count of failed changes
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * Gives the number of state changes waiting in the queue of the output.
+         * @version 1.1
+         * @since 1.1
+         * @return the count of changes queued but not yet applied
+         */
+        public long getBacklog() {
+            return backlog;
+        }
+
+        /**
+         * Gives the lag of the most recently applied state change.
+         * @version 1.1
+         * @since 1.1
+         * @return the time between the request and the completion of the last change
+         */
+        public Duration getLastLag() {
+            return Duration.ofNanos(lastLagNanos);
+        }
+
+        /**
+         * Gives the greatest lag of any applied state change.
+         * @version 1.1
+         * @since 1.1
+         * @return the maximum time between the request and the completion of a change
+         */
+        public Duration getMaxLag() {
+            return Duration.ofNanos(maxLagNanos);
+        }
+
+        /**
+         * Gives the mean lag of the applied state changes.
+         * @version 1.1
+         * @since 1.1
+         * @return the average time between the request and the completion of a change
+         */
+        public Duration getAverageLag() {
+            return Duration.ofNanos(delivered == 0 ? 0 : totalLagNanos / delivered);
+        }
+    }
+
+    // a ring of requested changes for one output, written only by the caller of setActive and read only by its worker
+    private final class Lane implements Runnable {
+        private final OnOff sink;
+        private final boolean[] states;
+        private final long[] requestedAt;
+        private final int mask;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+        private volatile boolean overflowed;
+        private volatile Thread worker;
+
+        // written only by the worker
+        private volatile long delivered;
+        private volatile long coalesced;
+        private volatile long failed;
+        private volatile long lastLag;
+        private volatile long maxLag;
+        private volatile long totalLag;
+        private volatile Exception lastFailure;
+        // written only by the producer
+        private volatile long dropped;
+
+        private Lane(OnOff sink, int capacity) {
+            this.sink = sink;
+            this.states = new boolean[capacity];
+            this.requestedAt = new long[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private void offer(boolean state, long now) {
+            long t = tail.get();
+            if (t - head.get() > mask) {
+                dropped++;
+                overflowed = true;
+            } else {
+                states[(int) t & mask] = state;
+                requestedAt[(int) t & mask] = now;
+                tail.lazySet(t + 1);
+            }
+            Thread w = worker;
+            if (w != null) {
+                LockSupport.unpark(w);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (mayRun) {
+                long h = head.get();
+                long t = tail.get();
+                if (h == t) {
+                    if (overflowed) {
+                        // changes were dropped, so bring the output to the latest requested state
+                        overflowed = false;
+                        apply(latestState, System.nanoTime());
+                        continue;
+                    }
+                    LockSupport.park(this);
+                    continue;
+                }
+                long now = System.nanoTime();
+                if (t - h > 1 && now - requestedAt[(int) h & mask] > maxLagNanos) {
+                    // too far behind to replay each change, so skip to the newest one
+                    coalesced += t - h - 1;
+                    h = t - 1;
+                }
+                boolean state = states[(int) h & mask];
+                long requested = requestedAt[(int) h & mask];
+                head.lazySet(h + 1);
+                apply(state, requested);
+            }
+        }
+
+        private void apply(boolean state, long requested) {
+            try {
+                sink.setActive(state);
+            } catch (Exception ex) {
+                failed++;
+                lastFailure = ex;
+            }
+            long lag = System.nanoTime() - requested;
+            delivered++;
+            lastLag = lag;
+            totalLag += lag;
+            if (lag > maxLag) {
+                maxLag = lag;
+            }
+        }
+    }
+
+    private final Lane[] lanes;
+    private final long maxLagNanos;
+    private volatile boolean latestState;
+    private volatile boolean mayRun;
+
+    /**
+     * Creates a fan-out to the given outputs with queues of 1024 changes each and
+     * a maximum lag of 50 milliseconds.
+     * @version 1.1
+     * @since 1.1
+     * @param sinks the outputs to drive
+     */
+    public FanOutOnOff(OnOff... sinks) {
+        this(1024, Duration.ofMillis(50), sinks);
+    }
+
+    /**
+     * Creates a fan-out to the given outputs.
+     * @version 1.1
+     * @since 1.1
+     * @param capacity the number of changes that can wait for each output, rounded
+     * up to a power of two
+     * @param maxLag the lag beyond which the pending changes of an output are coalesced
+     * @param sinks the outputs to drive
+     */
+    public FanOutOnOff(int capacity, Duration maxLag, OnOff... sinks) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Queue capacity must be positive and at most 2^30.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.maxLagNanos = maxLag.toNanos();
+        this.lanes = new Lane[sinks.length];
+        for (int i = 0; i < sinks.length; i++) {
+            lanes[i] = new Lane(sinks[i], size);
+        }
+    }
+
+    /**
+     * Queues the state change for every output and returns without waiting for
+     * any of them.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void setActive(boolean active) {
+        latestState = active;
+        long now = System.nanoTime();
+        for (Lane lane : lanes) {
+            lane.offer(active, now);
+        }
+    }
+
+    /**
+     * Starts one thread for each output.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public synchronized void open() {
+        if (mayRun) return;
+        mayRun = true;
+        for (int i = 0; i < lanes.length; i++) {
+            Thread worker = new Thread(lanes[i], "Morse fan-out output " + i);
+            worker.setDaemon(true);
+            lanes[i].worker = worker;
+            worker.start();
+        }
+    }
+
+    /**
+     * Stops the thread for each output and waits for them to stop. Changes that
+     * have not been applied yet are discarded.
+     * @version 1.1
+     * @since 1.1
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    @Override
+    public synchronized void close() throws InterruptedException {
+        if (!mayRun) return;
+        mayRun = false;
+        for (Lane lane : lanes) {
+            LockSupport.unpark(lane.worker);
+        }
+        for (Lane lane : lanes) {
+            lane.worker.join();
+            lane.worker = null;
+            lane.head.set(lane.tail.get());
+        }
+    }
+
+    /**
+     * Gives the number of outputs driven by this instance.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of outputs
+     */
+    public int getSinkCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Gives the delivery counters and lag measurements for an output.
+     * @version 1.1
+     * @since 1.1
+     * @param index the position of the output in the order given on creation
+     * @return the current statistics for the output
+     */
+    public SinkStats getStats(int index) {
+        Lane lane = lanes[index];
+        return new SinkStats(lane.delivered, lane.coalesced, lane.dropped, lane.failed,
+                lane.tail.get() - lane.head.get(), lane.lastLag, lane.maxLag, lane.totalLag);
+    }
+
+    /**
+     * Gives the exception most recently thrown by an output, if any.
+     * @version 1.1
+     * @since 1.1
+     * @param index the position of the output in the order given on creation
+     * @return the last exception thrown by the output, or null if none has been
+     */
+    public Exception getLastFailure(int index) {
+        return lanes[index].lastFailure;
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.playerinterfaces;
+
+import com.randallscharpf.java.jmorsecoding.base.timelines.Timeline;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A state setter and delayer that records what it is asked to do, for auditing
+ * what an output actually received. Each call to {@link #setActive(boolean)}
+ * starts an event holding the state, the time of the call from
+ * <code>System.nanoTime()</code>, and the total of the waits requested until the
+ * next call. The calls may be passed on to another state setter and delayer, so
+ * that a real output can be audited while it plays.
+ * <br>
+ * Events are kept in preallocated arrays used as a ring buffer, so recording
+ * allocates nothing and, once the buffer is full, overwrites the oldest events.
+ * Recording must be done by one thread at a time. Any number of other threads
+ * can take {@link Snapshot snapshots} of the recorded events at any time without
+ * locking or slowing the recording thread.
+ * @version 1.1
+ * @since 1.1
+ */
+public class KeyEventRecorder implements OnOff, Delayer {
+
+    /**
+     * A consistent copy of the events held by a recorder at some moment.
+     * @version 1.1
+     * @since 1.1
+     */
+    public static final class Snapshot {
+        private final long firstSequence;
+        private final boolean[] states;
+        private final long[] times;
+        private final long[] durations;
+
+        private Snapshot(long firstSequence, boolean[] states, long[] times, long[] durations) {
+            this.firstSequence = firstSequence;
+            this.states = states;
+            this.times = times;
+            this.durations = durations;
+        }
+
+        /**
+         * Gives the sequence number of the first event of the snapshot. Events are
+         * numbered from zero for the first event recorded since the recorder was
+         * created or cleared, so this is greater than zero only if older events
+         * have been overwritten.
+         * @version 1.1
+         * @since 1.1
+         * @return the sequence number of the event at index zero
+         */
+        public long getFirstSequence() {
+            return firstSequence;
+        }
+
+        /**
+         * Gives the number of events in the snapshot.
+         * @version 1.1
+         * @since 1.1
+         * @return the count of events
+         */
+        public int size() {
+            return states.length;
+        }
+
+        /**
+         * Gives the state set by an event.
+         * @version 1.1
+         * @since 1.1
+         * @param index the index of the event within the snapshot
+         * @return true if the state was set to "on"
+         */
+        public boolean getState(int index) {
+            return states[index];
+        }
+
+        /**
+         * Gives the time at which an event was recorded.
+         * @version 1.1
+         * @since 1.1
+         * @param index the index of the event within the snapshot
+         * @return the value of <code>System.nanoTime()</code> when the state was set
+         */
+        public long getTime(int index) {
+            return times[index];
+        }
+
+        /**
+         * Gives the total time requested to be waited after an event. The duration
+         * of the last event may not be complete if recording continues.
+         * @version 1.1
+         * @since 1.1
+         * @param index the index of the event within the snapshot
+         * @return the requested wait, in nanoseconds
+         */
+        public long getDuration(int index) {
+            return durations[index];
+        }
+
+        /**
+         * Finds the first event that differs from an expected schedule in its
+         * state or in its requested duration. Elements of the timeline are matched
+         * to events by sequence number, and only those present in both are compared.
+         * @version 1.1
+         * @since 1.1
+         * @param expected the schedule that was to be played
+         * @param startSequence the sequence number of the event that played the first element of the timeline
+         * @return the sequence number of the first differing event, or -1 if none differs
+         */
+        public long firstMismatch(Timeline expected, long startSequence) {
+            for (int i = firstCompared(startSequence); i < lastCompared(expected, startSequence); i++) {
+                int element = (int) (firstSequence + i - startSequence);
+                if (states[i] != expected.getElementType(element).activeDuringPlay
+                        || durations[i] != expected.getElementNanos(element)) {
+                    return firstSequence + i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Finds the greatest difference between the time that actually passed from
+         * one event to the next and the duration of the corresponding element of an
+         * expected schedule. The last element of the timeline is not measured,
+         * since nothing marks its end.
+         * @version 1.1
+         * @since 1.1
+         * @param expected the schedule that was to be played
+         * @param startSequence the sequence number of the event that played the first element of the timeline
+         * @return the greatest absolute error, in nanoseconds, or zero if no interval can be measured
+         */
+        public long maxTimingError(Timeline expected, long startSequence) {
+            long max = 0;
+            int end = Math.min(lastCompared(expected, startSequence), states.length - 1);
+            for (int i = firstCompared(startSequence); i < end; i++) {
+                int element = (int) (firstSequence + i - startSequence);
+                long error = Math.abs(times[i + 1] - times[i] - expected.getElementNanos(element));
+                max = Math.max(max, error);
+            }
+            return max;
+        }
+
+        private int firstCompared(long startSequence) {
+            return (int) Math.max(0, Math.min(states.length, startSequence - firstSequence));
+        }
+
+        private int lastCompared(Timeline expected, long startSequence) {
+            long end = startSequence + expected.getElementCount() - firstSequence;
+            return (int) Math.max(0, Math.min(states.length, end));
+        }
+    }
+
+    // null if calls are not passed on
+    private final OnOff stateSetter;
+    private final Delayer delayer;
+    private final boolean[] states;
+    private final long[] times;
+    private final long[] durations;
+    private final int mask;
+    private final int capacity;
+    // the number of events started; each event is written before this is advanced past it
+    private final AtomicLong recorded = new AtomicLong();
+    // the oldest sequence number a snapshot may return, raised by clear()
+    private volatile long clearedAt;
+
+    /**
+     * Creates a recorder that does nothing but record. Waits return at once.
+     * @version 1.1
+     * @since 1.1
+     * @param capacity the number of events to keep
+     */
+    public KeyEventRecorder(int capacity) {
+        this(null, null, capacity);
+    }
+
+    /**
+     * Creates a recorder that passes every call on to a state setter and delayer
+     * after recording it.
+     * @version 1.1
+     * @since 1.1
+     * @param stateSetter switch to control the indicator that creates dits and dahs
+     * @param delayer timer that provides the process of waiting between state transitions
+     * @param capacity the number of events to keep
+     */
+    public KeyEventRecorder(OnOff stateSetter, Delayer delayer, int capacity) {
+        if (capacity <= 0 || capacity >= (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be positive and less than 2^30.");
+        }
+        // one slot more than the capacity is always free for the event being written
+        int size = Integer.highestOneBit(capacity) << 1;
+        this.stateSetter = stateSetter;
+        this.delayer = delayer;
+        this.states = new boolean[size];
+        this.times = new long[size];
+        this.durations = new long[size];
+        this.mask = size - 1;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Records an event and sets the state of the wrapped state setter.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void setActive(boolean active) throws Exception {
+        long sequence = recorded.get();
+        int slot = (int) sequence & mask;
+        // a snapshot that overlaps this slot discards it, having read the count below afterwards
+        states[slot] = active;
+        times[slot] = System.nanoTime();
+        durations[slot] = 0;
+        recorded.lazySet(sequence + 1);
+        if (stateSetter != null) {
+            stateSetter.setActive(active);
+        }
+    }
+
+    /**
+     * Adds the time to the duration of the latest event and waits with the
+     * wrapped delayer.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void wait(Duration time) throws Exception {
+        addDuration(time.toNanos());
+        if (delayer != null) {
+            delayer.wait(time);
+        }
+    }
+
+    /**
+     * Adds the time to the duration of the latest event and waits with the
+     * wrapped delayer.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void waitNanos(long nanos) throws Exception {
+        addDuration(nanos);
+        if (delayer != null) {
+            delayer.waitNanos(nanos);
+        }
+    }
+
+    private void addDuration(long nanos) {
+        long sequence = recorded.get();
+        if (sequence > 0) {
+            durations[(int) (sequence - 1) & mask] += nanos;
+        }
+    }
+
+    /**
+     * Gives the number of events recorded since the recorder was created or
+     * cleared, including any that have been overwritten.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of calls to {@link #setActive(boolean)}
+     */
+    public long getEventCount() {
+        return recorded.get() - clearedAt;
+    }
+
+    /**
+     * Copies the events currently held. This may be called from any thread while
+     * recording continues; events overwritten while they are being copied are
+     * left out of the snapshot.
+     * @version 1.1
+     * @since 1.1
+     * @return the events held, oldest first
+     */
+    public Snapshot snapshot() {
+        while (true) {
+            long cleared = clearedAt;
+            long end = recorded.get();
+            long start = Math.max(cleared, end - capacity);
+            int n = (int) (end - start);
+            boolean[] s = new boolean[n];
+            long[] t = new long[n];
+            long[] d = new long[n];
+            for (int i = 0; i < n; i++) {
+                int slot = (int) (start + i) & mask;
+                s[i] = states[slot];
+                t[i] = times[slot];
+                d[i] = durations[slot];
+            }
+            // any slot reused during the copy belonged to an event older than this
+            long safeStart = recorded.get() - states.length + 1;
+            if (clearedAt != cleared) {
+                continue;
+            }
+            int skip = (int) Math.max(0, Math.min(n, safeStart - start));
+            if (skip > 0) {
+                s = Arrays.copyOfRange(s, skip, n);
+                t = Arrays.copyOfRange(t, skip, n);
+                d = Arrays.copyOfRange(d, skip, n);
+            }
+            return new Snapshot(start + skip - cleared, s, t, d);
+        }
+    }
+
+    /**
+     * Discards the recorded events, so that later snapshots hold only events
+     * recorded afterwards, numbered from zero.
+     * @version 1.1
+     * @since 1.1
+     */
+    public void clear() {
+        clearedAt = recorded.get();
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.playerinterfaces;
+
+import com.randallscharpf.java.jmorsecoding.base.management.FlightEventType;
+import com.randallscharpf.java.jmorsecoding.base.management.LatencyHistogram;
+import java.time.Duration;
+
+/**
+ * A state setter and delayer that hides the time taken by a slow state setter.
+ * Each call to the wrapped state setter is timed, and the time it took is
+ * subtracted from the wait that follows it, so that the interval from one state
+ * change to the next matches the requested durations even when the state setter
+ * takes milliseconds to act. If a call takes longer than the following wait, the
+ * excess is carried over to later waits, so the total playback time is preserved.
+ * <br>
+ * A running estimate of the latency is kept for monitoring, as an exponentially
+ * weighted average with a weight of 1/8 for each new measurement, together with
+ * the greatest latency measured. The lateness of each element, being the time
+ * by which each wait of the wrapped delayer overruns what was asked of it, is
+ * recorded in a {@link LatencyHistogram}. Elements later than a threshold, 1 ms
+ * unless set otherwise, are also recorded by Java Flight Recorder as
+ * <code>LateElement</code> events. Compensation is off until turned on,
+ * but the latency is measured either way. Instances of this class are intended to be used
+ * by one playing thread at a time; the estimates may be read from any thread.
+ * @version 1.1
+ * @since 1.1
+ */
+public class LatencyCompensator implements OnOff, Delayer {
+
+    private final OnOff stateSetter;
+    private final Delayer delayer;
+    private volatile boolean compensating;
+    private volatile long averageNanos;
+    private volatile long maxNanos;
+    private volatile long lastNanos;
+    private volatile long count;
+    private long owedNanos;
+    private final LatencyHistogram lateness = new LatencyHistogram();
+    private volatile long lateThresholdNanos = 1_000_000;
+    private boolean active;
+    private static final FlightEventType LATE_ELEMENT = FlightEventType.define("LateElement", "Late Element",
+            "A wait between state changes overran its requested time by more than the threshold", "Playback", true,
+            FlightEventType.Field.timespan("requested", "Requested Wait"),
+            FlightEventType.Field.timespan("lateness", "Lateness"),
+            FlightEventType.Field.of(boolean.class, "active", "Output Active"));
+
+    /**
+     * Creates a compensator for a state setter and the delayer used with it.
+     * @version 1.1
+     * @since 1.1
+     * @param stateSetter switch to control the indicator that creates dits and dahs
+     * @param delayer timer that provides the process of waiting between state transitions
+     */
+    public LatencyCompensator(OnOff stateSetter, Delayer delayer) {
+        this.stateSetter = stateSetter;
+        this.delayer = delayer;
+    }
+
+    /**
+     * Sets the state with the wrapped state setter and measures how long it takes.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void setActive(boolean active) throws Exception {
+        this.active = active;
+        long start = System.nanoTime();
+        try {
+            stateSetter.setActive(active);
+        } finally {
+            long latency = System.nanoTime() - start;
+            record(latency);
+            if (compensating) {
+                owedNanos += latency;
+            }
+        }
+    }
+
+    private void record(long latency) {
+        lastNanos = latency;
+        averageNanos = count == 0 ? latency : averageNanos + (latency - averageNanos) / 8;
+        if (latency > maxNanos) {
+            maxNanos = latency;
+        }
+        count++;
+    }
+
+    /**
+     * Waits with the wrapped delayer for the given time less the time taken by
+     * the preceding state changes.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void wait(Duration time) throws Exception {
+        if (owedNanos == 0) {
+            long start = System.nanoTime();
+            delayer.wait(time);
+            recordLateness(time.toNanos(), System.nanoTime() - start - time.toNanos());
+        } else {
+            waitNanos(time.toNanos());
+        }
+    }
+
+    /**
+     * Waits with the wrapped delayer for the given time less the time taken by
+     * the preceding state changes.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void waitNanos(long nanos) throws Exception {
+        long remaining = nanos - owedNanos;
+        if (remaining > 0) {
+            owedNanos = 0;
+            long start = System.nanoTime();
+            delayer.waitNanos(remaining);
+            recordLateness(remaining, System.nanoTime() - start - remaining);
+        } else {
+            owedNanos = -remaining;
+        }
+    }
+
+    private void recordLateness(long requested, long late) {
+        lateness.record(late);
+        if (late >= lateThresholdNanos && LATE_ELEMENT.isEnabled()) {
+            LATE_ELEMENT.emit(requested, late, active);
+        }
+    }
+
+    /**
+     * Turns compensation on or off. While it is off, waits are passed through
+     * unchanged, although latencies are still measured. Compensation is off for
+     * new instances.
+     * @version 1.1
+     * @since 1.1
+     * @param compensating true to subtract latencies from waits
+     */
+    public void setCompensating(boolean compensating) {
+        this.compensating = compensating;
+        if (!compensating) {
+            owedNanos = 0;
+        }
+    }
+
+    /**
+     * Tells whether latencies are being subtracted from waits.
+     * @version 1.1
+     * @since 1.1
+     * @return true if and only if compensation is on
+     */
+    public boolean isCompensating() {
+        return compensating;
+    }
+
+    /**
+     * Gives the running estimate of the time taken by a state change.
+     * @version 1.1
+     * @since 1.1
+     * @return the weighted average of the measured latencies
+     */
+    public Duration getLatencyEstimate() {
+        return Duration.ofNanos(averageNanos);
+    }
+
+    /**
+     * Gives the time taken by the most recent state change.
+     * @version 1.1
+     * @since 1.1
+     * @return the latest measured latency
+     */
+    public Duration getLastLatency() {
+        return Duration.ofNanos(lastNanos);
+    }
+
+    /**
+     * Gives the greatest time taken by any state change.
+     * @version 1.1
+     * @since 1.1
+     * @return the maximum measured latency
+     */
+    public Duration getMaxLatency() {
+        return Duration.ofNanos(maxNanos);
+    }
+
+    /**
+     * Gives the number of state changes measured.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of calls to the wrapped state setter
+     */
+    public long getMeasurementCount() {
+        return count;
+    }
+
+    /**
+     * Gives the measurements of element lateness. Waits that were skipped
+     * entirely, because the preceding state changes took longer than them, are
+     * not measured.
+     * @version 1.1
+     * @since 1.1
+     * @return the live histogram of the time by which each wait overran
+     */
+    public LatencyHistogram getLateness() {
+        return lateness;
+    }
+
+    /**
+     * Sets how late an element must be to be recorded as a
+     * <code>LateElement</code> event by Java Flight Recorder. Lateness is
+     * measured in the same way as for {@link #getLateness()}. The threshold is
+     * 1 ms for new instances.
+     * @version 1.1
+     * @since 1.1
+     * @param threshold the least lateness that is recorded
+     */
+    public void setLateElementThreshold(Duration threshold) {
+        lateThresholdNanos = threshold.toNanos();
+    }
+
+    /**
+     * Gives how late an element must be to be recorded as a
+     * <code>LateElement</code> event by Java Flight Recorder.
+     * @version 1.1
+     * @since 1.1
+     * @return the least lateness that is recorded
+     */
+    public Duration getLateElementThreshold() {
+        return Duration.ofNanos(lateThresholdNanos);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.playerinterfaces;
+
+/**
+ * A sink that plays each transition it is given through a state setter and a
+ * delayer, one at a time. This allows outputs that are not able to buffer
+ * transitions to be used wherever a {@link TimelineSink} is expected, with the
+ * same behavior as playing the transitions directly.
+ * @version 1.1
+ * @since 1.1
+ */
+public class OnOffDelayerSink implements TimelineSink {
+
+    private final OnOff stateSetter;
+    private final Delayer delayer;
+
+    /**
+     * Creates a sink that plays through the given state setter and delayer.
+     * @version 1.1
+     * @since 1.1
+     * @param stateSetter switch to control the indicator that creates dits and dahs
+     * @param delayer timer that provides the process of waiting between state transitions
+     */
+    public OnOffDelayerSink(OnOff stateSetter, Delayer delayer) {
+        this.stateSetter = stateSetter;
+        this.delayer = delayer;
+    }
+
+    /**
+     * Gives a sink for a state setter and delayer. If they are the same object
+     * and it is itself a sink, it is returned, so that outputs able to take whole
+     * batches are given them; otherwise the two are adapted.
+     * @version 1.1
+     * @since 1.1
+     * @param stateSetter switch to control the indicator that creates dits and dahs
+     * @param delayer timer that provides the process of waiting between state transitions
+     * @return a sink for the pair
+     */
+    public static TimelineSink of(OnOff stateSetter, Delayer delayer) {
+        if (stateSetter instanceof TimelineSink && stateSetter == (Object) delayer) {
+            return (TimelineSink) stateSetter;
+        }
+        return new OnOffDelayerSink(stateSetter, delayer);
+    }
+
+    /**
+     * Sets the state and waits for each transition in turn.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void play(boolean[] states, long[] nanos, int offset, int length) throws Exception {
+        for (int i = offset; i < offset + length; i++) {
+            stateSetter.setActive(states[i]);
+            delayer.waitNanos(nanos[i]);
+        }
+    }
+}
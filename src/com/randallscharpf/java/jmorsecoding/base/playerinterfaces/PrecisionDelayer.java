@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.playerinterfaces;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * A delayer that waits accurately regardless of the granularity of the platform
+ * timer. Each wait parks the current thread until shortly before the deadline and
+ * then spins for the remainder. The length of the spinning phase is derived from
+ * the amount by which parking overshoots its requested duration on this platform,
+ * which is measured when the instance is created and re-estimated from every park
+ * performed afterwards, so that the delayer adapts to changes in system load and
+ * timer slack without spinning for the whole of the wait.
+ * <br>
+ * Instances of this class are safe for use by multiple threads, although the
+ * overshoot estimate is shared between them.
+ * @version 1.1
+ * @since 1.1
+ */
+public class PrecisionDelayer implements Delayer {
+
+    private static final int CALIBRATION_SAMPLES = 16;
+    private static final long CALIBRATION_PARK_NANOS = 50_000;
+    private static final long SAFETY_MARGIN_NANOS = 20_000;
+
+    private final long maxSpinNanos;
+    // the system timer and parking, except in tests of the estimate, which cannot rely on how a machine sleeps
+    private final LongSupplier clock;
+    private final LongConsumer parker;
+    private volatile long overshootEstimateNanos;
+
+    /**
+     * Creates a delayer that spins for at most two milliseconds of each wait.
+     * The overshoot of parking on this platform is measured before this
+     * constructor returns.
+     * @version 1.1
+     * @since 1.1
+     */
+    public PrecisionDelayer() {
+        this(Duration.ofMillis(2));
+    }
+
+    /**
+     * Creates a delayer that spins for at most the given amount of time at the
+     * end of each wait. On platforms where parking overshoots by more than this
+     * amount, waits will complete late rather than spin for longer. The overshoot
+     * of parking on this platform is measured before this constructor returns.
+     * @version 1.1
+     * @since 1.1
+     * @param maxSpin the longest period for which a single wait may spin
+     */
+    public PrecisionDelayer(Duration maxSpin) {
+        this(maxSpin, System::nanoTime, LockSupport::parkNanos);
+    }
+
+    /* package-private */ PrecisionDelayer(Duration maxSpin, LongSupplier clock, LongConsumer parker) {
+        if (maxSpin.isNegative()) {
+            throw new IllegalArgumentException("Spin duration must not be negative.");
+        }
+        this.maxSpinNanos = maxSpin.toNanos();
+        this.clock = clock;
+        this.parker = parker;
+        calibrate();
+    }
+
+    /**
+     * Measures the overshoot of parking on this platform from scratch. The previous
+     * estimate is discarded. This is done automatically on construction, and need
+     * only be called again if the platform's timer behavior is known to have changed
+     * abruptly, since every wait also refines the estimate.
+     * @version 1.1
+     * @since 1.1
+     */
+    public final void calibrate() {
+        long[] samples = new long[CALIBRATION_SAMPLES];
+        for (int i = 0; i < samples.length; i++) {
+            long start = clock.getAsLong();
+            parker.accept(CALIBRATION_PARK_NANOS);
+            samples[i] = Math.max(0, clock.getAsLong() - start - CALIBRATION_PARK_NANOS);
+        }
+        Arrays.sort(samples);
+        // the upper quartile ignores one-off scheduling hiccups during startup
+        overshootEstimateNanos = samples[samples.length * 3 / 4];
+    }
+
+    /**
+     * Gives the current estimate of how late a park completes on this platform.
+     * The estimate is updated by each wait.
+     * @version 1.1
+     * @since 1.1
+     * @return the estimated overshoot of a single park
+     */
+    public Duration getParkOvershoot() {
+        return Duration.ofNanos(overshootEstimateNanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @version 1.1
+     * @since 1.1
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    @Override
+    public void wait(Duration time) throws InterruptedException {
+        waitUntil(clock.getAsLong() + time.toNanos());
+    }
+
+    /**
+     * {@inheritDoc}
+     * @version 1.1
+     * @since 1.1
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    @Override
+    public void waitNanos(long nanos) throws InterruptedException {
+        waitUntil(clock.getAsLong() + nanos);
+    }
+
+    /**
+     * Waits until <code>System.nanoTime()</code> reaches the given deadline. If
+     * the deadline has already passed, returns immediately. Waiting toward a fixed
+     * deadline rather than for a duration avoids the accumulation of lateness over
+     * a sequence of waits.
+     * @version 1.1
+     * @since 1.1
+     * @param deadlineNanos the value of <code>System.nanoTime()</code> at which to return
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void waitUntil(long deadlineNanos) throws InterruptedException {
+        while (true) {
+            long margin = Math.min(overshootEstimateNanos + SAFETY_MARGIN_NANOS, maxSpinNanos);
+            long start = clock.getAsLong();
+            long parkFor = deadlineNanos - start - margin;
+            if (parkFor <= 0) {
+                break;
+            }
+            parker.accept(parkFor);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            recordOvershoot(clock.getAsLong() - start - parkFor);
+        }
+        while (deadlineNanos - clock.getAsLong() > 0) {
+            // spin for the remainder, which is shorter than the park overshoot
+        }
+    }
+
+    private void recordOvershoot(long overshoot) {
+        // react to worse timer behavior immediately, but relax only gradually so
+        // that a single fortunate wakeup does not shrink the spin phase too far
+        long estimate = overshootEstimateNanos;
+        if (overshoot > estimate) {
+            overshootEstimateNanos = overshoot;
+        } else {
+            overshootEstimateNanos = estimate - ((estimate - Math.max(0, overshoot)) >> 4);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.playerinterfaces;
+
+/**
+ * An output that accepts many state transitions at once. Where a state setter
+ * and delayer are driven one element at a time, a sink is given a whole message,
+ * or consecutive chunks of one, in advance, so outputs that can buffer, such as
+ * audio renderers, network keyers, and recorders, can schedule the transitions
+ * themselves instead of waiting on each one.
+ * <br>
+ * Outputs that only implement {@link OnOff} and {@link Delayer} can be used
+ * wherever a sink is needed through {@link OnOffDelayerSink}.
+ * @version 1.1
+ * @since 1.1
+ */
+public interface TimelineSink {
+    /**
+     * Plays a batch of transitions. For each index from <code>offset</code>,
+     * inclusive, to <code>offset + length</code>, exclusive, the output is set to
+     * the state at that index and held in it for the duration at that index.
+     * Successive batches of one message continue one another without any gap.
+     * This method may block until the batch has been played or may queue it and
+     * return immediately. The sink must not modify the arrays, and the caller may
+     * reuse them once this method returns, so a sink that queues the batch must
+     * copy it.
+     * @version 1.1
+     * @since 1.1
+     * @param states the state of each transition, true for "on"
+     * @param nanos the time to hold each state, in nanoseconds
+     * @param offset the index of the first transition of the batch
+     * @param length the number of transitions in the batch
+     * @throws Exception if the transitions are unable to be demanded or completed
+     */
+    public void play(boolean[] states, long[] nanos, int offset, int length) throws Exception;
+
+    /**
+     * Indicates that the last batch of a message has been given. Sinks that queue
+     * transitions may use this to flush them. The default implementation does nothing.
+     * @version 1.1
+     * @since 1.1
+     * @throws Exception if the queued transitions are unable to be completed
+     */
+    public default void endOfMessage() throws Exception {}
+}
@@ -0,0 +1,308 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.scheduling;
+
+import com.randallscharpf.java.jmorsecoding.base.MorsePlayer;
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Openable;
+import com.randallscharpf.java.jmorsecoding.base.timings.TimingSnapshot;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A keyer that plays characters as they are typed. Typed characters go into a
+ * type-ahead buffer from which a thread owned by the keyer takes them one at a
+ * time, so the operator can type ahead of the transmission and the first key
+ * press is heard as soon as it is made rather than after a whole message is
+ * entered.
+ * <br>
+ * The buffer is lock-free: typing and backspacing never wait for the playing
+ * thread. A character can be removed with {@link #backspace()} for as long as it
+ * has not been taken for playing. Characters are spaced as in
+ * {@link com.randallscharpf.java.jmorsecoding.base.symbolsets.MorseSymbolSet#getPlayableForString(String)},
+ * except that time spent waiting for the operator counts towards the gap before
+ * the next character; the keyer only waits for whatever part of the gap has not
+ * already passed.
+ * <br>
+ * Typing and backspacing must be done from a single thread, such as the event
+ * dispatch thread of a user interface. Once a player is given to a keyer, it
+ * must not be used by any other code while the keyer is open.
+ * @version 1.1
+ * @since 1.1
+ */
+public class LiveKeyer implements Openable {
+
+    private final MorsePlayer player;
+    private final char[] buffer;
+    private final int mask;
+    // the index of the next character to play, the index after the last typed, and a count of backspaces; the
+    // count keeps a character that was backspaced and retyped from being mistaken for the one that was taken
+    private final AtomicLong bounds = new AtomicLong();
+    private volatile long charactersSent;
+    private volatile Exception lastFailure;
+    // read by typing threads without locking, so that none of them can miss waking the thread
+    private volatile Thread playingThread;
+    private volatile boolean mayRun;
+
+    // accessed only by the playing thread
+    private long lastSymbolEnd;
+    private long pendingGap;
+
+    /**
+     * Creates a keyer with room for 256 characters of type-ahead.
+     * @version 1.1
+     * @since 1.1
+     * @param player the player with which to play typed characters
+     */
+    public LiveKeyer(MorsePlayer player) {
+        this(player, 256);
+    }
+
+    /**
+     * Creates a keyer with a type-ahead buffer of the given size.
+     * @version 1.1
+     * @since 1.1
+     * @param player the player with which to play typed characters
+     * @param capacity the most characters that can be waiting to be played, at most 2^22, rounded up to a power of two
+     */
+    public LiveKeyer(MorsePlayer player, int capacity) {
+        if (capacity <= 0 || capacity > (1 << 22)) {
+            throw new IllegalArgumentException("Capacity must be positive and at most 2^22.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.player = player;
+        this.buffer = new char[size];
+        this.mask = size - 1;
+    }
+
+    private static final int INDEX_MASK = 0xFFFFFF;
+
+    private static long pack(int head, int tail, long stamp) {
+        return (stamp << 48) | ((long) (head & INDEX_MASK) << 24) | (tail & INDEX_MASK);
+    }
+
+    private static int head(long b) {
+        return (int) (b >>> 24) & INDEX_MASK;
+    }
+
+    private static int tail(long b) {
+        return (int) b & INDEX_MASK;
+    }
+
+    private static long stamp(long b) {
+        return b >>> 48;
+    }
+
+    private static int count(long b) {
+        return (tail(b) - head(b)) & INDEX_MASK;
+    }
+
+    /**
+     * Adds a character to the end of the type-ahead buffer. Whitespace characters
+     * become word gaps. This method never blocks.
+     * @version 1.1
+     * @since 1.1
+     * @param c the character to play
+     * @return false if the buffer is full, in which case the character is not added
+     */
+    public boolean type(char c) {
+        while (true) {
+            long b = bounds.get();
+            int head = head(b);
+            int tail = tail(b);
+            if (count(b) == buffer.length) {
+                return false;
+            }
+            // the slot is published by the exchange below and is never read before then
+            buffer[tail & mask] = c;
+            if (bounds.compareAndSet(b, pack(head, tail + 1, stamp(b)))) {
+                break;
+            }
+        }
+        Thread thread = playingThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    /**
+     * Adds every character of some text to the type-ahead buffer, as by
+     * {@link #type(char)}.
+     * @version 1.1
+     * @since 1.1
+     * @param text the characters to play
+     * @return the number of characters added, which is less than the length of the text only if the buffer filled
+     */
+    public int type(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!type(text.charAt(i))) {
+                return i;
+            }
+        }
+        return text.length();
+    }
+
+    /**
+     * Removes the most recently typed character if it has not yet been taken for
+     * playing. This method never blocks.
+     * @version 1.1
+     * @since 1.1
+     * @return true if a character was removed, or false if every typed character has already been sent
+     */
+    public boolean backspace() {
+        while (true) {
+            long b = bounds.get();
+            int head = head(b);
+            int tail = tail(b);
+            if (tail == head) {
+                return false;
+            }
+            if (bounds.compareAndSet(b, pack(head, tail - 1, stamp(b) + 1))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives the number of typed characters that have not yet been taken for playing.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of characters that can still be removed
+     */
+    public int getUnsentCount() {
+        return count(bounds.get());
+    }
+
+    /**
+     * Gives the number of characters played completely since the keyer was created.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of characters sent
+     */
+    public long getCharactersSent() {
+        return charactersSent;
+    }
+
+    /**
+     * Gives the most recent failure to play a character. Characters that fail,
+     * such as those that the symbol set cannot encode, are skipped.
+     * @version 1.1
+     * @since 1.1
+     * @return the last exception thrown while playing, or null if none has been
+     */
+    public Exception getLastFailure() {
+        return lastFailure;
+    }
+
+    private int take() {
+        while (true) {
+            long b = bounds.get();
+            int head = head(b);
+            if (head == tail(b)) {
+                return -1;
+            }
+            char c = buffer[head & mask];
+            // fails if the character was removed by a backspace in the meantime
+            if (bounds.compareAndSet(b, pack(head + 1, tail(b), stamp(b)))) {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Starts the thread that plays typed characters.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public synchronized void open() {
+        if (mayRun) return;
+        mayRun = true;
+        // nothing has been sent yet, so nothing needs to be waited for before the first character
+        lastSymbolEnd = System.nanoTime();
+        pendingGap = 0;
+        Thread thread = new Thread(this::playUntilClosed, "Morse live keyer");
+        thread.setDaemon(true);
+        playingThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Stops the playing thread once it finishes the character it is playing, and
+     * waits for it to stop. Characters still in the buffer are discarded.
+     * @version 1.1
+     * @since 1.1
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    @Override
+    public synchronized void close() throws InterruptedException {
+        if (!mayRun) return;
+        mayRun = false;
+        LockSupport.unpark(playingThread);
+        playingThread.join();
+        long b;
+        do {
+            b = bounds.get();
+        } while (!bounds.compareAndSet(b, pack(tail(b), tail(b), stamp(b) + 1)));
+    }
+
+    private void playUntilClosed() {
+        while (mayRun) {
+            int c = take();
+            if (c < 0) {
+                LockSupport.park(this);
+            } else {
+                play((char) c);
+            }
+        }
+    }
+
+    private void play(char c) {
+        TimingSnapshot timing = player.getTimingPlan().getTiming();
+        if (Character.isWhitespace(c)) {
+            // a word gap replaces the letter gap after a symbol but follows another word gap in full
+            long wordGap = timing.getNanos(ElementType.WORD_GAP);
+            pendingGap = pendingGap == timing.getNanos(ElementType.LETTER_GAP) ? wordGap : pendingGap + wordGap;
+            charactersSent++;
+            return;
+        }
+        try {
+            long wait = lastSymbolEnd + pendingGap - System.nanoTime();
+            if (wait > 0) {
+                player.playSilence(Duration.ofNanos(wait));
+            }
+            player.playSymbol(c);
+            pendingGap = timing.getNanos(ElementType.LETTER_GAP);
+            charactersSent++;
+        } catch (Exception ex) {
+            lastFailure = ex;
+        }
+        lastSymbolEnd = System.nanoTime();
+    }
+}
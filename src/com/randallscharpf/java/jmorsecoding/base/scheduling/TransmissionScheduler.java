@@ -0,0 +1,312 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.scheduling;
+
+import com.randallscharpf.java.jmorsecoding.base.MorsePlayer;
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Openable;
+import com.randallscharpf.java.jmorsecoding.base.timelines.Timeline;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A serializing queue of messages for one player. Messages can be submitted from
+ * any number of threads and are played one at a time by a single thread owned by
+ * the scheduler, so the transitions of different messages never interleave.
+ * <br>
+ * Each message has a {@link Priority}. Waiting messages of a higher priority are
+ * always played first. When a message is submitted with a higher priority than
+ * the one being played, the one being played is interrupted at the next letter
+ * boundary, a word gap is inserted, and the urgent message is played; the
+ * interrupted message then resumes from the letter where it stopped, before any
+ * other message of its priority.
+ * <br>
+ * Submitting a message never blocks: messages are placed in lock-free queues, one
+ * per priority, from which the playing thread takes them. Once a player is given
+ * to a scheduler, it must not be used by any other code while the scheduler is open.
+ * @version 1.1
+ * @since 1.1
+ */
+public class TransmissionScheduler implements Openable {
+
+    /**
+     * The classes of traffic that a scheduler distinguishes, from lowest to highest.
+     * @version 1.1
+     * @since 1.1
+     */
+    public static enum Priority {
+        /**
+         * Traffic that may wait for everything else, such as periodic identification.
+         * @version 1.1
+         * @since 1.1
+         */
+        ROUTINE,
+        /**
+         * Ordinary traffic, such as telemetry.
+         * @version 1.1
+         * @since 1.1
+         */
+        NORMAL,
+        /**
+         * Traffic that interrupts all other traffic, such as alerts.
+         * @version 1.1
+         * @since 1.1
+         */
+        URGENT
+    }
+
+    /**
+     * A message submitted to a scheduler. Gives access to the progress and outcome
+     * of its transmission.
+     * @version 1.1
+     * @since 1.1
+     */
+    public static final class Transmission {
+        private final String message;
+        private final Priority priority;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private volatile int charactersSent;
+        // accessed only by the playing thread
+        private Timeline timeline;
+        private boolean started;
+
+        private Transmission(String message, Priority priority) {
+            this.message = message;
+            this.priority = priority;
+        }
+
+        /**
+         * Gives the text of the message.
+         * @version 1.1
+         * @since 1.1
+         * @return the message as submitted
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Gives the priority with which the message was submitted.
+         * @version 1.1
+         * @since 1.1
+         * @return the priority of the message
+         */
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /**
+         * Gives the number of characters of the message played so far.
+         * @version 1.1
+         * @since 1.1
+         * @return the count of characters that have been played completely
+         */
+        public int getCharactersSent() {
+            return charactersSent;
+        }
+
+        /**
+         * Gives a future that completes when the whole message has been played. It
+         * completes exceptionally if the message cannot be encoded or playing it
+         * fails, and is cancelled if the message is cancelled or the scheduler is
+         * closed before the message is finished.
+         * @version 1.1
+         * @since 1.1
+         * @return the completion of this transmission
+         */
+        public CompletableFuture<Void> getCompletion() {
+            return completion;
+        }
+
+        /**
+         * Cancels the message. If it is being played, it stops at the next letter
+         * boundary; if it is waiting, it is discarded when it would be played.
+         * @version 1.1
+         * @since 1.1
+         * @return true if the message had not already finished
+         */
+        public boolean cancel() {
+            return completion.cancel(false);
+        }
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final MorsePlayer player;
+    private final ConcurrentLinkedQueue<Transmission>[] waiting;
+    // interrupted messages, accessed only by the playing thread
+    private final ArrayDeque<Transmission>[] interrupted;
+    // read by submitters without locking, so that none of them can miss waking the thread
+    private volatile Thread playingThread;
+    private volatile boolean mayRun;
+
+    /**
+     * Creates a scheduler that plays messages with a player. No messages are
+     * played until the scheduler is opened.
+     * @version 1.1
+     * @since 1.1
+     * @param player the player with which to play all messages
+     */
+    public TransmissionScheduler(MorsePlayer player) {
+        this.player = player;
+        @SuppressWarnings("unchecked")
+        ConcurrentLinkedQueue<Transmission>[] waitingQueues =
+                (ConcurrentLinkedQueue<Transmission>[]) new ConcurrentLinkedQueue<?>[PRIORITIES.length];
+        @SuppressWarnings("unchecked")
+        ArrayDeque<Transmission>[] interruptedQueues =
+                (ArrayDeque<Transmission>[]) new ArrayDeque<?>[PRIORITIES.length];
+        this.waiting = waitingQueues;
+        this.interrupted = interruptedQueues;
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            waiting[i] = new ConcurrentLinkedQueue<>();
+            interrupted[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Adds a message to the queue for its priority. This method never blocks and
+     * may be called from any thread. Messages submitted while the scheduler is
+     * not open wait until it is opened.
+     * @version 1.1
+     * @since 1.1
+     * @param message the text to play
+     * @param priority the class of traffic to which the message belongs
+     * @return a handle for the progress and outcome of the transmission
+     */
+    public Transmission submit(String message, Priority priority) {
+        Transmission t = new Transmission(message, priority);
+        waiting[priority.ordinal()].offer(t);
+        Thread thread = playingThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        return t;
+    }
+
+    /**
+     * Starts the thread that plays submitted messages.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public synchronized void open() {
+        if (mayRun) return;
+        mayRun = true;
+        Thread thread = new Thread(this::playUntilClosed, "Morse transmission scheduler");
+        thread.setDaemon(true);
+        playingThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Stops the playing thread once it finishes the letter it is playing, and
+     * waits for it to stop. Messages that have not been finished are cancelled.
+     * @version 1.1
+     * @since 1.1
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    @Override
+    public synchronized void close() throws InterruptedException {
+        if (!mayRun) return;
+        mayRun = false;
+        LockSupport.unpark(playingThread);
+        playingThread.join();
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            for (Transmission t : interrupted[i]) {
+                t.cancel();
+            }
+            interrupted[i].clear();
+            Transmission t;
+            while ((t = waiting[i].poll()) != null) {
+                t.cancel();
+            }
+        }
+    }
+
+    private void playUntilClosed() {
+        while (mayRun) {
+            Transmission t = next();
+            if (t == null) {
+                LockSupport.park(this);
+            } else {
+                play(t);
+            }
+        }
+    }
+
+    private Transmission next() {
+        for (int i = PRIORITIES.length - 1; i >= 0; i--) {
+            Transmission t = interrupted[i].poll();
+            if (t == null) {
+                t = waiting[i].poll();
+            }
+            if (t != null) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    private boolean higherPriorityWaiting(Priority priority) {
+        for (int i = PRIORITIES.length - 1; i > priority.ordinal(); i--) {
+            if (!waiting[i].isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void play(Transmission t) {
+        try {
+            if (t.timeline == null) {
+                t.timeline = player.compile(t.message);
+            }
+            int count = t.timeline.getCharacterCount();
+            while (t.charactersSent < count) {
+                if (t.completion.isDone()) {
+                    return;
+                }
+                if (!mayRun) {
+                    t.cancel();
+                    return;
+                }
+                if (t.started && higherPriorityWaiting(t.priority)) {
+                    interrupted[t.priority.ordinal()].push(t);
+                    // keep the interrupted letter from running into the urgent message
+                    player.playSilence(player.getTimingPlan().getTiming().timeForElementType(ElementType.WORD_GAP));
+                    return;
+                }
+                player.playCharacters(t.timeline, t.charactersSent, t.charactersSent + 1);
+                t.started = true;
+                t.charactersSent++;
+            }
+            player.countMessage();
+            t.completion.complete(null);
+        } catch (Exception ex) {
+            t.completion.completeExceptionally(ex);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * Sharing of one output among many sources of messages. Provides schedulers that
+ * accept messages from any number of threads and play them one at a time, in an
+ * order determined by their priorities.
+ * @since 1.1
+ */
+package com.randallscharpf.java.jmorsecoding.base.scheduling;
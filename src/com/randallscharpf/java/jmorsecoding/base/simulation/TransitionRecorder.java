@@ -0,0 +1,251 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.simulation;
+
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Delayer;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.TimelineSink;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * A state setter that records each change of state against a
+ * {@link VirtualClock}. A call that sets the state it is already in is not a
+ * transition and is not recorded.
+ * <br>
+ * A recorder is also a delayer and a {@link TimelineSink} advancing the same
+ * clock, so it can be given to a
+ * {@link com.randallscharpf.java.jmorsecoding.base.MorsePlayer} as both state
+ * setter and delayer. The player then hands it whole timelines, which are
+ * recorded in a single loop without any per-element calls, allowing millions of
+ * transitions to be simulated each second. Instances of this class are not safe
+ * for use by multiple threads.
+ * @version 1.1
+ * @since 1.1
+ */
+public class TransitionRecorder implements OnOff, Delayer, TimelineSink {
+
+    private final VirtualClock clock;
+    private final boolean keepTransitions;
+    private boolean active;
+    private long[] times = new long[256];
+    private boolean[] states = new boolean[256];
+    private int size;
+    private long transitionCount;
+    private long activeNanos;
+    private long activeSince;
+
+    /**
+     * Creates a recorder that keeps every transition, with a clock of its own.
+     * @version 1.1
+     * @since 1.1
+     */
+    public TransitionRecorder() {
+        this(new VirtualClock(), true);
+    }
+
+    /**
+     * Creates a recorder against a given clock.
+     * @version 1.1
+     * @since 1.1
+     * @param clock the clock against which to record transitions and which to advance on each wait
+     * @param keepTransitions false to only count the transitions and total the time spent
+     * "on", which lets arbitrarily long simulations run in constant memory
+     */
+    public TransitionRecorder(VirtualClock clock, boolean keepTransitions) {
+        this.clock = clock;
+        this.keepTransitions = keepTransitions;
+    }
+
+    /**
+     * Gives the clock against which transitions are recorded.
+     * @version 1.1
+     * @since 1.1
+     * @return the clock given on creation
+     */
+    public VirtualClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Records a transition at the current time of the clock if the state changes.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void setActive(boolean active) {
+        transition(active, clock.nanos());
+    }
+
+    /**
+     * Advances the clock by the given time.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void wait(Duration time) {
+        clock.advance(time.toNanos());
+    }
+
+    /**
+     * Advances the clock by the given time.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void waitNanos(long nanos) {
+        clock.advance(nanos);
+    }
+
+    /**
+     * Records the transitions of a batch, advancing the clock by the duration of
+     * each in turn.
+     * @version 1.1
+     * @since 1.1
+     * @throws IllegalArgumentException if any duration is negative, in which case
+     * nothing in the batch is recorded
+     */
+    @Override
+    public void play(boolean[] states, long[] nanos, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (nanos[i] < 0) {
+                throw new IllegalArgumentException("Clock cannot be moved backwards.");
+            }
+        }
+        long now = clock.nanos();
+        long start = now;
+        for (int i = offset; i < offset + length; i++) {
+            transition(states[i], now);
+            now += nanos[i];
+        }
+        clock.advance(now - start);
+    }
+
+    private void transition(boolean nowActive, long time) {
+        if (nowActive == active) {
+            return;
+        }
+        if (active) {
+            activeNanos += time - activeSince;
+        } else {
+            activeSince = time;
+        }
+        active = nowActive;
+        transitionCount++;
+        if (keepTransitions) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                states = Arrays.copyOf(states, size * 2);
+            }
+            times[size] = time;
+            states[size] = nowActive;
+            size++;
+        }
+    }
+
+    /**
+     * Gives the number of transitions recorded, whether or not they are kept.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of changes of state
+     */
+    public long getTransitionCount() {
+        return transitionCount;
+    }
+
+    /**
+     * Gives the number of transitions kept for inspection.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of transitions that can be read back, or zero if transitions are not kept
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gives the time of a kept transition.
+     * @version 1.1
+     * @since 1.1
+     * @param index the position of the transition, from zero for the first kept
+     * @return the reading of the clock when the state changed, in nanoseconds
+     * @throws IndexOutOfBoundsException if there is no such transition
+     */
+    public long getTime(int index) {
+        checkIndex(index);
+        return times[index];
+    }
+
+    /**
+     * Gives the state entered at a kept transition.
+     * @version 1.1
+     * @since 1.1
+     * @param index the position of the transition, from zero for the first kept
+     * @return true if the state changed to "on"
+     * @throws IndexOutOfBoundsException if there is no such transition
+     */
+    public boolean getState(int index) {
+        checkIndex(index);
+        return states[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No transition " + index + " among " + size + ".");
+        }
+    }
+
+    /**
+     * Gives the times of all kept transitions.
+     * @version 1.1
+     * @since 1.1
+     * @return a new array of the clock readings, in nanoseconds, in order of recording
+     */
+    public long[] getTimes() {
+        return Arrays.copyOf(times, size);
+    }
+
+    /**
+     * Gives the total time spent "on" up to the current time of the clock.
+     * @version 1.1
+     * @since 1.1
+     * @return the time in the active state, in nanoseconds
+     */
+    public long getActiveNanos() {
+        return active ? activeNanos + clock.nanos() - activeSince : activeNanos;
+    }
+
+    /**
+     * Discards the recorded transitions and totals. The clock and the current
+     * state are unaffected.
+     * @version 1.1
+     * @since 1.1
+     */
+    public void clear() {
+        size = 0;
+        transitionCount = 0;
+        activeNanos = 0;
+        activeSince = clock.nanos();
+    }
+}
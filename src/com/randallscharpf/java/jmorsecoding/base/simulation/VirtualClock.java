@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.simulation;
+
+import java.time.Duration;
+
+/**
+ * A clock that reads in nanoseconds and moves forward only when advanced. Any
+ * number of delayers and recorders can share a clock to simulate outputs that
+ * are driven in step with one another. Instances of this class are not safe for
+ * use by multiple threads.
+ * @version 1.1
+ * @since 1.1
+ */
+public class VirtualClock {
+
+    private long now;
+
+    /**
+     * Creates a clock reading zero.
+     * @version 1.1
+     * @since 1.1
+     */
+    public VirtualClock() {
+        this(0);
+    }
+
+    /**
+     * Creates a clock with the given reading.
+     * @version 1.1
+     * @since 1.1
+     * @param start the initial reading in nanoseconds
+     */
+    public VirtualClock(long start) {
+        this.now = start;
+    }
+
+    /**
+     * Gives the current reading of the clock.
+     * @version 1.1
+     * @since 1.1
+     * @return the simulated time in nanoseconds
+     */
+    public long nanos() {
+        return now;
+    }
+
+    /**
+     * Moves the clock forward.
+     * @version 1.1
+     * @since 1.1
+     * @param nanos the number of nanoseconds by which to advance
+     * @throws IllegalArgumentException if the amount is negative
+     */
+    public void advance(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("Clock cannot be moved backwards.");
+        }
+        now += nanos;
+    }
+
+    /**
+     * Moves the clock forward.
+     * @version 1.1
+     * @since 1.1
+     * @param time the amount by which to advance
+     * @throws IllegalArgumentException if the amount is negative
+     */
+    public void advance(Duration time) {
+        advance(time.toNanos());
+    }
+}
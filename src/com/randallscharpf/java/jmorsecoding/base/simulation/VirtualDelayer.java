@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.simulation;
+
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Delayer;
+import java.time.Duration;
+
+/**
+ * A delayer that waits in simulated time. Each wait advances a
+ * {@link VirtualClock} by exactly the requested time and returns at once.
+ * <br>
+ * When used in a {@link com.randallscharpf.java.jmorsecoding.base.MorsePlayer}
+ * with a state setter that is not a {@link TransitionRecorder}, latency
+ * compensation, which is off unless turned on, should be left off on the
+ * player, since the compensator measures its state setter in real time.
+ * @version 1.1
+ * @since 1.1
+ */
+public class VirtualDelayer implements Delayer {
+
+    private final VirtualClock clock;
+
+    /**
+     * Creates a delayer that advances a clock.
+     * @version 1.1
+     * @since 1.1
+     * @param clock the clock to advance on each wait
+     */
+    public VirtualDelayer(VirtualClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Gives the clock advanced by this delayer.
+     * @version 1.1
+     * @since 1.1
+     * @return the clock given on creation
+     */
+    public VirtualClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Advances the clock by the given time.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void wait(Duration time) {
+        clock.advance(time.toNanos());
+    }
+
+    /**
+     * Advances the clock by the given time.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void waitNanos(long nanos) {
+        clock.advance(nanos);
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * Playback in simulated time. Provides a clock that advances only when told to,
+ * along with a delayer and a recording state setter driven by it, so that real
+ * players can be run through whole transmissions instantly while the exact time
+ * of every transition is kept.
+ * @since 1.1
+ */
+package com.randallscharpf.java.jmorsecoding.base.simulation;
@@ -0,0 +1,322 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.symbolsets;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.timings.MorseTiming;
+import com.randallscharpf.java.jmorsecoding.base.timings.TimingSnapshot;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Computes how long messages take to transmit without playing them. For every
+ * character of a symbol set, the number of dots, dashes, element gaps, and
+ * embedded letter gaps in its symbol is precomputed, so estimating a message
+ * takes a single pass over its characters that performs no allocation. The
+ * result is exact: it is the sum of the durations that playing the unit from
+ * {@link MorseSymbolSet#getPlayableForString(String)} would wait for.
+ * <br>
+ * Symbol sets derived from {@link SymbolSetBase} are supported for all of their
+ * characters. For other symbol sets, only characters up to U+00FF are
+ * supported. Instances of this class are immutable and may be shared by
+ * multiple threads.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class AirtimeEstimator {
+
+    // counts of each element type are packed into the bits of a long, indexed by ordinal
+    private static final int BITS = 12;
+    private static final long MASK = (1L << BITS) - 1;
+    private static final long UNKNOWN = -1;
+    private static final int LATIN1 = 256;
+    private static final ElementType[] TYPES = ElementType.values();
+
+    private final SymbolSetBase base;
+    private final long[] latin1 = new long[LATIN1];
+    private final char[] otherChars;
+    private final long[] otherCounts;
+
+    /**
+     * Creates an estimator for a symbol set. The counts for all supported
+     * characters are computed immediately.
+     * @version 1.1
+     * @since 1.1
+     * @param symbols the symbol set with which messages are encoded
+     */
+    public AirtimeEstimator(MorseSymbolSet symbols) {
+        Arrays.fill(latin1, UNKNOWN);
+        if (symbols instanceof SymbolSetBase) {
+            base = (SymbolSetBase) symbols;
+            Map<Character, Long> counts = new HashMap<>();
+            for (SymbolSetBase.MorseSymbol symbol : base.getSymbols()) {
+                if (symbol.getCharOrProsign().isChar()) {
+                    long packed = 0;
+                    for (ElementType type : TYPES) {
+                        packed |= pack(type, symbol.getElementCount(type));
+                    }
+                    counts.put(base.standardizeChar(symbol.getCharOrProsign().getChar()), packed);
+                }
+            }
+            for (char c = 0; c < LATIN1; c++) {
+                Long packed = counts.get(base.standardizeChar(c));
+                if (packed != null && !Character.isWhitespace(c)) {
+                    latin1[c] = packed;
+                }
+            }
+            otherChars = new char[counts.size()];
+            int i = 0;
+            for (char c : counts.keySet()) {
+                otherChars[i++] = c;
+            }
+            Arrays.sort(otherChars);
+            otherCounts = new long[otherChars.length];
+            for (i = 0; i < otherChars.length; i++) {
+                otherCounts[i] = counts.get(otherChars[i]);
+            }
+        } else {
+            base = null;
+            SymbolTable table = new SymbolTable(symbols);
+            for (char c = 0; c < LATIN1; c++) {
+                if (!Character.isWhitespace(c) && table.canEncode(c)) {
+                    long packed = 0;
+                    for (ElementType type : table.getElements(c)) {
+                        packed += pack(type, 1);
+                    }
+                    latin1[c] = packed;
+                }
+            }
+            otherChars = new char[0];
+            otherCounts = new long[0];
+        }
+    }
+
+    private static long pack(ElementType type, long count) {
+        if (count > MASK) {
+            throw new IllegalArgumentException("Symbol has too many elements of type " + type + ".");
+        }
+        return count << (BITS * type.ordinal());
+    }
+
+    private static int unpack(long packed, int ordinal) {
+        return (int) ((packed >>> (BITS * ordinal)) & MASK);
+    }
+
+    private long checkedCountsFor(char c) {
+        long packed = countsFor(c);
+        if (packed == UNKNOWN) {
+            throw new IllegalArgumentException("No morse encoding for the character "
+                    + c + " can be found in the current character set!");
+        }
+        return packed;
+    }
+
+    private long countsFor(char c) {
+        if (c < LATIN1) {
+            return latin1[c];
+        }
+        if (base == null) {
+            return UNKNOWN;
+        }
+        int i = Arrays.binarySearch(otherChars, base.standardizeChar(c));
+        return i < 0 ? UNKNOWN : otherCounts[i];
+    }
+
+    /**
+     * Counts the elements of each type that a message consists of, adding them to
+     * an array indexed by the ordinal of the element type. The spacing of the
+     * message is that of {@link MorseSymbolSet#getPlayableForString(String)}.
+     * This method performs no allocation.
+     * @version 1.1
+     * @since 1.1
+     * @param message the characters to count
+     * @param counts an array of at least <code>ElementType.values().length</code>
+     * entries, to which the counts are added
+     * @throws IllegalArgumentException if the symbol set has no encoding for some character
+     */
+    public void countElements(CharSequence message, long[] counts) {
+        boolean needsGap = false;
+        int length = message.length();
+        for (int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            if (Character.isWhitespace(c)) {
+                counts[ElementType.WORD_GAP.ordinal()]++;
+                needsGap = false;
+                continue;
+            }
+            long packed = checkedCountsFor(c);
+            if (needsGap) {
+                counts[ElementType.LETTER_GAP.ordinal()]++;
+            }
+            for (int t = 0; t < TYPES.length; t++) {
+                counts[t] += unpack(packed, t);
+            }
+            needsGap = true;
+        }
+        if (needsGap) {
+            counts[ElementType.WORD_GAP.ordinal()]++;
+        }
+    }
+
+    /**
+     * Gives the exact time taken to transmit a message with a timing, in nanoseconds.
+     * The elements of each type are counted in a single pass over the characters
+     * and then multiplied by the durations in a snapshot of the timing. Nothing is
+     * allocated for timings that keep their snapshots, as the timings of this
+     * library do.
+     * @version 1.1
+     * @since 1.1
+     * @param message the characters to estimate
+     * @param timing the timing with which the message would be played
+     * @return the transmit duration of the message in nanoseconds
+     * @throws IllegalArgumentException if the symbol set has no encoding for some character
+     */
+    public long estimateNanos(CharSequence message, MorseTiming timing) {
+        long dots = 0;
+        long dashes = 0;
+        long elementGaps = 0;
+        long letterGaps = 0;
+        long wordGaps = 0;
+        boolean needsGap = false;
+        int length = message.length();
+        for (int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            if (Character.isWhitespace(c)) {
+                wordGaps++;
+                needsGap = false;
+                continue;
+            }
+            long packed = checkedCountsFor(c);
+            if (needsGap) {
+                letterGaps++;
+            }
+            dots += unpack(packed, ElementType.DOT.ordinal());
+            dashes += unpack(packed, ElementType.DASH.ordinal());
+            elementGaps += unpack(packed, ElementType.ELEMENT_GAP.ordinal());
+            letterGaps += unpack(packed, ElementType.LETTER_GAP.ordinal());
+            wordGaps += unpack(packed, ElementType.WORD_GAP.ordinal());
+            needsGap = true;
+        }
+        if (needsGap) {
+            wordGaps++;
+        }
+        TimingSnapshot snapshot = timing.snapshot();
+        return dots * snapshot.getNanos(ElementType.DOT) + dashes * snapshot.getNanos(ElementType.DASH)
+                + elementGaps * snapshot.getNanos(ElementType.ELEMENT_GAP)
+                + letterGaps * snapshot.getNanos(ElementType.LETTER_GAP)
+                + wordGaps * snapshot.getNanos(ElementType.WORD_GAP);
+    }
+
+    /**
+     * Gives the exact time taken to transmit a message with a timing.
+     * @version 1.1
+     * @since 1.1
+     * @param message the characters to estimate
+     * @param timing the timing with which the message would be played
+     * @return the transmit duration of the message
+     * @throws IllegalArgumentException if the symbol set has no encoding for some character
+     */
+    public Duration estimate(CharSequence message, MorseTiming timing) {
+        return Duration.ofNanos(estimateNanos(message, timing));
+    }
+
+    /**
+     * Gives the exact time taken to transmit each of many messages with a timing,
+     * in nanoseconds. The messages are estimated in parallel on the common
+     * fork-join pool, which pays off for large numbers of queued messages.
+     * @version 1.1
+     * @since 1.1
+     * @param messages the messages to estimate
+     * @param timing the timing with which the messages would be played
+     * @return the transmit duration of each message in nanoseconds, in the order of the list
+     * @throws IllegalArgumentException if the symbol set has no encoding for some
+     * character of some message
+     */
+    public long[] estimateAllNanos(List<? extends CharSequence> messages, MorseTiming timing) {
+        long[] nanos = nanosPerType(timing);
+        long[] result = new long[messages.size()];
+        IntStream.range(0, result.length).parallel()
+                .forEach((i) -> result[i] = estimateNanos(messages.get(i), nanos));
+        return result;
+    }
+
+    /**
+     * Gives the total time taken to transmit many messages one after another with
+     * a timing, in nanoseconds. The messages are estimated in parallel on the
+     * common fork-join pool.
+     * @version 1.1
+     * @since 1.1
+     * @param messages the messages to estimate
+     * @param timing the timing with which the messages would be played
+     * @return the sum of the transmit durations of the messages in nanoseconds
+     * @throws IllegalArgumentException if the symbol set has no encoding for some
+     * character of some message
+     */
+    public long estimateTotalNanos(List<? extends CharSequence> messages, MorseTiming timing) {
+        long[] nanos = nanosPerType(timing);
+        return messages.parallelStream().mapToLong((m) -> estimateNanos(m, nanos)).sum();
+    }
+
+    private static long[] nanosPerType(MorseTiming timing) {
+        TimingSnapshot snapshot = timing.snapshot();
+        long[] nanos = new long[TYPES.length];
+        for (ElementType type : TYPES) {
+            nanos[type.ordinal()] = snapshot.getNanos(type);
+        }
+        return nanos;
+    }
+
+    // same pass as countElements, accumulating durations from a table shared by every message of a batch
+    private long estimateNanos(CharSequence message, long[] nanos) {
+        long letterGap = nanos[ElementType.LETTER_GAP.ordinal()];
+        long wordGap = nanos[ElementType.WORD_GAP.ordinal()];
+        long total = 0;
+        boolean needsGap = false;
+        int length = message.length();
+        for (int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            if (Character.isWhitespace(c)) {
+                total += wordGap;
+                needsGap = false;
+                continue;
+            }
+            long packed = checkedCountsFor(c);
+            if (needsGap) {
+                total += letterGap;
+            }
+            for (int t = 0; t < nanos.length; t++) {
+                total += unpack(packed, t) * nanos[t];
+            }
+            needsGap = true;
+        }
+        if (needsGap) {
+            total += wordGap;
+        }
+        return total;
+    }
+}
@@ -163,6 +163,7 @@ public final class ExtendedInternationalSymbolSet extends SymbolSetBase {
         
         private final CharOrProsign cop;
         private final Element[] elements;
+        private final int[] elementCounts = new int[ElementType.values().length];
         
         private ExtendedInternationalSymbol(char myChar, ElementType... elementTypes) {
             this(new CharOrProsign(myChar), elementTypes);
@@ -186,6 +187,9 @@ public final class ExtendedInternationalSymbolSet extends SymbolSetBase {
                 elementsTmp.add(new Element(ElementType.WORD_GAP));
             }
             this.elements = elementsTmp.toArray(new Element[0]);
+            for (Element e : elements) {
+                elementCounts[e.getType().ordinal()]++;
+            }
         }
         
         /**
@@ -209,5 +213,15 @@ public final class ExtendedInternationalSymbolSet extends SymbolSetBase {
         public CharOrProsign getCharOrProsign() {
             return cop;
         }
+
+        /**
+         * {@inheritDoc}
+         * @version 1.1
+         * @since 1.1
+         */
+        @Override
+        public int getElementCount(ElementType type) {
+            return elementCounts[type.ordinal()];
+        }
     }
 }
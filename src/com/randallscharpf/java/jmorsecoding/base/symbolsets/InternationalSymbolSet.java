@@ -140,6 +140,7 @@ public final class InternationalSymbolSet extends SymbolSetBase {
         
         private final CharOrProsign cop;
         private final Element[] elements;
+        private final int[] elementCounts = new int[ElementType.values().length];
         
         private InternationalSymbol(char myChar, ElementType... elementTypes) {
             this(new CharOrProsign(myChar), elementTypes);
@@ -163,6 +164,9 @@ public final class InternationalSymbolSet extends SymbolSetBase {
                 elementsTmp.add(new Element(ElementType.WORD_GAP));
             }
             this.elements = elementsTmp.toArray(new Element[0]);
+            for (Element e : elements) {
+                elementCounts[e.getType().ordinal()]++;
+            }
         }
         
         /**
@@ -186,5 +190,15 @@ public final class InternationalSymbolSet extends SymbolSetBase {
         public CharOrProsign getCharOrProsign() {
             return cop;
         }
+
+        /**
+         * {@inheritDoc}
+         * @version 1.1
+         * @since 1.1
+         */
+        @Override
+        public int getElementCount(ElementType type) {
+            return elementCounts[type.ordinal()];
+        }
     }
 }
@@ -66,4 +66,12 @@ public interface MorseSymbolSet {
      * @return an array of the names of all prosigns supported by this symbol set
      */
     public String[] getAvailableProsigns();
+    /**
+     * Builds any lookup structures that this set would otherwise build on first
+     * use, so that the first message played is not delayed by them. Calling this
+     * method is never required. The default implementation does nothing.
+     * @version 1.1
+     * @since 1.1
+     */
+    public default void preload() {}
 }
@@ -23,6 +23,9 @@
  */
 package com.randallscharpf.java.jmorsecoding.base.symbolsets;
 
+import com.randallscharpf.java.jmorsecoding.base.management.FlightEventType;
+import com.randallscharpf.java.jmorsecoding.base.management.MBeans;
+import com.randallscharpf.java.jmorsecoding.base.management.SymbolSetMXBean;
 import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Delayer;
 import com.randallscharpf.java.jmorsecoding.base.morseunits.Element;
 import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
@@ -33,6 +36,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * A concrete implementation of a {@link MorseSymbolSet} implemented using an
@@ -43,8 +49,11 @@ import java.util.Map;
  * Each time an implemented method is called on a new class, a cache is internally
  * built in O(S) time, where S is the number of elements in the <code>enum</code>
  * linked. The total size of stored caches is also O(S). Subsequent operations are
- * much faster and at most linear in the size of the input to the function.
- * @version 1.0
+ * much faster and at most linear in the size of the input to the function. All
+ * of the caches can be built ahead of time with {@link #preload()}. Each message
+ * compiled by {@link #getPlayableForString(String)} is recorded by Java Flight
+ * Recorder as a <code>MessageCompilation</code> event.
+ * @version 1.1
  * @since 1.0
  */
 public abstract class SymbolSetBase implements MorseSymbolSet {
@@ -62,6 +71,27 @@ public abstract class SymbolSetBase implements MorseSymbolSet {
          * @return the written translation of the symbol
          */
         public CharOrProsign getCharOrProsign();
+
+        /**
+         * Gives the number of elements of a type that are played when this symbol
+         * is played, including the element gaps between its dots and dashes and
+         * any letter or word gaps that form part of the symbol. The default
+         * implementation counts the elements by playing the symbol, so symbols
+         * should override it to give precomputed counts.
+         * @version 1.1
+         * @since 1.1
+         * @param type the type of element to count
+         * @return the number of elements of the type in this symbol
+         */
+        public default int getElementCount(ElementType type) {
+            int count = 0;
+            for (ElementType t : SymbolTable.elementsOf(this)) {
+                if (t == type) {
+                    count++;
+                }
+            }
+            return count;
+        }
     }
     
     /**
@@ -145,10 +175,21 @@ public abstract class SymbolSetBase implements MorseSymbolSet {
      */
     protected abstract Class<? extends Enum<? extends MorseSymbol>> getSymbolEnumClass();
 
+    /* package-private */ MorseSymbol[] getSymbols() {
+        return getSymbolEnumClass().getEnumConstants()[0].getDeclaringClass().getEnumConstants();
+    }
+
     private Class<? extends Enum<? extends MorseSymbol>> cacheEnumClass;
     private String[] cachedResult1 = null;
     private Map<String, PlayableMorseUnit> cachedResult2 = null;
     private Map<Character, PlayableMorseUnit> cachedResult3 = null;
+    private final LongAdder indexBuilds = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private static final FlightEventType COMPILATION = FlightEventType.define("MessageCompilation",
+            "Message Compilation", "A message was compiled into Morse Code by a symbol set", "Encoding", true,
+            FlightEventType.Field.of(String.class, "symbolSet", "Symbol Set"),
+            FlightEventType.Field.of(int.class, "characters", "Characters"),
+            FlightEventType.Field.of(boolean.class, "indexBuilt", "Index Built"));
 
     /**
      * {@inheritDoc}
@@ -159,8 +200,10 @@ public abstract class SymbolSetBase implements MorseSymbolSet {
     public String[] getAvailableProsigns() {
         Class<? extends Enum<? extends MorseSymbol>> c = getSymbolEnumClass();
         if (c == cacheEnumClass && cachedResult1 != null) {
+            cacheHits.increment();
             return cachedResult1;
         }
+        indexBuilds.increment();
         MorseSymbol[] symbols = c.getEnumConstants()[0].getDeclaringClass().getEnumConstants();
         int count = 0;
         for (MorseSymbol symbol : symbols) {
@@ -193,8 +236,10 @@ public abstract class SymbolSetBase implements MorseSymbolSet {
     public PlayableMorseUnit getPlayableForProsign(String prosignName) {
         Class<? extends Enum<? extends MorseSymbol>> c = getSymbolEnumClass();
         if (c == cacheEnumClass && cachedResult2 != null) {
+            cacheHits.increment();
             return cachedResult2.get(standardizeString(prosignName));
         }
+        indexBuilds.increment();
         cachedResult2 = new HashMap<>();
         MorseSymbol[] symbols = c.getEnumConstants()[0].getDeclaringClass().getEnumConstants();
         for (MorseSymbol symbol : symbols) {
@@ -222,10 +267,17 @@ public abstract class SymbolSetBase implements MorseSymbolSet {
      */
     @Override
     public PlayableMorseUnit getPlayableForString(String str) {
+        Object event = COMPILATION.begin();
         Class<? extends Enum<? extends MorseSymbol>> c = getSymbolEnumClass();
         if (c == cacheEnumClass && cachedResult3 != null) {
-            return buildStringFromChars(cachedResult3, str);
+            cacheHits.increment();
+            PlayableMorseUnit result = buildStringFromChars(cachedResult3, str);
+            if (event != null) {
+                COMPILATION.commit(event, getClass().getName(), str.length(), false);
+            }
+            return result;
         }
+        indexBuilds.increment();
         cachedResult3 = new HashMap<>();
         MorseSymbol[] symbols = c.getEnumConstants()[0].getDeclaringClass().getEnumConstants();
         for (MorseSymbol symbol : symbols) {
@@ -238,19 +290,86 @@ public abstract class SymbolSetBase implements MorseSymbolSet {
             cachedResult1 = null;
             cachedResult2 = null;
         }
-        return buildStringFromChars(cachedResult3, str);
+        PlayableMorseUnit result = buildStringFromChars(cachedResult3, str);
+        if (event != null) {
+            COMPILATION.commit(event, getClass().getName(), str.length(), true);
+        }
+        return result;
     }
     
+    /**
+     * Builds the caches for the prosign names, the prosigns, and the characters of
+     * the linked <code>enum</code>, each in O(S) time.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void preload() {
+        String[] prosigns = getAvailableProsigns();
+        if (prosigns.length > 0) {
+            getPlayableForProsign(prosigns[0]);
+        }
+        getPlayableForString("");
+    }
+
+    /**
+     * Gives live counts of the index builds and cache hits of this set, as
+     * published over JMX by {@link #registerMBean(String)}. The counts may be
+     * read from any thread.
+     * @version 1.1
+     * @since 1.1
+     * @return a view of the counters of this set
+     */
+    public SymbolSetMXBean getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Publishes the counters of this set with the platform MBean server under the
+     * type SymbolSet and the given name. The registration keeps this set reachable
+     * until it is removed with {@link MBeans#unregister(ObjectName)}.
+     * @version 1.1
+     * @since 1.1
+     * @param name the name distinguishing this set from others
+     * @return the name under which the bean was registered
+     * @throws JMException if the name is malformed or already registered
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        return MBeans.register(metrics, SymbolSetMXBean.class, "SymbolSet", name);
+    }
+
+    private final SymbolSetMXBean metrics = new SymbolSetMXBean() {
+        @Override
+        public long getIndexBuilds() {
+            return indexBuilds.sum();
+        }
+
+        @Override
+        public long getCacheHits() {
+            return cacheHits.sum();
+        }
+
+        @Override
+        public int getSymbolCount() {
+            return getSymbols().length;
+        }
+    };
+
+    // elements are immutable, so every message shares the same gaps
+    private static final Element LETTER_GAP = new Element(ElementType.LETTER_GAP);
+    private static final Element WORD_GAP = new Element(ElementType.WORD_GAP);
+
     private PlayableMorseUnit buildStringFromChars(Map<Character, PlayableMorseUnit> lookup, String str) {
         List<PlayableMorseUnit> playables = new ArrayList<>(str.length());
         boolean needsGap = false;
-        for (Character c : str.toCharArray()) {
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
             if (Character.isWhitespace(c)) {
-                playables.add(new Element(ElementType.WORD_GAP));
+                playables.add(WORD_GAP);
                 needsGap = false;
             } else {
                 if (needsGap) {
-                    playables.add(new Element(ElementType.LETTER_GAP));
+                    playables.add(LETTER_GAP);
                 }
                 PlayableMorseUnit p = lookup.get(standardizeChar(c));
                 if (p == null) {
@@ -262,10 +381,12 @@ public abstract class SymbolSetBase implements MorseSymbolSet {
             }
         }
         if (needsGap) {
-            playables.add(new Element(ElementType.WORD_GAP));
+            playables.add(WORD_GAP);
         }
+        // an array is iterated without allocating, so the unit can be replayed without creating garbage
+        PlayableMorseUnit[] units = playables.toArray(new PlayableMorseUnit[0]);
         return (OnOff stateSetter, Delayer delayer, MorseTiming standard) -> {
-            for (PlayableMorseUnit p : playables) {
+            for (PlayableMorseUnit p : units) {
                 p.play(stateSetter, delayer, standard);
             }
         };
@@ -0,0 +1,193 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.symbolsets;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.morseunits.PlayableMorseUnit;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A flattened, per-character view of a {@link MorseSymbolSet}. Where the symbol
+ * set gives playable units, this table gives the sequence of element types that
+ * those units consist of, which is the form needed to store, measure, or re-time
+ * Morse Code without playing it.
+ * <br>
+ * The element types for each character are looked up from the symbol set the
+ * first time the character is requested and are cached afterwards, so each
+ * lookup after the first is O(1). Encoding a string is linear in its length.
+ * Instances of this class are not safe for use by multiple threads, since
+ * neither the cache nor the symbol sets provided with this library are.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class SymbolTable {
+
+    private static final ElementType[] UNKNOWN = new ElementType[0];
+
+    private final MorseSymbolSet symbols;
+    private final ElementType[][] latin1 = new ElementType[256][];
+    private final Map<Character, ElementType[]> others = new HashMap<>();
+
+    /**
+     * Creates a table that looks up characters in the given symbol set.
+     * @version 1.1
+     * @since 1.1
+     * @param symbols the symbol set from which to take element sequences
+     */
+    public SymbolTable(MorseSymbolSet symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Gives the symbol set from which this table was built.
+     * @version 1.1
+     * @since 1.1
+     * @return the symbol set backing this table
+     */
+    public MorseSymbolSet getSymbolSet() {
+        return symbols;
+    }
+
+    /**
+     * Gives the element types that make up the symbol for a character. The result
+     * includes the element gaps between the dots and dashes of the symbol and any
+     * letter gaps embedded in the symbol, but no gap after the symbol. The returned
+     * array is shared and must not be modified.
+     * @version 1.1
+     * @since 1.1
+     * @param c a non-whitespace character to look up
+     * @return the element types of the symbol for the character
+     * @throws IllegalArgumentException if the symbol set has no encoding for the character
+     */
+    public ElementType[] getElements(char c) {
+        ElementType[] elements = lookup(c);
+        if (elements == UNKNOWN) {
+            throw new IllegalArgumentException("No morse encoding for the character "
+                    + c + " can be found in the current character set!");
+        }
+        return elements;
+    }
+
+    /**
+     * Tells whether a character can be encoded by this table. Whitespace can always
+     * be encoded, as a word gap.
+     * @version 1.1
+     * @since 1.1
+     * @param c the character to check
+     * @return true if and only if encoding the character will not throw an exception
+     */
+    public boolean canEncode(char c) {
+        return Character.isWhitespace(c) || lookup(c) != UNKNOWN;
+    }
+
+    /**
+     * Gives the element types that a playable unit for a string would consist of.
+     * The sequence is exactly that of {@link MorseSymbolSet#getPlayableForString(String)}:
+     * symbols are separated by letter gaps, each whitespace character becomes a
+     * word gap, and the sequence is terminated by a word gap unless the string
+     * ends in whitespace.
+     * @version 1.1
+     * @since 1.1
+     * @param str the characters to encode
+     * @return the element types for the string, in order of playback
+     * @throws IllegalArgumentException if the symbol set has no encoding for some character
+     */
+    public ElementType[] encode(CharSequence str) {
+        List<ElementType> out = new ArrayList<>(str.length() * 8);
+        boolean needsGap = false;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (Character.isWhitespace(c)) {
+                out.add(ElementType.WORD_GAP);
+                needsGap = false;
+            } else {
+                if (needsGap) {
+                    out.add(ElementType.LETTER_GAP);
+                }
+                out.addAll(Arrays.asList(getElements(c)));
+                needsGap = true;
+            }
+        }
+        if (needsGap) {
+            out.add(ElementType.WORD_GAP);
+        }
+        return out.toArray(new ElementType[0]);
+    }
+
+    /**
+     * Gives the element types of which a playable unit consists. The unit is played
+     * with a timing that records each element type it is asked about and with a
+     * state setter and delayer that do nothing, so this works for any unit built
+     * from {@link com.randallscharpf.java.jmorsecoding.base.morseunits.Element}s.
+     * @version 1.1
+     * @since 1.1
+     * @param unit the unit whose elements should be listed
+     * @return the element types of the unit, in order of playback
+     */
+    public static ElementType[] elementsOf(PlayableMorseUnit unit) {
+        List<ElementType> out = new ArrayList<>();
+        try {
+            unit.play((active) -> {}, (time) -> {}, (type) -> {
+                out.add(type);
+                return Duration.ZERO;
+            });
+        } catch (Exception ex) {
+            // the state setter and delayer used here never throw
+            throw new IllegalStateException(ex);
+        }
+        return out.toArray(new ElementType[0]);
+    }
+
+    private ElementType[] lookup(char c) {
+        ElementType[] elements = c < latin1.length ? latin1[c] : others.get(c);
+        if (elements == null) {
+            elements = load(c);
+            if (c < latin1.length) {
+                latin1[c] = elements;
+            } else {
+                others.put(c, elements);
+            }
+        }
+        return elements;
+    }
+
+    private ElementType[] load(char c) {
+        if (Character.isWhitespace(c)) {
+            return UNKNOWN;
+        }
+        ElementType[] elements;
+        try {
+            elements = elementsOf(symbols.getPlayableForString(String.valueOf(c)));
+        } catch (IllegalArgumentException ex) {
+            return UNKNOWN;
+        }
+        // drop the word gap that terminates every string
+        return Arrays.copyOf(elements, elements.length - 1);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.synchronization;
+
+import java.time.Duration;
+
+/**
+ * How closely one node kept to the schedule of a synchronized playback. All
+ * times are measured by the node itself; the start error is relative to the
+ * agreed start time as converted to the node's clock with its offset estimate,
+ * which is uncertain by up to half the round trip delay.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class NodeReport {
+
+    private final String name;
+    private final long startErrorNanos;
+    private final long maxLatenessNanos;
+    private final long offsetNanos;
+    private final long roundTripNanos;
+
+    /* package-private */ NodeReport(String name, long startErrorNanos, long maxLatenessNanos, long offsetNanos,
+            long roundTripNanos) {
+        this.name = name;
+        this.startErrorNanos = startErrorNanos;
+        this.maxLatenessNanos = maxLatenessNanos;
+        this.offsetNanos = offsetNanos;
+        this.roundTripNanos = roundTripNanos;
+    }
+
+    /**
+     * Gives the name of the node.
+     * @version 1.1
+     * @since 1.1
+     * @return the name the node gave when it connected, or "coordinator"
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gives how late the node made its first transition.
+     * @version 1.1
+     * @since 1.1
+     * @return the time from the agreed start to the first transition
+     */
+    public Duration getStartError() {
+        return Duration.ofNanos(startErrorNanos);
+    }
+
+    /**
+     * Gives how late the node made its latest transition.
+     * @version 1.1
+     * @since 1.1
+     * @return the greatest time from the deadline of a transition to the transition
+     */
+    public Duration getMaxLateness() {
+        return Duration.ofNanos(maxLatenessNanos);
+    }
+
+    /**
+     * Gives the estimated offset of the coordinator clock from the node clock.
+     * @version 1.1
+     * @since 1.1
+     * @return the amount to add to a reading of the node clock to give the coordinator clock
+     */
+    public Duration getClockOffset() {
+        return Duration.ofNanos(offsetNanos);
+    }
+
+    /**
+     * Gives the round trip delay of the exchange from which the clock offset was
+     * estimated. The offset is accurate to within half of this delay.
+     * @version 1.1
+     * @since 1.1
+     * @return the network delay of the best clock exchange, or zero for the coordinator
+     */
+    public Duration getRoundTripDelay() {
+        return Duration.ofNanos(roundTripNanos);
+    }
+
+    /* package-private */ long startErrorNanos() {
+        return startErrorNanos;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": start error " + startErrorNanos + " ns, max lateness " + maxLatenessNanos
+                + " ns, offset " + offsetNanos + " ns, round trip " + roundTripNanos + " ns";
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.synchronization;
+
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Openable;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.PrecisionDelayer;
+import com.randallscharpf.java.jmorsecoding.base.timelines.Timeline;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The node that decides when synchronized messages are played. Followers connect
+ * to the coordinator over TCP, estimate the offset of their clocks to the
+ * coordinator's clock, and play each message the coordinator schedules at the
+ * same absolute time as the coordinator, which keys its own output too.
+ * <br>
+ * Every transition of a synchronized message is made at a deadline computed from
+ * the start time and the durations of the elements before it, so no node drifts
+ * from the others over a long message. Each node reports how late it was, from
+ * which the coordinator gives the skew between nodes.
+ * @version 1.1
+ * @since 1.1
+ */
+public class PlaybackCoordinator implements Openable {
+
+    /**
+     * One synchronized playback of a message, and the reports of the nodes that
+     * took part in it.
+     * @version 1.1
+     * @since 1.1
+     */
+    public static final class Session {
+        private final long startNanos;
+        private final int expectedReports;
+        private final List<NodeReport> reports = new ArrayList<>();
+
+        private Session(long startNanos, int expectedReports) {
+            this.startNanos = startNanos;
+            this.expectedReports = expectedReports;
+        }
+
+        // gives true once every node has reported
+        private synchronized boolean add(NodeReport report) {
+            reports.add(report);
+            notifyAll();
+            return reports.size() >= expectedReports;
+        }
+
+        /**
+         * Gives the number of nodes, including the coordinator, that were sent the
+         * message.
+         * @version 1.1
+         * @since 1.1
+         * @return the number of reports expected
+         */
+        public int getNodeCount() {
+            return expectedReports;
+        }
+
+        /**
+         * Gives the agreed start time.
+         * @version 1.1
+         * @since 1.1
+         * @return the value of <code>System.nanoTime()</code> on the coordinator at which the message starts
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        /**
+         * Waits until every node has reported or the time runs out. Reports are
+         * accepted until 64 later sessions have been started.
+         * @version 1.1
+         * @since 1.1
+         * @param timeout the longest time to wait
+         * @return the reports received so far, in order of arrival
+         * @throws InterruptedException if the calling thread is interrupted while waiting
+         */
+        public synchronized List<NodeReport> awaitReports(Duration timeout) throws InterruptedException {
+            long deadline = System.nanoTime() + timeout.toNanos();
+            while (reports.size() < expectedReports) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return new ArrayList<>(reports);
+        }
+
+        /**
+         * Gives the spread between the earliest and latest start among the nodes
+         * that have reported. Each start is known to within half the round trip
+         * delay of its node; see {@link #getSkewUncertainty()}.
+         * @version 1.1
+         * @since 1.1
+         * @return the difference between the greatest and least start error
+         */
+        public synchronized Duration getSkew() {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (NodeReport r : reports) {
+                min = Math.min(min, r.startErrorNanos());
+                max = Math.max(max, r.startErrorNanos());
+            }
+            return reports.isEmpty() ? Duration.ZERO : Duration.ofNanos(max - min);
+        }
+
+        /**
+         * Gives the bound on the error of {@link #getSkew()} due to uncertainty in
+         * the clock offsets of the nodes.
+         * @version 1.1
+         * @since 1.1
+         * @return the sum of the two greatest half round trip delays among the reports
+         */
+        public synchronized Duration getSkewUncertainty() {
+            long first = 0;
+            long second = 0;
+            for (NodeReport r : reports) {
+                long half = r.getRoundTripDelay().toNanos() / 2;
+                if (half > first) {
+                    second = first;
+                    first = half;
+                } else if (half > second) {
+                    second = half;
+                }
+            }
+            return Duration.ofNanos(first + second);
+        }
+    }
+
+    private final class Connection {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private volatile String name;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.name = socket.getRemoteSocketAddress().toString();
+        }
+
+        private void serve() {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                while (mayRun) {
+                    byte tag = in.readByte();
+                    long received = System.nanoTime();
+                    switch (tag) {
+                        case SyncProtocol.HELLO:
+                            name = in.readUTF();
+                            break;
+                        case SyncProtocol.TIME:
+                            long sent = in.readLong();
+                            synchronized (out) {
+                                out.writeByte(SyncProtocol.TIME);
+                                out.writeLong(sent);
+                                out.writeLong(received);
+                                out.writeLong(System.nanoTime());
+                                out.flush();
+                            }
+                            break;
+                        case SyncProtocol.REPORT:
+                            long id = in.readLong();
+                            NodeReport report = new NodeReport(name, in.readLong(), in.readLong(), in.readLong(),
+                                    in.readLong());
+                            Session session = sessions.get(id);
+                            if (session != null && session.add(report)) {
+                                sessions.remove(id);
+                            }
+                            break;
+                        default:
+                            throw new IOException("Unknown message " + tag + " from follower.");
+                    }
+                }
+            } catch (IOException ex) {
+                // the follower has gone away; it simply takes no part in later sessions
+            } finally {
+                drop();
+            }
+        }
+
+        private void send(long id, long startNanos, boolean[] states, long[] durations) {
+            try {
+                synchronized (out) {
+                    out.writeByte(SyncProtocol.PLAY);
+                    out.writeLong(id);
+                    out.writeLong(startNanos);
+                    out.writeInt(states.length);
+                    for (int i = 0; i < states.length; i++) {
+                        out.writeBoolean(states[i]);
+                        out.writeLong(durations[i]);
+                    }
+                    out.flush();
+                }
+            } catch (IOException ex) {
+                drop();
+            }
+        }
+
+        private void drop() {
+            connections.remove(this);
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // already closed
+            }
+        }
+    }
+
+    // a session is forgotten once this many later ones have started, so that followers which leave without
+    // reporting do not keep sessions forever
+    private static final int OPEN_SESSIONS = 64;
+
+    private final int requestedPort;
+    private final OnOff stateSetter;
+    private final PrecisionDelayer delayer = new PrecisionDelayer();
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private long lastSession;
+    private ServerSocket server;
+    private Thread acceptingThread;
+    private volatile boolean mayRun;
+
+    /**
+     * Creates a coordinator that keys the given output. Followers cannot connect
+     * until it is opened.
+     * @version 1.1
+     * @since 1.1
+     * @param port the TCP port on which to accept followers, or 0 for any free port
+     * @param stateSetter switch to control the indicator that creates dits and dahs
+     */
+    public PlaybackCoordinator(int port, OnOff stateSetter) {
+        this.requestedPort = port;
+        this.stateSetter = stateSetter;
+    }
+
+    /**
+     * Starts accepting followers on all local addresses.
+     * @version 1.1
+     * @since 1.1
+     * @throws IOException if the port cannot be bound
+     */
+    @Override
+    public synchronized void open() throws IOException {
+        if (mayRun) return;
+        server = new ServerSocket(requestedPort, 50, null);
+        mayRun = true;
+        acceptingThread = new Thread(this::acceptUntilClosed, "Morse playback coordinator");
+        acceptingThread.setDaemon(true);
+        acceptingThread.start();
+    }
+
+    /**
+     * Stops accepting followers and disconnects all of them.
+     * @version 1.1
+     * @since 1.1
+     * @throws IOException if the server socket cannot be closed
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the accepting thread
+     */
+    @Override
+    public synchronized void close() throws IOException, InterruptedException {
+        if (!mayRun) return;
+        mayRun = false;
+        server.close();
+        acceptingThread.join();
+        for (Connection c : connections) {
+            c.drop();
+        }
+    }
+
+    private void acceptUntilClosed() {
+        while (mayRun) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Connection c = new Connection(socket);
+                connections.add(c);
+                Thread serving = new Thread(c::serve, "Morse playback coordinator connection");
+                serving.setDaemon(true);
+                serving.start();
+            } catch (IOException ex) {
+                // the server socket was closed, or one connection failed to set up
+            }
+        }
+    }
+
+    /**
+     * Gives the port on which followers are accepted.
+     * @version 1.1
+     * @since 1.1
+     * @return the bound port, or -1 if the coordinator is not open
+     */
+    public int getPort() {
+        ServerSocket s = server;
+        return s == null || s.isClosed() ? -1 : s.getLocalPort();
+    }
+
+    /**
+     * Gives the number of followers currently connected.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of connected followers
+     */
+    public int getFollowerCount() {
+        return connections.size();
+    }
+
+    /**
+     * Plays a compiled message on every connected follower and on the output of
+     * the coordinator, all starting at the same moment. The message is sent to
+     * the followers immediately, and this method then blocks until the
+     * coordinator has played it. The lead time must be long enough for the
+     * message to reach every follower.
+     * @version 1.1
+     * @since 1.1
+     * @param timeline the message to play
+     * @param lead the time from now until the agreed start
+     * @return the session, to which the followers report once they have played the message
+     * @throws Exception if the output of the coordinator fails
+     */
+    public Session play(Timeline timeline, Duration lead) throws Exception {
+        int n = timeline.getElementCount();
+        boolean[] states = new boolean[n];
+        long[] durations = new long[n];
+        for (int i = 0; i < n; i++) {
+            states[i] = timeline.getElementType(i).activeDuringPlay;
+            durations[i] = timeline.getElementNanos(i);
+        }
+        long id;
+        synchronized (this) {
+            id = ++lastSession;
+        }
+        long start = System.nanoTime() + lead.toNanos();
+        List<Connection> recipients = new ArrayList<>(connections);
+        Session session = new Session(start, recipients.size() + 1);
+        sessions.put(id, session);
+        sessions.remove(id - OPEN_SESSIONS);
+        for (Connection c : recipients) {
+            c.send(id, start, states, durations);
+        }
+        long[] result = SyncProtocol.playAt(stateSetter, delayer, states, durations, start);
+        if (session.add(new NodeReport("coordinator", result[0], result[1], 0, 0))) {
+            sessions.remove(id);
+        }
+        return session;
+    }
+}
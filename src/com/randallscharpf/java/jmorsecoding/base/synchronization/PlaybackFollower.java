@@ -0,0 +1,296 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.synchronization;
+
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Openable;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.PrecisionDelayer;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A node that plays the messages scheduled by a {@link PlaybackCoordinator} in
+ * step with it. On opening, the follower exchanges timestamps with the
+ * coordinator several times to estimate the offset between their clocks, in the
+ * manner of NTP: of the recent exchanges, the one with the shortest round trip is
+ * trusted, since its offset is the least affected by network delay. The estimate
+ * is refreshed once a second while the follower is idle.
+ * <br>
+ * Each scheduled message is played against the agreed start time converted to
+ * the follower's clock, with every transition made at its own absolute
+ * deadline, and a {@link NodeReport} is sent back once it is finished.
+ * @version 1.1
+ * @since 1.1
+ */
+public class PlaybackFollower implements Openable {
+
+    private static final int SAMPLES = 8;
+    private static final long RESYNC_NANOS = 1_000_000_000L;
+
+    private static final class Schedule {
+        private final long id;
+        private final long start;
+        private final boolean[] states;
+        private final long[] durations;
+
+        private Schedule(long id, long start, boolean[] states, long[] durations) {
+            this.id = id;
+            this.start = start;
+            this.states = states;
+            this.durations = durations;
+        }
+    }
+
+    private final InetSocketAddress coordinator;
+    private final String name;
+    private final OnOff stateSetter;
+    private final PrecisionDelayer delayer = new PrecisionDelayer();
+    private final LinkedBlockingQueue<Schedule> schedules = new LinkedBlockingQueue<>();
+    // the latest clock exchanges, guarded by the offsets array
+    private final long[] sampleOffsets = new long[SAMPLES];
+    private final long[] sampleDelays = new long[SAMPLES];
+    private int sampleCount;
+    private volatile long offsetNanos;
+    private volatile long roundTripNanos;
+    private volatile long played;
+    private Socket socket;
+    private DataOutputStream out;
+    private Thread readingThread;
+    private Thread playingThread;
+    private volatile boolean mayRun;
+
+    /**
+     * Creates a follower of the coordinator at the given address. No connection
+     * is made until the follower is opened.
+     * @version 1.1
+     * @since 1.1
+     * @param host the host name or address of the coordinator
+     * @param port the port of the coordinator
+     * @param name the name under which this follower reports
+     * @param stateSetter switch to control the indicator that creates dits and dahs
+     */
+    public PlaybackFollower(String host, int port, String name, OnOff stateSetter) {
+        this.coordinator = new InetSocketAddress(host, port);
+        this.name = name;
+        this.stateSetter = stateSetter;
+    }
+
+    /**
+     * Connects to the coordinator and estimates the clock offset, returning once
+     * the first estimates have arrived. Messages scheduled by the coordinator
+     * from then on are played.
+     * @version 1.1
+     * @since 1.1
+     * @throws IOException if the coordinator cannot be reached or does not answer
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the estimates
+     */
+    @Override
+    public synchronized void open() throws IOException, InterruptedException {
+        if (mayRun) return;
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(coordinator, 10_000);
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out.writeByte(SyncProtocol.HELLO);
+        out.writeUTF(name);
+        out.flush();
+        mayRun = true;
+        readingThread = new Thread(() -> readUntilClosed(in), "Morse playback follower reader");
+        readingThread.setDaemon(true);
+        readingThread.start();
+        for (int i = 0; i < SAMPLES; i++) {
+            requestTime();
+            Thread.sleep(5);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        synchronized (sampleOffsets) {
+            while (sampleCount < SAMPLES) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !mayRun) {
+                    mayRun = false;
+                    socket.close();
+                    readingThread.join();
+                    throw new IOException("Coordinator did not answer clock requests.");
+                }
+                TimeUnit.NANOSECONDS.timedWait(sampleOffsets, remaining);
+            }
+        }
+        playingThread = new Thread(this::playUntilClosed, "Morse playback follower");
+        playingThread.setDaemon(true);
+        playingThread.start();
+    }
+
+    /**
+     * Disconnects from the coordinator. A message being played is stopped
+     * part-way, and the state setter is left off. Messages that were scheduled
+     * but not yet started are not played.
+     * @version 1.1
+     * @since 1.1
+     * @throws IOException if the connection cannot be closed
+     * @throws InterruptedException if the calling thread is interrupted while waiting for playback to stop
+     */
+    @Override
+    public synchronized void close() throws IOException, InterruptedException {
+        if (!mayRun) return;
+        mayRun = false;
+        if (playingThread != null) {
+            playingThread.interrupt();
+            playingThread.join();
+        }
+        socket.close();
+        readingThread.join();
+    }
+
+    private void requestTime() throws IOException {
+        synchronized (out) {
+            out.writeByte(SyncProtocol.TIME);
+            out.writeLong(System.nanoTime());
+            out.flush();
+        }
+    }
+
+    private void readUntilClosed(DataInputStream in) {
+        try {
+            while (mayRun) {
+                byte tag = in.readByte();
+                switch (tag) {
+                    case SyncProtocol.TIME:
+                        long sent = in.readLong();
+                        long received = in.readLong();
+                        long replied = in.readLong();
+                        addSample(sent, received, replied, System.nanoTime());
+                        break;
+                    case SyncProtocol.PLAY:
+                        long id = in.readLong();
+                        long start = in.readLong();
+                        int n = in.readInt();
+                        boolean[] states = new boolean[n];
+                        long[] durations = new long[n];
+                        for (int i = 0; i < n; i++) {
+                            states[i] = in.readBoolean();
+                            durations[i] = in.readLong();
+                        }
+                        schedules.add(new Schedule(id, start, states, durations));
+                        break;
+                    default:
+                        throw new IOException("Unknown message " + tag + " from coordinator.");
+                }
+            }
+        } catch (IOException ex) {
+            // the connection was closed by either side
+            mayRun = false;
+            synchronized (sampleOffsets) {
+                sampleOffsets.notifyAll();
+            }
+        }
+    }
+
+    private void addSample(long sent, long received, long replied, long arrived) {
+        long offset = ((received - sent) + (replied - arrived)) / 2;
+        long delay = (arrived - sent) - (replied - received);
+        synchronized (sampleOffsets) {
+            sampleOffsets[sampleCount % SAMPLES] = offset;
+            sampleDelays[sampleCount % SAMPLES] = delay;
+            sampleCount++;
+            int best = 0;
+            for (int i = 1; i < Math.min(sampleCount, SAMPLES); i++) {
+                if (sampleDelays[i] < sampleDelays[best]) {
+                    best = i;
+                }
+            }
+            offsetNanos = sampleOffsets[best];
+            roundTripNanos = sampleDelays[best];
+            sampleOffsets.notifyAll();
+        }
+    }
+
+    private void playUntilClosed() {
+        while (mayRun) {
+            try {
+                Schedule s = schedules.poll(RESYNC_NANOS, TimeUnit.NANOSECONDS);
+                if (s == null) {
+                    requestTime();
+                    continue;
+                }
+                long offset = offsetNanos;
+                long[] result = SyncProtocol.playAt(stateSetter, delayer, s.states, s.durations, s.start - offset);
+                played++;
+                synchronized (out) {
+                    out.writeByte(SyncProtocol.REPORT);
+                    out.writeLong(s.id);
+                    out.writeLong(result[0]);
+                    out.writeLong(result[1]);
+                    out.writeLong(offset);
+                    out.writeLong(roundTripNanos);
+                    out.flush();
+                }
+            } catch (InterruptedException ex) {
+                // closing
+                return;
+            } catch (Exception ex) {
+                // the output or the connection failed; the coordinator sees no report for this session
+            }
+        }
+    }
+
+    /**
+     * Gives the current estimate of the offset between the clocks.
+     * @version 1.1
+     * @since 1.1
+     * @return the amount to add to <code>System.nanoTime()</code> on this machine to give the coordinator clock
+     */
+    public Duration getClockOffset() {
+        return Duration.ofNanos(offsetNanos);
+    }
+
+    /**
+     * Gives the round trip delay of the exchange on which the offset estimate is
+     * based. The estimate is accurate to within half of this delay.
+     * @version 1.1
+     * @since 1.1
+     * @return the network delay of the best recent clock exchange
+     */
+    public Duration getRoundTripDelay() {
+        return Duration.ofNanos(roundTripNanos);
+    }
+
+    /**
+     * Gives the number of messages played since the follower was created.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of messages played
+     */
+    public long getPlayedCount() {
+        return played;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.synchronization;
+
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.PrecisionDelayer;
+
+/**
+ * The messages exchanged between a coordinator and its followers, and the
+ * playback of a schedule against absolute deadlines shared by both. All messages
+ * start with a one-byte tag and are written with <code>DataOutputStream</code>.
+ * <ul>
+ * <li>{@link #HELLO}, follower to coordinator: the name of the follower.</li>
+ * <li>{@link #TIME}, follower to coordinator: the follower clock when sent.
+ * The reply from coordinator to follower repeats it and adds the coordinator
+ * clock when the request was received and when the reply was sent.</li>
+ * <li>{@link #PLAY}, coordinator to follower: a session number, the start time
+ * on the coordinator clock, the number of elements, and the state and duration
+ * in nanoseconds of each element.</li>
+ * <li>{@link #REPORT}, follower to coordinator: a session number, then the start
+ * error, greatest lateness, clock offset, and round trip delay of the follower
+ * in nanoseconds.</li>
+ * </ul>
+ */
+/* package-private */ final class SyncProtocol {
+
+    /* package-private */ static final byte HELLO = 'H';
+    /* package-private */ static final byte TIME = 'T';
+    /* package-private */ static final byte PLAY = 'P';
+    /* package-private */ static final byte REPORT = 'R';
+
+    private SyncProtocol() {}
+
+    /**
+     * Plays a schedule with each transition made at an absolute time, so that
+     * lateness in one transition does not delay the ones after it. If the thread
+     * is interrupted part-way, the output is turned off before the interruption
+     * is passed on, so that it is never left keyed.
+     * @param stateSetter the output to key
+     * @param delayer the delayer with which to wait for each deadline
+     * @param states the state of each element
+     * @param durations the duration of each element in nanoseconds
+     * @param start the value of <code>System.nanoTime()</code> at which to start the first element
+     * @return the lateness of the first transition and the greatest lateness of any transition, in nanoseconds
+     * @throws Exception if the state setter fails or the thread is interrupted
+     */
+    /* package-private */ static long[] playAt(OnOff stateSetter, PrecisionDelayer delayer,
+            boolean[] states, long[] durations, long start) throws Exception {
+        long deadline = start;
+        long startError = 0;
+        long maxLateness = 0;
+        try {
+            for (int i = 0; i < states.length; i++) {
+                delayer.waitUntil(deadline);
+                long lateness = System.nanoTime() - deadline;
+                stateSetter.setActive(states[i]);
+                if (i == 0) {
+                    startError = lateness;
+                }
+                maxLateness = Math.max(maxLateness, lateness);
+                deadline += durations[i];
+            }
+            delayer.waitUntil(deadline);
+        } catch (InterruptedException ex) {
+            // a transmitter must not be left sending a carrier
+            stateSetter.setActive(false);
+            throw ex;
+        }
+        return new long[]{startError, maxLateness};
+    }
+}
@@ -0,0 +1,9 @@
+/**
+ * Playback of one message in step on several machines. Provides a coordinator
+ * that schedules a compiled message for an agreed start time and followers that
+ * estimate their clock offset to the coordinator over a socket, so that every
+ * node keys the same elements at the same moments and reports how far it was
+ * from them.
+ * @since 1.1
+ */
+package com.randallscharpf.java.jmorsecoding.base.synchronization;
@@ -0,0 +1,432 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.timelines;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Delayer;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOffDelayerSink;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.TimelineSink;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolTable;
+import com.randallscharpf.java.jmorsecoding.base.timings.MorseTiming;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * A message compiled into a flat sequence of elements with precomputed times.
+ * For every element, its state, its duration, and the time from the start of
+ * the message to the end of the element are stored, and for every character,
+ * the index of the first element belonging to it is stored. Playback can therefore start at any character or
+ * any time offset after an O(log n) search, without replaying or re-encoding the
+ * part of the message before it.
+ * <br>
+ * The gap that separates a character from the one before it is counted as part
+ * of the character, so playing from a character begins with that gap. The word
+ * gap that terminates a message not ending in whitespace is counted as part of
+ * the last character.
+ * <br>
+ * The durations of the elements are taken from the timing given on compilation,
+ * so later changes to that timing do not affect the timeline. Instances of this
+ * class are immutable and may be played by multiple threads at once.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class Timeline {
+
+    private static final ElementType[] TYPES = ElementType.values();
+    private static final int BATCH_SIZE = 1024;
+
+    private final byte[] types;
+    private final long[] ends;
+    // the state and duration of every element, handed to sinks directly so that playing allocates nothing
+    private final boolean[] states;
+    private final long[] durations;
+    private final int elements;
+    private final int[] charStarts;
+    private final int characters;
+
+    private Timeline(byte[] types, long[] ends, int elements, int[] charStarts, int characters) {
+        this.types = types;
+        this.ends = ends;
+        this.elements = elements;
+        this.charStarts = charStarts;
+        this.characters = characters;
+        this.states = new boolean[elements];
+        this.durations = new long[elements];
+        for (int i = 0; i < elements; i++) {
+            states[i] = TYPES[types[i]].activeDuringPlay;
+            durations[i] = ends[i] - startOf(i);
+        }
+    }
+
+    /**
+     * Compiles a string into a timeline. The elements are exactly those of
+     * {@link com.randallscharpf.java.jmorsecoding.base.symbolsets.MorseSymbolSet#getPlayableForString(String)}
+     * for the symbol set of the table, so playing the whole timeline is equivalent
+     * to playing that unit with the given timing.
+     * @version 1.1
+     * @since 1.1
+     * @param text the characters to compile
+     * @param table the table with which to encode the characters
+     * @param timing the timing with which to compute the times of the elements
+     * @return a timeline for the string
+     * @throws IllegalArgumentException if the symbol set has no encoding for some character
+     */
+    public static Timeline compile(CharSequence text, SymbolTable table, MorseTiming timing) {
+        return compile(text, new TimingPlan(table, timing));
+    }
+
+    /**
+     * Compiles a string into a timeline using the symbols and durations of a plan.
+     * The element types and durations of each character are copied from the plan,
+     * so the timing is not consulted. The elements are exactly those of
+     * {@link com.randallscharpf.java.jmorsecoding.base.symbolsets.MorseSymbolSet#getPlayableForString(String)}
+     * for the symbol set of the plan.
+     * @version 1.1
+     * @since 1.1
+     * @param text the characters to compile
+     * @param plan the plan with which to encode and time the characters
+     * @return a timeline for the string
+     * @throws IllegalArgumentException if the symbol set has no encoding for some character
+     */
+    public static Timeline compile(CharSequence text, TimingPlan plan) {
+        byte letterGapCode = (byte) ElementType.LETTER_GAP.ordinal();
+        byte wordGapCode = (byte) ElementType.WORD_GAP.ordinal();
+        long letterGap = plan.getTiming().getNanos(ElementType.LETTER_GAP);
+        long wordGap = plan.getTiming().getNanos(ElementType.WORD_GAP);
+        int characters = text.length();
+        int[] charStarts = new int[characters + 1];
+        byte[] types = new byte[Math.max(16, characters * 8)];
+        long[] ends = new long[types.length];
+        int n = 0;
+        long time = 0;
+        boolean needsGap = false;
+        for (int i = 0; i < characters; i++) {
+            charStarts[i] = n;
+            char c = text.charAt(i);
+            TimingPlan.Entry symbol = Character.isWhitespace(c) ? null : plan.entry(c);
+            int needed = n + 1 + (symbol == null ? 0 : symbol.codes.length);
+            if (needed > types.length) {
+                int capacity = Math.max(needed, types.length * 2);
+                types = Arrays.copyOf(types, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+            }
+            if (symbol == null) {
+                time += wordGap;
+                types[n] = wordGapCode;
+                ends[n++] = time;
+                needsGap = false;
+                continue;
+            }
+            if (needsGap) {
+                time += letterGap;
+                types[n] = letterGapCode;
+                ends[n++] = time;
+            }
+            System.arraycopy(symbol.codes, 0, types, n, symbol.codes.length);
+            for (long nanos : symbol.nanos) {
+                time += nanos;
+                ends[n++] = time;
+            }
+            needsGap = true;
+        }
+        if (needsGap) {
+            // the terminating gap belongs to the last character
+            if (n == types.length) {
+                types = Arrays.copyOf(types, n + 1);
+                ends = Arrays.copyOf(ends, n + 1);
+            }
+            time += wordGap;
+            types[n] = wordGapCode;
+            ends[n++] = time;
+        }
+        charStarts[characters] = n;
+        return new Timeline(types, ends, n, charStarts, characters);
+    }
+
+    /**
+     * Gives the number of characters from which this timeline was compiled.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of character positions in the message
+     */
+    public int getCharacterCount() {
+        return characters;
+    }
+
+    /**
+     * Gives the number of elements in this timeline, including gaps.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of elements in the message
+     */
+    public int getElementCount() {
+        return elements;
+    }
+
+    /**
+     * Gives the type of an element of this timeline.
+     * @version 1.1
+     * @since 1.1
+     * @param index the index of the element, from zero for the first
+     * @return the type of the element
+     * @throws IndexOutOfBoundsException if the index is negative or not less than
+     * the number of elements
+     */
+    public ElementType getElementType(int index) {
+        checkElement(index);
+        return TYPES[types[index]];
+    }
+
+    /**
+     * Gives the duration of an element of this timeline.
+     * @version 1.1
+     * @since 1.1
+     * @param index the index of the element, from zero for the first
+     * @return the time for which the element is played, in nanoseconds
+     * @throws IndexOutOfBoundsException if the index is negative or not less than
+     * the number of elements
+     */
+    public long getElementNanos(int index) {
+        checkElement(index);
+        return durations[index];
+    }
+
+    private void checkElement(int index) {
+        if (index < 0 || index >= elements) {
+            throw new IndexOutOfBoundsException("Element index " + index + " is out of range.");
+        }
+    }
+
+    /**
+     * Gives the time taken to play the whole timeline.
+     * @version 1.1
+     * @since 1.1
+     * @return the total duration of the message
+     */
+    public Duration getDuration() {
+        return Duration.ofNanos(elements == 0 ? 0 : ends[elements - 1]);
+    }
+
+    /**
+     * Gives the time from the start of the message at which a character begins,
+     * including the gap that precedes it.
+     * @version 1.1
+     * @since 1.1
+     * @param index the index of the character within the compiled text
+     * @return the offset of the character from the start of the message
+     * @throws IndexOutOfBoundsException if the index is negative or not less than
+     * the number of characters
+     */
+    public Duration getCharacterStart(int index) {
+        if (index < 0 || index >= characters) {
+            throw new IndexOutOfBoundsException("Character index " + index + " is out of range.");
+        }
+        return Duration.ofNanos(startOf(charStarts[index]));
+    }
+
+    /**
+     * Gives the character being played at a time offset from the start of the message.
+     * @version 1.1
+     * @since 1.1
+     * @param offset the time from the start of the message
+     * @return the index of the character being played at that time
+     * @throws IllegalArgumentException if the offset is negative or not less than
+     * the duration of the timeline
+     */
+    public int getCharacterAt(Duration offset) {
+        int element = elementAt(checkOffset(offset));
+        // find the last character that starts at or before the element
+        int lo = 0;
+        int hi = characters - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (charStarts[mid] <= element) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Plays the whole timeline.
+     * @version 1.1
+     * @since 1.1
+     * @param stateSetter switch to control the indicator that creates dits and dahs
+     * @param delayer timer that provides the process of waiting between state transitions
+     * @throws Exception if <code>stateSetter</code> or <code>delayer</code> causes
+     * an exception during operation
+     */
+    public void play(OnOff stateSetter, Delayer delayer) throws Exception {
+        play(new OnOffDelayerSink(stateSetter, delayer));
+    }
+
+    /**
+     * Plays the whole timeline into a sink, in batches of consecutive elements.
+     * @version 1.1
+     * @since 1.1
+     * @param sink the output to which to give the transitions
+     * @throws Exception if <code>sink</code> causes an exception during operation
+     */
+    public void play(TimelineSink sink) throws Exception {
+        playElements(sink, 0, elements, 0);
+        sink.endOfMessage();
+    }
+
+    /**
+     * Plays the timeline starting from a character, including the gap that
+     * precedes the character.
+     * @version 1.1
+     * @since 1.1
+     * @param stateSetter switch to control the indicator that creates dits and dahs
+     * @param delayer timer that provides the process of waiting between state transitions
+     * @param index the index of the character at which to start
+     * @throws IndexOutOfBoundsException if the index is negative or greater than
+     * the number of characters
+     * @throws Exception if <code>stateSetter</code> or <code>delayer</code> causes
+     * an exception during operation
+     */
+    public void playFromCharacter(OnOff stateSetter, Delayer delayer, int index) throws Exception {
+        playFromCharacter(new OnOffDelayerSink(stateSetter, delayer), index);
+    }
+
+    /**
+     * Plays the timeline into a sink starting from a character, including the gap
+     * that precedes the character.
+     * @version 1.1
+     * @since 1.1
+     * @param sink the output to which to give the transitions
+     * @param index the index of the character at which to start
+     * @throws IndexOutOfBoundsException if the index is negative or greater than
+     * the number of characters
+     * @throws Exception if <code>sink</code> causes an exception during operation
+     */
+    public void playFromCharacter(TimelineSink sink, int index) throws Exception {
+        if (index < 0 || index > characters) {
+            throw new IndexOutOfBoundsException("Character index " + index + " is out of range.");
+        }
+        playElements(sink, charStarts[index], elements, 0);
+        sink.endOfMessage();
+    }
+
+    /**
+     * Plays a range of characters of the timeline into a sink, including the gap
+     * that precedes the first of them. The end of the message is indicated to the
+     * sink only if the range extends to the last character. Playing consecutive
+     * ranges one after another is equivalent to playing the whole range at once.
+     * @version 1.1
+     * @since 1.1
+     * @param sink the output to which to give the transitions
+     * @param from the index of the first character to play
+     * @param to the index after the last character to play
+     * @throws IndexOutOfBoundsException if the range is not within the characters
+     * of the timeline
+     * @throws Exception if <code>sink</code> causes an exception during operation
+     */
+    public void playCharacters(TimelineSink sink, int from, int to) throws Exception {
+        if (from < 0 || to > characters || from > to) {
+            throw new IndexOutOfBoundsException("Character range " + from + " to " + to + " is out of range.");
+        }
+        playElements(sink, charStarts[from], charStarts[to], 0);
+        if (to == characters) {
+            sink.endOfMessage();
+        }
+    }
+
+    /**
+     * Plays the timeline starting from a time offset. If the offset falls within
+     * an element, only the remainder of that element is played.
+     * @version 1.1
+     * @since 1.1
+     * @param stateSetter switch to control the indicator that creates dits and dahs
+     * @param delayer timer that provides the process of waiting between state transitions
+     * @param offset the time from the start of the message at which to start
+     * @throws IllegalArgumentException if the offset is negative or not less than
+     * the duration of the timeline
+     * @throws Exception if <code>stateSetter</code> or <code>delayer</code> causes
+     * an exception during operation
+     */
+    public void playFromTime(OnOff stateSetter, Delayer delayer, Duration offset) throws Exception {
+        playFromTime(new OnOffDelayerSink(stateSetter, delayer), offset);
+    }
+
+    /**
+     * Plays the timeline into a sink starting from a time offset. If the offset
+     * falls within an element, only the remainder of that element is played.
+     * @version 1.1
+     * @since 1.1
+     * @param sink the output to which to give the transitions
+     * @param offset the time from the start of the message at which to start
+     * @throws IllegalArgumentException if the offset is negative or not less than
+     * the duration of the timeline
+     * @throws Exception if <code>sink</code> causes an exception during operation
+     */
+    public void playFromTime(TimelineSink sink, Duration offset) throws Exception {
+        long nanos = checkOffset(offset);
+        int element = elementAt(nanos);
+        playElements(sink, element, elements, nanos - startOf(element));
+        sink.endOfMessage();
+    }
+
+    // gives the elements to the sink in batches, cutting the given time off the start of the first one
+    private void playElements(TimelineSink sink, int from, int to, long skipNanos) throws Exception {
+        if (skipNanos != 0 && from < to) {
+            // only the remainder of a partly skipped element needs arrays of its own
+            sink.play(new boolean[]{states[from]}, new long[]{durations[from] - skipNanos}, 0, 1);
+            from++;
+        }
+        for (int start = from; start < to; start += BATCH_SIZE) {
+            sink.play(states, durations, start, Math.min(BATCH_SIZE, to - start));
+        }
+    }
+
+    private long startOf(int element) {
+        return element == 0 ? 0 : ends[element - 1];
+    }
+
+    private long checkOffset(Duration offset) {
+        long nanos = offset.toNanos();
+        if (nanos < 0 || elements == 0 || nanos >= ends[elements - 1]) {
+            throw new IllegalArgumentException("Time offset " + offset + " is outside of the timeline.");
+        }
+        return nanos;
+    }
+
+    // finds the first element that ends after the given time
+    private int elementAt(long nanos) {
+        int lo = 0;
+        int hi = elements - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ends[mid] > nanos) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+}
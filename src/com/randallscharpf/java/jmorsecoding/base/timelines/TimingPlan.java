@@ -0,0 +1,174 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.timelines;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.standards.MorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolTable;
+import com.randallscharpf.java.jmorsecoding.base.timings.MorseTiming;
+import com.randallscharpf.java.jmorsecoding.base.timings.TimingSnapshot;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A symbol set bound to fixed element durations. For every character, the plan
+ * holds the element types of its symbol together with a ready array of the
+ * duration of each element in nanoseconds, so that compiling a message with
+ * {@link Timeline#compile(CharSequence, TimingPlan)} only concatenates these
+ * arrays and never consults the timing.
+ * <br>
+ * The arrays for a character are built the first time the character is requested.
+ * When the timing changes, {@link #update(MorseTiming)} gives a plan for the new
+ * durations that shares the symbol lookups of this one, and gives this plan
+ * itself if the durations have not changed. Instances of this class are not safe
+ * for use by multiple threads, since the underlying {@link SymbolTable} is not.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class TimingPlan {
+
+    /* package-private */ static final class Entry {
+        /* package-private */ final byte[] codes;
+        /* package-private */ final boolean[] states;
+        /* package-private */ final long[] nanos;
+
+        private Entry(ElementType[] types, TimingSnapshot timing) {
+            this.codes = new byte[types.length];
+            this.states = new boolean[types.length];
+            this.nanos = new long[types.length];
+            for (int i = 0; i < types.length; i++) {
+                codes[i] = (byte) types[i].ordinal();
+                states[i] = types[i].activeDuringPlay;
+                nanos[i] = timing.getNanos(types[i]);
+            }
+        }
+    }
+
+    private final SymbolTable table;
+    private final TimingSnapshot timing;
+    private final Entry[] latin1 = new Entry[256];
+    private final Map<Character, Entry> others = new HashMap<>();
+
+    /**
+     * Creates a plan for a symbol table and the current durations of a timing.
+     * @version 1.1
+     * @since 1.1
+     * @param table the table with which to encode characters
+     * @param timing the timing whose current durations the plan should use
+     */
+    public TimingPlan(SymbolTable table, MorseTiming timing) {
+        this.table = table;
+        this.timing = timing.snapshot();
+    }
+
+    /**
+     * Creates a plan for the symbol set and current timing of a standard.
+     * @version 1.1
+     * @since 1.1
+     * @param standard the standard whose symbols and timing the plan should use
+     * @return a plan for the standard
+     */
+    public static TimingPlan forStandard(MorseStandard standard) {
+        return new TimingPlan(new SymbolTable(standard.getSymbolSpecification()),
+                standard.getTimingSpecification());
+    }
+
+    /**
+     * Gives a plan for the current durations of a timing. If they are the same as
+     * the durations of this plan, this plan is returned; otherwise the new plan
+     * shares the symbol table of this one and builds its arrays afresh.
+     * @version 1.1
+     * @since 1.1
+     * @param newTiming the timing whose current durations should be used
+     * @return a plan with the current durations of the timing
+     */
+    public TimingPlan update(MorseTiming newTiming) {
+        TimingSnapshot snapshot = newTiming.snapshot();
+        if (snapshot == timing || snapshot.equals(timing)) {
+            return this;
+        }
+        return new TimingPlan(table, snapshot);
+    }
+
+    /**
+     * Gives the durations with which this plan was built.
+     * @version 1.1
+     * @since 1.1
+     * @return the element durations of this plan
+     */
+    public TimingSnapshot getTiming() {
+        return timing;
+    }
+
+    /**
+     * Gives the symbol table with which this plan encodes characters.
+     * @version 1.1
+     * @since 1.1
+     * @return the symbol table of this plan
+     */
+    public SymbolTable getSymbolTable() {
+        return table;
+    }
+
+    /**
+     * Gives the duration of each element of the symbol for a character, in the
+     * order of {@link SymbolTable#getElements(char)}. The returned array is
+     * shared and must not be modified.
+     * @version 1.1
+     * @since 1.1
+     * @param c a non-whitespace character to look up
+     * @return the durations of the elements of the symbol, in nanoseconds
+     * @throws IllegalArgumentException if the symbol set has no encoding for the character
+     */
+    public long[] getDurations(char c) {
+        return entry(c).nanos;
+    }
+
+    /**
+     * Gives the state of each element of the symbol for a character, true for
+     * "on", in the order of {@link SymbolTable#getElements(char)}. The returned
+     * array is shared and must not be modified.
+     * @version 1.1
+     * @since 1.1
+     * @param c a non-whitespace character to look up
+     * @return the states of the elements of the symbol
+     * @throws IllegalArgumentException if the symbol set has no encoding for the character
+     */
+    public boolean[] getStates(char c) {
+        return entry(c).states;
+    }
+
+    /* package-private */ Entry entry(char c) {
+        Entry entry = c < latin1.length ? latin1[c] : others.get(c);
+        if (entry == null) {
+            entry = new Entry(table.getElements(c), timing);
+            if (c < latin1.length) {
+                latin1[c] = entry;
+            } else {
+                others.put(c, entry);
+            }
+        }
+        return entry;
+    }
+}
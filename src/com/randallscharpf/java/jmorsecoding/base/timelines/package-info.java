@@ -0,0 +1,7 @@
+/**
+ * Messages compiled ahead of playback. Provides flat representations of encoded
+ * messages with precomputed times, which allow playback to start at any point
+ * in a message without replaying what comes before it.
+ * @since 1.1
+ */
+package com.randallscharpf.java.jmorsecoding.base.timelines;
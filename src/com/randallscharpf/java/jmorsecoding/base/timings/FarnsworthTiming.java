@@ -97,10 +97,7 @@ public final class FarnsworthTiming implements MorseTiming {
             setWpm(8);
         }
         
-        private long nanosMorse1Unit;
-        private long nanosMorse3Unit;
-        private long nanosMorse3gapUnit;
-        private long nanosMorse7gapUnit;
+        private volatile TimingSnapshot current;
         
         /**
          * Sets the overall WPM and assumes an appropriate character rhythm. The
@@ -129,7 +126,11 @@ public final class FarnsworthTiming implements MorseTiming {
          * then this is done, otherwise the lengths of the units are set to obtain
          * the maximum character rhythm that does not exceed that parameter and the
          * maximum transmission rate that does not exceed that parameter.
-         * @version 1.0
+         * <br>
+         * The new lengths are computed before any of them take effect and are then
+         * published together, so this method may be called while the timing is
+         * being used for playback by another thread.
+         * @version 1.1
          * @since 1.0
          * @param overallWpm the WPM of transmission, with standard PARIS, to aim to achieve
          * @param charWpm the rhythm of characters as determined by a standard timing
@@ -151,8 +152,8 @@ public final class FarnsworthTiming implements MorseTiming {
                         + "subnanosecond timing precision required!");
             }
             long nanosMorseUnits = Math.round(60e+9 / charWpm);
-            nanosMorse1Unit = nanosMorseUnits / 50;
-            nanosMorse3Unit = 3 * nanosMorse1Unit;
+            long nanosMorse1Unit = nanosMorseUnits / 50;
+            long nanosMorse3Unit = 3 * nanosMorse1Unit;
             int plus3 = 0;
             int plus7 = 0;
             while ((nanosMorseUnits > nanosMorse1Unit*38 + nanosMorse3Unit*4) && (plus3 < 2)) {
@@ -164,8 +165,8 @@ public final class FarnsworthTiming implements MorseTiming {
                 nanosMorse3Unit = 3 * nanosMorse1Unit;
             }
             long gapUnits = Math.round(60e+9 / overallWpm) - (nanosMorse1Unit*19 + nanosMorse3Unit*4);
-            nanosMorse3gapUnit = gapUnits / 19 * 3;
-            nanosMorse7gapUnit = gapUnits / 19 * 7;
+            long nanosMorse3gapUnit = gapUnits / 19 * 3;
+            long nanosMorse7gapUnit = gapUnits / 19 * 7;
             plus3 = 0;
             plus7 = 0;
             while ((gapUnits > nanosMorse3gapUnit * 4 + nanosMorse7gapUnit) && (plus7 < 6)) {
@@ -182,6 +183,8 @@ public final class FarnsworthTiming implements MorseTiming {
                 nanosMorse3gapUnit = (gapUnits / 19 + 1) * 3;
                 nanosMorse7gapUnit = (gapUnits / 19 + 1) * 7;
             }
+            current = new TimingSnapshot(nanosMorse1Unit, nanosMorse3Unit, nanosMorse1Unit, nanosMorse3gapUnit,
+                    nanosMorse7gapUnit);
         }
     }
     
@@ -200,20 +203,20 @@ public final class FarnsworthTiming implements MorseTiming {
      */
     @Override
     public Duration timeForElementType(ElementType type) {
-        switch(type) {
-            case DASH:
-                return Duration.ofNanos(settings.nanosMorse3Unit);
-            case DOT:
-                return Duration.ofNanos(settings.nanosMorse1Unit);
-            case ELEMENT_GAP:
-                return Duration.ofNanos(settings.nanosMorse1Unit);
-            case LETTER_GAP:
-                return Duration.ofNanos(settings.nanosMorse3gapUnit);
-            case WORD_GAP:
-                return Duration.ofNanos(settings.nanosMorse7gapUnit);
-            default:
-                throw new UnsupportedOperationException("Not implemented for element type " + type);
-        }
+        return settings.current.timeForElementType(type);
+    }
+
+    /**
+     * Gives the durations in effect at the time of the call. The durations are
+     * replaced as a whole whenever the settings change, so the snapshot never
+     * mixes durations computed for different settings.
+     * @version 1.1
+     * @since 1.1
+     * @return the current durations of this timing
+     */
+    @Override
+    public TimingSnapshot snapshot() {
+        return settings.current;
     }
     
 }
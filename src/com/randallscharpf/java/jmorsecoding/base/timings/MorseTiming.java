@@ -41,4 +41,17 @@ public interface MorseTiming {
      * @return the time that should be spent transmitting a unit of the type, as a <code>Duration</code>
      */
     public Duration timeForElementType(ElementType type);
+
+    /**
+     * Gives the current durations of all element types as an immutable snapshot.
+     * Timings whose parameters can change while they are in use should override
+     * this method so that the durations in the snapshot are always consistent
+     * with one another. The default implementation reads each duration once.
+     * @version 1.1
+     * @since 1.1
+     * @return the current durations of this timing
+     */
+    public default TimingSnapshot snapshot() {
+        return TimingSnapshot.of(this);
+    }
 }
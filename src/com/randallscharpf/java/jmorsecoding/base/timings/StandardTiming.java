@@ -78,9 +78,7 @@ public final class StandardTiming implements MorseTiming {
             setWpm(24);
         }
         
-        private long nanosMorse1Unit;
-        private long nanosMorse3Unit;
-        private long nanosMorse7Unit;
+        private volatile TimingSnapshot current;
 
         /**
          * Sets the playback WPM of this instance. WPM is calculated assuming every
@@ -92,7 +90,11 @@ public final class StandardTiming implements MorseTiming {
          * If it is possible to exactly achieve the input WPM while satisfying this,
          * then this is done, otherwise the lengths of the units are set to obtain
          * the maximum possible transmission rate that does not exceed the parameter.
-         * @version 1.0
+         * <br>
+         * The new lengths are computed before any of them take effect and are then
+         * published together, so this method may be called while the timing is
+         * being used for playback by another thread.
+         * @version 1.1
          * @since 1.0
          * @param wpm the WPM, with standard PARIS, to aim to achieve
          */
@@ -105,9 +107,9 @@ public final class StandardTiming implements MorseTiming {
                         + "subnanosecond timing precision required!");
             }
             long nanosMorseUnits = Math.round(60e+9 / wpm);
-            nanosMorse1Unit = nanosMorseUnits / 50;
-            nanosMorse3Unit = 3 * nanosMorse1Unit;
-            nanosMorse7Unit = 7 * nanosMorse1Unit;
+            long nanosMorse1Unit = nanosMorseUnits / 50;
+            long nanosMorse3Unit = 3 * nanosMorse1Unit;
+            long nanosMorse7Unit = 7 * nanosMorse1Unit;
             int plus3 = 0;
             int plus7 = 0;
             while ((nanosMorseUnits > nanosMorse1Unit*19 + nanosMorse3Unit*8 + nanosMorse7Unit) && (plus7 < 6)) {
@@ -124,6 +126,8 @@ public final class StandardTiming implements MorseTiming {
                 nanosMorse3Unit = 3 * nanosMorse1Unit;
                 nanosMorse7Unit = 7 * nanosMorse1Unit;
             }
+            current = new TimingSnapshot(nanosMorse1Unit, nanosMorse3Unit, nanosMorse1Unit, nanosMorse3Unit,
+                    nanosMorse7Unit);
         }
     }
     
@@ -142,20 +146,20 @@ public final class StandardTiming implements MorseTiming {
      */
     @Override
     public Duration timeForElementType(ElementType type) {
-        switch(type) {
-            case DASH:
-                return Duration.ofNanos(settings.nanosMorse3Unit);
-            case DOT:
-                return Duration.ofNanos(settings.nanosMorse1Unit);
-            case ELEMENT_GAP:
-                return Duration.ofNanos(settings.nanosMorse1Unit);
-            case LETTER_GAP:
-                return Duration.ofNanos(settings.nanosMorse3Unit);
-            case WORD_GAP:
-                return Duration.ofNanos(settings.nanosMorse7Unit);
-            default:
-                throw new UnsupportedOperationException("Not implemented for element type " + type);
-        }
+        return settings.current.timeForElementType(type);
+    }
+
+    /**
+     * Gives the durations in effect at the time of the call. The durations are
+     * replaced as a whole whenever the settings change, so the snapshot never
+     * mixes durations computed for different settings.
+     * @version 1.1
+     * @since 1.1
+     * @return the current durations of this timing
+     */
+    @Override
+    public TimingSnapshot snapshot() {
+        return settings.current;
     }
     
 }
@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.timings;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * An immutable set of element durations. Timings whose parameters can change
+ * publish their durations as snapshots, so that a reader always sees durations
+ * that were computed together, even while the parameters are being changed by
+ * another thread. Because the durations are created once, looking one up performs
+ * no allocation.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class TimingSnapshot implements MorseTiming {
+
+    private static final ElementType[] TYPES = ElementType.values();
+
+    private final long[] nanos = new long[TYPES.length];
+    private final Duration[] durations = new Duration[TYPES.length];
+
+    /**
+     * Creates a snapshot with the given durations.
+     * @version 1.1
+     * @since 1.1
+     * @param dotNanos the duration of a dot, in nanoseconds
+     * @param dashNanos the duration of a dash, in nanoseconds
+     * @param elementGapNanos the duration of a gap between elements of a symbol, in nanoseconds
+     * @param letterGapNanos the duration of a gap between letters, in nanoseconds
+     * @param wordGapNanos the duration of a gap between words, in nanoseconds
+     * @throws IllegalArgumentException if any duration is negative
+     */
+    public TimingSnapshot(long dotNanos, long dashNanos, long elementGapNanos, long letterGapNanos,
+            long wordGapNanos) {
+        set(ElementType.DOT, dotNanos);
+        set(ElementType.DASH, dashNanos);
+        set(ElementType.ELEMENT_GAP, elementGapNanos);
+        set(ElementType.LETTER_GAP, letterGapNanos);
+        set(ElementType.WORD_GAP, wordGapNanos);
+    }
+
+    /**
+     * Creates a snapshot of the current durations of any timing. Each duration is
+     * read once, so if the timing is being changed concurrently and does not
+     * provide its own snapshots, the result may mix old and new durations.
+     * @version 1.1
+     * @since 1.1
+     * @param timing the timing whose durations to copy
+     * @return a snapshot holding the durations of the timing
+     */
+    public static TimingSnapshot of(MorseTiming timing) {
+        if (timing instanceof TimingSnapshot) {
+            return (TimingSnapshot) timing;
+        }
+        return new TimingSnapshot(
+                timing.timeForElementType(ElementType.DOT).toNanos(),
+                timing.timeForElementType(ElementType.DASH).toNanos(),
+                timing.timeForElementType(ElementType.ELEMENT_GAP).toNanos(),
+                timing.timeForElementType(ElementType.LETTER_GAP).toNanos(),
+                timing.timeForElementType(ElementType.WORD_GAP).toNanos()
+        );
+    }
+
+    private void set(ElementType type, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Duration of " + type + " must not be negative.");
+        }
+        nanos[type.ordinal()] = value;
+        durations[type.ordinal()] = Duration.ofNanos(value);
+    }
+
+    /**
+     * Gives the duration of an element type in nanoseconds.
+     * @version 1.1
+     * @since 1.1
+     * @param type the type of element
+     * @return the duration of the element type, in nanoseconds
+     */
+    public long getNanos(ElementType type) {
+        return nanos[type.ordinal()];
+    }
+
+    /**
+     * {@inheritDoc}
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public Duration timeForElementType(ElementType type) {
+        return durations[type.ordinal()];
+    }
+
+    /**
+     * Tells whether another object is a snapshot with the same durations as this one.
+     * @version 1.1
+     * @since 1.1
+     * @param obj the object to compare with
+     * @return true if and only if the object is a snapshot with equal durations
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof TimingSnapshot && Arrays.equals(nanos, ((TimingSnapshot) obj).nanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(nanos);
+    }
+
+    /**
+     * Gives this snapshot, which never changes.
+     * @version 1.1
+     * @since 1.1
+     * @return this instance
+     */
+    @Override
+    public TimingSnapshot snapshot() {
+        return this;
+    }
+}
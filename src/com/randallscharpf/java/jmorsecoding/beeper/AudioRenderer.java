@@ -0,0 +1,272 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.beeper;
+
+import com.randallscharpf.java.jmorsecoding.base.pipeline.PcmRenderer;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Delayer;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * The state setter and delayer for rendering beeps to memory instead of to an
+ * audio device. The waveform is synthesized in the same way as by {@link Beeper},
+ * including the {@link KeyingEnvelope} of each beep, but waiting does not take any real time:
+ * each wait appends the samples that would have been heard during that time to
+ * an internal buffer. The buffer can then be retrieved as raw PCM or written as
+ * a WAV file. Whole batches of transitions can also be rendered at once, since
+ * this class is a {@link com.randallscharpf.java.jmorsecoding.base.playerinterfaces.TimelineSink},
+ * and the audio of a long message can be taken out piece by piece with {@link #drain()}.
+ * <br>
+ * Rendering is done in the calling thread, in time linear in the duration of the
+ * rendered audio. Instances of this class are not safe for use by multiple threads.
+ * @version 1.1
+ * @since 1.1
+ */
+public class AudioRenderer implements OnOff, Delayer, PcmRenderer {
+
+    private final double pitch;
+    private final double volume;
+    private final Beeper.WaveType waveform;
+    private final AudioFormat format;
+
+    private byte[] buffer = new byte[8192];
+    private int length;
+    private long framesRendered;
+    private long nanosRendered;
+    private double sineInput;
+    private final Keyer keyer;
+
+    /**
+     * Creates a renderer producing 16-bit mono audio at 44100 Hz.
+     * @version 1.1
+     * @since 1.1
+     * @param pitch the frequency of the wave, in Hz
+     * @param volume the volume percent at which to render
+     * @param waveform the shape of the wave, which determines its tone
+     */
+    public AudioRenderer(double pitch, double volume, Beeper.WaveType waveform) {
+        this(pitch, volume, waveform, 44100);
+    }
+
+    /**
+     * Creates a renderer producing 16-bit mono little-endian audio at the given
+     * sample rate.
+     * @version 1.1
+     * @since 1.1
+     * @param pitch the frequency of the wave, in Hz
+     * @param volume the volume percent at which to render
+     * @param waveform the shape of the wave, which determines its tone
+     * @param sampleRate the number of samples per second to render
+     */
+    public AudioRenderer(double pitch, double volume, Beeper.WaveType waveform, float sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate must be positive.");
+        }
+        this.keyer = new Keyer(KeyingEnvelope.DEFAULT, sampleRate);
+        this.pitch = pitch;
+        this.volume = volume;
+        this.waveform = waveform;
+        this.format = new AudioFormat(
+                AudioFormat.Encoding.PCM_SIGNED,
+                sampleRate,
+                16,
+                1,
+                2,
+                sampleRate,
+                false
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void setActive(boolean active) {
+        keyer.key(active ? waveform : null);
+    }
+
+    /**
+     * Sets the shape and length of the edges of each beep, from the next time a
+     * beep starts or stops. The envelope is {@link KeyingEnvelope#DEFAULT} for
+     * new instances.
+     * @version 1.1
+     * @since 1.1
+     * @param envelope the envelope to apply to each beep
+     */
+    public void setKeyingEnvelope(KeyingEnvelope envelope) {
+        keyer.setEnvelope(envelope);
+    }
+
+    /**
+     * Renders the current state for the given amount of time. Sample boundaries
+     * are computed from the total time rendered so far, so rounding never
+     * accumulates across many waits.
+     * @version 1.1
+     * @since 1.1
+     * @param time the amount of audio to render
+     */
+    @Override
+    public void wait(Duration time) {
+        render(time.toNanos());
+    }
+
+    /**
+     * Renders the current state for the given amount of time, as by
+     * {@link #wait(Duration)}.
+     * @version 1.1
+     * @since 1.1
+     * @param nanos the amount of audio to render, in nanoseconds
+     */
+    @Override
+    public void waitNanos(long nanos) {
+        render(nanos);
+    }
+
+    /**
+     * Renders a batch of transitions, as if each state were set and then waited
+     * for in turn.
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void play(boolean[] states, long[] nanos, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            setActive(states[i]);
+            render(nanos[i]);
+        }
+    }
+
+    private void render(long nanos) {
+        nanosRendered += nanos;
+        long targetFrame = Math.round(nanosRendered / 1e9 * format.getSampleRate());
+        renderFrames(targetFrame - framesRendered);
+    }
+
+    private void renderFrames(long frames) {
+        if (frames <= 0) {
+            return;
+        }
+        if (length + 2 * frames > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Rendered audio exceeds the maximum buffer size.");
+        }
+        int needed = (int) (length + 2 * frames);
+        if (needed > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(needed, (int) Math.min(Integer.MAX_VALUE - 8, 2L * buffer.length)));
+        }
+        double rate = format.getSampleRate();
+        double step = 2 * Math.PI * pitch / rate;
+        double scale = Short.MAX_VALUE * volume / 100.0;
+        for (long i = 0; i < frames; i++) {
+            short v = (short) (scale * keyer.sample(sineInput));
+            buffer[length++] = (byte) v;
+            buffer[length++] = (byte) (v >> 8);
+            sineInput += step;
+        }
+        framesRendered += frames;
+    }
+
+    /**
+     * Gives the format of the rendered audio.
+     * @version 1.1
+     * @since 1.1
+     * @return the format of the data returned by {@link #toByteArray()}
+     */
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Gives the number of sample frames rendered so far.
+     * @version 1.1
+     * @since 1.1
+     * @return the count of frames rendered since creation or the last reset,
+     * including any that have been drained
+     */
+    public long getFrameCount() {
+        return framesRendered;
+    }
+
+    /**
+     * Gives a copy of the rendered audio as raw PCM data, leaving out any audio
+     * already taken with {@link #drain()}.
+     * @version 1.1
+     * @since 1.1
+     * @return the rendered samples, in the format given by {@link #getFormat()}
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Takes the audio rendered since the last call to this method or to
+     * {@link #reset()}. Unlike a reset, the synthesis state is kept, so audio
+     * rendered afterwards continues the wave without a break.
+     * @version 1.1
+     * @since 1.1
+     * @return the newly rendered samples, in the format given by {@link #getFormat()}
+     */
+    @Override
+    public byte[] drain() {
+        byte[] pcm = Arrays.copyOf(buffer, length);
+        length = 0;
+        return pcm;
+    }
+
+    /**
+     * Writes the rendered audio as a WAV file.
+     * @version 1.1
+     * @since 1.1
+     * @param out the stream to which to write the file; it is not closed
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeWav(OutputStream out) throws IOException {
+        AudioInputStream in = new AudioInputStream(
+                new ByteArrayInputStream(buffer, 0, length), format, length / 2);
+        AudioSystem.write(in, AudioFileFormat.Type.WAVE, out);
+    }
+
+    /**
+     * Discards all rendered audio and returns the renderer to its initial silent
+     * state, keeping the allocated buffer for reuse.
+     * @version 1.1
+     * @since 1.1
+     */
+    public void reset() {
+        length = 0;
+        framesRendered = 0;
+        nanosRendered = 0;
+        sineInput = 0;
+        keyer.reset();
+    }
+}
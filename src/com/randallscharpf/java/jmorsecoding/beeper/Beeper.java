@@ -23,12 +23,20 @@
  */
 package com.randallscharpf.java.jmorsecoding.beeper;
 
+import com.randallscharpf.java.jmorsecoding.base.management.FlightEventType;
+import com.randallscharpf.java.jmorsecoding.base.management.MBeans;
 import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Delayer;
 import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
 import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Openable;
+import com.randallscharpf.java.jmorsecoding.base.standards.MorseStandard;
 import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.DoubleSupplier;
 import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.LineUnavailableException;
@@ -39,8 +47,36 @@ import javax.sound.sampled.SourceDataLine;
  * state represents that noise-making is occurring, and the "off" state represents
  * silence. The delayer causes the audio output to continue producing the sound (or
  * lack thereof) corresponding to the most recently set state for the specified
- * amount of time.
- * @version 1.0
+ * amount of time. The edges of each beep are shaped by a {@link KeyingEnvelope}
+ * to prevent clicks.
+ * <br>
+ * Opening a beeper starts its audio line and runs the synthesis code until it
+ * has been compiled, so a beeper that is opened ahead of time, as by
+ * {@link com.randallscharpf.java.jmorsecoding.base.MorsePlayer#warmUp()}, starts
+ * its first beep as quickly as any later one. The delay before each beep is
+ * reported by {@link #getLastOnsetLatency()}.
+ * <br>
+ * The beeper keeps 25 ms of sound queued in its audio line to begin with. Before
+ * each block of sound is written, the line is checked for an underrun, when it
+ * has played everything it was given, and for a near-underrun, when less than
+ * one block is left. After an underrun the queue is doubled, and after a
+ * near-underrun it grows by a block, within the limits set by
+ * {@link #setBufferLimits(Duration, Duration)}; after 10 s without either, it
+ * shrinks by a block. A longer queue survives longer pauses of the feeding
+ * thread at the cost of a longer delay before each beep. Underruns and changes
+ * of the queue are counted in {@link #getMetrics()} and reported to any
+ * {@link LineHealthListener}.
+ * <br>
+ * Each time the audio line runs dry, Java Flight Recorder records an
+ * <code>AudioStall</code> event. Every block of sound written to the line can
+ * also be recorded as an <code>AudioBlockWrite</code> event, but since there
+ * are 200 blocks each second, these are only recorded if the recording settings
+ * enable them.
+ * <br>
+ * Messages that are sent again and again can instead be played with
+ * {@link #playMessage(CharSequence, MorseStandard, PcmCache)}, which copies
+ * audio rendered once into a {@link PcmCache} straight into the audio line.
+ * @version 1.1
  * @since 1.0
  */
 public class Beeper implements OnOff, Delayer, Openable {
@@ -109,7 +145,12 @@ public class Beeper implements OnOff, Delayer, Openable {
      * @throws LineUnavailableException if the audio device cannot be opened
      */
     public Beeper(DoubleSupplier pitch, DoubleSupplier volume, Supplier<WaveType> waveform) throws LineUnavailableException {
-        line = AudioSystem.getSourceDataLine(format);
+        this(AudioSystem.getSourceDataLine(FORMAT), pitch, volume, waveform);
+    }
+
+    /* package-private */ Beeper(SourceDataLine line, DoubleSupplier pitch, DoubleSupplier volume,
+            Supplier<WaveType> waveform) {
+        this.line = line;
         this.pitch = pitch;
         this.volume = volume;
         this.waveform = waveform;
@@ -171,7 +212,7 @@ public class Beeper implements OnOff, Delayer, Openable {
         }
     }
     
-    private static double calcSample(WaveType waveType, double p) {
+    /* package-private */ static double calcSample(WaveType waveType, double p) {
         if (waveType == null) return 0;
         switch (waveType) {
             case SINE:
@@ -187,76 +228,480 @@ public class Beeper implements OnOff, Delayer, Openable {
         }
     }
     
+    // the state of the waveform from one piece of audio to the next
+    private static final class Synthesizer {
+        private long framesWritten;
+        private double sineInput;
+        private final Keyer keyer;
+
+        private Synthesizer(KeyingEnvelope envelope) {
+            keyer = new Keyer(envelope, 44100);
+        }
+
+        // fills the buffer with the frames following those written so far, and tells whether a beep starts in them
+        private boolean fill(byte[] frames, double freq, DoubleSupplier volume, WaveType playingWaveType) {
+            double fpc = 44100/freq;
+            WaveType before = keyer.getWaveType();
+            boolean onset = keyer.key(playingWaveType) && before == null;
+            for (int i = 0; i < frames.length/2; i++) {
+                short v = (short) (Short.MAX_VALUE * volume.getAsDouble()/100.0 * keyer.sample(sineInput));
+                frames[2*i] = (byte) v;
+                frames[2*i+1] = (byte) (v >> 8);
+                sineInput += 2*Math.PI / fpc;
+            }
+            return onset;
+        }
+    }
+
+    // a message to be copied into the line, made afresh for each play since the audio may be shared
+    private static final class PendingMessage {
+        private final byte[] pcm;
+        // written only by the audio thread
+        private int position;
+        private volatile boolean finished;
+
+        private PendingMessage(byte[] pcm) {
+            this.pcm = pcm;
+        }
+    }
+
+    // enough pieces of audio, in every wave type, for the virtual machine to compile the synthesis code
+    private static final int PRIMING_PIECES = 500;
+
+    private static void prime() {
+        Synthesizer synth = new Synthesizer(KeyingEnvelope.DEFAULT);
+        byte[] frames = new byte[BLOCK_BYTES];
+        WaveType[] types = WaveType.values();
+        for (int i = 0; i < PRIMING_PIECES; i++) {
+            // alternate beeps with silence so that every transition is exercised
+            WaveType type = i % 2 == 0 ? null : types[(i / 2) % types.length];
+            synth.fill(frames, 440, () -> 0, type);
+            synth.framesWritten += frames.length/2;
+        }
+    }
+
     private final SourceDataLine line;
-    private final AudioFormat format = new AudioFormat(
+    private static final AudioFormat FORMAT = new AudioFormat(
             AudioFormat.Encoding.PCM_SIGNED,
             44100,
             16,
             1,
             2,
             44100,
-            true
+            false
     );
     private Thread audioManager;
     private volatile WaveType playingWaveType = null;
     private volatile boolean audioManagerMayRun;
+    // when the current beep was requested, written before the wave type so that the audio thread sees both together
+    private volatile long onsetRequestedAt;
+    private volatile long lastOnsetLatency = -1;
+    private final LongAdder underruns = new LongAdder();
+    private final LongAdder framesWritten = new LongAdder();
+    private final LongAdder beeps = new LongAdder();
+    private final LongAdder nearUnderruns = new LongAdder();
+    private final LongAdder bufferResizes = new LongAdder();
+    private volatile int targetBytes;
+    private volatile int minBufferBytes = 5 * BLOCK_BYTES;
+    private volatile int maxBufferBytes = 20 * BLOCK_BYTES;
+    private volatile LineHealthListener healthListener;
+    private volatile KeyingEnvelope envelope = KeyingEnvelope.DEFAULT;
+    // the message being copied into the line instead of synthesized audio, and the thread waiting for it
+    private final AtomicReference<PendingMessage> pendingMessage = new AtomicReference<>();
+    private volatile Thread pcmWaiter;
+    private final Object messageLock = new Object();
+    // 5ms of data, the amount of sound computed and written at a time
+    private static final int BLOCK_BYTES = 440;
+    private static final double NANOS_PER_BYTE = 1e9 / (44100 * 2);
+    // the queue shrinks by a block after this much sound is played without it running low
+    private static final long SHRINK_AFTER_FRAMES = 10 * 44100;
+    private static final FlightEventType BLOCK_WRITE = FlightEventType.define("AudioBlockWrite",
+            "Audio Block Write", "A block of sound was written to the audio line of a beeper", "Audio", false,
+            FlightEventType.Field.of(int.class, "bytes", "Bytes Written"),
+            FlightEventType.Field.of(int.class, "queued", "Bytes Queued Before"));
+    private static final FlightEventType STALL = FlightEventType.define("AudioStall", "Audio Stall",
+            "The audio line of a beeper ran out of sound to play, so the output fell silent", "Audio", true,
+            FlightEventType.Field.of(long.class, "framesWritten", "Frames Written Before"));
     
     /**
-     * {@inheritDoc}
-     * @version 1.0
+     * Starts the audio line and the thread that feeds it. Before the thread is
+     * started, the synthesis code is run on a scratch buffer in every wave type
+     * so that it has been compiled by the time the first beep is requested. The
+     * line is given room for the greatest queue allowed by the buffer limits, and
+     * the queue starts at the least.
+     * @version 1.1
      * @since 1.0
      */
     @Override
     public synchronized void open() throws LineUnavailableException {
         if (audioManagerMayRun) return;
-        line.open(format,2200); // 25ms of buffer
+        prime();
+        int min = minBufferBytes;
+        int max = maxBufferBytes;
+        // the line is given room for the largest queue, and the queue is held to its target by this beeper
+        line.open(FORMAT, max);
         line.start();
+        int capacity = line.getBufferSize();
+        targetBytes = Math.min(min, capacity);
+        int limit = Math.min(max, capacity);
+        lastOnsetLatency = -1;
         audioManagerMayRun = true;
         audioManager = new Thread(() -> {
-            long framesWritten = 0;
-            double sineInput = 0;
-            WaveType lastWaveType = null;
-            WaveType storedWaveType = null;
-            long transitionFrame = 0;
+            Synthesizer synth = new Synthesizer(envelope);
+            byte[] moreframes = new byte[BLOCK_BYTES]; // reused so the audio thread never allocates
+            long healthyFrames = 0;
+            // the queue is only watched once it has been filled, at first and again after each underrun
+            boolean filled = false;
             while(audioManagerMayRun) {
-                double freq = pitch.getAsDouble();
-                double fpc = 44100/freq;
-                if (storedWaveType != playingWaveType) {
-                    transitionFrame = framesWritten;
-                    lastWaveType = storedWaveType;
-                    storedWaveType = playingWaveType;
+                PendingMessage message = pendingMessage.get();
+                byte[] source;
+                int offset;
+                int length;
+                boolean onset = false;
+                long requested = 0;
+                if (message != null) {
+                    // cached audio is copied into the line as it is, a block at a time so that the queue is still watched
+                    source = message.pcm;
+                    offset = message.position;
+                    length = Math.min(BLOCK_BYTES, message.pcm.length - message.position);
+                } else {
+                    WaveType playing = playingWaveType;
+                    requested = onsetRequestedAt;
+                    synth.keyer.setEnvelope(envelope);
+                    onset = synth.fill(moreframes, pitch.getAsDouble(), volume, playing);
+                    source = moreframes;
+                    offset = 0;
+                    length = moreframes.length;
+                }
+                int queued = queuedBytes(synth.framesWritten, capacity);
+                int target = targetBytes;
+                if (filled) {
+                    if (queued == 0) {
+                        // the line ran dry while the frames were computed
+                        underruns.increment();
+                        if (STALL.isEnabled()) {
+                            STALL.emit(synth.framesWritten);
+                        }
+                        LineHealthListener listener = healthListener;
+                        if (listener != null) {
+                            try {
+                                listener.underrun(this, synth.framesWritten);
+                            } catch (RuntimeException ex) {
+                                // a faulty listener must not silence the beeper
+                            }
+                        }
+                        target = resize(target, Math.min(2 * target, limit));
+                        healthyFrames = 0;
+                        filled = false;
+                    } else if (queued < BLOCK_BYTES) {
+                        nearUnderruns.increment();
+                        LineHealthListener listener = healthListener;
+                        if (listener != null) {
+                            try {
+                                listener.nearUnderrun(this, queued);
+                            } catch (RuntimeException ex) {
+                                // a faulty listener must not silence the beeper
+                            }
+                        }
+                        target = resize(target, Math.min(target + BLOCK_BYTES, limit));
+                        healthyFrames = 0;
+                    } else if (healthyFrames >= SHRINK_AFTER_FRAMES) {
+                        target = resize(target, Math.max(target - BLOCK_BYTES, Math.min(min, capacity)));
+                        healthyFrames = 0;
+                    }
                 }
-                byte[] moreframes = new byte[440]; // 5ms of data
-                for (int i = 0; i < moreframes.length/2; i++) {
-                    double sample = calcSample(storedWaveType, sineInput);
-                    double sampleOld = calcSample(lastWaveType, sineInput);
-                    double x = (framesWritten+i-transitionFrame)/44100.0;
-                    x *= freq;
-                    double factor = Math.exp(-2*x*x);
-                    short v = (short) (
-                            Short.MAX_VALUE * volume.getAsDouble()/100.0 *
-                            (sampleOld * factor + sample *(1 - factor))
-                    );
-                    moreframes[2*i] = (byte) (v >> 8);
-                    moreframes[2*i+1] = (byte) v;
-                    sineInput += 2*Math.PI / fpc;
+                // below the capacity of the line, the queue is kept to its target by waiting instead of by the write
+                int excess = queued + length - target;
+                if (excess > 0) {
+                    filled = true;
+                    if (target < capacity) {
+                        LockSupport.parkNanos((long) (excess * NANOS_PER_BYTE));
+                    }
+                }
+                Object event = BLOCK_WRITE.begin();
+                int written = line.write(source, offset, length)/2;
+                if (event != null) {
+                    BLOCK_WRITE.commit(event, length, queued);
+                }
+                if (message != null) {
+                    message.position += 2 * written;
+                    if (message.position >= message.pcm.length) {
+                        message.finished = true;
+                        // unless the message was cancelled and another has taken its place
+                        pendingMessage.compareAndSet(message, null);
+                        LockSupport.unpark(pcmWaiter);
+                    }
+                }
+                synth.framesWritten += written;
+                healthyFrames += written;
+                framesWritten.add(written);
+                if (onset) {
+                    lastOnsetLatency = System.nanoTime() - requested;
+                    beeps.increment();
                 }
-                framesWritten += line.write(moreframes, 0, moreframes.length)/2;
             }
         });
         audioManager.start();
     }
 
+    /**
+     * Plays a message from audio rendered ahead of time, instead of synthesizing
+     * it as it is played. The audio is taken from the cache, or rendered into it
+     * with the current pitch, volume, waveform and keying envelope of this
+     * beeper, and is then copied into the audio line as it is. Repeated messages,
+     * such as the callsign of a beacon, cost almost nothing to play once cached.
+     * <br>
+     * While the message plays, the state set with {@link #setActive(boolean)} is
+     * not heard. This method returns once the whole message has been written to
+     * the audio line, which plays it for up to {@link #getBufferTarget()} longer.
+     * Messages from several threads are played one after another.
+     * @version 1.1
+     * @since 1.1
+     * @param text the message to play
+     * @param standard the standard with which to encode and time the message
+     * @param cache the cache from which to take the audio of the message
+     * @throws InterruptedException if the calling thread is interrupted, in which
+     * case the rest of the message is not played
+     * @throws IllegalStateException if the beeper is not open, or is closed before
+     * the whole message has been written to the audio line
+     * @throws IllegalArgumentException if the symbol set has no encoding for some character
+     */
+    public void playMessage(CharSequence text, MorseStandard standard, PcmCache cache) throws InterruptedException {
+        if (!audioManagerMayRun) {
+            throw new IllegalStateException("Beeper is not open.");
+        }
+        PcmCache.Voice voice = new PcmCache.Voice(pitch.getAsDouble(), volume.getAsDouble(), waveform.get(),
+                envelope, FORMAT.getSampleRate());
+        byte[] pcm = cache.getMessage(text, standard, voice);
+        synchronized (messageLock) {
+            if (!audioManagerMayRun) {
+                throw new IllegalStateException("Beeper is not open.");
+            }
+            if (pcm.length == 0) {
+                return;
+            }
+            PendingMessage message = new PendingMessage(pcm);
+            pcmWaiter = Thread.currentThread();
+            pendingMessage.set(message);
+            while (pendingMessage.get() == message && audioManagerMayRun) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    pendingMessage.compareAndSet(message, null);
+                    throw new InterruptedException();
+                }
+            }
+            if (!message.finished) {
+                throw new IllegalStateException("Beeper was closed before the message finished.");
+            }
+        }
+    }
+
+    // the sound written but not yet played, by the less of the two measures that the line gives
+    private int queuedBytes(long written, int capacity) {
+        long byPosition = 2 * (written - line.getLongFramePosition());
+        long byAvailable = capacity - line.available();
+        return (int) Math.max(0, Math.min(byPosition, byAvailable));
+    }
+
+    // changes the target of the queue on the audio thread, telling the listener if it changed
+    private int resize(int oldBytes, int newBytes) {
+        if (newBytes != oldBytes) {
+            targetBytes = newBytes;
+            bufferResizes.increment();
+            LineHealthListener listener = healthListener;
+            if (listener != null) {
+                try {
+                    listener.bufferResized(this, oldBytes, newBytes);
+                } catch (RuntimeException ex) {
+                    // a faulty listener must not silence the beeper
+                }
+            }
+        }
+        return newBytes;
+    }
+
+    /**
+     * Sets the least and greatest amount of sound that the beeper keeps queued in
+     * its audio line. The queue starts at the least amount and does not grow past
+     * the greatest; both are rounded to whole blocks of about 5 ms. The limits are
+     * 25 ms and 100 ms for new instances, and changes take effect when the beeper
+     * is next opened.
+     * @version 1.1
+     * @since 1.1
+     * @param min the amount of sound queued at first
+     * @param max the most sound that may be queued
+     * @throws IllegalArgumentException if the least amount rounds to no blocks or
+     * the greatest is less than the least
+     */
+    public void setBufferLimits(Duration min, Duration max) {
+        int minBytes = toBlockBytes(min);
+        int maxBytes = toBlockBytes(max);
+        if (minBytes <= 0 || maxBytes < minBytes) {
+            throw new IllegalArgumentException("Buffer limits must be positive and in order.");
+        }
+        minBufferBytes = minBytes;
+        maxBufferBytes = maxBytes;
+    }
+
+    private static int toBlockBytes(Duration time) {
+        long blocks = Math.round(time.toNanos() / NANOS_PER_BYTE / BLOCK_BYTES);
+        return (int) Math.min(blocks * BLOCK_BYTES, Integer.MAX_VALUE / BLOCK_BYTES * BLOCK_BYTES);
+    }
+
+    /**
+     * Gives the amount of sound that the beeper currently keeps queued in its
+     * audio line, which is also about how long each beep waits before it is heard.
+     * @version 1.1
+     * @since 1.1
+     * @return the length of the target queue, or zero if the beeper has never
+     * been opened
+     */
+    public Duration getBufferTarget() {
+        return Duration.ofNanos((long) (targetBytes * NANOS_PER_BYTE));
+    }
+
+    /**
+     * Sets the shape and length of the edges of each beep. The new envelope is
+     * used from the next time a beep starts or stops, even while the beeper is
+     * open. Its ramps are computed before this method returns, so that the audio
+     * thread does not have to.
+     * @version 1.1
+     * @since 1.1
+     * @param envelope the envelope to apply to each beep
+     */
+    public void setKeyingEnvelope(KeyingEnvelope envelope) {
+        envelope.rise(FORMAT.getSampleRate());
+        envelope.fall(FORMAT.getSampleRate());
+        this.envelope = envelope;
+    }
+
+    /**
+     * Gives the shape and length of the edges of each beep.
+     * @version 1.1
+     * @since 1.1
+     * @return the envelope applied to each beep, {@link KeyingEnvelope#DEFAULT} unless set
+     */
+    public KeyingEnvelope getKeyingEnvelope() {
+        return envelope;
+    }
+
+    /**
+     * Sets the listener to be told about underruns and changes of the queue of
+     * the audio line, replacing any listener set before.
+     * @version 1.1
+     * @since 1.1
+     * @param listener the listener, or null for none
+     */
+    public void setLineHealthListener(LineHealthListener listener) {
+        healthListener = listener;
+    }
+
     /**
      * {@inheritDoc}
-     * @version 1.0
+     * @version 1.1
      * @since 1.0
      */
     @Override
     public void setActive(boolean active) {
-        playingWaveType = active ? waveform.get() : null;
+        WaveType next = active ? waveform.get() : null;
+        if (next != null && playingWaveType == null) {
+            onsetRequestedAt = System.nanoTime();
+        }
+        playingWaveType = next;
     }
 
+    /**
+     * Gives the time from the most recent start of a beep being requested to the
+     * first samples of the beep being handed to the audio line. The sound already
+     * queued in the line, about {@link #getBufferTarget()}, which adapts within
+     * the limits set by {@link #setBufferLimits(Duration, Duration)}, is heard
+     * before those samples.
+     * @version 1.1
+     * @since 1.1
+     * @return the delay before the last beep, or null if no beep has started since
+     * the beeper was opened
+     */
+    public Duration getLastOnsetLatency() {
+        long latency = lastOnsetLatency;
+        return latency < 0 ? null : Duration.ofNanos(latency);
+    }
+
+    /**
+     * Gives live measurements of the audio line and counts of the audio played,
+     * as published over JMX by {@link #registerMBean(String)}. The measurements
+     * may be read from any thread.
+     * @version 1.1
+     * @since 1.1
+     * @return a view of the measurements of this beeper
+     */
+    public BeeperMXBean getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Publishes the measurements of this beeper with the platform MBean server
+     * under the type Beeper and the given name. The registration keeps this
+     * beeper reachable until it is removed with
+     * {@link MBeans#unregister(ObjectName)}.
+     * @version 1.1
+     * @since 1.1
+     * @param name the name distinguishing this beeper from others
+     * @return the name under which the bean was registered
+     * @throws JMException if the name is malformed or already registered
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        return MBeans.register(metrics, BeeperMXBean.class, "Beeper", name);
+    }
+
+    private final BeeperMXBean metrics = new BeeperMXBean() {
+        @Override
+        public double getLineBufferFill() {
+            int size = getLineBufferBytes();
+            return size == 0 ? 0 : (size - line.available()) / (double) size;
+        }
+
+        @Override
+        public int getLineBufferBytes() {
+            return line.isOpen() ? line.getBufferSize() : 0;
+        }
+
+        @Override
+        public long getUnderrunCount() {
+            return underruns.sum();
+        }
+
+        @Override
+        public long getNearUnderrunCount() {
+            return nearUnderruns.sum();
+        }
+
+        @Override
+        public int getTargetBufferBytes() {
+            return line.isOpen() ? targetBytes : 0;
+        }
+
+        @Override
+        public long getBufferResizeCount() {
+            return bufferResizes.sum();
+        }
+
+        @Override
+        public long getFramesWritten() {
+            return framesWritten.sum();
+        }
+
+        @Override
+        public long getBeepCount() {
+            return beeps.sum();
+        }
+
+        @Override
+        public double getLastOnsetLatencyMicros() {
+            long latency = lastOnsetLatency;
+            return latency < 0 ? -1 : latency / 1e3;
+        }
+    };
+
     /**
      * {@inheritDoc}
      * @version 1.0
@@ -266,6 +711,16 @@ public class Beeper implements OnOff, Delayer, Openable {
     public void wait(Duration time) throws Exception {
         Thread.sleep(time.toMillis(), time.getNano() % 1_000_000);
     }
+
+    /**
+     * {@inheritDoc}
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public void waitNanos(long nanos) throws Exception {
+        Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+    }
     
     /**
      * {@inheritDoc}
@@ -276,6 +731,8 @@ public class Beeper implements OnOff, Delayer, Openable {
     public synchronized void close() {
         if (!audioManagerMayRun) return;
         audioManagerMayRun = false;
+        pendingMessage.set(null);
+        LockSupport.unpark(pcmWaiter);
         line.stop();
         line.close();
     }
@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.beeper;
+
+/**
+ * The management interface of a {@link Beeper}.
+ * @version 1.1
+ * @since 1.1
+ */
+public interface BeeperMXBean {
+    /**
+     * Gives how full the buffer of the audio line is. The beeper keeps the buffer
+     * filled to its target, given by {@link #getTargetBufferBytes()}, while it is
+     * open; a falling value warns of an underrun.
+     * @since 1.1
+     * @return the fraction of the buffer holding audio not yet played, from 0 to
+     * 1, or 0 if the beeper is not open
+     */
+    public double getLineBufferFill();
+
+    /**
+     * Gives the size of the buffer of the audio line.
+     * @since 1.1
+     * @return the capacity of the buffer in bytes, or 0 if the beeper is not open
+     */
+    public int getLineBufferBytes();
+
+    /**
+     * Gives the amount of sound the beeper currently keeps queued in the audio
+     * line, which grows after underruns and shrinks after long periods without
+     * them.
+     * @since 1.1
+     * @return the target in bytes, or 0 if the beeper is not open
+     */
+    public int getTargetBufferBytes();
+
+    /**
+     * Gives the number of times the target amount of queued sound has changed.
+     * @since 1.1
+     * @return the count of changes
+     */
+    public long getBufferResizeCount();
+
+    /**
+     * Gives the number of times the audio line had played everything given to
+     * it before the beeper gave it more, so that it fell silent.
+     * @since 1.1
+     * @return the count of underruns
+     */
+    public long getUnderrunCount();
+
+    /**
+     * Gives the number of times the audio line held less than 5 ms of sound when
+     * the beeper gave it more.
+     * @since 1.1
+     * @return the count of near-underruns
+     */
+    public long getNearUnderrunCount();
+
+    /**
+     * Gives the amount of audio given to the line.
+     * @since 1.1
+     * @return the count of sample frames written
+     */
+    public long getFramesWritten();
+
+    /**
+     * Gives the number of beeps started.
+     * @since 1.1
+     * @return the count of beeps
+     */
+    public long getBeepCount();
+
+    /**
+     * Gives the delay before the most recent beep, as by {@link Beeper#getLastOnsetLatency()}.
+     * @since 1.1
+     * @return the delay in microseconds, or -1 if no beep has started since the
+     * beeper was opened
+     */
+    public double getLastOnsetLatencyMicros();
+}
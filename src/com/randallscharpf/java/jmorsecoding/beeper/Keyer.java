@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.beeper;
+
+/**
+ * Applies a {@link KeyingEnvelope} to the waveform of a beeper or renderer.
+ * Each change of state starts a ramp from the old wave type to the new one,
+ * during which both are computed and weighted by the ramp table; once the ramp
+ * is over, only the new wave type is computed, and silence costs nothing. A state
+ * that is changed back before its ramp has finished turns around from the
+ * amplitude already reached, so that short elements do not click either.
+ * Instances of this class are not safe for use by multiple threads.
+ * @version 1.1
+ * @since 1.1
+ */
+/* package-private */ final class Keyer {
+
+    private static final float[] NO_RAMP = new float[0];
+
+    private final float sampleRate;
+    private KeyingEnvelope envelope;
+    private Beeper.WaveType from;
+    private Beeper.WaveType to;
+    private float[] ramp = NO_RAMP;
+    private int progress;
+
+    /* package-private */ Keyer(KeyingEnvelope envelope, float sampleRate) {
+        this.envelope = envelope;
+        this.sampleRate = sampleRate;
+    }
+
+    // used from the next change of state onwards
+    /* package-private */ void setEnvelope(KeyingEnvelope envelope) {
+        this.envelope = envelope;
+    }
+
+    /* package-private */ Beeper.WaveType getWaveType() {
+        return to;
+    }
+
+    // starts the ramp to the given wave type, or silence for null, and tells whether the state changed
+    /* package-private */ boolean key(Beeper.WaveType next) {
+        if (next == to) {
+            return false;
+        }
+        float[] nextRamp = next == null ? envelope.fall(sampleRate) : envelope.rise(sampleRate);
+        if (progress < ramp.length && next == from) {
+            // the weight of the new state starts where the weight of the old one had reached
+            progress = (int) Math.round((1 - (double) progress / ramp.length) * nextRamp.length);
+        } else {
+            progress = 0;
+        }
+        from = to;
+        to = next;
+        ramp = nextRamp;
+        return true;
+    }
+
+    // the value, from -1 to 1, of the next frame of the wave at the given phase
+    /* package-private */ double sample(double phase) {
+        if (progress >= ramp.length) {
+            return to == null ? 0 : Beeper.calcSample(to, phase);
+        }
+        float weight = ramp[progress++];
+        return Beeper.calcSample(from, phase) * (1 - weight) + Beeper.calcSample(to, phase) * weight;
+    }
+
+    /* package-private */ void reset() {
+        from = null;
+        to = null;
+        ramp = NO_RAMP;
+        progress = 0;
+    }
+}
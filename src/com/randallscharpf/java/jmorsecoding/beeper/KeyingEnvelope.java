@@ -0,0 +1,234 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.beeper;
+
+import java.time.Duration;
+
+/**
+ * The shape of the edges of each beep. Switching a tone on or off instantly
+ * makes a click and spreads the signal over a wide band, so the amplitude is
+ * ramped up over the rise time at the start of each beep and down over the fall
+ * time at its end. A change from one wave type to another without a gap is
+ * crossfaded over the rise time. Between the ramps, the wave is played at full
+ * amplitude with no further work.
+ * <br>
+ * The ramps are computed once for each sample rate at which the envelope is
+ * used and are then read from a table. Envelopes are equal if their shapes and
+ * ramp times are equal. Instances of this class are immutable.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class KeyingEnvelope {
+
+    /**
+     * The curves along which the amplitude can be ramped.
+     * @version 1.1
+     * @since 1.1
+     */
+    public static enum Shape {
+        /**
+         * Half a cycle of a cosine, which rises smoothly from zero to full
+         * amplitude. A good default for Morse Code.
+         * @version 1.1
+         * @since 1.1
+         */
+        RAISED_COSINE,
+        /**
+         * The integral of a Gaussian curve spanning three standard deviations
+         * either side of the middle of the ramp. It is steeper in the middle than
+         * a raised cosine of the same length, but has less energy away from the
+         * tone.
+         * @version 1.1
+         * @since 1.1
+         */
+        GAUSSIAN;
+    }
+
+    /**
+     * The envelope used unless another is set: 5 ms raised-cosine ramps.
+     * @since 1.1
+     */
+    public static final KeyingEnvelope DEFAULT = new KeyingEnvelope(Shape.RAISED_COSINE, Duration.ofMillis(5));
+
+    private final Shape shape;
+    private final Duration riseTime;
+    private final Duration fallTime;
+    private volatile Tables tables;
+
+    // the ramps for one sample rate
+    private static final class Tables {
+        private final float sampleRate;
+        private final float[] rise;
+        private final float[] fall;
+
+        private Tables(float sampleRate, float[] rise, float[] fall) {
+            this.sampleRate = sampleRate;
+            this.rise = rise;
+            this.fall = fall;
+        }
+    }
+
+    /**
+     * Creates an envelope whose rise and fall take the same time.
+     * @version 1.1
+     * @since 1.1
+     * @param shape the curve of the ramps
+     * @param rampTime the length of each ramp; zero switches the tone instantly
+     */
+    public KeyingEnvelope(Shape shape, Duration rampTime) {
+        this(shape, rampTime, rampTime);
+    }
+
+    /**
+     * Creates an envelope.
+     * @version 1.1
+     * @since 1.1
+     * @param shape the curve of the ramps
+     * @param riseTime the length of the ramp at the start of each beep
+     * @param fallTime the length of the ramp at the end of each beep
+     * @throws IllegalArgumentException if either time is negative
+     */
+    public KeyingEnvelope(Shape shape, Duration riseTime, Duration fallTime) {
+        if (riseTime.isNegative() || fallTime.isNegative()) {
+            throw new IllegalArgumentException("Ramp times must not be negative.");
+        }
+        this.shape = shape;
+        this.riseTime = riseTime;
+        this.fallTime = fallTime;
+    }
+
+    /**
+     * Gives the curve of the ramps.
+     * @version 1.1
+     * @since 1.1
+     * @return the shape of this envelope
+     */
+    public Shape getShape() {
+        return shape;
+    }
+
+    /**
+     * Gives the length of the ramp at the start of each beep.
+     * @version 1.1
+     * @since 1.1
+     * @return the rise time
+     */
+    public Duration getRiseTime() {
+        return riseTime;
+    }
+
+    /**
+     * Gives the length of the ramp at the end of each beep.
+     * @version 1.1
+     * @since 1.1
+     * @return the fall time
+     */
+    public Duration getFallTime() {
+        return fallTime;
+    }
+
+    // the ramps at a sample rate, each giving the weight of the new state from just above 0 to just below 1
+    /* package-private */ float[] rise(float sampleRate) {
+        return tablesFor(sampleRate).rise;
+    }
+
+    /* package-private */ float[] fall(float sampleRate) {
+        return tablesFor(sampleRate).fall;
+    }
+
+    private Tables tablesFor(float sampleRate) {
+        Tables t = tables;
+        if (t == null || t.sampleRate != sampleRate) {
+            float[] rise = ramp(riseTime, sampleRate);
+            float[] fall = fallTime.equals(riseTime) ? rise : ramp(fallTime, sampleRate);
+            t = new Tables(sampleRate, rise, fall);
+            tables = t;
+        }
+        return t;
+    }
+
+    private float[] ramp(Duration time, float sampleRate) {
+        int length = (int) Math.round(time.toNanos() / 1e9 * sampleRate);
+        float[] ramp = new float[length];
+        for (int i = 0; i < length; i++) {
+            // sampled at the middle of each frame so that the ramp is symmetric about its center
+            double p = (i + 0.5) / length;
+            switch (shape) {
+                case RAISED_COSINE:
+                    ramp[i] = (float) (0.5 - 0.5 * Math.cos(Math.PI * p));
+                    break;
+                case GAUSSIAN:
+                    ramp[i] = (float) (0.5 + 0.5 * erf(3 * (2 * p - 1) / Math.sqrt(2)) / erf(3 / Math.sqrt(2)));
+                    break;
+                default:
+                    throw new AssertionError();
+            }
+        }
+        return ramp;
+    }
+
+    // the error function, to within 1.5e-7 (Abramowitz and Stegun, formula 7.1.26)
+    private static double erf(double x) {
+        double t = 1 / (1 + 0.3275911 * Math.abs(x));
+        double y = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741 + t * (-1.453152027
+                + t * 1.061405429)))) * Math.exp(-x * x);
+        return x < 0 ? -y : y;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof KeyingEnvelope)) {
+            return false;
+        }
+        KeyingEnvelope other = (KeyingEnvelope) obj;
+        return shape == other.shape && riseTime.equals(other.riseTime) && fallTime.equals(other.fallTime);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @version 1.1
+     * @since 1.1
+     */
+    @Override
+    public int hashCode() {
+        return (shape.hashCode() * 31 + riseTime.hashCode()) * 31 + fallTime.hashCode();
+    }
+
+    /**
+     * Describes this envelope.
+     * @version 1.1
+     * @since 1.1
+     * @return the shape and ramp times
+     */
+    @Override
+    public String toString() {
+        return shape + " rising over " + riseTime.toNanos() / 1e6 + " ms and falling over "
+                + fallTime.toNanos() / 1e6 + " ms";
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.beeper;
+
+/**
+ * Receives news of the health of the audio line of a {@link Beeper}. Every
+ * method is called on the thread that feeds the line, so implementations must
+ * return quickly and must not block, or they will cause the underruns they are
+ * told about. Exceptions thrown by implementations are ignored. Each method does
+ * nothing unless overridden.
+ * @version 1.1
+ * @since 1.1
+ */
+public interface LineHealthListener {
+    /**
+     * Called when the audio line has played everything given to it, so that the
+     * output fell silent before more sound was written.
+     * @since 1.1
+     * @param beeper the beeper whose line ran dry
+     * @param framesWritten the number of sample frames written to the line
+     * before it ran dry
+     */
+    public default void underrun(Beeper beeper, long framesWritten) {}
+
+    /**
+     * Called when the audio line held less than one block of sound, 5 ms,
+     * when the next block was ready to be written.
+     * @since 1.1
+     * @param beeper the beeper whose line nearly ran dry
+     * @param queuedBytes the amount of sound left in the line, in bytes
+     */
+    public default void nearUnderrun(Beeper beeper, int queuedBytes) {}
+
+    /**
+     * Called when the beeper changes the amount of sound it keeps queued in the
+     * audio line, as it does after underruns and after long periods without
+     * them.
+     * @since 1.1
+     * @param beeper the beeper whose buffer changed
+     * @param oldBytes the previous target amount, in bytes
+     * @param newBytes the new target amount, in bytes
+     */
+    public default void bufferResized(Beeper beeper, int oldBytes, int newBytes) {}
+}
@@ -0,0 +1,413 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.beeper;
+
+import com.randallscharpf.java.jmorsecoding.base.management.MBeans;
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.standards.MorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.MorseSymbolSet;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolTable;
+import com.randallscharpf.java.jmorsecoding.base.timelines.TimingPlan;
+import com.randallscharpf.java.jmorsecoding.base.timings.TimingSnapshot;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A cache of rendered audio for messages that are played many times, such as
+ * the callsign of a beacon. The audio of every symbol is rendered once, by an
+ * {@link AudioRenderer}, and the audio of a message is put together from the
+ * audio of its symbols by copying them into place between stretches of silence.
+ * Whole messages are cached as well, so that playing a message again costs
+ * nothing but copying it into the audio line, as by
+ * {@link Beeper#playMessage(CharSequence, MorseStandard, PcmCache)}.
+ * <br>
+ * Audio is cached for each combination of symbol set, timing, and {@link Voice},
+ * which covers the pitch, volume, waveform, keying envelope and sample rate. The
+ * memory taken by the cached audio is bounded, and the audio used least recently
+ * is evicted to make room. Each symbol starts its wave afresh, so the audio of a
+ * message differs from one rendered in a single pass only in the phase of the
+ * wave within each symbol. Instances of this class are safe for use by multiple
+ * threads.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class PcmCache {
+
+    private final long capacityBytes;
+    private long memoryBytes;
+    private final LinkedHashMap<Key, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private MorseSymbolSet planSymbols;
+    private TimingPlan plan;
+    private final LongAdder messageHits = new LongAdder();
+    private final LongAdder messageMisses = new LongAdder();
+    private final LongAdder symbolHits = new LongAdder();
+    private final LongAdder symbolMisses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty cache.
+     * @version 1.1
+     * @since 1.1
+     * @param capacityBytes the most memory, in bytes of audio, that the cache
+     * may hold; audio longer than this is rendered but not kept
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public PcmCache(long capacityBytes) {
+        if (capacityBytes < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative.");
+        }
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * The sound with which audio is rendered. Voices are equal if all of their
+     * parameters are equal, and audio rendered for one voice is only reused for
+     * equal voices. Instances of this class are immutable.
+     * @version 1.1
+     * @since 1.1
+     */
+    public static final class Voice {
+
+        private final double pitch;
+        private final double volume;
+        private final Beeper.WaveType waveform;
+        private final KeyingEnvelope envelope;
+        private final float sampleRate;
+
+        /**
+         * Creates a voice rendering 16-bit mono little-endian audio, the format
+         * of {@link AudioRenderer} and of {@link Beeper}.
+         * @version 1.1
+         * @since 1.1
+         * @param pitch the frequency of the wave, in Hz
+         * @param volume the volume percent at which to render
+         * @param waveform the shape of the wave, which determines its tone
+         * @param envelope the shape of the edges of each beep
+         * @param sampleRate the number of samples per second to render
+         */
+        public Voice(double pitch, double volume, Beeper.WaveType waveform, KeyingEnvelope envelope,
+                float sampleRate) {
+            this.pitch = pitch;
+            this.volume = volume;
+            this.waveform = waveform;
+            this.envelope = envelope;
+            this.sampleRate = sampleRate;
+        }
+
+        /**
+         * Gives the format of the audio rendered with this voice.
+         * @version 1.1
+         * @since 1.1
+         * @return the format of the audio
+         */
+        public AudioFormat getFormat() {
+            return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sampleRate, 16, 1, 2, sampleRate, false);
+        }
+
+        /**
+         * {@inheritDoc}
+         * @version 1.1
+         * @since 1.1
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Voice)) {
+                return false;
+            }
+            Voice other = (Voice) obj;
+            return Double.compare(pitch, other.pitch) == 0 && Double.compare(volume, other.volume) == 0
+                    && waveform == other.waveform && envelope.equals(other.envelope)
+                    && Float.compare(sampleRate, other.sampleRate) == 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         * @version 1.1
+         * @since 1.1
+         */
+        @Override
+        public int hashCode() {
+            return Objects.hash(pitch, volume, waveform, envelope, sampleRate);
+        }
+    }
+
+    // the audio of a symbol, for a character, or of a message, for a string
+    private static final class Key {
+        private final MorseSymbolSet symbols;
+        private final TimingSnapshot timing;
+        private final Voice voice;
+        private final Object content;
+
+        private Key(MorseSymbolSet symbols, TimingSnapshot timing, Voice voice, Object content) {
+            this.symbols = symbols;
+            this.timing = timing;
+            this.voice = voice;
+            this.content = content;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return symbols == other.symbols && timing.equals(other.timing) && voice.equals(other.voice)
+                    && content.equals(other.content);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((System.identityHashCode(symbols) * 31 + timing.hashCode()) * 31 + voice.hashCode()) * 31
+                    + content.hashCode();
+        }
+    }
+
+    /**
+     * Gives the audio of a message, rendering it if it is not cached. Each
+     * whitespace character becomes a word gap, and other characters are
+     * separated by letter gaps, as by
+     * {@link com.randallscharpf.java.jmorsecoding.base.symbolsets.MorseSymbolSet#getPlayableForString(String)}.
+     * The returned array may be shared with other callers and must not be modified.
+     * @version 1.1
+     * @since 1.1
+     * @param text the message to render
+     * @param standard the standard with which to encode and time the message
+     * @param voice the sound with which to render the message
+     * @return the audio of the message, in the format given by {@link Voice#getFormat()}
+     * @throws IllegalArgumentException if the symbol set has no encoding for some character
+     */
+    public byte[] getMessage(CharSequence text, MorseStandard standard, Voice voice) {
+        MorseSymbolSet symbols = standard.getSymbolSpecification();
+        TimingSnapshot timing = standard.getTimingSpecification().snapshot();
+        Key key = new Key(symbols, timing, voice, text.toString());
+        byte[] pcm = get(key);
+        if (pcm != null) {
+            messageHits.increment();
+            return pcm;
+        }
+        messageMisses.increment();
+        pcm = compose(text, symbols, timing, voice);
+        put(key, pcm);
+        return pcm;
+    }
+
+    private byte[] compose(CharSequence text, MorseSymbolSet symbols, TimingSnapshot timing, Voice voice) {
+        long letterGap = timing.getNanos(ElementType.LETTER_GAP);
+        long wordGap = timing.getNanos(ElementType.WORD_GAP);
+        // find where each symbol starts before allocating the audio, which is silent everywhere else
+        long[] starts = new long[text.length()];
+        long time = 0;
+        boolean needsGap = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                time += wordGap;
+                needsGap = false;
+                continue;
+            }
+            if (needsGap) {
+                time += letterGap;
+            }
+            starts[i] = time;
+            for (long nanos : durations(symbols, timing, c)) {
+                time += nanos;
+            }
+            needsGap = true;
+        }
+        if (needsGap) {
+            time += wordGap;
+        }
+        long frames = frameAt(time, voice);
+        if (2 * frames > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Message is too long to render at once.");
+        }
+        byte[] pcm = new byte[(int) (2 * frames)];
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            byte[] symbol = getSymbol(c, symbols, timing, voice);
+            int offset = (int) (2 * frameAt(starts[i], voice));
+            System.arraycopy(symbol, 0, pcm, offset, Math.min(symbol.length, pcm.length - offset));
+        }
+        return pcm;
+    }
+
+    private static long frameAt(long nanos, Voice voice) {
+        return Math.round(nanos / 1e9 * voice.sampleRate);
+    }
+
+    // renders from the start of the first element of a symbol to the end of the fall of its last
+    private byte[] getSymbol(char c, MorseSymbolSet symbols, TimingSnapshot timing, Voice voice) {
+        Key key = new Key(symbols, timing, voice, c);
+        byte[] pcm = get(key);
+        if (pcm != null) {
+            symbolHits.increment();
+            return pcm;
+        }
+        symbolMisses.increment();
+        AudioRenderer renderer = new AudioRenderer(voice.pitch, voice.volume, voice.waveform, voice.sampleRate);
+        renderer.setKeyingEnvelope(voice.envelope);
+        long[] nanos = durations(symbols, timing, c);
+        renderer.play(states(symbols, timing, c), nanos, 0, nanos.length);
+        renderer.setActive(false);
+        renderer.waitNanos(voice.envelope.getFallTime().toNanos());
+        pcm = renderer.drain();
+        put(key, pcm);
+        return pcm;
+    }
+
+    private synchronized long[] durations(MorseSymbolSet symbols, TimingSnapshot timing, char c) {
+        return planFor(symbols, timing).getDurations(c);
+    }
+
+    private synchronized boolean[] states(MorseSymbolSet symbols, TimingSnapshot timing, char c) {
+        return planFor(symbols, timing).getStates(c);
+    }
+
+    // the plan for the most recent symbol set and timing, since plans are not safe for use by multiple threads
+    private synchronized TimingPlan planFor(MorseSymbolSet symbols, TimingSnapshot timing) {
+        if (plan == null || planSymbols != symbols) {
+            plan = new TimingPlan(new SymbolTable(symbols), timing);
+            planSymbols = symbols;
+        } else {
+            plan = plan.update(timing);
+        }
+        return plan;
+    }
+
+    private synchronized byte[] get(Key key) {
+        return entries.get(key);
+    }
+
+    private synchronized void put(Key key, byte[] pcm) {
+        if (pcm.length > capacityBytes || entries.containsKey(key)) {
+            return;
+        }
+        entries.put(key, pcm);
+        memoryBytes += pcm.length;
+        Iterator<Map.Entry<Key, byte[]>> eldest = entries.entrySet().iterator();
+        while (memoryBytes > capacityBytes) {
+            memoryBytes -= eldest.next().getValue().length;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Discards all cached audio. The counts of hits and misses are kept.
+     * @version 1.1
+     * @since 1.1
+     */
+    public synchronized void clear() {
+        entries.clear();
+        memoryBytes = 0;
+    }
+
+    /**
+     * Gives live counts of the hits, misses and memory of this cache, as
+     * published over JMX by {@link #registerMBean(String)}. The counts may be
+     * read from any thread.
+     * @version 1.1
+     * @since 1.1
+     * @return a view of the counts of this cache
+     */
+    public PcmCacheMXBean getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Publishes the counts of this cache with the platform MBean server under
+     * the type PcmCache and the given name. The registration keeps this cache
+     * reachable until it is removed with {@link MBeans#unregister(ObjectName)}.
+     * @version 1.1
+     * @since 1.1
+     * @param name the name distinguishing this cache from others
+     * @return the name under which the bean was registered
+     * @throws JMException if the name is malformed or already registered
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        return MBeans.register(metrics, PcmCacheMXBean.class, "PcmCache", name);
+    }
+
+    private final PcmCacheMXBean metrics = new PcmCacheMXBean() {
+        @Override
+        public long getMessageHitCount() {
+            return messageHits.sum();
+        }
+
+        @Override
+        public long getMessageMissCount() {
+            return messageMisses.sum();
+        }
+
+        @Override
+        public long getSymbolHitCount() {
+            return symbolHits.sum();
+        }
+
+        @Override
+        public long getSymbolMissCount() {
+            return symbolMisses.sum();
+        }
+
+        @Override
+        public double getHitRate() {
+            long hits = messageHits.sum() + symbolHits.sum();
+            long total = hits + messageMisses.sum() + symbolMisses.sum();
+            return total == 0 ? 0 : hits / (double) total;
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return evictions.sum();
+        }
+
+        @Override
+        public int getEntryCount() {
+            synchronized (PcmCache.this) {
+                return entries.size();
+            }
+        }
+
+        @Override
+        public long getMemoryBytes() {
+            synchronized (PcmCache.this) {
+                return memoryBytes;
+            }
+        }
+
+        @Override
+        public long getCapacityBytes() {
+            return capacityBytes;
+        }
+    };
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.beeper;
+
+/**
+ * The management interface of a {@link PcmCache}.
+ * @version 1.1
+ * @since 1.1
+ */
+public interface PcmCacheMXBean {
+    /**
+     * Gives the number of messages whose audio was found in the cache.
+     * @since 1.1
+     * @return the count of message hits
+     */
+    public long getMessageHitCount();
+
+    /**
+     * Gives the number of messages whose audio had to be put together.
+     * @since 1.1
+     * @return the count of message misses
+     */
+    public long getMessageMissCount();
+
+    /**
+     * Gives the number of times the audio of a symbol was found in the cache
+     * while a message was put together.
+     * @since 1.1
+     * @return the count of symbol hits
+     */
+    public long getSymbolHitCount();
+
+    /**
+     * Gives the number of times the audio of a symbol had to be rendered.
+     * @since 1.1
+     * @return the count of symbol misses
+     */
+    public long getSymbolMissCount();
+
+    /**
+     * Gives the fraction of all lookups, of messages and of symbols, that were
+     * found in the cache.
+     * @since 1.1
+     * @return the hit rate, from 0 to 1, or 0 if nothing has been looked up
+     */
+    public double getHitRate();
+
+    /**
+     * Gives the number of entries evicted to make room for others.
+     * @since 1.1
+     * @return the count of evictions
+     */
+    public long getEvictionCount();
+
+    /**
+     * Gives the number of messages and symbols whose audio is cached.
+     * @since 1.1
+     * @return the count of entries
+     */
+    public int getEntryCount();
+
+    /**
+     * Gives the memory taken by the cached audio.
+     * @since 1.1
+     * @return the total length of the cached audio, in bytes
+     */
+    public long getMemoryBytes();
+
+    /**
+     * Gives the most memory that the cached audio may take.
+     * @since 1.1
+     * @return the capacity in bytes
+     */
+    public long getCapacityBytes();
+}
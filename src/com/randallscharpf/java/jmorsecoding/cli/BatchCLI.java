@@ -0,0 +1,549 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.cli;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.standards.BuiltinMorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.ExtendedInternationalSymbolSet;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.InternationalSymbolSet;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.MorseSymbolSet;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolTable;
+import com.randallscharpf.java.jmorsecoding.base.timings.FarnsworthTiming;
+import com.randallscharpf.java.jmorsecoding.base.timings.MorseTiming;
+import com.randallscharpf.java.jmorsecoding.base.timings.StandardTiming;
+import com.randallscharpf.java.jmorsecoding.beeper.AudioRenderer;
+import com.randallscharpf.java.jmorsecoding.beeper.Beeper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A command-line interface that renders text to Morse Code without a GUI. Inputs
+ * may be files, directories (searched recursively for files), or standard input,
+ * and each is encoded and rendered as a separate message on a pool of worker
+ * threads. Each message is rendered as a WAV file, as dot/dash notation, or as a
+ * log of timed key events, and is either written to an output directory or
+ * streamed to standard output in the order the inputs were given. At most twice
+ * as many inputs as there are threads are rendered ahead of the one being
+ * written, so that the results held in memory stay bounded however many inputs
+ * are given. A summary of throughput is printed to standard error when all
+ * inputs are done.
+ * <br>
+ * Run with <code>--help</code> for the list of options.
+ * @version 1.1
+ * @since 1.1
+ */
+public final class BatchCLI {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: java " + BatchCLI.class.getName() + " [options] <input>...",
+            "Each input is a file, a directory to search recursively, or - (once) for standard input.",
+            "Arguments after -- are inputs even if they begin with --.",
+            "",
+            "Options:",
+            "  --standard NAME     symbol set: ITU_R_M1677_1_2009 (default) or EXTENDED_INTERNATIONAL",
+            "  --wpm N             overall words per minute (default 24)",
+            "  --char-wpm N        character words per minute; selects Farnsworth timing",
+            "  --format FORMAT     wav, text (default), or events",
+            "  --output PATH       directory for output files, or - for standard output (default)",
+            "  --pitch HZ          tone frequency for wav output (default 440)",
+            "  --volume PERCENT    tone volume for wav output (default 100)",
+            "  --waveform TYPE     one of " + String.join(", ", Beeper.WaveType.names()) + " (default TRIANGLE)",
+            "  --sample-rate HZ    sample rate for wav output (default 44100)",
+            "  --threads N         number of worker threads (default: available processors)",
+            "  --skip-unknown      drop characters with no encoding instead of failing",
+            "  --help              print this message"
+    );
+
+    private BatchCLI() {}
+
+    /**
+     * The output representations supported by the command-line interface.
+     * @version 1.1
+     * @since 1.1
+     */
+    public static enum Format {
+        /**
+         * Audio as a 16-bit mono WAV file.
+         * @since 1.1
+         */
+        WAV("wav"),
+        /**
+         * Dots and dashes, with letters separated by spaces and words by slashes.
+         * @since 1.1
+         */
+        TEXT("txt"),
+        /**
+         * One line per element giving its start time, state, and duration in nanoseconds.
+         * @since 1.1
+         */
+        EVENTS("log");
+
+        /**
+         * The file name extension used for outputs of this format.
+         * @since 1.1
+         */
+        public final String extension;
+
+        private Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    private static final class Options {
+        String standard = BuiltinMorseStandard.ITU_R_M1677_1_2009.name();
+        double wpm = 24;
+        double charWpm = -1;
+        Format format = Format.TEXT;
+        String output = "-";
+        double pitch = 440;
+        double volume = 100;
+        Beeper.WaveType waveform = Beeper.WaveType.TRIANGLE;
+        float sampleRate = 44100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean skipUnknown = false;
+        final List<String> inputs = new ArrayList<>();
+    }
+
+    private static final class Input {
+        final String name;
+        final Path path;
+
+        Input(String name, Path path) {
+            this.name = name;
+            this.path = path;
+        }
+    }
+
+    private static final class Result {
+        final Input input;
+        final byte[] data;
+        final long characters;
+        final long elements;
+        final long airtimeNanos;
+
+        Result(Input input, byte[] data, long characters, long elements, long airtimeNanos) {
+            this.input = input;
+            this.data = data;
+            this.characters = characters;
+            this.elements = elements;
+            this.airtimeNanos = airtimeNanos;
+        }
+    }
+
+    /**
+     * Runs the command-line interface. Exits with status 0 if every input was
+     * rendered, 1 if any input failed, and 2 if the arguments are invalid.
+     * @version 1.1
+     * @since 1.1
+     * @param args the options and inputs, as described by <code>--help</code>
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.in, System.out, System.err));
+    }
+
+    // everything main does but exiting, with the standard streams given, so that it can be run within a program
+    /* package-private */ static int run(String[] args, InputStream stdin, PrintStream stdout, PrintStream stderr) {
+        Options options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException ex) {
+            stderr.println(ex.getMessage());
+            stderr.println(USAGE);
+            return 2;
+        }
+        if (options == null) {
+            stdout.println(USAGE);
+            return 0;
+        }
+        try {
+            return run(options, stdin, stdout, stderr);
+        } catch (IllegalArgumentException ex) {
+            stderr.println(ex.getMessage());
+            return 2;
+        } catch (IOException | InterruptedException ex) {
+            ex.printStackTrace(stderr);
+            return 1;
+        }
+    }
+
+    private static Options parse(String[] args) {
+        Options o = new Options();
+        boolean optionsEnded = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (optionsEnded || !arg.startsWith("--")) {
+                o.inputs.add(arg);
+                continue;
+            }
+            if (arg.equals("--")) {
+                optionsEnded = true;
+                continue;
+            }
+            switch (arg) {
+                case "--help":
+                    return null;
+                case "--skip-unknown":
+                    o.skipUnknown = true;
+                    continue;
+                default:
+                    break;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            try {
+                switch (arg) {
+                    case "--standard":
+                        o.standard = BuiltinMorseStandard.valueOf(value.toUpperCase(Locale.ROOT)).name();
+                        break;
+                    case "--wpm":
+                        o.wpm = Double.parseDouble(value);
+                        break;
+                    case "--char-wpm":
+                        o.charWpm = Double.parseDouble(value);
+                        break;
+                    case "--format":
+                        o.format = Format.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--output":
+                        o.output = value;
+                        break;
+                    case "--pitch":
+                        o.pitch = Double.parseDouble(value);
+                        if (!(o.pitch > 0) || Double.isInfinite(o.pitch)) {
+                            throw new IllegalArgumentException("Pitch must be a positive number of hertz.");
+                        }
+                        break;
+                    case "--volume":
+                        o.volume = Double.parseDouble(value);
+                        if (!(o.volume >= 0 && o.volume <= 100)) {
+                            throw new IllegalArgumentException("Volume must be from 0 to 100 percent.");
+                        }
+                        break;
+                    case "--waveform":
+                        o.waveform = Beeper.WaveType.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--sample-rate":
+                        o.sampleRate = Float.parseFloat(value);
+                        if (!(o.sampleRate > 0) || Float.isInfinite(o.sampleRate)) {
+                            throw new IllegalArgumentException("Sample rate must be a positive number of hertz.");
+                        }
+                        break;
+                    case "--threads":
+                        o.threads = Integer.parseInt(value);
+                        if (o.threads <= 0) {
+                            throw new IllegalArgumentException("Thread count must be positive.");
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid value for " + arg + ": " + value);
+            }
+        }
+        if (o.inputs.isEmpty()) {
+            throw new IllegalArgumentException("No inputs given.");
+        }
+        return o;
+    }
+
+    private static int run(Options options, InputStream stdin, PrintStream stdout, PrintStream stderr)
+            throws IOException, InterruptedException {
+        // validate the timing once up front so that bad values fail before any work starts
+        timingFor(options);
+        List<Input> inputs = collectInputs(options.inputs);
+        boolean toStdout = options.output.equals("-");
+        if (toStdout && options.format == Format.WAV && inputs.size() > 1) {
+            throw new IllegalArgumentException("WAV output of several inputs requires an output directory.");
+        }
+        if (!toStdout) {
+            checkOutputNames(inputs, options.format);
+        }
+        Path outDir = toStdout ? null : Files.createDirectories(Paths.get(options.output));
+        byte[] stdinText = null;
+        for (Input input : inputs) {
+            if (input.path == null) {
+                // collectInputs allows standard input only once, since it can only be read once
+                stdinText = readAll(stdin);
+                break;
+            }
+        }
+        final byte[] stdinBytes = stdinText;
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(options.threads);
+        // symbol sets cache lookups without synchronization, so each worker has its own
+        ThreadLocal<SymbolTable> tables = ThreadLocal.withInitial(() -> new SymbolTable(symbolSetFor(options.standard)));
+        Function<Input, Future<Result>> submit = (input) -> pool.submit(() -> {
+            byte[] raw = input.path == null ? stdinBytes : Files.readAllBytes(input.path);
+            return render(input, new String(raw, StandardCharsets.UTF_8), tables.get(), options);
+        });
+
+        int failures = 0;
+        long characters = 0;
+        long elements = 0;
+        long airtime = 0;
+        long bytes = 0;
+        // results are written in order, so only a window of inputs is rendered ahead of the one being written
+        int window = (int) Math.min(Integer.MAX_VALUE, 2L * options.threads);
+        Iterator<Input> pending = inputs.iterator();
+        Deque<Future<Result>> futures = new ArrayDeque<>();
+        try {
+            while (futures.size() < window && pending.hasNext()) {
+                futures.add(submit.apply(pending.next()));
+            }
+            while (!futures.isEmpty()) {
+                Future<Result> future = futures.poll();
+                if (pending.hasNext()) {
+                    futures.add(submit.apply(pending.next()));
+                }
+                Result result;
+                try {
+                    result = future.get();
+                } catch (ExecutionException ex) {
+                    failures++;
+                    stderr.println("Failed: " + ex.getCause().getMessage());
+                    continue;
+                }
+                if (toStdout) {
+                    stdout.write(result.data);
+                    stdout.flush();
+                } else {
+                    Files.write(outDir.resolve(result.input.name + "." + options.format.extension), result.data);
+                }
+                characters += result.characters;
+                elements += result.elements;
+                airtime += result.airtimeNanos;
+                bytes += result.data.length;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        stderr.printf(Locale.ROOT, "%d input(s), %d failed, %d characters, %d elements, %.1f s of Morse, %d bytes written%n",
+                inputs.size(), failures, characters, elements, airtime / 1e9, bytes);
+        stderr.printf(Locale.ROOT, "%.3f s elapsed on %d thread(s): %.0f characters/s, %.1fx real time%n",
+                seconds, options.threads, characters / seconds, airtime / 1e9 / seconds);
+        return failures == 0 ? 0 : 1;
+    }
+
+    private static List<Input> collectInputs(List<String> args) throws IOException {
+        List<Input> inputs = new ArrayList<>();
+        boolean readsStdin = false;
+        for (String arg : args) {
+            if (arg.equals("-")) {
+                if (readsStdin) {
+                    throw new IllegalArgumentException("Standard input can only be given once.");
+                }
+                readsStdin = true;
+                inputs.add(new Input("stdin", null));
+                continue;
+            }
+            Path path = Paths.get(arg);
+            if (Files.isDirectory(path)) {
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(path)) {
+                    files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    String relative = path.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "_");
+                    inputs.add(new Input(relative, file));
+                }
+            } else if (Files.isRegularFile(path)) {
+                inputs.add(new Input(path.getFileName().toString(), path));
+            } else {
+                throw new IllegalArgumentException("No such file or directory: " + arg);
+            }
+        }
+        return inputs;
+    }
+
+    // directory inputs are flattened into one name each, which can clash with another input's name
+    private static void checkOutputNames(List<Input> inputs, Format format) {
+        Map<String, Input> written = new HashMap<>();
+        for (Input input : inputs) {
+            String name = input.name + "." + format.extension;
+            Input other = written.putIfAbsent(name, input);
+            if (other != null) {
+                throw new IllegalArgumentException("Inputs " + describe(other) + " and " + describe(input)
+                        + " would both be written to " + name + ".");
+            }
+        }
+    }
+
+    private static String describe(Input input) {
+        return input.path == null ? "-" : input.path.toString();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[65536];
+        int n;
+        while ((n = in.read(chunk)) >= 0) {
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static MorseSymbolSet symbolSetFor(String standard) {
+        switch (BuiltinMorseStandard.valueOf(standard)) {
+            case ITU_R_M1677_1_2009:
+                return new InternationalSymbolSet();
+            case EXTENDED_INTERNATIONAL:
+                return new ExtendedInternationalSymbolSet();
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    private static MorseTiming timingFor(Options options) {
+        if (options.charWpm > 0) {
+            return new FarnsworthTiming(options.wpm, options.charWpm);
+        }
+        return new StandardTiming(options.wpm);
+    }
+
+    private static Result render(Input input, String text, SymbolTable table, Options options) throws IOException {
+        if (options.skipUnknown) {
+            StringBuilder kept = new StringBuilder(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                if (table.canEncode(text.charAt(i))) {
+                    kept.append(text.charAt(i));
+                }
+            }
+            text = kept.toString();
+        }
+        ElementType[] elements;
+        try {
+            elements = table.encode(text);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(input.name + ": " + ex.getMessage(), ex);
+        }
+        MorseTiming timing = timingFor(options);
+        long[] nanos = new long[ElementType.values().length];
+        for (ElementType type : ElementType.values()) {
+            nanos[type.ordinal()] = timing.timeForElementType(type).toNanos();
+        }
+        long airtime = 0;
+        for (ElementType type : elements) {
+            airtime += nanos[type.ordinal()];
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        switch (options.format) {
+            case WAV:
+                writeWav(elements, nanos, options, out);
+                break;
+            case TEXT:
+                writeNotation(elements, out);
+                break;
+            case EVENTS:
+                writeEvents(input.name, elements, nanos, out);
+                break;
+            default:
+                throw new AssertionError();
+        }
+        return new Result(input, out.toByteArray(), text.length(), elements.length, airtime);
+    }
+
+    private static void writeWav(ElementType[] elements, long[] nanos, Options options, OutputStream out)
+            throws IOException {
+        AudioRenderer renderer = new AudioRenderer(options.pitch, options.volume, options.waveform, options.sampleRate);
+        // the whole schedule is known, so render it as a single batch
+        boolean[] states = new boolean[elements.length];
+        long[] durations = new long[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            states[i] = elements[i].activeDuringPlay;
+            durations[i] = nanos[elements[i].ordinal()];
+        }
+        renderer.play(states, durations, 0, elements.length);
+        renderer.writeWav(out);
+    }
+
+    private static void writeNotation(ElementType[] elements, OutputStream out) throws IOException {
+        StringBuilder b = new StringBuilder(elements.length);
+        for (ElementType type : elements) {
+            switch (type) {
+                case DOT:
+                    b.append('.');
+                    break;
+                case DASH:
+                    b.append('-');
+                    break;
+                case ELEMENT_GAP:
+                    break;
+                case LETTER_GAP:
+                    b.append(' ');
+                    break;
+                case WORD_GAP:
+                    b.append(" / ");
+                    break;
+                default:
+                    throw new AssertionError();
+            }
+        }
+        String line = b.toString();
+        if (line.endsWith(" / ")) {
+            line = line.substring(0, line.length() - 3);
+        }
+        out.write((line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeEvents(String name, ElementType[] elements, long[] nanos, OutputStream out)
+            throws IOException {
+        StringBuilder b = new StringBuilder(elements.length * 24);
+        b.append("# ").append(name).append(System.lineSeparator());
+        long time = 0;
+        for (ElementType type : elements) {
+            long duration = nanos[type.ordinal()];
+            b.append(time).append(type.activeDuringPlay ? " ON " : " OFF ").append(duration)
+                    .append(System.lineSeparator());
+            time += duration;
+        }
+        out.write(b.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * A command-line interface for rendering text with <code>jMorseCoding</code>.
+ * Allows batches of files to be converted to audio, Morse notation, or timed key
+ * events without writing any Java code or opening a GUI.
+ * @since 1.1
+ */
+package com.randallscharpf.java.jmorsecoding.cli;
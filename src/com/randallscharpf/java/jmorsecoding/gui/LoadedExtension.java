@@ -23,6 +23,7 @@
  */
 package com.randallscharpf.java.jmorsecoding.gui;
 
+import com.randallscharpf.java.jmorsecoding.base.management.FlightEventType;
 import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Delayer;
 import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
 import java.io.File;
@@ -38,8 +39,10 @@ import java.util.jar.JarInputStream;
  * from a file. If the manifest of the JAR file indicates that the same class should
  * be used for both the instances, a single instance will be created and used for
  * both purposes. Instances of this class are immutable, being created from JAR files
- * and holding the data processed from the extension.
- * @version 1.0
+ * and holding the data processed from the extension. Each attempt to load an
+ * extension is recorded by Java Flight Recorder as an <code>ExtensionLoad</code>
+ * event, whether or not it succeeds.
+ * @version 1.1
  * @since 1.0
  */
 public class LoadedExtension {
@@ -53,7 +56,7 @@ public class LoadedExtension {
      * of any file passed to this constructor must be trusted, as an untrusted party
      * who produces a file that is passed to this method is able to run arbitrary
      * code in the JVM of the caller.
-     * @version 1.0
+     * @version 1.1
      * @since 1.0
      * @param jarFile the file to load
      * @throws IOException if the JAR is missing manifest attributes or unreadable
@@ -62,25 +65,44 @@ public class LoadedExtension {
      * or incompatible class definitions
      */
     public LoadedExtension(File jarFile) throws IOException, ReflectiveOperationException {
-        JarInputStream is = new JarInputStream(new FileInputStream(jarFile));
-        extName = (String) is.getManifest().getMainAttributes().get(new Attributes.Name("Extension-Name"));
-        String onOffClass = (String) is.getManifest().getMainAttributes().get(new Attributes.Name("OnOff-Class"));
-        String delayClass = (String) is.getManifest().getMainAttributes().get(new Attributes.Name("Delayer-Class"));
-        if (extName == null || onOffClass == null || delayClass == null) {
-            throw new IOException("JAR file is not an extension: missing manifest attribute(s)!");
-        }
-        URLClassLoader loader = new URLClassLoader(new URL[]{jarFile.toURI().toURL()}, getClass().getClassLoader());
+        Object event = EXTENSION_LOAD.begin();
+        String onOffClass = null;
+        String delayClass = null;
+        boolean loaded = false;
         try {
-            onOff = (OnOff) loader.loadClass(onOffClass).newInstance();
-            if (onOffClass.equals(delayClass)) {
-                delayer = (Delayer) onOff;
-            } else {
-                delayer = (Delayer) loader.loadClass(delayClass).newInstance();
+            JarInputStream is = new JarInputStream(new FileInputStream(jarFile));
+            extName = (String) is.getManifest().getMainAttributes().get(new Attributes.Name("Extension-Name"));
+            onOffClass = (String) is.getManifest().getMainAttributes().get(new Attributes.Name("OnOff-Class"));
+            delayClass = (String) is.getManifest().getMainAttributes().get(new Attributes.Name("Delayer-Class"));
+            if (extName == null || onOffClass == null || delayClass == null) {
+                throw new IOException("JAR file is not an extension: missing manifest attribute(s)!");
+            }
+            URLClassLoader loader = new URLClassLoader(new URL[]{jarFile.toURI().toURL()}, getClass().getClassLoader());
+            try {
+                onOff = (OnOff) loader.loadClass(onOffClass).newInstance();
+                if (onOffClass.equals(delayClass)) {
+                    delayer = (Delayer) onOff;
+                } else {
+                    delayer = (Delayer) loader.loadClass(delayClass).newInstance();
+                }
+            } catch (UnsupportedClassVersionError | ClassCastException ex) {
+                throw new ReflectiveOperationException(ex);
+            }
+            loaded = true;
+        } finally {
+            if (event != null) {
+                EXTENSION_LOAD.commit(event, jarFile.getPath(), onOffClass, delayClass, loaded);
             }
-        } catch (UnsupportedClassVersionError | ClassCastException ex) {
-            throw new ReflectiveOperationException(ex);
         }
     }
+
+    private static final FlightEventType EXTENSION_LOAD = FlightEventType.define("ExtensionLoad", "Extension Load",
+            "An extension JAR file was read and its state setter and delayer were instantiated", "Extensions", true,
+            FlightEventType.Field.of(String.class, "file", "File"),
+            FlightEventType.Field.of(String.class, "onOffClass", "State Setter Class"),
+            FlightEventType.Field.of(String.class, "delayerClass", "Delayer Class"),
+            FlightEventType.Field.of(boolean.class, "loaded", "Loaded"));
+
     /**
      * The human-readable name of the extension.
      * @version 1.0
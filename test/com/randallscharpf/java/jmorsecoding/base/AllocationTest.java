@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.PlayableMorseUnit;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.KeyEventRecorder;
+import com.randallscharpf.java.jmorsecoding.base.simulation.TransitionRecorder;
+import com.randallscharpf.java.jmorsecoding.base.simulation.VirtualClock;
+import com.randallscharpf.java.jmorsecoding.base.simulation.VirtualDelayer;
+import com.randallscharpf.java.jmorsecoding.base.standards.BuiltinMorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.AirtimeEstimator;
+import com.randallscharpf.java.jmorsecoding.base.timelines.Timeline;
+import com.randallscharpf.java.jmorsecoding.base.timings.FarnsworthTiming;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import junit.framework.TestCase;
+
+// Tests that the playback paths allocate nothing once warm, so that long-running players never pause for garbage
+// collection in the middle of an element
+public class AllocationTest extends TestCase {
+
+    private static final String MESSAGE = "PARIS CODEX 0123456789 ?";
+    // enough for the optimizing compiler to finish with the playback code even on a single processor, since the
+    // switch from one compiled version to the next can itself allocate
+    private static final int WARMUP_RUNS = 20000;
+    private static final int MEASURED_RUNS = 1000;
+
+    @FunctionalInterface
+    private interface Playback {
+        void run() throws Exception;
+    }
+
+    private com.sun.management.ThreadMXBean threads;
+
+    public AllocationTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // gives the bytes allocated by the current thread over many runs of a playback that has been warmed up
+    private long allocatedBy(Playback playback) throws Exception {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            playback.run();
+        }
+        // reading the counter may itself allocate on some JVMs
+        long overhead = -allocatedBytes() + allocatedBytes();
+        long start = allocatedBytes();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            playback.run();
+        }
+        return allocatedBytes() - start - overhead;
+    }
+
+    public void testTimelinePlaybackDoesNotAllocate() throws Exception {
+        if (threads == null) return;
+        VirtualClock clock = new VirtualClock();
+        boolean[] state = new boolean[1];
+        MorsePlayer player = new MorsePlayer((active) -> state[0] = active, new VirtualDelayer(clock));
+        // latency compensation is turned on, as it would be for a real output, so that its path is measured too
+        player.getLatencyCompensator().setCompensating(true);
+        Timeline timeline = player.compile(MESSAGE);
+        Duration gap = Duration.ofMillis(100);
+        assertEquals(0, allocatedBy(() -> {
+            player.play(timeline);
+            player.playSilence(gap);
+            player.playSymbol('e');
+        }));
+        assertTrue(clock.nanos() > 0);
+    }
+
+    public void testUnitPlaybackDoesNotAllocate() throws Exception {
+        if (threads == null) return;
+        VirtualClock clock = new VirtualClock();
+        boolean[] state = new boolean[1];
+        MorsePlayer player = new MorsePlayer((active) -> state[0] = active, new VirtualDelayer(clock));
+        PlayableMorseUnit unit = BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification()
+                .getPlayableForString(MESSAGE);
+        PlayableMorseUnit prosign = BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification()
+                .getPlayableForProsign("starting signal");
+        assertEquals(0, allocatedBy(() -> {
+            player.play(unit);
+            player.play(prosign);
+        }));
+    }
+
+    public void testAirtimeEstimateDoesNotAllocate() throws Exception {
+        if (threads == null) return;
+        AirtimeEstimator estimator = new AirtimeEstimator(
+                BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification());
+        FarnsworthTiming timing = new FarnsworthTiming(7, 18);
+        long[] total = new long[1];
+        assertEquals(0, allocatedBy(() -> total[0] += estimator.estimateNanos(MESSAGE, timing)));
+        assertTrue(total[0] > 0);
+    }
+
+    public void testRecordingOutputsDoNotAllocate() throws Exception {
+        if (threads == null) return;
+        TransitionRecorder simulator = new TransitionRecorder(new VirtualClock(), false);
+        MorsePlayer batchPlayer = new MorsePlayer(simulator, simulator);
+        KeyEventRecorder recorder = new KeyEventRecorder(4096);
+        MorsePlayer recordingPlayer = new MorsePlayer(recorder, recorder);
+        Timeline timeline = batchPlayer.compile(MESSAGE);
+        assertEquals(0, allocatedBy(() -> {
+            batchPlayer.play(timeline);
+            recordingPlayer.play(timeline);
+        }));
+        assertEquals(-1, recorder.snapshot().firstMismatch(timeline,
+                recorder.getEventCount() - timeline.getElementCount()));
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base;
+
+import com.randallscharpf.java.jmorsecoding.base.fileformats.KeyEventLog;
+import com.randallscharpf.java.jmorsecoding.base.fileformats.KeyEventLogReader;
+import com.randallscharpf.java.jmorsecoding.base.fileformats.KeyEventLogWriter;
+import com.randallscharpf.java.jmorsecoding.base.fileformats.MappedTranscoder;
+import com.randallscharpf.java.jmorsecoding.base.fileformats.MorseContainerReader;
+import com.randallscharpf.java.jmorsecoding.base.fileformats.MorseContainerWriter;
+import com.randallscharpf.java.jmorsecoding.base.fileformats.PackedElements;
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.simulation.TransitionRecorder;
+import com.randallscharpf.java.jmorsecoding.base.standards.BuiltinMorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolTable;
+import com.randallscharpf.java.jmorsecoding.base.timelines.Timeline;
+import com.randallscharpf.java.jmorsecoding.beeper.AudioRenderer;
+import com.randallscharpf.java.jmorsecoding.beeper.Beeper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+// Tests round trips through the file formats in the fileformats package
+public class FileFormatTest extends TestCase {
+
+    private static final String MESSAGE = "PARIS CODEX  the quick brown fox 0% 1234567890 ?";
+
+    private Path file;
+    private Path output;
+
+    public FileFormatTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("jmorsecoding", ".jmc").toPath();
+        output = File.createTempFile("jmorsecoding", ".out").toPath();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(output);
+        super.tearDown();
+    }
+
+    public void testContainerRoundTrip() throws Exception {
+        BuiltinMorseStandard standard = BuiltinMorseStandard.ITU_R_M1677_1_2009;
+        try (MorseContainerWriter w = MorseContainerWriter.create(file, standard, 5)) {
+            // split the message so that letter gaps must be carried between appends
+            w.append(MESSAGE.substring(0, 3));
+            w.append(MESSAGE.substring(3));
+        }
+        ElementType[] expected = new SymbolTable(standard.getSymbolSpecification()).encode(MESSAGE);
+        try (MorseContainerReader r = MorseContainerReader.open(file)) {
+            assertEquals(standard, r.getBuiltinStandard());
+            assertEquals(MESSAGE.length(), r.getCharacterCount());
+            assertEquals((MESSAGE.length() + 4) / 5, r.getSegmentCount());
+            for (ElementType type : ElementType.values()) {
+                assertEquals(standard.getTimingSpecification().timeForElementType(type),
+                        r.getTiming().timeForElementType(type));
+            }
+            assertEquals(Arrays.asList(expected), Arrays.asList(SymbolTable.elementsOf(r.getPlayable())));
+            List<ElementType> segments = new ArrayList<>();
+            for (int i = 0; i < r.getSegmentCount(); i++) {
+                segments.addAll(Arrays.asList(r.decodeSegment(i)));
+            }
+            assertEquals(Arrays.asList(expected), segments);
+            assertEquals(2, r.getSegmentForCharacter(14));
+            ElementType[] tail = SymbolTable.elementsOf(r.getPlayableFrom(14));
+            // the segment holding character 14 starts at character 10, including the gap before it
+            List<ElementType> tailExpected = new ArrayList<>();
+            tailExpected.add(ElementType.LETTER_GAP);
+            tailExpected.addAll(Arrays.asList(new SymbolTable(standard.getSymbolSpecification())
+                    .encode(MESSAGE.substring(10))));
+            assertEquals(tailExpected, Arrays.asList(tail));
+        }
+    }
+
+    public void testUnfinishedContainerIsRejected() throws Exception {
+        MorseContainerWriter w = MorseContainerWriter.create(file, BuiltinMorseStandard.ITU_R_M1677_1_2009, 5);
+        w.append(MESSAGE);
+        try {
+            MorseContainerReader.open(file).close();
+            fail("No exception thrown!");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("container"));
+        }
+        w.close();
+    }
+
+    public void testKeyEventLogReplaysExactly() throws Exception {
+        // log a transmission while it plays into a recorder
+        TransitionRecorder original = new TransitionRecorder();
+        try (KeyEventLogWriter w = new KeyEventLogWriter(
+                FileChannel.open(file, StandardOpenOption.WRITE), original, original)) {
+            MorsePlayer player = new MorsePlayer(w, w);
+            Timeline timeline = player.compile(MESSAGE);
+            player.play(timeline);
+            assertEquals(timeline.getElementCount() - 1, w.getEventCount());
+        }
+        long elements = new SymbolTable(BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification())
+                .encode(MESSAGE).length;
+        // four bytes per element at 20 words per minute, and five for word gaps
+        assertTrue(Files.size(file) <= KeyEventLog.HEADER_LENGTH + 5 * elements);
+
+        TransitionRecorder replayed = new TransitionRecorder();
+        try (KeyEventLogReader r = KeyEventLogReader.open(file)) {
+            assertEquals(elements, r.replay(replayed, replayed));
+        }
+        assertTrue(Arrays.equals(original.getTimes(), replayed.getTimes()));
+        assertEquals(original.getClock().nanos(), replayed.getClock().nanos());
+
+        // the offline renderer hears the same audio from the log as from the player
+        AudioRenderer direct = new AudioRenderer(700, 50, Beeper.WaveType.SINE);
+        new MorsePlayer(direct, direct).playMorseFromString(MESSAGE);
+        AudioRenderer fromLog = new AudioRenderer(700, 50, Beeper.WaveType.SINE);
+        try (KeyEventLogReader r = KeyEventLogReader.open(file)) {
+            r.replay(fromLog);
+        }
+        assertTrue(Arrays.equals(direct.toByteArray(), fromLog.toByteArray()));
+    }
+
+    public void testTruncatedKeyEventLogIsRejected() throws Exception {
+        try (KeyEventLogWriter w = KeyEventLogWriter.create(file)) {
+            w.setActive(true);
+            w.wait(Duration.ofMillis(60));
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        try (KeyEventLogReader r = KeyEventLogReader.open(file)) {
+            r.next();
+            fail("No exception thrown!");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("truncated"));
+        }
+    }
+
+    public void testNegativeHoldTimeIsRejected() throws Exception {
+        try (KeyEventLogWriter w = KeyEventLogWriter.create(file)) {
+            w.setActive(true);
+            w.waitNanos(-5);
+            w.setActive(false);
+        }
+        try (KeyEventLogReader r = KeyEventLogReader.open(file)) {
+            r.next();
+            fail("No exception thrown!");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("negative"));
+        }
+        // a tenth byte with more than the last bit of the value is corrupt rather than silently cut short
+        byte[] header = Arrays.copyOf(Files.readAllBytes(file), KeyEventLog.HEADER_LENGTH);
+        byte[] bytes = Arrays.copyOf(header, header.length + 10);
+        Arrays.fill(bytes, header.length, bytes.length - 1, (byte) 0x80);
+        bytes[bytes.length - 1] = 0x02;
+        Files.write(file, bytes);
+        try (KeyEventLogReader r = KeyEventLogReader.open(file)) {
+            r.next();
+            fail("No exception thrown!");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("corrupt"));
+        }
+    }
+
+    public void testPackedElementCodes() {
+        for (ElementType type : ElementType.values()) {
+            int code = PackedElements.codeOf(type);
+            if (type == ElementType.ELEMENT_GAP) {
+                assertEquals(-1, code);
+            } else {
+                assertEquals(type, PackedElements.typeOf(code));
+            }
+        }
+        byte packed = (byte) ((PackedElements.DASH << 6) | (PackedElements.DOT << 4)
+                | (PackedElements.WORD_GAP << 2) | PackedElements.LETTER_GAP);
+        assertEquals(PackedElements.DASH, PackedElements.codeAt(packed, 0));
+        assertEquals(PackedElements.DOT, PackedElements.codeAt(packed, 1));
+        assertEquals(PackedElements.WORD_GAP, PackedElements.codeAt(packed, 2));
+        assertEquals(PackedElements.LETTER_GAP, PackedElements.codeAt(packed, 3));
+    }
+
+    public void testTranscodeToPackedElements() throws Exception {
+        Files.write(file, MESSAGE.getBytes(StandardCharsets.UTF_8));
+        MappedTranscoder transcoder = new MappedTranscoder(
+                BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification());
+        assertEquals(MESSAGE.length(), transcoder.transcode(file, output, MappedTranscoder.OutputFormat.PACKED));
+        assertEquals(storedElements(MESSAGE), readPacked(output));
+    }
+
+    public void testTranscodeToNotation() throws Exception {
+        Files.write(file, "SOS  SOS".getBytes(StandardCharsets.UTF_8));
+        MappedTranscoder transcoder = new MappedTranscoder(
+                BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification());
+        assertEquals(8, transcoder.transcode(file, output, MappedTranscoder.OutputFormat.NOTATION));
+        assertEquals("... --- ... / / ... --- ...\n", new String(Files.readAllBytes(output), StandardCharsets.US_ASCII));
+    }
+
+    public void testTranscodeAcrossWindows() throws Exception {
+        // em spaces take three bytes, so with a 16-byte window some of them straddle two windows
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("PARIS\u2003").append(i);
+        }
+        String message = text.toString();
+        Files.write(file, message.getBytes(StandardCharsets.UTF_8));
+        MappedTranscoder transcoder = new MappedTranscoder(
+                BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification(), 16);
+        assertEquals(message.length(), transcoder.transcode(file, output, MappedTranscoder.OutputFormat.PACKED));
+        assertEquals(storedElements(message), readPacked(output));
+        // the notation written through small windows matches that written through one
+        transcoder.transcode(file, output, MappedTranscoder.OutputFormat.NOTATION);
+        String notation = new String(Files.readAllBytes(output), StandardCharsets.US_ASCII);
+        MappedTranscoder whole = new MappedTranscoder(
+                BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification());
+        whole.transcode(file, output, MappedTranscoder.OutputFormat.NOTATION);
+        assertEquals(new String(Files.readAllBytes(output), StandardCharsets.US_ASCII), notation);
+    }
+
+    public void testFailedTranscodeLeavesNoOutput() throws Exception {
+        Files.write(file, "PARIS \u0001".getBytes(StandardCharsets.UTF_8));
+        MappedTranscoder transcoder = new MappedTranscoder(
+                BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification(), 1 << 20);
+        try {
+            transcoder.transcode(file, output, MappedTranscoder.OutputFormat.PACKED);
+            fail("No exception thrown!");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("offset 6"));
+        }
+        assertFalse(Files.exists(output));
+    }
+
+    // the elements of a message that are stored in packed form, which leaves out the element gaps
+    private static List<ElementType> storedElements(String message) {
+        List<ElementType> stored = new ArrayList<>();
+        for (ElementType type : new SymbolTable(BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification())
+                .encode(message)) {
+            if (type != ElementType.ELEMENT_GAP) {
+                stored.add(type);
+            }
+        }
+        return stored;
+    }
+
+    private static List<ElementType> readPacked(Path path) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        long count = bytes.getLong();
+        // nothing follows the last byte of codes
+        assertEquals((count + 3) / 4, bytes.remaining());
+        List<ElementType> elements = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            elements.add(PackedElements.typeOf(PackedElements.codeAt(bytes.get(8 + (int) (i / 4)), (int) (i % 4))));
+        }
+        return elements;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base;
+
+import com.randallscharpf.java.jmorsecoding.base.management.FlightEventType;
+import com.randallscharpf.java.jmorsecoding.base.management.LatencyHistogram;
+import com.randallscharpf.java.jmorsecoding.base.management.MBeans;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.InternationalSymbolSet;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import junit.framework.TestCase;
+
+// Tests the metrics published over JMX by players and symbol sets, the histogram behind the lateness percentiles, and
+// the events recorded by Java Flight Recorder
+public class ManagementTest extends TestCase {
+
+    private MBeanServer server;
+    private ObjectName registered;
+
+    public ManagementTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = ManagementFactory.getPlatformMBeanServer();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (registered != null) {
+            MBeans.unregister(registered);
+        }
+        super.tearDown();
+    }
+
+    private double attribute(String name) throws Exception {
+        return ((Number) server.getAttribute(registered, name)).doubleValue();
+    }
+
+    public void testPlayerPublishesCountsAndLateness() throws Exception {
+        boolean[] state = new boolean[1];
+        MorsePlayer player = new MorsePlayer((active) -> state[0] = active,
+                (time) -> Thread.sleep(time.toMillis(), time.getNano() % 1_000_000));
+        registered = player.registerMBean("test player");
+        assertEquals(MBeans.DOMAIN, registered.getDomain());
+        assertEquals("MorsePlayer", registered.getKeyProperty("type"));
+        assertEquals(ObjectName.quote("test player"), registered.getKeyProperty("name"));
+        assertEquals(0.0, attribute("MessagesSent"));
+        // the 50 ms dot of the standard gives 24 words per minute
+        assertEquals(24.0, attribute("EffectiveWpm"), 1e-9);
+
+        player.playMorseFromString("E E");
+        player.play(player.compile("TE"));
+        player.playCharacters(player.compile("EEE"), 1, 3);
+        assertEquals(2.0, attribute("MessagesSent"));
+        assertEquals(7.0, attribute("CharactersSent"));
+        assertEquals(player.getLatencyCompensator().getLateness().getCount(), (long) attribute("ElementCount"));
+        assertTrue(attribute("ElementCount") >= 10);
+        double p50 = attribute("LatenessP50Micros");
+        double p99 = attribute("LatenessP99Micros");
+        assertTrue(p50 >= 0);
+        assertTrue(p99 >= p50);
+        assertTrue(attribute("LatenessMaxMicros") >= p99);
+
+        server.invoke(registered, "resetLateness", new Object[0], new String[0]);
+        assertEquals(0.0, attribute("ElementCount"));
+        MBeans.unregister(registered);
+        assertFalse(server.isRegistered(registered));
+    }
+
+    public void testSymbolSetCountsIndexBuildsAndHits() throws Exception {
+        InternationalSymbolSet symbols = new InternationalSymbolSet();
+        registered = symbols.registerMBean("test symbols");
+        assertEquals(0.0, attribute("IndexBuilds"));
+        symbols.preload();
+        // the prosign names, the prosigns, and the characters
+        assertEquals(3.0, attribute("IndexBuilds"));
+        assertEquals(0.0, attribute("CacheHits"));
+        symbols.getPlayableForString("E");
+        symbols.getPlayableForProsign(symbols.getAvailableProsigns()[0]);
+        assertEquals(3.0, attribute("IndexBuilds"));
+        assertEquals(3.0, attribute("CacheHits"));
+        assertTrue(attribute("SymbolCount") > 40);
+    }
+
+    public void testHistogramPercentilesAreWithinBucketResolution() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        histogram.record(-5);
+        assertEquals(1001, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        long p50 = histogram.getPercentile(0.5);
+        assertTrue(p50 >= 500_000 && p50 <= 625_000);
+        long p99 = histogram.getPercentile(0.99);
+        assertTrue(p99 >= 990_000 && p99 <= 1_000_000);
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(1_000_000, histogram.getPercentile(1));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    public void testFlightRecorderRecordsCompilationsAndLateElements() throws Exception {
+        if (!FlightEventType.isAvailable()) {
+            // nothing is recorded on virtual machines without a Flight Recorder
+            return;
+        }
+        FlightEventType unused = FlightEventType.define("TestEvent", "Test Event", "Never recorded", "Test", true);
+        assertEquals(FlightEventType.NAMESPACE + "TestEvent", unused.getName());
+        assertFalse(unused.isEnabled());
+        assertNull(unused.begin());
+
+        // the recording API is reached reflectively, as the library reaches it, so that the tests compile for Java 8
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        Path file = Files.createTempFile("jmorsecoding", ".jfr");
+        try {
+            recordingClass.getMethod("start").invoke(recording);
+            assertTrue(unused.isEnabled());
+            // every wait overruns by at least 3 ms
+            MorsePlayer player = new MorsePlayer((active) -> {}, (time) -> Thread.sleep(time.toMillis() + 3));
+            player.getLatencyCompensator().setLateElementThreshold(Duration.ofMillis(2));
+            player.playMorseFromString("EE");
+            recordingClass.getMethod("stop").invoke(recording);
+            recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+
+            List<?> events = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+                    .getMethod("readAllEvents", Path.class).invoke(null, file);
+            int compilations = 0;
+            int lateElements = 0;
+            for (Object event : events) {
+                Object type = event.getClass().getMethod("getEventType").invoke(event);
+                String name = (String) type.getClass().getMethod("getName").invoke(type);
+                Method getInt = event.getClass().getMethod("getInt", String.class);
+                Method getLong = event.getClass().getMethod("getLong", String.class);
+                if (name.equals(FlightEventType.NAMESPACE + "MessageCompilation")) {
+                    // the timing plan of the player looks each distinct character up in the symbol set once
+                    assertEquals(1, getInt.invoke(event, "characters"));
+                    compilations++;
+                } else if (name.equals(FlightEventType.NAMESPACE + "LateElement")) {
+                    assertTrue((Long) getLong.invoke(event, "lateness") >= 2_000_000);
+                    lateElements++;
+                }
+            }
+            assertEquals(1, compilations);
+            // two dots and the gaps between and after them
+            assertTrue(lateElements >= 3);
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            Files.deleteIfExists(file);
+        }
+    }
+}
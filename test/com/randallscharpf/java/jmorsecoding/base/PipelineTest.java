@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base;
+
+import com.randallscharpf.java.jmorsecoding.base.pipeline.MessagePipeline;
+import com.randallscharpf.java.jmorsecoding.base.pipeline.StageStats;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.TimelineSink;
+import com.randallscharpf.java.jmorsecoding.base.simulation.TransitionRecorder;
+import com.randallscharpf.java.jmorsecoding.base.standards.BuiltinMorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.standards.MorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolTable;
+import com.randallscharpf.java.jmorsecoding.base.timelines.Timeline;
+import com.randallscharpf.java.jmorsecoding.beeper.AudioRenderer;
+import com.randallscharpf.java.jmorsecoding.beeper.Beeper;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+// Tests that a staged pipeline plays messages exactly as a compiled timeline does, and that its queues hold back
+// the stages in front of a slow output
+public class PipelineTest extends TestCase {
+
+    private static final MorseStandard STANDARD = BuiltinMorseStandard.ITU_R_M1677_1_2009;
+
+    private String longMessage;
+    private MessagePipeline pipeline;
+
+    public PipelineTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            text.append("PARIS CODEX  the quick brown fox 0% 1234567890 ?\t");
+        }
+        longMessage = text.toString();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+        super.tearDown();
+    }
+
+    private Timeline compile(String text) {
+        return Timeline.compile(text, new SymbolTable(STANDARD.getSymbolSpecification()),
+                STANDARD.getTimingSpecification());
+    }
+
+    public void testTransitionsMatchCompiledTimeline() throws Exception {
+        TransitionRecorder piped = new TransitionRecorder();
+        pipeline = new MessagePipeline(STANDARD, piped, 2, 64);
+        pipeline.open();
+        CompletableFuture<Void> first = pipeline.submit(longMessage);
+        CompletableFuture<Void> second = pipeline.submit("SOS");
+        second.get(10, TimeUnit.SECONDS);
+        assertTrue(first.isDone());
+
+        TransitionRecorder direct = new TransitionRecorder();
+        Timeline a = compile(longMessage);
+        Timeline b = compile("SOS");
+        a.play(direct);
+        b.play(direct);
+        assertTrue(Arrays.equals(direct.getTimes(), piped.getTimes()));
+        assertEquals(direct.getClock().nanos(), piped.getClock().nanos());
+
+        assertEquals(4, pipeline.getStageCount());
+        StageStats normalise = pipeline.getStats(0);
+        assertEquals("normalise", normalise.getName());
+        assertEquals(longMessage.length() + 3, normalise.getUnitCount());
+        // the message is split only after whitespace, so it takes more chunks than a plain split would
+        assertTrue(normalise.getItemCount() > longMessage.length() / 64);
+        StageStats output = pipeline.getStats(3);
+        assertEquals("output", output.getName());
+        assertEquals(normalise.getItemCount(), output.getItemCount());
+        assertEquals(a.getElementCount() + b.getElementCount(), output.getUnitCount());
+        for (int i = 0; i < pipeline.getStageCount(); i++) {
+            assertEquals(0, pipeline.getStats(i).getQueueDepth());
+            assertEquals(2, pipeline.getStats(i).getQueueCapacity());
+        }
+    }
+
+    public void testRenderedAudioMatchesDirectRendering() throws Exception {
+        ByteArrayOutputStream piped = new ByteArrayOutputStream();
+        pipeline = new MessagePipeline(STANDARD, new AudioRenderer(700, 50, Beeper.WaveType.SINE),
+                piped::write, 4, 32);
+        pipeline.open();
+        pipeline.submit(longMessage.substring(0, 500)).get(10, TimeUnit.SECONDS);
+
+        AudioRenderer direct = new AudioRenderer(700, 50, Beeper.WaveType.SINE);
+        compile(longMessage.substring(0, 500)).play(direct);
+        assertTrue(Arrays.equals(direct.toByteArray(), piped.toByteArray()));
+        assertEquals(5, pipeline.getStageCount());
+        assertEquals(piped.size(), pipeline.getStats(3).getUnitCount());
+        assertEquals(piped.size(), pipeline.getStats(4).getUnitCount());
+    }
+
+    public void testSlowOutputHoldsBackEarlierStages() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TransitionRecorder recorder = new TransitionRecorder();
+        TimelineSink slow = (states, nanos, offset, length) -> {
+            release.await();
+            recorder.play(states, nanos, offset, length);
+        };
+        pipeline = new MessagePipeline(STANDARD, slow, 2, 16);
+        pipeline.open();
+        CompletableFuture<Void> done = pipeline.submit(longMessage);
+        // wait for every queue behind the normaliser to fill up
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pipeline.getStats(1).getQueueDepth() < 2 || pipeline.getStats(2).getQueueDepth() < 2
+                || pipeline.getStats(3).getQueueDepth() < 2) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+        // the normaliser is held back instead of splitting the whole message ahead of the output
+        long split = pipeline.getStats(0).getItemCount();
+        assertTrue(split < 16);
+        assertEquals(0, pipeline.getStats(3).getItemCount());
+        assertFalse(done.isDone());
+
+        release.countDown();
+        done.get(10, TimeUnit.SECONDS);
+        assertTrue(pipeline.getStats(0).getItemCount() > split);
+        assertEquals(compile(longMessage).getDuration().toNanos(), recorder.getClock().nanos());
+    }
+
+    public void testUnencodableCharacterFailsOnlyItsMessage() throws Exception {
+        TransitionRecorder recorder = new TransitionRecorder();
+        pipeline = new MessagePipeline(STANDARD, recorder, 4, 6);
+        pipeline.open();
+        CompletableFuture<Void> bad = pipeline.submit("PARIS PARIS PARIS \u0001 PARIS");
+        CompletableFuture<Void> good = pipeline.submit("E");
+        good.get(10, TimeUnit.SECONDS);
+        try {
+            bad.get();
+            fail("No exception thrown!");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalArgumentException);
+        }
+        // each word is a chunk of its own, so the words before the failing one were played, and the next message
+        // starts afresh
+        long played = compile("PARIS PARIS PARIS ").getDuration().toNanos() + compile("E").getDuration().toNanos();
+        assertEquals(played, recorder.getClock().nanos());
+    }
+
+    public void testFailedMessageLeavesOutputOff() throws Exception {
+        List<Boolean> states = new ArrayList<>();
+        int[] ends = new int[1];
+        TimelineSink sink = new TimelineSink() {
+            @Override
+            public void play(boolean[] s, long[] nanos, int offset, int length) {
+                for (int i = offset; i < offset + length; i++) {
+                    states.add(s[i]);
+                }
+            }
+
+            @Override
+            public void endOfMessage() {
+                ends[0]++;
+            }
+        };
+        pipeline = new MessagePipeline(STANDARD, sink, 4, 4);
+        pipeline.open();
+        CompletableFuture<Void> bad = pipeline.submit("PARISPARIS \u0001");
+        try {
+            bad.get(10, TimeUnit.SECONDS);
+            fail("No exception thrown!");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalArgumentException);
+        }
+        // the long word was split mid-word, so the output was keyed when the chunk holding the bad character failed
+        assertTrue(states.contains(Boolean.TRUE));
+        assertEquals(Boolean.FALSE, states.get(states.size() - 1));
+        assertEquals(1, ends[0]);
+    }
+
+    public void testSubmitRequiresOpenPipeline() throws Exception {
+        pipeline = new MessagePipeline(STANDARD, new TransitionRecorder());
+        try {
+            pipeline.submit("E");
+            fail("No exception thrown!");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().contains("open"));
+        }
+    }
+}
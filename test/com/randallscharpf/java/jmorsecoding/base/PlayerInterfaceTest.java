@@ -0,0 +1,274 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base;
+
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Delayer;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.FanOutOnOff;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.KeyEventRecorder;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.LatencyCompensator;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Openable;
+import com.randallscharpf.java.jmorsecoding.base.standards.BuiltinMorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.standards.DefaultMorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.InternationalSymbolSet;
+import com.randallscharpf.java.jmorsecoding.base.timelines.Timeline;
+import com.randallscharpf.java.jmorsecoding.base.timings.StandardTiming;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+
+// Tests the state setters and delayers provided in the playerinterfaces package
+public class PlayerInterfaceTest extends TestCase {
+
+    public PlayerInterfaceTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testFanOutIsolatesSlowSinks() throws Exception {
+        List<Boolean> fast = Collections.synchronizedList(new ArrayList<>());
+        List<Boolean> slow = Collections.synchronizedList(new ArrayList<>());
+        FanOutOnOff fanOut = new FanOutOnOff(64, Duration.ofMillis(5), fast::add, (active) -> {
+            Thread.sleep(20);
+            slow.add(active);
+        });
+        fanOut.open();
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < 40; i++) {
+                fanOut.setActive(i % 2 == 0);
+            }
+            // the caller never waits for the slow sink, which would take 800ms to apply every change
+            assertTrue(System.nanoTime() - start < 400_000_000L);
+            awaitIdle(fanOut, 0);
+            awaitIdle(fanOut, 1);
+        } finally {
+            fanOut.close();
+        }
+        assertEquals(40, fast.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i % 2 == 0, (boolean) fast.get(i));
+        }
+        FanOutOnOff.SinkStats stats = fanOut.getStats(1);
+        assertTrue(stats.getCoalesced() > 0);
+        assertEquals(40, stats.getDelivered() + stats.getCoalesced());
+        assertTrue(stats.getMaxLag().toMillis() >= 20);
+        assertEquals(Boolean.FALSE, slow.get(slow.size() - 1));
+        assertEquals(0, fanOut.getStats(0).getCoalesced());
+    }
+
+    public void testFanOutResynchronizesAfterOverflow() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Boolean> blocked = Collections.synchronizedList(new ArrayList<>());
+        FanOutOnOff fanOut = new FanOutOnOff(2, Duration.ofSeconds(10), (active) -> {
+            release.await();
+            blocked.add(active);
+        });
+        fanOut.open();
+        try {
+            for (int i = 0; i < 10; i++) {
+                fanOut.setActive(i % 3 == 0);
+            }
+            assertTrue(fanOut.getStats(0).getDropped() > 0);
+            release.countDown();
+            awaitIdle(fanOut, 0);
+        } finally {
+            fanOut.close();
+        }
+        // the last requested state, on, is applied even though its change was dropped
+        assertEquals(Boolean.TRUE, blocked.get(blocked.size() - 1));
+    }
+
+    public void testLatencyCompensation() throws Exception {
+        StandardTiming timing = new StandardTiming(20);
+        List<Long> requested = new ArrayList<>();
+        List<Long> measured = new ArrayList<>();
+        LatencyCompensator[] compensator = new LatencyCompensator[1];
+        // a sink that takes 2ms to act, and a delayer that notes what it is asked for, along with the latency
+        // measured just before, without waiting; at 20 wpm every wait is long enough to absorb the latency
+        OnOff slowSink = (active) -> spinFor(2_000_000L);
+        Delayer recorder = (time) -> {
+            requested.add(time.toNanos());
+            measured.add(compensator[0].getLastLatency().toNanos());
+        };
+        MorsePlayer player = new MorsePlayer(slowSink, recorder, new DefaultMorseStandard(timing, new InternationalSymbolSet()));
+        compensator[0] = player.getLatencyCompensator();
+        assertFalse(compensator[0].isCompensating());
+        compensator[0].setCompensating(true);
+        List<Long> expected = new ArrayList<>();
+        BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification().getPlayableForString("PARIS")
+                .play((active) -> {}, (time) -> expected.add(time.toNanos()), timing);
+        player.playMorseFromString("PARIS");
+        assertEquals(expected.size(), requested.size());
+        // each wait is shortened by exactly the time measured for the state change before it
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(measured.get(i) >= 2_000_000L);
+            assertEquals(expected.get(i) - measured.get(i), (long) requested.get(i));
+        }
+        assertEquals(expected.size(), compensator[0].getMeasurementCount());
+        assertTrue(compensator[0].getLatencyEstimate().toNanos() >= 2_000_000L);
+    }
+
+    public void testKeyEventRecorderMatchesSchedule() throws Exception {
+        KeyEventRecorder recorder = new KeyEventRecorder(1000);
+        KeyEventRecorder small = new KeyEventRecorder(recorder, recorder, 16);
+        MorsePlayer player = new MorsePlayer(small, small);
+        Timeline timeline = player.compile("PARIS CODEX");
+        player.play(timeline);
+        KeyEventRecorder.Snapshot all = recorder.snapshot();
+        assertEquals(timeline.getElementCount(), all.size());
+        assertEquals(0, all.getFirstSequence());
+        assertEquals(-1, all.firstMismatch(timeline, 0));
+        KeyEventRecorder.Snapshot recent = small.snapshot();
+        assertEquals(16, recent.size());
+        assertEquals(timeline.getElementCount() - 16, recent.getFirstSequence());
+        assertEquals(-1, recent.firstMismatch(timeline, 0));
+        // PARIS and PARIT first differ in the first dot of the last letter
+        Timeline other = player.compile("PARIT CODEX");
+        assertEquals(22, all.firstMismatch(other, 0));
+        recorder.clear();
+        assertEquals(0, recorder.getEventCount());
+        assertEquals(0, recorder.snapshot().size());
+    }
+
+    public void testKeyEventRecorderSnapshotsWhilePlaying() throws Exception {
+        KeyEventRecorder recorder = new KeyEventRecorder(64);
+        MorsePlayer player = new MorsePlayer(recorder, recorder);
+        Timeline timeline = player.compile("PARIS");
+        AtomicReference<String> problem = new AtomicReference<>();
+        AtomicBoolean done = new AtomicBoolean();
+        Thread monitor = new Thread(() -> {
+            while (!done.get() && problem.get() == null) {
+                KeyEventRecorder.Snapshot snapshot = recorder.snapshot();
+                if (snapshot.size() > 64) {
+                    problem.set("too many events");
+                }
+                for (int i = 1; i < snapshot.size(); i++) {
+                    if (snapshot.getTime(i) < snapshot.getTime(i - 1)) {
+                        problem.set("events out of order");
+                    }
+                }
+            }
+        });
+        monitor.start();
+        try {
+            for (int i = 0; i < 5000; i++) {
+                player.play(timeline);
+            }
+        } finally {
+            done.set(true);
+            monitor.join();
+        }
+        assertNull(problem.get());
+        assertEquals(5000L * timeline.getElementCount(), recorder.getEventCount());
+        KeyEventRecorder.Snapshot last = recorder.snapshot();
+        assertEquals(64, last.size());
+        // the message repeats back to back, so the final events are the end of the last repetition
+        assertEquals(-1, last.firstMismatch(timeline, recorder.getEventCount() - timeline.getElementCount()));
+    }
+
+    public void testKeyEventRecorderMeasuresTimingError() throws Exception {
+        // an output that runs a millisecond slow on every wait
+        Delayer slow = (time) -> spinFor(time.toNanos() + 1_000_000L);
+        KeyEventRecorder recorder = new KeyEventRecorder((active) -> {}, slow, 256);
+        MorsePlayer player = new MorsePlayer(recorder, recorder,
+                new DefaultMorseStandard(new StandardTiming(200), new InternationalSymbolSet()));
+        Timeline timeline = player.compile("PARIS");
+        player.play(timeline);
+        KeyEventRecorder.Snapshot snapshot = recorder.snapshot();
+        // the output was asked for the right durations but did not keep to them
+        assertEquals(-1, snapshot.firstMismatch(timeline, 0));
+        assertTrue(snapshot.maxTimingError(timeline, 0) >= 1_000_000L);
+    }
+
+    private static void spinFor(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            // spin
+        }
+    }
+
+    private void awaitIdle(FanOutOnOff fanOut, int sink) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            FanOutOnOff.SinkStats stats = fanOut.getStats(sink);
+            if (stats.getBacklog() == 0 && stats.getDelivered() + stats.getCoalesced() + stats.getDropped() > 0) {
+                // give a pending resynchronization time to complete
+                Thread.sleep(50);
+                if (fanOut.getStats(sink).getBacklog() == 0) {
+                    return;
+                }
+            }
+            Thread.sleep(5);
+        }
+        fail("Sink did not catch up!");
+    }
+
+    public void testWarmUpOpensOutputWithoutPlaying() throws Exception {
+        List<String> calls = new ArrayList<>();
+        class Output implements OnOff, Delayer, Openable {
+            @Override
+            public void setActive(boolean active) {
+                calls.add("set");
+            }
+
+            @Override
+            public void wait(Duration time) {
+                calls.add("wait");
+            }
+
+            @Override
+            public void open() {
+                calls.add("open");
+            }
+
+            @Override
+            public void close() {
+                calls.add("close");
+            }
+        }
+        Output output = new Output();
+        MorsePlayer player = new MorsePlayer(output, output);
+        player.warmUp();
+        // the output is opened once even though it is both the state setter and the delayer, and nothing is played
+        assertEquals(Collections.singletonList("open"), calls);
+        player.playMorseFromString("E");
+        assertEquals(Arrays.asList("open", "set", "wait", "set", "wait"), calls);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.scheduling.LiveKeyer;
+import com.randallscharpf.java.jmorsecoding.base.scheduling.TransmissionScheduler;
+import com.randallscharpf.java.jmorsecoding.base.scheduling.TransmissionScheduler.Priority;
+import com.randallscharpf.java.jmorsecoding.base.scheduling.TransmissionScheduler.Transmission;
+import com.randallscharpf.java.jmorsecoding.base.standards.BuiltinMorseStandard;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+// Tests ordering, preemption, and resumption of messages in a transmission scheduler, and live keying of typed text
+public class SchedulerTest extends TestCase {
+
+    private List<String> symbols;
+    private boolean active;
+    private long onNanos;
+    private long dotNanos;
+    private long dashNanos;
+
+    public SchedulerTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        symbols = new ArrayList<>();
+        dotNanos = BuiltinMorseStandard.ITU_R_M1677_1_2009.getTimingSpecification()
+                .timeForElementType(ElementType.DOT).toNanos();
+        dashNanos = BuiltinMorseStandard.ITU_R_M1677_1_2009.getTimingSpecification()
+                .timeForElementType(ElementType.DASH).toNanos();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    // records each dot or dash without spending real time on it
+    private void record(boolean nowActive, long nanos) {
+        if (active && !nowActive) {
+            symbols.add(onNanos == dotNanos ? "." : onNanos == dashNanos ? "-" : "?");
+        }
+        active = nowActive;
+        onNanos = nowActive ? nanos : 0;
+    }
+
+    public void testUrgentMessagePreemptsAtLetterBoundary() throws Exception {
+        TransmissionScheduler[] scheduler = new TransmissionScheduler[1];
+        Transmission[] urgent = new Transmission[1];
+        boolean[] state = new boolean[1];
+        MorsePlayer player = new MorsePlayer((a) -> state[0] = a, (time) -> {
+            record(state[0], time.toNanos());
+            // submit the urgent message from inside the first dot of the routine message,
+            // which follows the two dots of the normal message
+            if (urgent[0] == null && state[0] && symbols.size() == 2) {
+                urgent[0] = scheduler[0].submit("T", Priority.URGENT);
+            }
+        });
+        scheduler[0] = new TransmissionScheduler(player);
+        Transmission routine = scheduler[0].submit("EEEE", Priority.ROUTINE);
+        Transmission normal = scheduler[0].submit("I", Priority.NORMAL);
+        scheduler[0].open();
+        try {
+            routine.getCompletion().get(10, TimeUnit.SECONDS);
+            urgent[0].getCompletion().get(10, TimeUnit.SECONDS);
+            normal.getCompletion().get(10, TimeUnit.SECONDS);
+        } finally {
+            scheduler[0].close();
+        }
+        record(false, 0);
+        // the normal message is played before the routine one even though it was queued later,
+        // and the urgent one cuts into the routine one after its first letter
+        assertEquals("...-...", String.join("", symbols));
+        assertEquals(4, routine.getCharactersSent());
+    }
+
+    public void testCloseCancelsUnfinishedMessages() throws Exception {
+        MorsePlayer player = new MorsePlayer((a) -> {}, (time) -> {});
+        TransmissionScheduler scheduler = new TransmissionScheduler(player);
+        Transmission t = scheduler.submit("PARIS", Priority.NORMAL);
+        Transmission bad = scheduler.submit("\u00A2", Priority.URGENT);
+        Transmission cancelled = scheduler.submit("CODEX", Priority.ROUTINE);
+        assertTrue(cancelled.cancel());
+        scheduler.open();
+        t.getCompletion().get(10, TimeUnit.SECONDS);
+        try {
+            bad.getCompletion().get(10, TimeUnit.SECONDS);
+            fail("No exception thrown!");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalArgumentException);
+        }
+        scheduler.close();
+        // only the message that was played through counts, although it was played a letter at a time
+        assertEquals(1, player.getMetrics().getMessagesSent());
+        assertEquals(5, player.getMetrics().getCharactersSent());
+        Transmission late = scheduler.submit("late", Priority.NORMAL);
+        assertTrue(cancelled.getCompletion().isCancelled());
+        assertFalse(late.getCompletion().isDone());
+    }
+
+    public void testBackspaceRemovesUnsentCharacters() throws Exception {
+        boolean[] state = new boolean[1];
+        MorsePlayer player = new MorsePlayer((a) -> state[0] = a, (time) -> record(state[0], time.toNanos()));
+        LiveKeyer keyer = new LiveKeyer(player, 4);
+        assertEquals(3, keyer.type("ETE"));
+        assertTrue(keyer.backspace());
+        assertEquals(2, keyer.type("A N"));
+        assertFalse(keyer.type('S'));
+        assertEquals(4, keyer.getUnsentCount());
+        keyer.open();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (keyer.getCharactersSent() < 4 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        } finally {
+            keyer.close();
+        }
+        record(false, 0);
+        assertNull(keyer.getLastFailure());
+        assertEquals(4, keyer.getCharactersSent());
+        assertEquals(".-.-", String.join("", symbols));
+        assertFalse(keyer.backspace());
+    }
+
+    public void testKeyDownFollowsKeystrokeWithinOneElement() throws Exception {
+        long[] keyDown = new long[1];
+        MorsePlayer player = new MorsePlayer((a) -> {
+            if (a && keyDown[0] == 0) {
+                keyDown[0] = System.nanoTime();
+            }
+        }, (time) -> {});
+        LiveKeyer keyer = new LiveKeyer(player);
+        keyer.open();
+        try {
+            // let the playing thread go idle so that the keystroke has to wake it
+            Thread.sleep(20);
+            long typed = System.nanoTime();
+            assertTrue(keyer.type('E'));
+            long deadline = typed + TimeUnit.SECONDS.toNanos(10);
+            while (keyer.getCharactersSent() < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(1, keyer.getCharactersSent());
+            assertTrue(keyDown[0] - typed < dotNanos);
+        } finally {
+            keyer.close();
+        }
+    }
+}
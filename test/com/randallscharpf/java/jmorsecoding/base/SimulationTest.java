@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.simulation.TransitionRecorder;
+import com.randallscharpf.java.jmorsecoding.base.simulation.VirtualClock;
+import com.randallscharpf.java.jmorsecoding.base.simulation.VirtualDelayer;
+import com.randallscharpf.java.jmorsecoding.base.standards.BuiltinMorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolTable;
+import com.randallscharpf.java.jmorsecoding.base.timelines.Timeline;
+import com.randallscharpf.java.jmorsecoding.base.timings.TimingSnapshot;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+// Tests playback in simulated time with the classes of the simulation package
+public class SimulationTest extends TestCase {
+
+    private static final String MESSAGE = "PARIS CODEX 73";
+    private static final BuiltinMorseStandard STANDARD = BuiltinMorseStandard.ITU_R_M1677_1_2009;
+
+    private long[] expectedTimes;
+    private long expectedActiveNanos;
+    private long expectedDuration;
+
+    public SimulationTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // work out the schedule directly from the elements and their durations
+        TimingSnapshot timing = STANDARD.getTimingSpecification().snapshot();
+        List<Long> times = new ArrayList<>();
+        boolean active = false;
+        long now = 0;
+        expectedActiveNanos = 0;
+        for (ElementType type : new SymbolTable(STANDARD.getSymbolSpecification()).encode(MESSAGE)) {
+            if (type.activeDuringPlay != active) {
+                times.add(now);
+                active = type.activeDuringPlay;
+            }
+            if (active) {
+                expectedActiveNanos += timing.getNanos(type);
+            }
+            now += timing.getNanos(type);
+        }
+        expectedDuration = now;
+        expectedTimes = new long[times.size()];
+        for (int i = 0; i < expectedTimes.length; i++) {
+            expectedTimes[i] = times.get(i);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testRecorderKeepsExactSchedule() throws Exception {
+        TransitionRecorder recorder = new TransitionRecorder();
+        MorsePlayer player = new MorsePlayer(recorder, recorder, STANDARD);
+        player.playMorseFromString(MESSAGE);
+        assertEquals(expectedDuration, recorder.getClock().nanos());
+        assertEquals(expectedActiveNanos, recorder.getActiveNanos());
+        assertTrue(Arrays.equals(expectedTimes, recorder.getTimes()));
+        assertTrue(recorder.getState(0));
+        assertFalse(recorder.getState(recorder.size() - 1));
+        // units played element by element are timed the same as timelines played in batches
+        TransitionRecorder unitRecorder = new TransitionRecorder();
+        new MorsePlayer(unitRecorder, unitRecorder, STANDARD)
+                .play(STANDARD.getSymbolSpecification().getPlayableForString(MESSAGE));
+        assertTrue(Arrays.equals(expectedTimes, unitRecorder.getTimes()));
+    }
+
+    public void testNegativeDurationRecordsNothing() throws Exception {
+        TransitionRecorder recorder = new TransitionRecorder();
+        try {
+            recorder.play(new boolean[] {true, false, true}, new long[] {10, -1, 10}, 0, 3);
+            fail("No exception thrown!");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("backwards"));
+        }
+        assertEquals(0, recorder.getTransitionCount());
+        assertEquals(0, recorder.size());
+        assertEquals(0, recorder.getClock().nanos());
+        // the recorder is still consistent, so later batches are timed from where it stood
+        recorder.play(new boolean[] {true, false}, new long[] {10, 5}, 0, 2);
+        assertTrue(Arrays.equals(new long[] {0, 10}, recorder.getTimes()));
+        assertEquals(10, recorder.getActiveNanos());
+    }
+
+    public void testSharedClockWithSeparateStateSetter() throws Exception {
+        VirtualClock clock = new VirtualClock(1000);
+        List<Long> times = new ArrayList<>();
+        boolean[] last = new boolean[1];
+        MorsePlayer player = new MorsePlayer((a) -> {
+            if (a != last[0]) {
+                times.add(clock.nanos() - 1000);
+                last[0] = a;
+            }
+        }, new VirtualDelayer(clock), STANDARD);
+        player.playMorseFromString(MESSAGE);
+        assertEquals(1000 + expectedDuration, clock.nanos());
+        assertEquals(expectedTimes.length, times.size());
+        for (int i = 0; i < expectedTimes.length; i++) {
+            assertEquals(expectedTimes[i], (long) times.get(i));
+        }
+    }
+
+    public void testMillionsOfTransitions() throws Exception {
+        TransitionRecorder recorder = new TransitionRecorder(new VirtualClock(), false);
+        MorsePlayer player = new MorsePlayer(recorder, recorder, STANDARD);
+        Timeline timeline = player.compile(MESSAGE);
+        int repeats = 1_000_000 / expectedTimes.length + 1;
+        for (int i = 0; i < repeats; i++) {
+            player.play(timeline);
+        }
+        assertEquals(0, recorder.size());
+        assertEquals((long) repeats * expectedTimes.length, recorder.getTransitionCount());
+        assertEquals(repeats * expectedDuration, recorder.getClock().nanos());
+        assertEquals(repeats * expectedActiveNanos, recorder.getActiveNanos());
+    }
+}
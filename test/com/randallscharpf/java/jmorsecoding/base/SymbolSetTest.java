@@ -23,11 +23,14 @@
  */
 package com.randallscharpf.java.jmorsecoding.base;
 
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
 import com.randallscharpf.java.jmorsecoding.base.symbolsets.ExtendedInternationalSymbolSet;
 import com.randallscharpf.java.jmorsecoding.base.symbolsets.InternationalSymbolSet;
 import com.randallscharpf.java.jmorsecoding.base.symbolsets.MorseSymbolSet;
 import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolSetBase;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolTable;
 import com.randallscharpf.java.jmorsecoding.base.timings.FarnsworthTiming;
+import java.util.Arrays;
 import junit.framework.TestCase;
 
 // Tests built-in symbol sets
@@ -86,6 +89,37 @@ public class SymbolSetTest extends TestCase {
         fail("Set does not contain an end of work prosign!");
     }
     
+    public void testSymbolTable() {
+        InternationalSymbolSet s = new InternationalSymbolSet();
+        SymbolTable table = new SymbolTable(s);
+        assertSame(s, table.getSymbolSet());
+        assertEquals(Arrays.asList(ElementType.DOT, ElementType.ELEMENT_GAP, ElementType.DASH),
+                Arrays.asList(table.getElements('A')));
+        // lookups after the first come from the cache, for Latin-1 and other characters alike
+        assertSame(table.getElements('A'), table.getElements('A'));
+        assertTrue(table.canEncode(' '));
+        assertTrue(table.canEncode('\u2003'));
+        assertFalse(table.canEncode('\u0001'));
+        assertFalse(table.canEncode('\u4e2d'));
+        try {
+            table.getElements('\u0001');
+            fail("No exception thrown!");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("No morse encoding"));
+        }
+        // encoding a string gives what the symbol set plays for it, gaps included
+        for (String message : new String[] {"PARIS", "PARIS  CODEX 0%", " E ", ""}) {
+            assertEquals(message, Arrays.asList(SymbolTable.elementsOf(s.getPlayableForString(message))),
+                    Arrays.asList(table.encode(message)));
+        }
+        try {
+            table.encode("E\u0001");
+            fail("No exception thrown!");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("No morse encoding"));
+        }
+    }
+
     private void checkWords(MorseSymbolSet set) {
         try {
             StringBuilder b = new StringBuilder();
@@ -0,0 +1,46 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base;
+
+import com.randallscharpf.java.jmorsecoding.base.synchronization.PlaybackFollower;
+
+// Runs a playback follower in a process of its own, for tests of synchronized playback across several JVMs. Prints
+// "ready" once the clock offset is estimated, and exits after playing the given number of messages.
+public class SyncFollowerProcess {
+
+    public static void main(String[] args) throws Exception {
+        PlaybackFollower follower = new PlaybackFollower(args[0], Integer.parseInt(args[1]), args[2], (active) -> {});
+        int messages = Integer.parseInt(args[3]);
+        follower.open();
+        System.out.println("ready");
+        System.out.flush();
+        long deadline = System.nanoTime() + 60_000_000_000L;
+        while (follower.getPlayedCount() < messages && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        // let the last report reach the coordinator before disconnecting
+        Thread.sleep(200);
+        follower.close();
+    }
+}
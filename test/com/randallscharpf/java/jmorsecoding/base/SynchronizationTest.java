@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base;
+
+import com.randallscharpf.java.jmorsecoding.base.standards.BuiltinMorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolTable;
+import com.randallscharpf.java.jmorsecoding.base.synchronization.NodeReport;
+import com.randallscharpf.java.jmorsecoding.base.synchronization.PlaybackCoordinator;
+import com.randallscharpf.java.jmorsecoding.base.synchronization.PlaybackFollower;
+import com.randallscharpf.java.jmorsecoding.base.timelines.Timeline;
+import com.randallscharpf.java.jmorsecoding.base.timings.StandardTiming;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+// Tests synchronized playback between a coordinator and followers, in this JVM and in separate ones
+public class SynchronizationTest extends TestCase {
+
+    private PlaybackCoordinator coordinator;
+    private Timeline timeline;
+
+    public SynchronizationTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        coordinator = new PlaybackCoordinator(0, (active) -> {});
+        coordinator.open();
+        timeline = Timeline.compile("PARIS", new SymbolTable(
+                BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification()), new StandardTiming(100));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        coordinator.close();
+        super.tearDown();
+    }
+
+    public void testFollowersInSameProcess() throws Exception {
+        List<Long> firstKeyDown = new ArrayList<>();
+        PlaybackFollower a = new PlaybackFollower("localhost", coordinator.getPort(), "a", (active) -> {
+            synchronized (firstKeyDown) {
+                firstKeyDown.add(System.nanoTime());
+            }
+        });
+        PlaybackFollower b = new PlaybackFollower("localhost", coordinator.getPort(), "b", (active) -> {});
+        a.open();
+        b.open();
+        try {
+            awaitFollowers(2);
+            // every node shares one clock here, so the offset estimates should be tiny
+            assertTrue(Math.abs(a.getClockOffset().toNanos()) < 1_000_000L);
+            PlaybackCoordinator.Session session = coordinator.play(timeline, Duration.ofMillis(200));
+            List<NodeReport> reports = session.awaitReports(Duration.ofSeconds(10));
+            assertEquals(3, reports.size());
+            assertEquals(3, session.getNodeCount());
+            assertEquals(timeline.getElementCount(), firstKeyDown.size());
+            // the follower keyed its first element at the agreed start
+            assertTrue(Math.abs(firstKeyDown.get(0) - session.getStartNanos()) < 5_000_000L);
+            assertTrue(session.getSkew().toNanos() < 5_000_000L);
+        } finally {
+            a.close();
+            b.close();
+        }
+    }
+
+    public void testClosingFollowerMidMessageLeavesItOff() throws Exception {
+        List<Boolean> states = new ArrayList<>();
+        PlaybackFollower a = new PlaybackFollower("localhost", coordinator.getPort(), "a", (active) -> {
+            synchronized (states) {
+                states.add(active);
+                states.notifyAll();
+            }
+        });
+        a.open();
+        // a dash at 5 words per minute is long enough for the follower to be closed while it is keyed
+        Timeline slow = Timeline.compile("T", new SymbolTable(
+                BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification()), new StandardTiming(5));
+        Thread playing = new Thread(() -> {
+            try {
+                coordinator.play(slow, Duration.ofMillis(100));
+            } catch (Exception ex) {
+                // the coordinator output cannot fail
+            }
+        });
+        try {
+            awaitFollowers(1);
+            playing.start();
+            synchronized (states) {
+                while (states.isEmpty()) {
+                    states.wait(10_000);
+                }
+                assertEquals(Boolean.TRUE, states.get(0));
+            }
+        } finally {
+            a.close();
+            playing.join();
+        }
+        assertEquals(Boolean.FALSE, states.get(states.size() - 1));
+    }
+
+    public void testFollowersInSeparateProcesses() throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> processes = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                Process p = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        SyncFollowerProcess.class.getName(), "127.0.0.1", Integer.toString(coordinator.getPort()),
+                        "node" + i, "2").redirectErrorStream(true).start();
+                processes.add(p);
+                BufferedReader out = new BufferedReader(new InputStreamReader(p.getInputStream(),
+                        StandardCharsets.UTF_8));
+                assertEquals("ready", out.readLine());
+            }
+            awaitFollowers(2);
+            Set<String> names = new HashSet<>();
+            for (int run = 0; run < 2; run++) {
+                PlaybackCoordinator.Session session = coordinator.play(timeline, Duration.ofMillis(300));
+                List<NodeReport> reports = session.awaitReports(Duration.ofSeconds(20));
+                assertEquals(3, reports.size());
+                for (NodeReport r : reports) {
+                    names.add(r.getName());
+                }
+                // generous for a loaded machine, but far below the length of one element
+                assertTrue(session.getSkew().toNanos() < 10_000_000L);
+            }
+            assertTrue(names.contains("node0") && names.contains("node1") && names.contains("coordinator"));
+            for (Process p : processes) {
+                assertTrue(p.waitFor(20, TimeUnit.SECONDS));
+                assertEquals(0, p.exitValue());
+            }
+        } finally {
+            for (Process p : processes) {
+                p.destroy();
+            }
+        }
+    }
+
+    private void awaitFollowers(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (coordinator.getFollowerCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, coordinator.getFollowerCount());
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base;
+
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Delayer;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
+import com.randallscharpf.java.jmorsecoding.beeper.AudioRenderer;
+import com.randallscharpf.java.jmorsecoding.beeper.Beeper;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import javax.sound.sampled.LineUnavailableException;
+
+// Measures the time from deciding to play an alert to the first sample of its first beep. A cold measurement runs in
+// a virtual machine of its own and includes creating and opening the output, as an alert sent on demand would without
+// any preparation; a warm measurement starts at playMorseFromString on a player prepared with MorsePlayer.warmUp.
+// Beeps go to a Beeper if an audio device is available, and are otherwise rendered into memory, in which case the
+// first sample counts as produced once the first element has been rendered.
+// Run with no arguments to print a summary, or with "cold" to print a single cold measurement in nanoseconds.
+public class TimeToFirstSoundBenchmark {
+
+    private static final int COLD_RUNS = 5;
+    private static final int WARM_RUNS = 20;
+    private static final String ALERT = "E";
+
+    // notes when the first beep is requested and when its first element has been waited for
+    private static final class Probe implements OnOff, Delayer {
+        private final OnOff stateSetter;
+        private final Delayer delayer;
+        private long firstOnAt;
+        private long firstElementDoneAt;
+
+        private Probe(OnOff stateSetter, Delayer delayer) {
+            this.stateSetter = stateSetter;
+            this.delayer = delayer;
+        }
+
+        @Override
+        public void setActive(boolean active) throws Exception {
+            if (active && firstOnAt == 0) {
+                firstOnAt = System.nanoTime();
+            }
+            stateSetter.setActive(active);
+        }
+
+        @Override
+        public void wait(Duration time) throws Exception {
+            waitNanos(time.toNanos());
+        }
+
+        @Override
+        public void waitNanos(long nanos) throws Exception {
+            delayer.waitNanos(nanos);
+            if (firstOnAt != 0 && firstElementDoneAt == 0) {
+                firstElementDoneAt = System.nanoTime();
+            }
+        }
+
+        private void reset() {
+            firstOnAt = 0;
+            firstElementDoneAt = 0;
+        }
+    }
+
+    private static Beeper tryBeeper() {
+        try {
+            return new Beeper();
+        } catch (LineUnavailableException | IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    // the time from start to the first sample, given a player that has just played the alert through the probe
+    private static long firstSample(long start, Probe probe, Beeper beeper) {
+        if (beeper == null) {
+            return probe.firstElementDoneAt - start;
+        }
+        return probe.firstOnAt - start + beeper.getLastOnsetLatency().toNanos();
+    }
+
+    private static long measureCold() throws Exception {
+        long start = System.nanoTime();
+        Beeper beeper = tryBeeper();
+        Probe probe;
+        if (beeper == null) {
+            AudioRenderer renderer = new AudioRenderer(700, 50, Beeper.WaveType.SINE);
+            probe = new Probe(renderer, renderer);
+        } else {
+            beeper.open();
+            probe = new Probe(beeper, beeper);
+        }
+        new MorsePlayer(probe, probe).playMorseFromString(ALERT);
+        long result = firstSample(start, probe, beeper);
+        if (beeper != null) {
+            beeper.close();
+        }
+        return result;
+    }
+
+    private static String describe(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("median %.3f ms, min %.3f ms, max %.3f ms", sorted[sorted.length / 2] / 1e6,
+                sorted[0] / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("cold")) {
+            System.out.println(measureCold());
+            return;
+        }
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        long[] cold = new long[COLD_RUNS];
+        for (int i = 0; i < COLD_RUNS; i++) {
+            Process p = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    TimeToFirstSoundBenchmark.class.getName(), "cold").redirectErrorStream(true).start();
+            BufferedReader out = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8));
+            String line = out.readLine();
+            p.waitFor();
+            cold[i] = Long.parseLong(line.trim());
+        }
+
+        Beeper beeper = tryBeeper();
+        Probe probe;
+        if (beeper == null) {
+            AudioRenderer renderer = new AudioRenderer(700, 50, Beeper.WaveType.SINE);
+            probe = new Probe(renderer, renderer);
+        } else {
+            probe = new Probe(beeper, beeper);
+        }
+        MorsePlayer player = new MorsePlayer(probe, probe);
+        long warmUpStart = System.nanoTime();
+        player.warmUp();
+        if (beeper != null) {
+            // the probe is what the player sees, so open the beeper behind it
+            beeper.open();
+        }
+        long warmUpNanos = System.nanoTime() - warmUpStart;
+        long[] warm = new long[WARM_RUNS];
+        for (int i = 0; i < WARM_RUNS; i++) {
+            probe.reset();
+            long start = System.nanoTime();
+            player.playMorseFromString(ALERT);
+            warm[i] = firstSample(start, probe, beeper);
+        }
+        if (beeper != null) {
+            beeper.close();
+        }
+
+        System.out.println("Output: " + (beeper == null ? "rendered to memory (no audio device)" : "Beeper"));
+        System.out.println("Cold time to first sample (" + COLD_RUNS + " processes): " + describe(cold));
+        System.out.printf("Warm-up took %.3f ms%n", warmUpNanos / 1e6);
+        System.out.println("Warm time to first sample (" + WARM_RUNS + " alerts): " + describe(warm));
+    }
+}
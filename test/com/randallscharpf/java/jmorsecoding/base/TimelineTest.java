@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base;
+
+import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.Delayer;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.OnOff;
+import com.randallscharpf.java.jmorsecoding.base.playerinterfaces.TimelineSink;
+import com.randallscharpf.java.jmorsecoding.base.standards.BuiltinMorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.standards.DefaultMorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.AirtimeEstimator;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.InternationalSymbolSet;
+import com.randallscharpf.java.jmorsecoding.base.symbolsets.SymbolTable;
+import com.randallscharpf.java.jmorsecoding.base.timelines.Timeline;
+import com.randallscharpf.java.jmorsecoding.base.timelines.TimingPlan;
+import com.randallscharpf.java.jmorsecoding.base.timings.FarnsworthTiming;
+import com.randallscharpf.java.jmorsecoding.base.timings.StandardTiming;
+import com.randallscharpf.java.jmorsecoding.beeper.AudioRenderer;
+import com.randallscharpf.java.jmorsecoding.beeper.Beeper;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+// Tests that compiled timelines play like the units they are compiled from, and
+// that seeking into them lands on the expected characters and times, as well as
+// that airtime estimates agree with the time actually spent playing
+public class TimelineTest extends TestCase {
+
+    private static final String MESSAGE = "CQ CQ DE W1AW  PARIS 73";
+
+    private List<String> events;
+    private OnOff recordingSetter;
+    private Delayer recordingDelayer;
+    private long recordedNanos;
+
+    public TimelineTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        events = new ArrayList<>();
+        recordingSetter = (active) -> events.add(active ? "on" : "off");
+        recordingDelayer = (time) -> {
+            events.add(Long.toString(time.toNanos()));
+            recordedNanos += time.toNanos();
+        };
+        recordedNanos = 0;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testFullPlayback() throws Exception {
+        MorsePlayer player = new MorsePlayer(recordingSetter, recordingDelayer,
+                BuiltinMorseStandard.ITU_R_M1677_1_2009);
+        player.playMorseFromString(MESSAGE);
+        List<String> expected = new ArrayList<>(events);
+        long expectedNanos = recordedNanos;
+        events.clear();
+        recordedNanos = 0;
+        Timeline timeline = player.compile(MESSAGE);
+        player.play(timeline);
+        assertEquals(expected, events);
+        assertEquals(expectedNanos, recordedNanos);
+        assertEquals(expectedNanos, timeline.getDuration().toNanos());
+        assertEquals(MESSAGE.length(), timeline.getCharacterCount());
+    }
+
+    public void testTimingPlanFollowsTimingChanges() throws Exception {
+        StandardTiming timing = new StandardTiming(20);
+        MorsePlayer player = new MorsePlayer(recordingSetter, recordingDelayer,
+                new DefaultMorseStandard(timing, new InternationalSymbolSet()));
+        TimingPlan plan = player.getTimingPlan();
+        assertSame(plan, player.getTimingPlan());
+        assertEquals(timing.timeForElementType(ElementType.DASH).toNanos(), plan.getDurations('t')[0]);
+        timing.settings.setWpm(20);
+        assertSame(plan, player.getTimingPlan());
+        timing.settings.setWpm(5);
+        TimingPlan slower = player.getTimingPlan();
+        assertNotSame(plan, slower);
+        assertEquals(timing.timeForElementType(ElementType.DASH).toNanos(), slower.getDurations('t')[0]);
+        player.playMorseFromString(MESSAGE);
+        long expected = recordedNanos;
+        assertEquals(expected, player.compile(MESSAGE).getDuration().toNanos());
+    }
+
+    public void testSinksReceiveBatches() throws Exception {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            b.append(MESSAGE).append(' ');
+        }
+        String message = b.toString();
+        MorsePlayer player = new MorsePlayer(recordingSetter, recordingDelayer);
+        player.playMorseFromString(message);
+        List<String> expected = new ArrayList<>(events);
+        events.clear();
+        int[] calls = new int[2];
+        class BatchRecorder implements OnOff, Delayer, TimelineSink {
+            @Override
+            public void setActive(boolean active) {
+                fail("Batching sink was played element by element!");
+            }
+            @Override
+            public void wait(Duration time) {
+                fail("Batching sink was played element by element!");
+            }
+            @Override
+            public void play(boolean[] states, long[] nanos, int offset, int length) throws Exception {
+                calls[0]++;
+                for (int i = offset; i < offset + length; i++) {
+                    recordingSetter.setActive(states[i]);
+                    recordingDelayer.wait(Duration.ofNanos(nanos[i]));
+                }
+            }
+            @Override
+            public void endOfMessage() {
+                calls[1]++;
+            }
+        }
+        BatchRecorder recorder = new BatchRecorder();
+        new MorsePlayer(recorder, recorder).playMorseFromString(message);
+        assertEquals(expected, events);
+        assertTrue(calls[0] > 1);
+        assertEquals(1, calls[1]);
+        // a renderer given whole batches produces the same audio as one played element by element
+        AudioRenderer batched = new AudioRenderer(700, 50, Beeper.WaveType.SINE);
+        AudioRenderer single = new AudioRenderer(700, 50, Beeper.WaveType.SINE);
+        new MorsePlayer(batched, batched).playMorseFromString(MESSAGE);
+        BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification().getPlayableForString(MESSAGE)
+                .play(single, single, BuiltinMorseStandard.ITU_R_M1677_1_2009.getTimingSpecification());
+        assertTrue(Arrays.equals(batched.toByteArray(), single.toByteArray()));
+    }
+
+    public void testSeeking() throws Exception {
+        FarnsworthTiming timing = new FarnsworthTiming(13, 20);
+        MorsePlayer player = new MorsePlayer(recordingSetter, recordingDelayer);
+        Timeline timeline = Timeline.compile(MESSAGE,
+                new SymbolTable(BuiltinMorseStandard.ITU_R_M1677_1_2009.getSymbolSpecification()), timing);
+        long total = timeline.getDuration().toNanos();
+        for (int i = 0; i < MESSAGE.length(); i++) {
+            Duration start = timeline.getCharacterStart(i);
+            assertEquals(i, timeline.getCharacterAt(start));
+            recordedNanos = 0;
+            player.playFromCharacter(timeline, i);
+            assertEquals(total - start.toNanos(), recordedNanos);
+        }
+        // the last character owns the terminating word gap
+        assertEquals(MESSAGE.length() - 1, timeline.getCharacterAt(Duration.ofNanos(total - 1)));
+        for (long offset = 0; offset < total; offset += total / 97) {
+            events.clear();
+            recordedNanos = 0;
+            player.playFromTime(timeline, Duration.ofNanos(offset));
+            assertEquals(total - offset, recordedNanos);
+        }
+        // C is a dash, so playback one nanosecond in starts partway through an "on" element
+        events.clear();
+        player.playFromTime(timeline, Duration.ofNanos(1));
+        assertEquals("on", events.get(0));
+        assertEquals(timing.timeForElementType(ElementType.DASH).toNanos() - 1, Long.parseLong(events.get(1)));
+        try {
+            player.playFromTime(timeline, Duration.ofNanos(total));
+            fail("No exception thrown!");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("outside"));
+        }
+    }
+
+    public void testAirtimeEstimate() throws Exception {
+        BuiltinMorseStandard standard = BuiltinMorseStandard.ITU_R_M1677_1_2009;
+        AirtimeEstimator estimator = new AirtimeEstimator(standard.getSymbolSpecification());
+        FarnsworthTiming timing = new FarnsworthTiming(7, 18);
+        // the percent sign embeds letter gaps within its symbol
+        List<String> messages = Arrays.asList(MESSAGE, "0% OFF", "", "  ", "e", "\u00E9t\u00E9 ?", MESSAGE + MESSAGE);
+        long[] all = estimator.estimateAllNanos(messages, timing);
+        long total = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            recordedNanos = 0;
+            standard.getSymbolSpecification().getPlayableForString(messages.get(i))
+                    .play(recordingSetter, recordingDelayer, timing);
+            assertEquals(recordedNanos, estimator.estimateNanos(messages.get(i), timing));
+            assertEquals(recordedNanos, all[i]);
+            total += recordedNanos;
+        }
+        assertEquals(total, estimator.estimateTotalNanos(messages, timing));
+        try {
+            estimator.estimateNanos("50\u00A2", timing);
+            fail("No exception thrown!");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("character"));
+        }
+    }
+}
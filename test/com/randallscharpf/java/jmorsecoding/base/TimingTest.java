@@ -26,6 +26,7 @@ package com.randallscharpf.java.jmorsecoding.base;
 import com.randallscharpf.java.jmorsecoding.base.timings.*;
 import com.randallscharpf.java.jmorsecoding.base.morseunits.ElementType;
 import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import junit.framework.TestCase;
 
@@ -154,6 +155,45 @@ public class TimingTest extends TestCase {
         System.out.println();
     }
     
+    public void testSnapshotsAreConsistent() throws Exception {
+        StandardTiming standard = new StandardTiming(10);
+        FarnsworthTiming farnsworth = new FarnsworthTiming(5, 18);
+        TimingSnapshot slowStandard = new StandardTiming(10).snapshot();
+        TimingSnapshot slowFarnsworth = new FarnsworthTiming(5, 18).snapshot();
+        TimingSnapshot fastStandard = new StandardTiming(40).snapshot();
+        TimingSnapshot fastFarnsworth = new FarnsworthTiming(30, 40).snapshot();
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; !done.get(); i++) {
+                standard.settings.setWpm(i % 2 == 0 ? 40 : 10);
+                farnsworth.settings.setWpm(i % 2 == 0 ? 30 : 5, i % 2 == 0 ? 40 : 18);
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 200000; i++) {
+                TimingSnapshot s = standard.snapshot();
+                assertTrue(sameDurations(s, slowStandard) || sameDurations(s, fastStandard));
+                s = farnsworth.snapshot();
+                assertTrue(sameDurations(s, slowFarnsworth) || sameDurations(s, fastFarnsworth));
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+        assertSame(standard.snapshot().timeForElementType(ElementType.DOT),
+                standard.timeForElementType(ElementType.DOT));
+    }
+
+    private boolean sameDurations(TimingSnapshot a, TimingSnapshot b) {
+        for (ElementType type : ElementType.values()) {
+            if (a.getNanos(type) != b.getNanos(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
         // Standard word is PARIS which is .--./.-/.-./../...//
         // which has 10 .'s; 4 -'s, 4 /'s, 1 //, and 9 element gaps
         // this is 50 total units
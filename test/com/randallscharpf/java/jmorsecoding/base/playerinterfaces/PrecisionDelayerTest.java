@@ -0,0 +1,214 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.base.playerinterfaces;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+
+// Tests the waits of the precision delayer on the real timer, and its estimate of park overshoot on a simulated one
+public class PrecisionDelayerTest extends TestCase {
+
+    // a timer that moves only when it is read or parked on, and whose parks overshoot by a set amount
+    private static final class SimulatedTimer {
+        private long now = 1_000_000_000L;
+        private long overshoot;
+        private final List<Long> parks = new ArrayList<>();
+
+        // each read takes a nanosecond, so that spinning comes to an end
+        private long read() {
+            return ++now;
+        }
+
+        private void park(long nanos) {
+            parks.add(nanos);
+            now += nanos + overshoot;
+        }
+    }
+
+    private SimulatedTimer timer;
+
+    public PrecisionDelayerTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        timer = new SimulatedTimer();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    private PrecisionDelayer simulated(Duration maxSpin, long overshoot) {
+        timer.overshoot = overshoot;
+        return new PrecisionDelayer(maxSpin, timer::read, timer::park);
+    }
+
+    public void testCalibrationMeasuresOvershoot() {
+        PrecisionDelayer delayer = simulated(Duration.ofMillis(2), 300_000);
+        // the overshoot of each park, and the read that ends it
+        assertEquals(300_001, delayer.getParkOvershoot().toNanos());
+        timer.overshoot = 50_000;
+        delayer.calibrate();
+        assertEquals(50_001, delayer.getParkOvershoot().toNanos());
+    }
+
+    public void testWorseOvershootIsAdoptedAtOnce() throws Exception {
+        PrecisionDelayer delayer = simulated(Duration.ofMillis(2), 100_000);
+        timer.overshoot = 400_000;
+        long before = timer.now;
+        long deadline = before + 10_000_000;
+        delayer.waitUntil(deadline);
+        // parked until the estimate and a safety margin of 20 us before the deadline, and overshot both
+        assertEquals(deadline - (before + 1) - 120_001, (long) timer.parks.get(timer.parks.size() - 1));
+        assertEquals(400_001, delayer.getParkOvershoot().toNanos());
+        assertTrue(timer.now >= deadline);
+    }
+
+    public void testBetterOvershootIsAdoptedGradually() throws Exception {
+        PrecisionDelayer delayer = simulated(Duration.ofMillis(2), 400_000);
+        timer.overshoot = 0;
+        int parks = timer.parks.size();
+        delayer.waitUntil(timer.now + 10_000_000);
+        // each park closes a sixteenth of the distance to the new overshoot, measured as one read
+        long expected = 400_001;
+        for (int i = parks; i < timer.parks.size(); i++) {
+            expected -= (expected - 1) >> 4;
+        }
+        assertTrue(timer.parks.size() > parks);
+        assertEquals(expected, delayer.getParkOvershoot().toNanos());
+        for (int i = 0; i < 200; i++) {
+            long deadline = timer.now + 10_000_000;
+            delayer.waitUntil(deadline);
+            // a park that returns early is made up for by spinning
+            assertTrue(timer.now >= deadline);
+        }
+        assertTrue(delayer.getParkOvershoot().toNanos() < 1_000);
+        assertTrue(delayer.getParkOvershoot().toNanos() >= 1);
+    }
+
+    public void testSpinIsLimited() throws Exception {
+        PrecisionDelayer delayer = simulated(Duration.ofNanos(100_000), 1_000_000);
+        long deadline = timer.now + 10_000_000;
+        long before = timer.now;
+        delayer.waitUntil(deadline);
+        // the margin before the deadline is held to the longest spin, so the wait ends late rather than spin longer
+        assertEquals(deadline - (before + 1) - 100_000, (long) timer.parks.get(timer.parks.size() - 1));
+        // late by the overshoot that was not spun for, and the few reads that find that out
+        assertTrue(timer.now - deadline >= 900_000);
+        assertTrue(timer.now - deadline < 900_010);
+        // a deadline within the margin is spun for without parking
+        int parks = timer.parks.size();
+        deadline = timer.now + 50_000;
+        delayer.waitUntil(deadline);
+        assertEquals(parks, timer.parks.size());
+        assertEquals(deadline, timer.now);
+    }
+
+    public void testInterruptionIsNoticedAfterParking() throws Exception {
+        PrecisionDelayer delayer = simulated(Duration.ofMillis(2), 0);
+        Thread.currentThread().interrupt();
+        try {
+            delayer.waitUntil(timer.now + 10_000_000);
+            fail("No exception thrown!");
+        } catch (InterruptedException ex) {
+            assertFalse(Thread.interrupted());
+        }
+        try {
+            new PrecisionDelayer(Duration.ofMillis(-1));
+            fail("No exception thrown!");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("negative"));
+        }
+    }
+
+    public void testNeverReturnsEarly() throws Exception {
+        PrecisionDelayer delayer = new PrecisionDelayer();
+        for (int i = 0; i < 100; i++) {
+            // from no wait at all up to just under two milliseconds, crossing the boundary between parking and spinning
+            long nanos = i * 19_000L;
+            long deadline = System.nanoTime() + nanos;
+            delayer.waitUntil(deadline);
+            assertTrue(System.nanoTime() - deadline >= 0);
+            long start = System.nanoTime();
+            delayer.waitNanos(nanos);
+            assertTrue(System.nanoTime() - start >= nanos);
+            start = System.nanoTime();
+            delayer.wait(Duration.ofNanos(nanos));
+            assertTrue(System.nanoTime() - start >= nanos);
+        }
+        // a deadline that has passed returns at once
+        long start = System.nanoTime();
+        delayer.waitUntil(start - 1_000_000_000L);
+        assertTrue(System.nanoTime() - start < 100_000_000L);
+    }
+
+    public void testLatenessStaysBounded() throws Exception {
+        PrecisionDelayer delayer = new PrecisionDelayer();
+        long[] lateness = new long[500];
+        long deadline = System.nanoTime();
+        for (int i = 0; i < lateness.length; i++) {
+            deadline += 500_000L;
+            delayer.waitUntil(deadline);
+            lateness[i] = System.nanoTime() - deadline;
+        }
+        Arrays.sort(lateness);
+        assertTrue(lateness[0] >= 0);
+        // spinning finishes each wait within microseconds; the bounds allow for a loaded machine, and since every
+        // deadline is absolute, a late wait does not make the later ones late
+        assertTrue(lateness[lateness.length / 2] < 200_000L);
+        assertTrue(lateness[lateness.length * 9 / 10] < 1_000_000L);
+    }
+
+    public void testThrowsWhenInterruptedWhileParked() throws Exception {
+        PrecisionDelayer delayer = new PrecisionDelayer();
+        AtomicReference<Exception> thrown = new AtomicReference<>();
+        CountDownLatch waiting = new CountDownLatch(1);
+        Thread t = new Thread(() -> {
+            waiting.countDown();
+            try {
+                delayer.wait(Duration.ofSeconds(30));
+            } catch (Exception ex) {
+                thrown.set(ex);
+            }
+        });
+        long start = System.nanoTime();
+        t.start();
+        waiting.await();
+        Thread.sleep(50);
+        t.interrupt();
+        t.join(5_000);
+        assertFalse(t.isAlive());
+        assertTrue(thrown.get() instanceof InterruptedException);
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+    }
+}
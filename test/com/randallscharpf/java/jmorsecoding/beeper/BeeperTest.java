@@ -0,0 +1,473 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.beeper;
+
+import com.randallscharpf.java.jmorsecoding.base.standards.BuiltinMorseStandard;
+import com.randallscharpf.java.jmorsecoding.base.standards.MorseStandard;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.SourceDataLine;
+import junit.framework.TestCase;
+
+// Tests the keying envelope of beeps, the cache of rendered messages, and the underrun detection, adaptive buffering
+// and cached playback of Beeper against a simulated audio line
+public class BeeperTest extends TestCase {
+
+    private static final MorseStandard STANDARD = BuiltinMorseStandard.ITU_R_M1677_1_2009;
+    private static final PcmCache.Voice VOICE = new PcmCache.Voice(700, 50, Beeper.WaveType.SINE,
+            KeyingEnvelope.DEFAULT, 44100);
+
+    private Beeper beeper;
+
+    public BeeperTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (beeper != null) {
+            beeper.close();
+        }
+        super.tearDown();
+    }
+
+    public void testUnderrunGrowsBufferAndIsReported() throws Exception {
+        List<String> reports = new CopyOnWriteArrayList<>();
+        AtomicInteger blocks = new AtomicInteger();
+        // the pitch is read once for every block, so one slow read stalls the audio thread for 60 ms
+        beeper = new Beeper(new SimulatedLine(), () -> {
+            if (blocks.incrementAndGet() == 40) {
+                try {
+                    Thread.sleep(60);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return 440;
+        }, () -> 100, () -> Beeper.WaveType.SINE);
+        beeper.setBufferLimits(Duration.ofMillis(25), Duration.ofMillis(80));
+        beeper.setLineHealthListener(new LineHealthListener() {
+            @Override
+            public void underrun(Beeper b, long framesWritten) {
+                reports.add("underrun");
+            }
+
+            @Override
+            public void bufferResized(Beeper b, int oldBytes, int newBytes) {
+                reports.add(oldBytes + "->" + newBytes);
+            }
+        });
+        beeper.open();
+        assertEquals(24, beeper.getBufferTarget().toMillis());
+        assertEquals(2200, beeper.getMetrics().getTargetBufferBytes());
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (beeper.getMetrics().getUnderrunCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, beeper.getMetrics().getUnderrunCount());
+        // a loaded machine may also nearly run dry and grow the queue by a block, before or after the underrun, so
+        // the resize that the underrun causes is looked for right after its report rather than at a fixed place
+        while (reports.indexOf("underrun") + 1 >= reports.size() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        int underrun = reports.indexOf("underrun");
+        assertTrue(underrun >= 0);
+        String[] resize = reports.get(underrun + 1).split("->");
+        int before = Integer.parseInt(resize[0]);
+        int after = Integer.parseInt(resize[1]);
+        assertTrue(before >= 2200);
+        // doubled, unless that would pass the greatest limit
+        assertTrue(after > before && after <= 2 * before);
+        assertTrue(beeper.getMetrics().getBufferResizeCount() >= 1);
+        // the queue never grows past the greatest limit, rounded to a whole block
+        assertTrue(beeper.getMetrics().getTargetBufferBytes() >= 4400);
+        assertTrue(beeper.getMetrics().getTargetBufferBytes() <= 16 * 440);
+        assertTrue(beeper.getMetrics().getFramesWritten() > 0);
+    }
+
+    public void testBufferLimitsMustBeOrdered() throws Exception {
+        beeper = new Beeper(new SimulatedLine(), () -> 440, () -> 100, () -> Beeper.WaveType.SINE);
+        try {
+            beeper.setBufferLimits(Duration.ofMillis(50), Duration.ofMillis(20));
+            fail("No exception thrown!");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("limits"));
+        }
+        try {
+            beeper.setBufferLimits(Duration.ZERO, Duration.ofMillis(20));
+            fail("No exception thrown!");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("limits"));
+        }
+        assertEquals(0, beeper.getMetrics().getTargetBufferBytes());
+    }
+
+    public void testEnvelopeOnlyShapesTheEdgesOfBeeps() throws Exception {
+        AudioRenderer renderer = new AudioRenderer(441, 100, Beeper.WaveType.SINE);
+        renderer.setActive(true);
+        renderer.wait(Duration.ofMillis(20));
+        renderer.setActive(false);
+        renderer.wait(Duration.ofMillis(20));
+        byte[] pcm = renderer.toByteArray();
+        assertEquals(2 * 1764, pcm.length);
+        double step = 2 * Math.PI * 441 / 44100;
+        double phase = 0;
+        // the 5 ms ramp is 221 frames long, after which the wave is exact
+        for (int i = 0; i < 882; i++) {
+            short expected = (short) (Short.MAX_VALUE * Beeper.calcSample(Beeper.WaveType.SINE, phase));
+            short actual = (short) ((pcm[2 * i] & 0xFF) | (pcm[2 * i + 1] << 8));
+            phase += step;
+            if (i < 221) {
+                assertTrue(Math.abs(actual) <= Math.abs(expected));
+            } else {
+                assertEquals(expected, actual);
+            }
+        }
+        // the first frame is nearly silent, and the output is silent once the fall is over
+        assertTrue(Math.abs((short) ((pcm[2] & 0xFF) | (pcm[3] << 8))) < 100);
+        for (int i = 882 + 221; i < 1764; i++) {
+            assertEquals(0, pcm[2 * i]);
+            assertEquals(0, pcm[2 * i + 1]);
+        }
+    }
+
+    public void testRampsAreSymmetricAndShortBeepsTurnAround() throws Exception {
+        for (KeyingEnvelope.Shape shape : KeyingEnvelope.Shape.values()) {
+            float[] ramp = new KeyingEnvelope(shape, Duration.ofMillis(5)).rise(44100);
+            assertEquals(221, ramp.length);
+            assertTrue(ramp[0] < 0.01 && ramp[220] > 0.99);
+            for (int i = 0; i < ramp.length; i++) {
+                assertEquals(1 - ramp[i], ramp[220 - i], 1e-6);
+                if (i > 0) {
+                    assertTrue(ramp[i] > ramp[i - 1]);
+                }
+            }
+        }
+        // a square wave at a quarter cycle is at full amplitude, so each sample is the weight of the tone
+        double peak = Math.PI / 2;
+        Keyer keyer = new Keyer(KeyingEnvelope.DEFAULT, 44100);
+        assertTrue(keyer.key(Beeper.WaveType.SQUARE));
+        assertFalse(keyer.key(Beeper.WaveType.SQUARE));
+        double reached = 0;
+        for (int i = 0; i < 50; i++) {
+            reached = keyer.sample(peak);
+        }
+        assertTrue(keyer.key(null));
+        // the fall starts from the amplitude the rise reached instead of from full amplitude
+        assertEquals(reached, keyer.sample(peak), 0.01);
+
+        Keyer hard = new Keyer(new KeyingEnvelope(KeyingEnvelope.Shape.GAUSSIAN, Duration.ZERO), 44100);
+        hard.key(Beeper.WaveType.SQUARE);
+        assertEquals(1.0, hard.sample(peak));
+        hard.key(null);
+        assertEquals(0.0, hard.sample(peak));
+    }
+
+    public void testCacheRendersEachSymbolOnce() throws Exception {
+        PcmCache cache = new PcmCache(1 << 20);
+        byte[] first = cache.getMessage("EE ETE", STANDARD, VOICE);
+        assertEquals(1, cache.getMetrics().getMessageMissCount());
+        assertEquals(2, cache.getMetrics().getSymbolMissCount());
+        assertEquals(3, cache.getMetrics().getSymbolHitCount());
+        assertSame(first, cache.getMessage("EE ETE", STANDARD, VOICE));
+        assertEquals(1, cache.getMetrics().getMessageHitCount());
+        assertEquals(3, cache.getMetrics().getEntryCount());
+        // four hits of seven lookups
+        assertEquals(4 / 7.0, cache.getMetrics().getHitRate(), 1e-9);
+        // another voice is rendered separately
+        PcmCache.Voice louder = new PcmCache.Voice(700, 100, Beeper.WaveType.SINE, KeyingEnvelope.DEFAULT, 44100);
+        assertNotSame(first, cache.getMessage("EE ETE", STANDARD, louder));
+        assertEquals(6, cache.getMetrics().getEntryCount());
+        long memory = cache.getMetrics().getMemoryBytes();
+        assertTrue(memory > 2 * first.length && memory <= cache.getMetrics().getCapacityBytes());
+        cache.clear();
+        assertEquals(0, cache.getMetrics().getMemoryBytes());
+    }
+
+    public void testCachedMessageSoundsLikeRenderedOne() throws Exception {
+        String message = "PARIS 73";
+        byte[] cached = new PcmCache(1 << 22).getMessage(message, STANDARD, VOICE);
+        AudioRenderer renderer = new AudioRenderer(700, 50, Beeper.WaveType.SINE);
+        STANDARD.getSymbolSpecification().getPlayableForString(message)
+                .play(renderer, renderer, STANDARD.getTimingSpecification());
+        byte[] rendered = renderer.toByteArray();
+        assertEquals(rendered.length, cached.length);
+        // only the phase of the wave differs, so the loudness of every 5 ms matches
+        for (int start = 0; start + 440 <= cached.length; start += 440) {
+            assertEquals(energy(rendered, start), energy(cached, start), 0.02);
+        }
+    }
+
+    private static double energy(byte[] pcm, int start) {
+        double sum = 0;
+        for (int i = start; i < start + 440; i += 2) {
+            double v = (short) ((pcm[i] & 0xFF) | (pcm[i + 1] << 8)) / (double) Short.MAX_VALUE;
+            sum += v * v;
+        }
+        return sum / 220;
+    }
+
+    public void testCacheEvictsLeastRecentlyUsed() throws Exception {
+        int messageBytes = new PcmCache(1 << 20).getMessage("E", STANDARD, VOICE).length;
+        // room for the symbol E and one message made of it, but not two
+        PcmCache cache = new PcmCache(2L * messageBytes);
+        cache.getMessage("E", STANDARD, VOICE);
+        assertEquals(0, cache.getMetrics().getEvictionCount());
+        cache.getMessage("EE", STANDARD, VOICE);
+        assertTrue(cache.getMetrics().getEvictionCount() >= 1);
+        assertTrue(cache.getMetrics().getMemoryBytes() <= cache.getMetrics().getCapacityBytes());
+        // the message E was used less recently than the symbol, which was used for the message EE, so only the
+        // message was evicted
+        cache.getMessage("E", STANDARD, VOICE);
+        assertEquals(3, cache.getMetrics().getMessageMissCount());
+        assertEquals(0, cache.getMetrics().getMessageHitCount());
+        assertEquals(1, cache.getMetrics().getSymbolMissCount());
+    }
+
+    public void testPlayMessageCopiesCachedAudioIntoLine() throws Exception {
+        SimulatedLine line = new SimulatedLine();
+        beeper = new Beeper(line, () -> 700, () -> 50, () -> Beeper.WaveType.SINE);
+        PcmCache cache = new PcmCache(1 << 20);
+        try {
+            beeper.playMessage("EE", STANDARD, cache);
+            fail("No exception thrown!");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().contains("open"));
+        }
+        beeper.open();
+        beeper.playMessage("EE", STANDARD, cache);
+        beeper.playMessage("EE", STANDARD, cache);
+        assertEquals(1, cache.getMetrics().getMessageHitCount());
+        beeper.close();
+        byte[] pcm = cache.getMessage("EE", STANDARD, VOICE);
+        byte[] heard = line.getWrittenBytes();
+        // the beeper is silent apart from the messages, which arrive intact
+        int start = 0;
+        while (heard[start] == 0) {
+            start++;
+        }
+        int first = 0;
+        while (pcm[first] == 0) {
+            first++;
+        }
+        start -= first;
+        for (int i = 0; i < pcm.length; i++) {
+            assertEquals(pcm[i], heard[start + i]);
+        }
+    }
+
+    public void testCloseCutsMessageShort() throws Exception {
+        beeper = new Beeper(new SimulatedLine(), () -> 700, () -> 50, () -> Beeper.WaveType.SINE);
+        PcmCache cache = new PcmCache(1 << 20);
+        // rendered ahead so that the sender starts playing at once
+        cache.getMessage("PARIS PARIS", STANDARD, VOICE);
+        beeper.open();
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        // the message takes seconds to play, so it is still being written when the beeper is closed
+        Thread sender = new Thread(() -> {
+            try {
+                beeper.playMessage("PARIS PARIS", STANDARD, cache);
+            } catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+        sender.start();
+        Thread.sleep(200);
+        beeper.close();
+        sender.join(5000);
+        assertFalse(sender.isAlive());
+        assertTrue(thrown.get() instanceof IllegalStateException);
+        assertTrue(thrown.get().getMessage().contains("closed"));
+    }
+
+    // plays 16-bit mono sound at 44.1 kHz in real time, falling silent whenever it has played everything written
+    private static final class SimulatedLine implements SourceDataLine {
+
+        private AudioFormat format;
+        private int bufferSize;
+        private boolean open;
+        private long written;
+        private double played;
+        private long updatedAt;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private synchronized byte[] getWrittenBytes() {
+            return bytes.toByteArray();
+        }
+
+        private synchronized void update() {
+            long now = System.nanoTime();
+            played = Math.min(written, played + (now - updatedAt) * 44100 / 1e9);
+            updatedAt = now;
+        }
+
+        @Override
+        public synchronized void open(AudioFormat format, int bufferSize) {
+            this.format = format;
+            this.bufferSize = bufferSize;
+            open = true;
+            updatedAt = System.nanoTime();
+        }
+
+        @Override
+        public void open(AudioFormat format) {
+            open(format, 2200);
+        }
+
+        @Override
+        public void open() {
+            open(null, 2200);
+        }
+
+        @Override
+        public int write(byte[] b, int off, int len) {
+            while (true) {
+                synchronized (this) {
+                    if (!open) {
+                        return 0;
+                    }
+                    if (available() >= len) {
+                        written += len / 2;
+                        bytes.write(b, off, len);
+                        return len;
+                    }
+                }
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ex) {
+                    return 0;
+                }
+            }
+        }
+
+        @Override
+        public synchronized int available() {
+            update();
+            return bufferSize - (int) (2 * (written - (long) played));
+        }
+
+        @Override
+        public synchronized long getLongFramePosition() {
+            update();
+            return (long) played;
+        }
+
+        @Override
+        public int getFramePosition() {
+            return (int) getLongFramePosition();
+        }
+
+        @Override
+        public long getMicrosecondPosition() {
+            return getLongFramePosition() * 1_000_000 / 44100;
+        }
+
+        @Override
+        public synchronized int getBufferSize() {
+            return bufferSize;
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public synchronized void close() {
+            open = false;
+        }
+
+        @Override
+        public AudioFormat getFormat() {
+            return format;
+        }
+
+        @Override
+        public void drain() {}
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void start() {}
+
+        @Override
+        public void stop() {}
+
+        @Override
+        public boolean isRunning() {
+            return open;
+        }
+
+        @Override
+        public boolean isActive() {
+            return open;
+        }
+
+        @Override
+        public float getLevel() {
+            return AudioSystem.NOT_SPECIFIED;
+        }
+
+        @Override
+        public Line.Info getLineInfo() {
+            return new Line.Info(SourceDataLine.class);
+        }
+
+        @Override
+        public Control[] getControls() {
+            return new Control[0];
+        }
+
+        @Override
+        public boolean isControlSupported(Control.Type control) {
+            return false;
+        }
+
+        @Override
+        public Control getControl(Control.Type control) {
+            throw new IllegalArgumentException("No controls are supported.");
+        }
+
+        @Override
+        public void addLineListener(LineListener listener) {}
+
+        @Override
+        public void removeLineListener(LineListener listener) {}
+    }
+}
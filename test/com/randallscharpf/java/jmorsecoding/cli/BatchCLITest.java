@@ -0,0 +1,196 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2023 Randall Scharpf
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.randallscharpf.java.jmorsecoding.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import junit.framework.TestCase;
+
+// Tests the batch command-line interface against temporary files and in-memory standard streams
+public class BatchCLITest extends TestCase {
+
+    private static final String NL = System.lineSeparator();
+
+    private Path dir;
+    private ByteArrayOutputStream stdout;
+    private ByteArrayOutputStream stderr;
+
+    public BatchCLITest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = Files.createTempDirectory("jmorsecoding");
+        stdout = new ByteArrayOutputStream();
+        stderr = new ByteArrayOutputStream();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach((path) -> path.toFile().delete());
+        }
+        super.tearDown();
+    }
+
+    public void testOptionParsing() throws Exception {
+        assertEquals(0, run("", "--help"));
+        assertTrue(stdout.toString("UTF-8").startsWith("Usage:"));
+        assertEquals(2, run(""));
+        assertTrue(stderr.toString("UTF-8").contains("No inputs given."));
+        assertEquals(2, run("", "--bogus", "x", "-"));
+        assertTrue(stderr.toString("UTF-8").contains("Unknown option --bogus"));
+        assertEquals(2, run("", "-", "--wpm"));
+        assertTrue(stderr.toString("UTF-8").contains("Missing value for --wpm"));
+        assertEquals(2, run("", "--wpm", "fast", "-"));
+        assertTrue(stderr.toString("UTF-8").contains("Invalid value for --wpm: fast"));
+        assertEquals(2, run("", "--threads", "0", "-"));
+        assertEquals(2, run("", "--format", "mp3", "-"));
+        assertEquals(2, run("", "nonexistent-" + System.nanoTime()));
+        assertTrue(stderr.toString("UTF-8").contains("No such file or directory"));
+        assertEquals(2, run("", "--pitch", "0", "-"));
+        assertTrue(stderr.toString("UTF-8").contains("Pitch must be a positive number of hertz."));
+        assertEquals(2, run("", "--pitch", "Infinity", "-"));
+        assertEquals(2, run("", "--volume", "101", "-"));
+        assertTrue(stderr.toString("UTF-8").contains("Volume must be from 0 to 100 percent."));
+        assertEquals(2, run("", "--volume", "NaN", "-"));
+        assertEquals(2, run("", "--sample-rate", "-44100", "-"));
+        assertTrue(stderr.toString("UTF-8").contains("Sample rate must be a positive number of hertz."));
+    }
+
+    public void testDoubleDashEndsOptions() throws Exception {
+        assertEquals(0, run("E", "--", "-"));
+        assertEquals("." + NL, stdout.toString("UTF-8"));
+        // an argument after -- is an input even if it looks like an option
+        assertEquals(2, run("", "--", "--help"));
+        assertTrue(stderr.toString("UTF-8").contains("No such file or directory: --help"));
+        assertEquals(2, run("", "--"));
+        assertTrue(stderr.toString("UTF-8").contains("No inputs given."));
+    }
+
+    public void testStandardInputToStandardOutput() throws Exception {
+        assertEquals(0, run("SOS SOS", "--threads", "2", "-"));
+        assertEquals("... --- ... / ... --- ..." + NL, stdout.toString("UTF-8"));
+        assertTrue(stderr.toString("UTF-8").startsWith("1 input(s), 0 failed, 7 characters"));
+    }
+
+    public void testStandardInputIsReadOnce() throws Exception {
+        assertEquals(2, run("SOS", "-", "-"));
+        assertTrue(stderr.toString("UTF-8").contains("Standard input can only be given once."));
+        assertEquals(0, stdout.size());
+    }
+
+    public void testFilesToStandardOutputInOrder() throws Exception {
+        Path a = write(dir.resolve("a.txt"), "E");
+        Path b = write(dir.resolve("b.txt"), "T");
+        assertEquals(0, run("I", b.toString(), "-", a.toString()));
+        assertEquals("-" + NL + ".." + NL + "." + NL, stdout.toString("UTF-8"));
+    }
+
+    public void testManyInputsOnOneThreadStayInOrder() throws Exception {
+        // twice as many inputs as the window of results rendered ahead on one thread
+        String[] texts = {"E", "T", "I", "M"};
+        String[] codes = {".", "-", "..", "--"};
+        String[] args = new String[2 + texts.length];
+        args[0] = "--threads";
+        args[1] = "1";
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < texts.length; i++) {
+            args[2 + i] = write(dir.resolve(i + ".txt"), texts[i]).toString();
+            expected.append(codes[i]).append(NL);
+        }
+        assertEquals(0, run("", args));
+        assertEquals(expected.toString(), stdout.toString("UTF-8"));
+        assertTrue(stderr.toString("UTF-8").startsWith("4 input(s), 0 failed, 4 characters"));
+    }
+
+    public void testDirectoryInputToDirectoryOutput() throws Exception {
+        Path in = Files.createDirectory(dir.resolve("in"));
+        write(Files.createDirectory(in.resolve("a")).resolve("b.txt"), "PARIS");
+        write(in.resolve("c.txt"), "E E");
+        Path out = dir.resolve("out");
+        assertEquals(0, run("", "--format", "events", "--wpm", "20", "--output", out.toString(), in.toString()));
+        assertEquals(0, stdout.size());
+        String events = read(out.resolve("c.txt.log"));
+        assertEquals("# c.txt" + NL + "0 ON 60000000" + NL + "60000000 OFF 420000000" + NL
+                + "480000000 ON 60000000" + NL + "540000000 OFF 420000000" + NL, events);
+        assertTrue(read(out.resolve("a_b.txt.log")).startsWith("# a_b.txt" + NL + "0 ON 60000000" + NL));
+        assertEquals(2, countFiles(out));
+    }
+
+    public void testFlattenedNamesMustNotCollide() throws Exception {
+        Path in = Files.createDirectory(dir.resolve("in"));
+        write(Files.createDirectory(in.resolve("a")).resolve("b.txt"), "E");
+        write(in.resolve("a_b.txt"), "T");
+        Path out = dir.resolve("out");
+        assertEquals(2, run("", "--output", out.toString(), in.toString()));
+        assertTrue(stderr.toString("UTF-8").contains("would both be written to a_b.txt.txt"));
+        assertFalse(Files.exists(out));
+        // standard output has no file names to collide
+        assertEquals(0, run("", in.toString()));
+    }
+
+    public void testFailedInputSetsExitCode() throws Exception {
+        Path good = write(dir.resolve("good.txt"), "E");
+        Path bad = write(dir.resolve("bad.txt"), "E\u0001E");
+        assertEquals(1, run("", good.toString(), bad.toString()));
+        assertEquals("." + NL, stdout.toString("UTF-8"));
+        assertTrue(stderr.toString("UTF-8").contains("Failed: bad.txt: No morse encoding"));
+        stdout.reset();
+        assertEquals(0, run("", "--skip-unknown", bad.toString()));
+        assertEquals(". ." + NL, stdout.toString("UTF-8"));
+    }
+
+    private int run(String stdin, String... args) throws IOException {
+        stdout.reset();
+        stderr.reset();
+        try (PrintStream out = new PrintStream(stdout, true, "UTF-8");
+                PrintStream err = new PrintStream(stderr, true, "UTF-8")) {
+            return BatchCLI.run(args, new ByteArrayInputStream(stdin.getBytes(StandardCharsets.UTF_8)), out, err);
+        }
+    }
+
+    private static Path write(Path path, String text) throws IOException {
+        return Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Path path) throws IOException {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    private static long countFiles(Path path) throws IOException {
+        try (Stream<Path> list = Files.list(path)) {
+            return list.count();
+        }
+    }
+}